@@ -37,6 +37,7 @@ public class ParserOptions {
 	private boolean myStripVersionsFromReferences = true;
 	private Set<String> myDontStripVersionsFromReferencesAtPaths = Collections.emptySet();
 	private boolean myOverrideResourceIdWithBundleEntryFullUrl = true;
+	private boolean myStreamingJsonParserEnabled = false;
 
 	/**
 	 * If supplied value(s), any resource references at the specified paths will have their
@@ -166,4 +167,40 @@ public class ParserOptions {
 		return this;
 	}
 
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), the JSON parser will build resources
+	 * directly from the stream of JSON tokens instead of first loading the entire document into
+	 * an in-memory JSON tree. This substantially reduces the memory required to parse large
+	 * documents such as transaction Bundles.
+	 * <p>
+	 * Note that in this mode, a <code>_element</code> sibling of a complex (non-primitive) element
+	 * is only honoured if it appears before the element itself. This never happens in valid FHIR,
+	 * since only primitive elements may have a <code>_element</code> sibling.
+	 * </p>
+	 *
+	 * @since 5.2.0
+	 */
+	public boolean isStreamingJsonParserEnabled() {
+		return myStreamingJsonParserEnabled;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), the JSON parser will build resources
+	 * directly from the stream of JSON tokens instead of first loading the entire document into
+	 * an in-memory JSON tree. This substantially reduces the memory required to parse large
+	 * documents such as transaction Bundles.
+	 * <p>
+	 * Note that in this mode, a <code>_element</code> sibling of a complex (non-primitive) element
+	 * is only honoured if it appears before the element itself. This never happens in valid FHIR,
+	 * since only primitive elements may have a <code>_element</code> sibling.
+	 * </p>
+	 *
+	 * @return Returns a reference to <code>this</code> parser so that method calls can be chained together
+	 * @since 5.2.0
+	 */
+	public ParserOptions setStreamingJsonParserEnabled(boolean theStreamingJsonParserEnabled) {
+		myStreamingJsonParserEnabled = theStreamingJsonParserEnabled;
+		return this;
+	}
+
 }
@@ -43,7 +43,9 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.AnnotatedElement;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -52,11 +54,19 @@ import java.util.stream.Collectors;
 
 public class InterceptorService implements IInterceptorService, IInterceptorBroadcaster {
 	private static final Logger ourLog = LoggerFactory.getLogger(InterceptorService.class);
+	private static final BaseInvoker[] EMPTY_INVOKER_ARRAY = new BaseInvoker[0];
 	private final List<Object> myInterceptors = new ArrayList<>();
 	private final ListMultimap<Pointcut, BaseInvoker> myGlobalInvokers = ArrayListMultimap.create();
 	private final ListMultimap<Pointcut, BaseInvoker> myAnonymousInvokers = ArrayListMultimap.create();
 	private final Object myRegistryMutex = new Object();
 	private final ThreadLocal<ListMultimap<Pointcut, BaseInvoker>> myThreadlocalInvokers = new ThreadLocal<>();
+	/**
+	 * Sorted global and anonymous invokers, indexed by {@link Pointcut#ordinal()}. The
+	 * arrays are never modified once published - Any change to the registry rebuilds them
+	 * (while holding {@link #myRegistryMutex}) and replaces this field, so that hook dispatch
+	 * never needs to take a lock.
+	 */
+	private volatile BaseInvoker[][] myInvokersByPointcut = newEmptyInvokerSnapshot();
 	private String myName;
 	private boolean myThreadlocalInvokersEnabled = true;
 
@@ -116,6 +126,7 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 			if (!isInterceptorAlreadyRegistered(theInterceptor)) {
 				myInterceptors.add(theInterceptor);
 			}
+			rebuildInvokerSnapshot();
 		}
 	}
 
@@ -135,6 +146,7 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 			myAnonymousInvokers.clear();
 			myGlobalInvokers.clear();
 			myInterceptors.clear();
+			rebuildInvokerSnapshot();
 		}
 	}
 
@@ -154,8 +166,11 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 
 	@Override
 	public void unregisterInterceptorsIf(Predicate<Object> theShouldUnregisterFunction) {
-		unregisterInterceptorsIf(theShouldUnregisterFunction, myGlobalInvokers);
-		unregisterInterceptorsIf(theShouldUnregisterFunction, myAnonymousInvokers);
+		synchronized (myRegistryMutex) {
+			unregisterInterceptorsIf(theShouldUnregisterFunction, myGlobalInvokers);
+			unregisterInterceptorsIf(theShouldUnregisterFunction, myAnonymousInvokers);
+			rebuildInvokerSnapshot();
+		}
 	}
 
 	private void unregisterInterceptorsIf(Predicate<Object> theShouldUnregisterFunction, ListMultimap<Pointcut, BaseInvoker> theGlobalInvokers) {
@@ -210,6 +225,7 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 			// Add to the global list
 			myInterceptors.add(theInterceptor);
 			sortByOrderAnnotation(myInterceptors);
+			rebuildInvokerSnapshot();
 
 			return true;
 		}
@@ -230,10 +246,34 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 			boolean removed = myInterceptors.removeIf(t -> t == theInterceptor);
 			removed |= myGlobalInvokers.entries().removeIf(t -> t.getValue().getInterceptor() == theInterceptor);
 			removed |= myAnonymousInvokers.entries().removeIf(t -> t.getValue().getInterceptor() == theInterceptor);
+			rebuildInvokerSnapshot();
 			return removed;
 		}
 	}
 
+	/**
+	 * Rebuilds and publishes the invoker arrays used for dispatching. Must be called while
+	 * holding {@link #myRegistryMutex} after any change to the global or anonymous invokers.
+	 */
+	private void rebuildInvokerSnapshot() {
+		BaseInvoker[][] invokersByPointcut = newEmptyInvokerSnapshot();
+		for (Pointcut nextPointcut : Pointcut.values()) {
+			List<BaseInvoker> globalInvokers = myGlobalInvokers.get(nextPointcut);
+			List<BaseInvoker> anonymousInvokers = myAnonymousInvokers.get(nextPointcut);
+			if (globalInvokers.isEmpty() && anonymousInvokers.isEmpty()) {
+				continue;
+			}
+
+			// The sort is stable, so global invokers come before anonymous ones with the same order
+			List<BaseInvoker> invokers = new ArrayList<>(globalInvokers.size() + anonymousInvokers.size());
+			invokers.addAll(globalInvokers);
+			invokers.addAll(anonymousInvokers);
+			invokers.sort(Comparator.naturalOrder());
+			invokersByPointcut[nextPointcut.ordinal()] = invokers.toArray(EMPTY_INVOKER_ARRAY);
+		}
+		myInvokersByPointcut = invokersByPointcut;
+	}
+
 	private void sortByOrderAnnotation(List<Object> theObjects) {
 		IdentityHashMap<Object, Integer> interceptorToOrder = new IdentityHashMap<>();
 		for (Object next : theObjects) {
@@ -259,8 +299,7 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 
 	@Override
 	public boolean hasHooks(Pointcut thePointcut) {
-		return myGlobalInvokers.containsKey(thePointcut)
-			|| myAnonymousInvokers.containsKey(thePointcut)
+		return myInvokersByPointcut[thePointcut.ordinal()].length > 0
 			|| hasThreadLocalHooks(thePointcut);
 	}
 
@@ -279,7 +318,7 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 	}
 
 	private Object doCallHooks(Pointcut thePointcut, HookParams theParams, Object theRetVal) {
-		List<BaseInvoker> invokers = getInvokersForPointcut(thePointcut);
+		BaseInvoker[] invokers = getInvokersForPointcut(thePointcut);
 
 		/*
 		 * Call each hook in order
@@ -307,85 +346,36 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 
 	@VisibleForTesting
 	List<Object> getInterceptorsWithInvokersForPointcut(Pointcut thePointcut) {
-		return getInvokersForPointcut(thePointcut)
-			.stream()
+		return Arrays
+			.stream(getInvokersForPointcut(thePointcut))
 			.map(BaseInvoker::getInterceptor)
 			.collect(Collectors.toList());
 	}
 
 	/**
-	 * Returns an ordered list of invokers for the given pointcut. Note that
-	 * a new and stable list is returned to.. do whatever you want with it.
+	 * Returns an ordered array of invokers for the given pointcut. The returned
+	 * array must not be modified.
 	 */
-	private List<BaseInvoker> getInvokersForPointcut(Pointcut thePointcut) {
-		List<BaseInvoker> invokers;
+	private BaseInvoker[] getInvokersForPointcut(Pointcut thePointcut) {
+		BaseInvoker[] invokers = myInvokersByPointcut[thePointcut.ordinal()];
 
-		synchronized (myRegistryMutex) {
-			List<BaseInvoker> globalInvokers = myGlobalInvokers.get(thePointcut);
-			List<BaseInvoker> anonymousInvokers = myAnonymousInvokers.get(thePointcut);
-			List<BaseInvoker> threadLocalInvokers = null;
-			if (myThreadlocalInvokersEnabled) {
-				ListMultimap<Pointcut, BaseInvoker> pointcutToInvokers = myThreadlocalInvokers.get();
-				if (pointcutToInvokers != null) {
-					threadLocalInvokers = pointcutToInvokers.get(thePointcut);
+		if (myThreadlocalInvokersEnabled) {
+			ListMultimap<Pointcut, BaseInvoker> pointcutToInvokers = myThreadlocalInvokers.get();
+			if (pointcutToInvokers != null) {
+				List<BaseInvoker> threadLocalInvokers = pointcutToInvokers.get(thePointcut);
+				if (!threadLocalInvokers.isEmpty()) {
+					List<BaseInvoker> merged = new ArrayList<>(invokers.length + threadLocalInvokers.size());
+					merged.addAll(Arrays.asList(invokers));
+					merged.addAll(threadLocalInvokers);
+					merged.sort(Comparator.naturalOrder());
+					invokers = merged.toArray(EMPTY_INVOKER_ARRAY);
 				}
 			}
-			invokers = union(globalInvokers, anonymousInvokers, threadLocalInvokers);
 		}
 
 		return invokers;
 	}
 
-	/**
-	 * First argument must be the global invoker list!!
-	 */
-	@SafeVarargs
-	private final List<BaseInvoker> union(List<BaseInvoker>... theInvokersLists) {
-		List<BaseInvoker> haveOne = null;
-		boolean haveMultiple = false;
-		for (List<BaseInvoker> nextInvokerList : theInvokersLists) {
-			if (nextInvokerList == null || nextInvokerList.isEmpty()) {
-				continue;
-			}
-
-			if (haveOne == null) {
-				haveOne = nextInvokerList;
-			} else {
-				haveMultiple = true;
-			}
-		}
-
-		if (haveOne == null) {
-			return Collections.emptyList();
-		}
-
-		List<BaseInvoker> retVal;
-
-		if (haveMultiple == false) {
-
-			// The global list doesn't need to be sorted every time since it's sorted on
-			// insertion each time. Doing so is a waste of cycles..
-			if (haveOne == theInvokersLists[0]) {
-				retVal = haveOne;
-			} else {
-				retVal = new ArrayList<>(haveOne);
-				retVal.sort(Comparator.naturalOrder());
-			}
-
-		} else {
-
-			retVal = Arrays
-				.stream(theInvokersLists)
-				.filter(t -> t != null)
-				.flatMap(t -> t.stream())
-				.sorted()
-				.collect(Collectors.toList());
-
-		}
-
-		return retVal;
-	}
-
 	/**
 	 * Only call this when assertions are enabled, it's expensive
 	 */
@@ -448,6 +438,7 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 	private static class HookInvoker extends BaseInvoker {
 
 		private final Method myMethod;
+		private final MethodHandle myMethodHandle;
 		private final Class<?>[] myParameterTypes;
 		private final int[] myParameterIndexes;
 		private final Pointcut myPointcut;
@@ -478,6 +469,21 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 			}
 
 			myMethod.setAccessible(true);
+
+			/*
+			 * The handle is bound to the interceptor instance and adapted to accept
+			 * an Object[] of arguments and return an Object (null for void methods),
+			 * so that it can be called with invokeExact and no per-call adaptation
+			 */
+			try {
+				myMethodHandle = MethodHandles.lookup()
+					.unreflect(theHookMethod)
+					.bindTo(theInterceptor)
+					.asSpreader(Object[].class, myParameterTypes.length)
+					.asType(MethodType.methodType(Object.class, Object[].class));
+			} catch (IllegalAccessException e) {
+				throw new InternalErrorException("Unable to access hook method: " + theHookMethod, e);
+			}
 		}
 
 		@Override
@@ -511,9 +517,8 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 
 			// Invoke the method
 			try {
-				return myMethod.invoke(getInterceptor(), args);
-			} catch (InvocationTargetException e) {
-				Throwable targetException = e.getTargetException();
+				return (Object) myMethodHandle.invokeExact(args);
+			} catch (Throwable targetException) {
 				if (myPointcut.isShouldLogAndSwallowException(targetException)) {
 					ourLog.error("Exception thrown by interceptor: " + targetException.toString(), targetException);
 					return null;
@@ -524,14 +529,18 @@ public class InterceptorService implements IInterceptorService, IInterceptorBroa
 				} else {
 					throw new InternalErrorException("Failure invoking interceptor for pointcut(s) " + getPointcut(), targetException);
 				}
-			} catch (Exception e) {
-				throw new InternalErrorException(e);
 			}
 
 		}
 
 	}
 
+	private static BaseInvoker[][] newEmptyInvokerSnapshot() {
+		BaseInvoker[][] retVal = new BaseInvoker[Pointcut.values().length][];
+		Arrays.fill(retVal, EMPTY_INVOKER_ARRAY);
+		return retVal;
+	}
+
 	private static List<HookInvoker> scanInterceptorAndAddToInvokerMultimap(Object theInterceptor, ListMultimap<Pointcut, BaseInvoker> theInvokers) {
 		Class<?> interceptorClass = theInterceptor.getClass();
 		int typeOrder = determineOrder(interceptorClass);
@@ -553,6 +553,34 @@ public abstract class BaseParser implements IParser {
 		return myErrorHandler;
 	}
 
+	/**
+	 * Resources loaded by a server may carry their stored JSON body instead of parsed contents
+	 * (see {@link Constants#RESOURCE_RAW_JSON_BODY}). Parsers which can't copy that body into their
+	 * output use this method to get a fully parsed equivalent, carrying over the ID and metadata
+	 * from the placeholder resource. Resources without a raw body are returned unchanged.
+	 */
+	protected IBaseResource parseRawJsonBodyIfPresent(IBaseResource theResource) {
+		String rawBody = (String) theResource.getUserData(Constants.RESOURCE_RAW_JSON_BODY);
+		if (rawBody == null) {
+			return theResource;
+		}
+
+		IParser parser = myContext.newJsonParser();
+		parser.setParserErrorHandler(getErrorHandler());
+		IBaseResource retVal = parser.parseResource(theResource.getClass(), rawBody);
+		retVal.setId(theResource.getIdElement());
+
+		if (theResource instanceof IResource) {
+			((IResource) retVal).setResourceMetadata(((IResource) theResource).getResourceMetadata());
+		} else {
+			BaseRuntimeChildDefinition metaChild = myContext.getResourceDefinition(theResource).getChildByName("meta");
+			if (metaChild != null) {
+				metaChild.getAccessor().getFirstValueOrNull(theResource).ifPresent(t -> metaChild.getMutator().setValue(retVal, t));
+			}
+		}
+		return retVal;
+	}
+
 	protected List<Map.Entry<ResourceMetadataKeyEnum<?>, Object>> getExtensionMetadataKeys(IResource resource) {
 		List<Map.Entry<ResourceMetadataKeyEnum<?>, Object>> extensionMetadataKeys = new ArrayList<>();
 		for (Map.Entry<ResourceMetadataKeyEnum<?>, Object> entry : resource.getResourceMetadata().entrySet()) {
@@ -43,6 +43,8 @@ import ca.uhn.fhir.parser.json.JsonLikeValue.ScalarType;
 import ca.uhn.fhir.parser.json.JsonLikeValue.ValueType;
 import ca.uhn.fhir.parser.json.JsonLikeWriter;
 import ca.uhn.fhir.parser.json.jackson.JacksonStructure;
+import ca.uhn.fhir.parser.json.jackson.JacksonWriter;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.EncodingEnum;
 import ca.uhn.fhir.util.ElementUtil;
 import org.apache.commons.lang3.StringUtils;
@@ -191,6 +193,10 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 
 	@Override
 	public <T extends IBaseResource> T doParseResource(Class<T> theResourceType, Reader theReader) {
+		if (myContext.getParserOptions().isStreamingJsonParserEnabled()) {
+			return new JsonStreamingParser(this, myContext).parseResource(theResourceType, theReader);
+		}
+
 		JsonLikeStructure jsonStructure = new JacksonStructure();
 		jsonStructure.load(theReader);
 
@@ -659,6 +665,15 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 			return;
 		}
 
+		String rawProperties = null;
+		String rawBody = (String) theResource.getUserData(Constants.RESOURCE_RAW_JSON_BODY);
+		if (rawBody != null) {
+			rawProperties = extractRawJsonProperties(theResDef, theEventWriter, rawBody);
+			if (rawProperties == null) {
+				theResource = parseRawJsonBodyIfPresent(theResource);
+			}
+		}
+
 		if (!theContainedResource) {
 			super.containResourcesForEncoding(theResource);
 		}
@@ -767,9 +782,46 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 
 		encodeCompositeElementToStreamWriter(theResDef, theResource, theResource, theEventWriter, theContainedResource, new CompositeChildElement(resDef, theEncodeContext), theEncodeContext);
 
+		if (isNotBlank(rawProperties)) {
+			((JacksonWriter) theEventWriter).writeRawProperties(rawProperties);
+		}
+
 		theEventWriter.endObject();
 	}
 
+	/**
+	 * If the given raw JSON body can be copied into the output as-is, returns the
+	 * properties following <code>resourceType</code> (without the enclosing braces). Returns
+	 * <code>null</code> if any parser setting would cause the output to differ from a normal
+	 * encoding of the parsed body, in which case the body must be parsed.
+	 */
+	private String extractRawJsonProperties(RuntimeResourceDefinition theResDef, JsonLikeWriter theEventWriter, String theRawBody) {
+		if (!(theEventWriter instanceof JacksonWriter) || theEventWriter.isPrettyPrint()) {
+			return null;
+		}
+		if (isSummaryMode() || isSuppressNarratives() || getEncodeElements() != null || getDontEncodeElements() != null) {
+			return null;
+		}
+		if (myContext.getNarrativeGenerator() != null) {
+			return null;
+		}
+
+		String prefix = "{\"resourceType\":\"" + theResDef.getName() + "\"";
+		String body = theRawBody.trim();
+		if (!body.startsWith(prefix) || !body.endsWith("}")) {
+			return null;
+		}
+
+		String properties = body.substring(prefix.length(), body.length() - 1);
+		if (properties.isEmpty()) {
+			return properties;
+		}
+		if (properties.charAt(0) != ',') {
+			return null;
+		}
+		return properties.substring(1);
+	}
+
 
 	private void addExtensionMetadata(RuntimeResourceDefinition theResDef, IBaseResource theResource,
 												 boolean theContainedResource,
@@ -0,0 +1,535 @@
+package ca.uhn.fhir.parser;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.json.JsonLikeValue.ScalarType;
+import ca.uhn.fhir.parser.json.JsonLikeValue.ValueType;
+import ca.uhn.fhir.parser.json.jackson.JacksonStructure;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserSequence;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Parses FHIR JSON by driving a {@link ParserState} directly from a Jackson token stream, without
+ * first loading the document into a {@link ca.uhn.fhir.parser.json.JsonLikeStructure}. This is used
+ * by the JSON parser when {@link ca.uhn.fhir.context.ParserOptions#setStreamingJsonParserEnabled(boolean)}
+ * is enabled.
+ * <p>
+ * Only small fragments of the document are ever buffered:
+ * </p>
+ * <ul>
+ * <li>The fields of a resource (or extension) that appear before its <code>resourceType</code>
+ * (or <code>url</code>), which are replayed once the discriminator has been found</li>
+ * <li>Primitive values, which are held until the end of their parent object so that a
+ * <code>_element</code> sibling appearing after them can still be applied</li>
+ * <li><code>_element</code> values which appear before the element they belong to</li>
+ * </ul>
+ * <p>
+ * Note that a <code>_element</code> sibling of a complex (non-primitive) element is only
+ * applied if it appears before the element itself.
+ * </p>
+ */
+class JsonStreamingParser {
+
+	private final BaseParser myParser;
+	private final FhirContext myContext;
+	private final IParserErrorHandler myErrorHandler;
+
+	JsonStreamingParser(BaseParser theParser, FhirContext theContext) {
+		myParser = theParser;
+		myContext = theContext;
+		myErrorHandler = theParser.getErrorHandler();
+	}
+
+	<T extends IBaseResource> T parseResource(Class<T> theResourceType, Reader theReader) {
+		PushbackReader pbr = new PushbackReader(theReader);
+		try {
+			while (true) {
+				int nextInt = pbr.read();
+				if (nextInt == -1) {
+					throw new DataFormatException("Did not find any content to parse");
+				}
+				if (nextInt == '{') {
+					pbr.unread(nextInt);
+					break;
+				}
+				if (Character.isWhitespace(nextInt)) {
+					continue;
+				}
+				throw new DataFormatException("Content does not appear to be FHIR JSON, first non-whitespace character was: '" + (char) nextInt + "' (must be '{')");
+			}
+
+			try (JsonParser parser = JacksonStructure.createStreamingParser(pbr)) {
+				parser.nextToken();
+
+				FieldLookAhead resourceType = lookAheadForField(parser, "resourceType");
+				if (resourceType.myValueToken != JsonToken.VALUE_STRING || isBlank(resourceType.myValueText)) {
+					throw new DataFormatException("Invalid JSON content detected, missing required element: 'resourceType'");
+				}
+
+				ParserState<T> state = ParserState.getPreResourceInstance(myParser, theResourceType, myContext, true, myErrorHandler);
+				state.enteringNewElement(null, resourceType.myValueText);
+				parseChildren(resourceType.myParser, state, false);
+				state.endingElement();
+				state.endingElement();
+
+				if (parser.nextToken() != null) {
+					throw new DataFormatException("Failed to parse JSON encoded FHIR content: Trailing token (of type " + parser.currentToken() + ") found after the resource");
+				}
+
+				return state.getObject();
+			}
+		} catch (IOException e) {
+			throw new DataFormatException("Failed to parse JSON encoded FHIR content: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Parses the fields of an object until (and including) its closing token. The
+	 * parser must be positioned on the <code>START_OBJECT</code> token, or on a field
+	 * within the object.
+	 */
+	private void parseChildren(JsonParser theParser, ParserState<?> theState, boolean theExtension) throws IOException {
+		Map<String, TokenBuffer> heldPrimitives = null;
+		Map<String, TokenBuffer> heldAlternates = null;
+		Set<String> streamedNames = null;
+
+		for (JsonToken token = theParser.nextToken(); token == JsonToken.FIELD_NAME; token = theParser.nextToken()) {
+			String nextName = theParser.getCurrentName();
+			JsonToken valueToken = theParser.nextToken();
+
+			if (!theExtension && "resourceType".equals(nextName)) {
+				theParser.skipChildren();
+			} else if ("extension".equals(nextName)) {
+				parseExtensions(theParser, theState, false, "extension");
+			} else if ("modifierExtension".equals(nextName)) {
+				parseExtensions(theParser, theState, true, "modifierExtension");
+			} else if (!theExtension && "fhir_comments".equals(nextName)) {
+				parseFhirComments(theParser, theState);
+			} else if (nextName.charAt(0) == '_') {
+				if (nextName.length() == 1) {
+					theParser.skipChildren();
+					continue;
+				}
+				String elementName = nextName.substring(1);
+				TokenBuffer primitive = heldPrimitives != null ? heldPrimitives.remove(elementName) : null;
+				if (primitive != null) {
+					parseValue(replay(primitive), theState, elementName, replay(copyCurrentValue(theParser)), nextName, false);
+				} else if (streamedNames != null && streamedNames.contains(elementName)) {
+					// The element has already been streamed, too late to apply this
+					theParser.skipChildren();
+				} else {
+					TokenBuffer alternate = copyCurrentValue(theParser);
+					if (heldAlternates == null) {
+						heldAlternates = new LinkedHashMap<>();
+					}
+					heldAlternates.put(elementName, alternate);
+				}
+			} else {
+				String alternateName = '_' + nextName;
+				TokenBuffer alternate = heldAlternates != null ? heldAlternates.remove(nextName) : null;
+				if (alternate != null) {
+					parseValue(theParser, theState, nextName, replay(alternate), alternateName, false);
+				} else if (valueToken == JsonToken.START_OBJECT) {
+					streamedNames = addStreamedName(streamedNames, nextName);
+					parseValue(theParser, theState, nextName, null, alternateName, false);
+				} else if (valueToken == JsonToken.START_ARRAY) {
+					JsonToken firstItem = theParser.nextToken();
+					if (firstItem == JsonToken.START_OBJECT || firstItem == JsonToken.START_ARRAY) {
+						// An array of complex values, stream it straight through
+						streamedNames = addStreamedName(streamedNames, nextName);
+						parseArrayItems(theParser, theState, nextName, null, alternateName);
+					} else {
+						// An array of primitives, hold it in case an "_element" follows
+						TokenBuffer primitive = newTokenBuffer(theParser);
+						primitive.writeStartArray();
+						for (JsonToken item = firstItem; item != JsonToken.END_ARRAY; item = theParser.nextToken()) {
+							primitive.copyCurrentStructure(theParser);
+						}
+						primitive.writeEndArray();
+						heldPrimitives = holdPrimitive(heldPrimitives, nextName, primitive);
+					}
+				} else {
+					heldPrimitives = holdPrimitive(heldPrimitives, nextName, copyCurrentValue(theParser));
+				}
+			}
+		}
+
+		if (heldPrimitives != null) {
+			for (Map.Entry<String, TokenBuffer> next : heldPrimitives.entrySet()) {
+				parseValue(replay(next.getValue()), theState, next.getKey(), null, '_' + next.getKey(), false);
+			}
+		}
+
+		/*
+		 * This happens if an element has an extension but no actual value. I.e.
+		 * if a resource has a "_status" element but no corresponding "status"
+		 * element. This could be used to handle a null value with an extension
+		 * for example.
+		 */
+		if (heldAlternates != null) {
+			for (Map.Entry<String, TokenBuffer> next : heldAlternates.entrySet()) {
+				String alternateName = '_' + next.getKey();
+				JsonParser alternate = replay(next.getValue());
+				if (alternate.currentToken() == JsonToken.START_OBJECT) {
+					theState.enteringNewElement(null, next.getKey());
+					parseAlternates(alternate, theState, alternateName, alternateName);
+					theState.endingElement();
+				} else {
+					myErrorHandler.incorrectJsonType(null, alternateName, ValueType.OBJECT, null, toValueType(alternate.currentToken()), null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Parses a single value, which may be an array. The parser must be positioned on the first token
+	 * of the value, and the alternate (if any) must be positioned on the first token of the
+	 * corresponding <code>_element</code> value.
+	 */
+	private void parseValue(JsonParser theParser, ParserState<?> theState, String theName, JsonParser theAlternate, String theAlternateName, boolean theInArray) throws IOException {
+		JsonToken token = theParser.currentToken();
+		if (theName.equals("id")) {
+			if (token != JsonToken.VALUE_STRING) {
+				myErrorHandler.incorrectJsonType(null, "id", ValueType.SCALAR, ScalarType.STRING, toValueType(token), toScalarType(token));
+			}
+		}
+
+		if (token == JsonToken.START_ARRAY) {
+			JsonParser alternate = theAlternate;
+			if (alternate != null && alternate.currentToken() == JsonToken.VALUE_NULL) {
+				alternate = null;
+			}
+			if (alternate != null && alternate.currentToken() != JsonToken.START_ARRAY) {
+				myErrorHandler.incorrectJsonType(null, theAlternateName, ValueType.ARRAY, null, toValueType(alternate.currentToken()), null);
+				alternate.skipChildren();
+				alternate = null;
+			}
+			theParser.nextToken();
+			parseArrayItems(theParser, theState, theName, alternate, theAlternateName);
+		} else if (token == JsonToken.START_OBJECT) {
+			if (!theInArray && theState.elementIsRepeating(theName)) {
+				myErrorHandler.incorrectJsonType(null, theName, ValueType.ARRAY, null, ValueType.OBJECT, null);
+			}
+
+			theState.enteringNewElement(null, theName);
+			parseAlternates(theAlternate, theState, theAlternateName, theAlternateName);
+			if (theState.isPreResource()) {
+				FieldLookAhead resourceType = lookAheadForField(theParser, "resourceType");
+				if (resourceType.myValueToken != JsonToken.VALUE_STRING) {
+					throw new DataFormatException("Missing required element 'resourceType' from JSON resource object, unable to parse");
+				}
+				theState.enteringNewElement(null, resourceType.myValueText);
+				parseChildren(resourceType.myParser, theState, false);
+				theState.endingElement();
+			} else {
+				parseChildren(theParser, theState, false);
+			}
+			theState.endingElement();
+		} else if (token == JsonToken.VALUE_NULL) {
+			theState.enteringNewElement(null, theName);
+			parseAlternates(theAlternate, theState, theAlternateName, theAlternateName);
+			theState.endingElement();
+		} else {
+			// must be a SCALAR
+			theState.enteringNewElement(null, theName);
+			theState.attributeValue("value", getScalarText(theParser));
+			parseAlternates(theAlternate, theState, theAlternateName, theAlternateName);
+			theState.endingElement();
+		}
+	}
+
+	/**
+	 * Parses the items of an array. The parser must be positioned on the first item (or on the
+	 * closing token if the array is empty), and the alternate (if any) on the opening token of the
+	 * corresponding <code>_element</code> array.
+	 */
+	private void parseArrayItems(JsonParser theParser, ParserState<?> theState, String theName, JsonParser theAlternateArray, String theAlternateName) throws IOException {
+		JsonParser alternateArray = theAlternateArray;
+		for (JsonToken token = theParser.currentToken(); token != JsonToken.END_ARRAY; token = theParser.nextToken()) {
+			JsonParser nextAlternate = null;
+			if (alternateArray != null) {
+				if (alternateArray.nextToken() == JsonToken.END_ARRAY) {
+					alternateArray = null;
+				} else {
+					nextAlternate = alternateArray;
+				}
+			}
+			parseValue(theParser, theState, theName, nextAlternate, theAlternateName, true);
+		}
+
+		// Consume any leftover alternates so that the enclosing alternate stays in step
+		if (alternateArray != null) {
+			while (alternateArray.nextToken() != JsonToken.END_ARRAY) {
+				alternateArray.skipChildren();
+			}
+		}
+	}
+
+	/**
+	 * Applies the contents of an <code>_element</code> value to the element currently being parsed. The
+	 * alternate value is always consumed completely.
+	 */
+	private void parseAlternates(JsonParser theAlternate, ParserState<?> theState, String theElementName, String theAlternateName) throws IOException {
+		if (theAlternate == null || theAlternate.currentToken() == JsonToken.VALUE_NULL) {
+			return;
+		}
+
+		if (theAlternate.currentToken() == JsonToken.START_ARRAY) {
+			if (theAlternate.nextToken() == JsonToken.END_ARRAY) {
+				return;
+			}
+			TokenBuffer first = copyCurrentValue(theAlternate);
+			int size = 1;
+			while (theAlternate.nextToken() != JsonToken.END_ARRAY) {
+				theAlternate.skipChildren();
+				size++;
+			}
+			if (size > 1) {
+				throw new DataFormatException("Unexpected array of length " + size + " (expected 0 or 1) for element: " + theElementName);
+			}
+			parseAlternates(replay(first), theState, theElementName, theAlternateName);
+			return;
+		}
+
+		if (theAlternate.currentToken() != JsonToken.START_OBJECT) {
+			myErrorHandler.incorrectJsonType(null, theAlternateName, ValueType.OBJECT, null, toValueType(theAlternate.currentToken()), null);
+			theAlternate.skipChildren();
+			return;
+		}
+
+		for (JsonToken token = theAlternate.nextToken(); token == JsonToken.FIELD_NAME; token = theAlternate.nextToken()) {
+			String nextKey = theAlternate.getCurrentName();
+			JsonToken valueToken = theAlternate.nextToken();
+			if ("extension".equals(nextKey)) {
+				parseExtensions(theAlternate, theState, false, "extension");
+			} else if ("modifierExtension".equals(nextKey)) {
+				parseExtensions(theAlternate, theState, true, "modifierExtension");
+			} else if ("id".equals(nextKey)) {
+				if (valueToken == JsonToken.VALUE_STRING) {
+					theState.attributeValue("id", theAlternate.getText());
+				} else {
+					myErrorHandler.incorrectJsonType(null, "id", ValueType.SCALAR, ScalarType.STRING, toValueType(valueToken), toScalarType(valueToken));
+					theAlternate.skipChildren();
+				}
+			} else if ("fhir_comments".equals(nextKey)) {
+				parseFhirComments(theAlternate, theState);
+			} else {
+				theAlternate.skipChildren();
+			}
+		}
+	}
+
+	/**
+	 * Parses an <code>extension</code> or <code>modifierExtension</code> array. The parser
+	 * must be positioned on the first token of the value.
+	 */
+	private void parseExtensions(JsonParser theParser, ParserState<?> theState, boolean theIsModifier, String thePosition) throws IOException {
+		JsonToken token = theParser.currentToken();
+		if (token == JsonToken.VALUE_NULL) {
+			return;
+		}
+		if (token != JsonToken.START_ARRAY) {
+			throw new DataFormatException("Syntax error parsing JSON FHIR structure: Expected ARRAY at element '" + thePosition + "', found '" + toValueType(token) + "'");
+		}
+
+		while (theParser.nextToken() != JsonToken.END_ARRAY) {
+			if (theParser.currentToken() != JsonToken.START_OBJECT) {
+				myErrorHandler.incorrectJsonType(null, thePosition, ValueType.OBJECT, null, toValueType(theParser.currentToken()), null);
+				theParser.skipChildren();
+				continue;
+			}
+
+			FieldLookAhead urlField = lookAheadForField(theParser, "url");
+			String url;
+			if (urlField.myValueToken == null || !urlField.myValueToken.isScalarValue()) {
+				myErrorHandler.missingRequiredElement(new ParseLocation().setParentElementName(theIsModifier ? "modifierExtension" : "extension"), "url");
+				url = null;
+			} else {
+				url = myParser.getExtensionUrl(urlField.myValueText);
+			}
+
+			theState.enteringNewElementExtension(null, url, theIsModifier, myParser.getServerBaseUrl());
+			parseChildren(urlField.myParser, theState, true);
+			theState.endingElement();
+		}
+	}
+
+	private void parseFhirComments(JsonParser theParser, ParserState<?> theState) throws IOException {
+		if (theParser.currentToken() != JsonToken.START_ARRAY) {
+			theParser.skipChildren();
+			return;
+		}
+		while (theParser.nextToken() != JsonToken.END_ARRAY) {
+			if (theParser.currentToken() == JsonToken.VALUE_STRING) {
+				theState.commentPre(theParser.getText());
+			} else {
+				theParser.skipChildren();
+			}
+		}
+	}
+
+	/**
+	 * Scans forward through the fields of the current object looking for a discriminator field
+	 * (e.g. <code>resourceType</code> or <code>url</code>) which must be known before the rest of the
+	 * object can be parsed. The parser must be positioned on the <code>START_OBJECT</code> token.
+	 * Any fields found before the discriminator are buffered and replayed by the returned parser.
+	 */
+	private FieldLookAhead lookAheadForField(JsonParser theParser, String theFieldName) throws IOException {
+		FieldLookAhead retVal = new FieldLookAhead();
+		retVal.myParser = theParser;
+
+		TokenBuffer buffer = null;
+		for (JsonToken token = theParser.nextToken(); token == JsonToken.FIELD_NAME; token = theParser.nextToken()) {
+			String nextName = theParser.getCurrentName();
+			JsonToken valueToken = theParser.nextToken();
+			if (theFieldName.equals(nextName)) {
+				retVal.myValueToken = valueToken;
+				if (valueToken.isScalarValue()) {
+					retVal.myValueText = getScalarText(theParser);
+				} else {
+					theParser.skipChildren();
+				}
+				if (buffer != null) {
+					JsonParser replay = replay(buffer);
+					retVal.myParser = JsonParserSequence.createFlattened(false, replay, theParser);
+				}
+				return retVal;
+			}
+
+			if (buffer == null) {
+				buffer = newTokenBuffer(theParser);
+				buffer.writeStartObject();
+			}
+			buffer.writeFieldName(nextName);
+			buffer.copyCurrentStructure(theParser);
+		}
+
+		// The field wasn't found and the end of the object has been consumed
+		if (buffer == null) {
+			buffer = newTokenBuffer(theParser);
+			buffer.writeStartObject();
+		}
+		buffer.writeEndObject();
+		retVal.myParser = replay(buffer);
+		return retVal;
+	}
+
+	private static Map<String, TokenBuffer> holdPrimitive(Map<String, TokenBuffer> theHeldPrimitives, String theName, TokenBuffer theValue) {
+		Map<String, TokenBuffer> retVal = theHeldPrimitives;
+		if (retVal == null) {
+			retVal = new LinkedHashMap<>();
+		}
+		retVal.put(theName, theValue);
+		return retVal;
+	}
+
+	private static Set<String> addStreamedName(Set<String> theStreamedNames, String theName) {
+		Set<String> retVal = theStreamedNames;
+		if (retVal == null) {
+			retVal = new HashSet<>();
+		}
+		retVal.add(theName);
+		return retVal;
+	}
+
+	private static TokenBuffer newTokenBuffer(JsonParser theParser) {
+		TokenBuffer retVal = new TokenBuffer(theParser);
+		retVal.forceUseOfBigDecimal(true);
+		return retVal;
+	}
+
+	private static TokenBuffer copyCurrentValue(JsonParser theParser) throws IOException {
+		TokenBuffer retVal = newTokenBuffer(theParser);
+		retVal.copyCurrentStructure(theParser);
+		return retVal;
+	}
+
+	/**
+	 * Returns a parser over the buffered tokens, positioned on the first token
+	 */
+	private static JsonParser replay(TokenBuffer theBuffer) throws IOException {
+		JsonParser retVal = theBuffer.asParser();
+		retVal.nextToken();
+		return retVal;
+	}
+
+	private static String getScalarText(JsonParser theParser) throws IOException {
+		if (theParser.currentToken() == JsonToken.VALUE_NUMBER_FLOAT) {
+			return theParser.getDecimalValue().toPlainString();
+		}
+		return theParser.getText();
+	}
+
+	private static ValueType toValueType(JsonToken theToken) {
+		if (theToken == null) {
+			return null;
+		}
+		switch (theToken) {
+			case START_OBJECT:
+				return ValueType.OBJECT;
+			case START_ARRAY:
+				return ValueType.ARRAY;
+			case VALUE_NULL:
+				return ValueType.NULL;
+			default:
+				return ValueType.SCALAR;
+		}
+	}
+
+	private static ScalarType toScalarType(JsonToken theToken) {
+		if (theToken == null) {
+			return null;
+		}
+		switch (theToken) {
+			case VALUE_STRING:
+				return ScalarType.STRING;
+			case VALUE_NUMBER_INT:
+			case VALUE_NUMBER_FLOAT:
+				return ScalarType.NUMBER;
+			case VALUE_TRUE:
+			case VALUE_FALSE:
+				return ScalarType.BOOLEAN;
+			default:
+				return null;
+		}
+	}
+
+	private static class FieldLookAhead {
+		private JsonParser myParser;
+		private JsonToken myValueToken;
+		private String myValueText;
+	}
+
+}
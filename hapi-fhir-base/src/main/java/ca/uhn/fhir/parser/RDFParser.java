@@ -140,13 +140,16 @@ public class RDFParser extends BaseParser {
 		return parseResource(resourceType, model);
 	}
 
-	private Resource encodeResourceToRDFStreamWriter(final IBaseResource resource,
+	private Resource encodeResourceToRDFStreamWriter(final IBaseResource theResource,
 																	 final Model rdfModel,
 																	 final boolean containedResource,
 																	 final IIdType resourceId,
 																	 final EncodeContext encodeContext,
 																	 final boolean rootResource, Resource parentResource) {
 
+		// A stored JSON body can't be copied into RDF, so it needs to be parsed first
+		final IBaseResource resource = parseRawJsonBodyIfPresent(theResource);
+
 		RuntimeResourceDefinition resDef = this.context.getResourceDefinition(resource);
 		if (resDef == null) {
 			throw new ConfigurationException("Unknown resource type: " + resource.getClass());
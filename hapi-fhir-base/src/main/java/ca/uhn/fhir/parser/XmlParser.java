@@ -495,6 +495,9 @@ public class XmlParser extends BaseParser {
 			throw new ConfigurationException("Unknown resource type: " + theResource.getClass());
 		}
 
+		// A stored JSON body can't be copied into XML, so it needs to be parsed first
+		theResource = parseRawJsonBodyIfPresent(theResource);
+
 		if (!theContainedResource) {
 			super.containResourcesForEncoding(theResource);
 		}
@@ -119,6 +119,14 @@ public class JacksonStructure implements JsonLikeStructure {
 		}
 	}
 
+	/**
+	 * Creates a streaming parser which is configured in the same way as the parser
+	 * used by {@link #load(Reader)}
+	 */
+	public static JsonParser createStreamingParser(Reader theReader) throws IOException {
+		return OBJECT_MAPPER.getFactory().createParser(theReader);
+	}
+
 	@Override
 	public JsonLikeWriter getJsonLikeWriter(Writer writer) throws IOException {
 		if (null == jacksonWriter) {
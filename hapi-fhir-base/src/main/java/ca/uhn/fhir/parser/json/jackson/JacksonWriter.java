@@ -214,4 +214,14 @@ public class JacksonWriter extends JsonLikeWriter {
 		myJsonGenerator.writeEndObject();
 		return this;
 	}
+
+	/**
+	 * Writes one or more already encoded object properties (e.g. <code>"a":1,"b":[true]</code>) into
+	 * the object currently being written. No validation or escaping is performed on the supplied content.
+	 */
+	public JsonLikeWriter writeRawProperties(String theRawProperties) throws IOException {
+		myJsonGenerator.writeRaw(',');
+		myJsonGenerator.writeRaw(theRawProperties);
+		return this;
+	}
 }
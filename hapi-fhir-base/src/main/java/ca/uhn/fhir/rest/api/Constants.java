@@ -155,6 +155,10 @@ public class Constants {
 	public static final String PARAM_CONTENT = "_content";
 	public static final String PARAM_COUNT = "_count";
 	public static final String PARAM_OFFSET = "_offset";
+	/**
+	 * Opaque position token used by servers which support seek (keyset) paging
+	 */
+	public static final String PARAM_SEEK = "_seek";
 	public static final String PARAM_DELETE = "_delete";
 	public static final String PARAM_ELEMENTS = "_elements";
 	public static final String PARAM_ELEMENTS_EXCLUDE_MODIFIER = ":exclude";
@@ -263,6 +267,31 @@ public class Constants {
 	 * key will be of type {@link ca.uhn.fhir.interceptor.model.RequestPartitionId}.
 	 */
 	public static final String RESOURCE_PARTITION_ID = Constants.class.getName() + "_RESOURCE_PARTITION_ID";
+	/**
+	 * {@link org.hl7.fhir.instance.model.api.IBaseResource#getUserData(String) User metadata key} used
+	 * to store the raw (already encoded) JSON body of a resource whose contents have not been parsed. Value
+	 * for this key will be of type {@link String}, and must be a JSON object whose first property
+	 * is <code>resourceType</code> and which contains no <code>id</code> or <code>meta</code>. The resource
+	 * itself carries only its ID and <code>meta</code>, and the JSON parser splices the raw body in
+	 * when encoding it.
+	 *
+	 * @since 5.2.0
+	 */
+	public static final String RESOURCE_RAW_JSON_BODY = Constants.class.getName() + "_RESOURCE_RAW_JSON_BODY";
+	/**
+	 * Request user data key (see <code>RequestDetails#getUserData()</code>) which is
+	 * set by the server when the response to the current request will be encoded as plain JSON with no
+	 * element filtering and no interceptors able to modify the response. Value for this key will be {@link Boolean#TRUE}.
+	 * <p>
+	 * This flag applies to the request as a whole, so it must only be acted on by code which returns a
+	 * resource it has loaded as the response itself (e.g. a read method which returns the resource
+	 * untouched). Only that resource may then carry a {@link #RESOURCE_RAW_JSON_BODY raw JSON body}.
+	 * Search results are handled separately, through <code>IBundleProvider#getResourcesForRawJsonResponse</code>.
+	 * </p>
+	 *
+	 * @since 5.2.0
+	 */
+	public static final String REQUEST_RAW_JSON_RESPONSE_ELIGIBLE = Constants.class.getName() + "_REQUEST_RAW_JSON_RESPONSE_ELIGIBLE";
 	public static final String CT_APPLICATION_GZIP = "application/gzip";
 
 	static {
@@ -20,13 +20,33 @@ package ca.uhn.fhir.validation;
  * #L%
  */
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementCompositeDefinition;
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.parser.LenientErrorHandler;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.util.BundleUtil;
+import ca.uhn.fhir.util.ResourceReferenceInfo;
+import ca.uhn.fhir.util.bundle.BundleEntryParts;
 import ca.uhn.fhir.validation.schematron.SchematronProvider;
 
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
 /**
  * Resource validator, which checks resources for compliance against various validation schemes (schemas, schematrons, profiles, etc.)
  * 
@@ -42,10 +62,14 @@ import ca.uhn.fhir.validation.schematron.SchematronProvider;
 public class FhirValidator {
 
 	private static final String I18N_KEY_NO_PH_ERROR = FhirValidator.class.getName() + ".noPhError";
+	private static final String I18N_KEY_UNRESOLVED_BUNDLE_REFERENCE = FhirValidator.class.getName() + ".unresolvedBundleReference";
+	private static final Set<String> CONCURRENT_BUNDLE_TYPES = new HashSet<>(Arrays.asList("transaction", "batch", "transaction-response", "batch-response"));
 
 	private static volatile Boolean ourPhPresentOnClasspath;
 	private final FhirContext myContext;
 	private List<IValidatorModule> myValidators = new ArrayList<>();
+	private boolean myConcurrentBundleValidation;
+	private volatile ExecutorService myExecutorService;
 
 	/**
 	 * Constructor (this should not be called directly, but rather {@link FhirContext#newValidator()} should be called to obtain an instance of {@link FhirValidator})
@@ -165,6 +189,72 @@ public class FhirValidator {
 	}
 
 
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), the entries of transaction and batch Bundles
+	 * (and their responses) are validated concurrently using the {@link #setExecutorService(ExecutorService) executor service},
+	 * instead of as part of a single validation of the whole Bundle. The Bundle itself (without the entry resources)
+	 * is then validated in a final pass, along with checking that every <code>urn:</code> reference in an entry resolves
+	 * to the fullUrl of another entry.
+	 * <p>
+	 * Messages for entry resources are reported with locations relative to the Bundle (e.g.
+	 * <code>Bundle.entry[2].resource.name[0]</code>) and without line and column numbers. Other Bundle types are always
+	 * validated as a whole, since some of their rules (e.g. for documents and messages) span entries. Bundles containing
+	 * any reference other than a <code>urn:</code> or contained (<code>#</code>) reference are also validated as a whole,
+	 * since only the validation of the whole Bundle can resolve such a reference against the other entries.
+	 * </p>
+	 *
+	 * @since 5.2.0
+	 */
+	public boolean isConcurrentBundleValidation() {
+		return myConcurrentBundleValidation;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), the entries of transaction and batch Bundles
+	 * (and their responses) are validated concurrently using the {@link #setExecutorService(ExecutorService) executor service},
+	 * instead of as part of a single validation of the whole Bundle. The Bundle itself (without the entry resources)
+	 * is then validated in a final pass, along with checking that every <code>urn:</code> reference in an entry resolves
+	 * to the fullUrl of another entry.
+	 * <p>
+	 * Messages for entry resources are reported with locations relative to the Bundle (e.g.
+	 * <code>Bundle.entry[2].resource.name[0]</code>) and without line and column numbers. Other Bundle types are always
+	 * validated as a whole, since some of their rules (e.g. for documents and messages) span entries. Bundles containing
+	 * any reference other than a <code>urn:</code> or contained (<code>#</code>) reference are also validated as a whole,
+	 * since only the validation of the whole Bundle can resolve such a reference against the other entries.
+	 * </p>
+	 *
+	 * @return Returns a reference to <code>this</code> for method chaining
+	 * @since 5.2.0
+	 */
+	public FhirValidator setConcurrentBundleValidation(boolean theConcurrentBundleValidation) {
+		myConcurrentBundleValidation = theConcurrentBundleValidation;
+		return this;
+	}
+
+	/**
+	 * Sets the executor service used for {@link #setConcurrentBundleValidation(boolean) concurrent Bundle validation}.
+	 * The caller remains responsible for shutting down an executor service supplied here.
+	 * <p>
+	 * If none is set, a single pool shared by all validators in the JVM is used. That pool is created
+	 * when it is first needed, has one daemon thread per available processor, and is never shut down.
+	 * </p>
+	 *
+	 * @return Returns a reference to <code>this</code> for method chaining
+	 * @since 5.2.0
+	 */
+	public FhirValidator setExecutorService(ExecutorService theExecutorService) {
+		myExecutorService = theExecutorService;
+		return this;
+	}
+
+	private ExecutorService getExecutorService() {
+		ExecutorService retVal = myExecutorService;
+		if (retVal == null) {
+			retVal = DefaultExecutorServiceHolder.INSTANCE;
+		}
+		return retVal;
+	}
+
 	private void applyDefaultValidators() {
 		if (myValidators.isEmpty()) {
 			setValidateAgainstStandardSchema(true);
@@ -215,6 +305,13 @@ public class FhirValidator {
 
 		applyDefaultValidators();
 
+		if (myConcurrentBundleValidation) {
+			ValidationResult retVal = validateBundleEntriesConcurrently(theResource, theOptions);
+			if (retVal != null) {
+				return retVal;
+			}
+		}
+
 		IValidationContext<IBaseResource> ctx = ValidationContext.forResource(myContext, theResource, theOptions);
 
 		for (IValidatorModule next : myValidators) {
@@ -239,7 +336,19 @@ public class FhirValidator {
 
 		applyDefaultValidators();
 
-		IValidationContext<IBaseResource> ctx = ValidationContext.forText(myContext, theResource, theOptions);
+		// Concurrent Bundle validation needs the parsed Bundle, so parse it once here and share it with the modules
+		IBaseResource parsed = null;
+		if (myConcurrentBundleValidation) {
+			parsed = parseLeniently(theResource);
+			if (parsed != null) {
+				ValidationResult retVal = validateBundleEntriesConcurrently(parsed, theOptions);
+				if (retVal != null) {
+					return retVal;
+				}
+			}
+		}
+
+		IValidationContext<IBaseResource> ctx = ValidationContext.forText(myContext, theResource, parsed, theOptions);
 
 		for (IValidatorModule next : myValidators) {
 			next.validateResource(ctx);
@@ -247,4 +356,164 @@ public class FhirValidator {
 
 		return ctx.toResult();
 	}
+
+	/**
+	 * Parses the text the same way as {@link ValidationContext#forText(FhirContext, String, ValidationOptions)} would,
+	 * returning <code>null</code> if it can't be parsed so that the validator modules can report the problem
+	 */
+	private IBaseResource parseLeniently(String theResource) {
+		EncodingEnum encoding = EncodingEnum.detectEncodingNoDefault(theResource);
+		if (encoding == null) {
+			return null;
+		}
+		IParser parser = encoding.newParser(myContext);
+		LenientErrorHandler errorHandler = new LenientErrorHandler();
+		errorHandler.setErrorOnInvalidValue(false);
+		parser.setParserErrorHandler(errorHandler);
+		try {
+			return parser.parseResource(theResource);
+		} catch (DataFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Validates the entries of a transaction or batch Bundle concurrently, or returns <code>null</code> if the
+	 * resource needs to be validated as a whole
+	 */
+	private ValidationResult validateBundleEntriesConcurrently(IBaseResource theResource, ValidationOptions theOptions) {
+		if (!(theResource instanceof IBaseBundle) || !CONCURRENT_BUNDLE_TYPES.contains(BundleUtil.getBundleType(myContext, (IBaseBundle) theResource))) {
+			return null;
+		}
+		IBaseBundle bundle = (IBaseBundle) theResource;
+		List<BundleEntryParts> entries = BundleUtil.toListOfEntries(myContext, bundle);
+
+		// References other than urn: ones may resolve to another entry, which only whole Bundle validation can check
+		List<List<String>> entryUrnReferences = new ArrayList<>(entries.size());
+		for (BundleEntryParts next : entries) {
+			List<String> urnReferences = new ArrayList<>();
+			if (next.getResource() != null) {
+				for (ResourceReferenceInfo nextReference : myContext.newTerser().getAllResourceReferences(next.getResource())) {
+					String reference = nextReference.getResourceReference().getReferenceElement().getValue();
+					if (isBlank(reference) || reference.startsWith("#")) {
+						continue;
+					}
+					if (!reference.startsWith("urn:")) {
+						return null;
+					}
+					urnReferences.add(reference);
+				}
+			}
+			entryUrnReferences.add(urnReferences);
+		}
+
+		List<Future<List<SingleValidationMessage>>> futures = new ArrayList<>(entries.size());
+		for (BundleEntryParts next : entries) {
+			IBaseResource resource = next.getResource();
+			if (resource == null) {
+				futures.add(null);
+				continue;
+			}
+			futures.add(getExecutorService().submit(() -> {
+				IValidationContext<IBaseResource> entryCtx = ValidationContext.forResource(myContext, resource, theOptions);
+				for (IValidatorModule nextValidator : myValidators) {
+					nextValidator.validateResource(entryCtx);
+				}
+				return entryCtx.getMessages();
+			}));
+		}
+
+		// Bundle level rules are checked against a copy of the Bundle without the entry resources
+		IValidationContext<IBaseResource> bundleCtx = ValidationContext.forResource(myContext, createBundleWithoutEntryResources(bundle), theOptions);
+		for (IValidatorModule next : myValidators) {
+			next.validateResource(bundleCtx);
+		}
+		List<SingleValidationMessage> messages = new ArrayList<>(bundleCtx.getMessages());
+
+		Set<String> fullUrls = new HashSet<>();
+		for (BundleEntryParts next : entries) {
+			if (next.getFullUrl() != null) {
+				fullUrls.add(next.getFullUrl());
+			}
+		}
+
+		for (int i = 0; i < entries.size(); i++) {
+			Future<List<SingleValidationMessage>> future = futures.get(i);
+			if (future == null) {
+				continue;
+			}
+
+			IBaseResource resource = entries.get(i).getResource();
+			String resourceType = myContext.getResourceDefinition(resource).getName();
+			String entryLocation = "Bundle.entry[" + i + "].resource";
+
+			List<SingleValidationMessage> entryMessages;
+			try {
+				entryMessages = future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InternalErrorException(e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new InternalErrorException(e.getCause());
+			}
+
+			for (SingleValidationMessage next : entryMessages) {
+				String location = next.getLocationString();
+				if (location == null) {
+					location = entryLocation;
+				} else if (location.startsWith(resourceType)) {
+					location = entryLocation + location.substring(resourceType.length());
+				} else {
+					location = entryLocation + "." + location;
+				}
+				next.setLocationString(location);
+				next.setLocationLine(null);
+				next.setLocationCol(null);
+				messages.add(next);
+			}
+
+			for (String reference : entryUrnReferences.get(i)) {
+				if (!fullUrls.contains(reference)) {
+					SingleValidationMessage message = new SingleValidationMessage();
+					message.setLocationString(entryLocation);
+					message.setSeverity(ResultSeverityEnum.ERROR);
+					message.setMessage(myContext.getLocalizer().getMessage(I18N_KEY_UNRESOLVED_BUNDLE_REFERENCE, reference));
+					messages.add(message);
+				}
+			}
+		}
+
+		return new ValidationResult(myContext, messages);
+	}
+
+	private IBaseBundle createBundleWithoutEntryResources(IBaseBundle theBundle) {
+		RuntimeResourceDefinition bundleDef = myContext.getResourceDefinition(theBundle);
+		IBaseBundle retVal = (IBaseBundle) bundleDef.newInstance();
+		myContext.newTerser().cloneInto(theBundle, retVal, true);
+
+		BaseRuntimeChildDefinition entryChildDef = bundleDef.getChildByName("entry");
+		BaseRuntimeElementCompositeDefinition<?> entryChildContentsDef = (BaseRuntimeElementCompositeDefinition<?>) entryChildDef.getChildByName("entry");
+		BaseRuntimeChildDefinition resourceChildDef = entryChildContentsDef.getChildByName("resource");
+		for (IBase nextEntry : entryChildDef.getAccessor().getValues(retVal)) {
+			resourceChildDef.getMutator().setValue(nextEntry, null);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Holds the executor service shared by all validators which don't have one set, so that it
+	 * is only created (on first use) when concurrent Bundle validation is actually used
+	 */
+	private static class DefaultExecutorServiceHolder {
+		private static final ExecutorService INSTANCE = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(),
+			new BasicThreadFactory.Builder()
+				.namingPattern("fhir-validator-%d")
+				.daemon(true)
+				.build());
+	}
+
 }
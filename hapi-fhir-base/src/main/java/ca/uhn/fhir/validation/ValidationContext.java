@@ -108,6 +108,14 @@ public class ValidationContext<T> extends BaseValidationContext<T> implements IV
 	}
 
 	public static IValidationContext<IBaseResource> forText(final FhirContext theContext, final String theResourceBody, final ValidationOptions theOptions) {
+		return forText(theContext, theResourceBody, null, theOptions);
+	}
+
+	/**
+	 * As {@link #forText(FhirContext, String, ValidationOptions)}, but with the resource already parsed
+	 * from <code>theResourceBody</code> so that it does not need to be parsed again
+	 */
+	static IValidationContext<IBaseResource> forText(final FhirContext theContext, final String theResourceBody, final IBaseResource theParsedResource, final ValidationOptions theOptions) {
 		ObjectUtil.requireNonNull(theContext, "theContext can not be null");
 		ObjectUtil.requireNotEmpty(theResourceBody, "theResourceBody can not be null or empty");
 		ValidationOptions options = defaultIfNull(theOptions, ValidationOptions.empty());
@@ -115,7 +123,7 @@ public class ValidationContext<T> extends BaseValidationContext<T> implements IV
 		return new BaseValidationContext<IBaseResource>(theContext) {
 
 			private EncodingEnum myEncoding;
-			private IBaseResource myParsed;
+			private IBaseResource myParsed = theParsedResource;
 
 			@Override
 			public IBaseResource getResource() {
@@ -16,7 +16,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -32,7 +38,7 @@ import static org.junit.jupiter.api.Assertions.fail;
 public class InterceptorServiceTest {
 
 	private static final Logger ourLog = LoggerFactory.getLogger(InterceptorServiceTest.class);
-	private List<String> myInvocations = new ArrayList<>();
+	private List<String> myInvocations = Collections.synchronizedList(new ArrayList<>());
 
 	@Test
 	public void testInterceptorWithAnnotationDefinedOnInterface() {
@@ -504,6 +510,156 @@ public class InterceptorServiceTest {
 		ourLog.info("ThreadLocalEnabled={} - Performed {} loops in {} - {} / loop - Outcomne: {}", theThreadlocalInvokersEnabled, theCount, sw.toString(), sw.formatMillisPerOperation(theCount), interceptor.myCount);
 	}
 
+	@Test
+	public void testInterceptorThrowsCheckedException() {
+
+		class InterceptorThrowingCheckedException {
+			@Hook(Pointcut.TEST_RB)
+			public void test(String theValue) throws Exception {
+				throw new Exception(theValue);
+			}
+		}
+
+		InterceptorService svc = new InterceptorService();
+		svc.registerInterceptor(new InterceptorThrowingCheckedException());
+
+		try {
+			svc.callHooks(Pointcut.TEST_RB, new HookParams("A MESSAGE", "B"));
+			fail();
+		} catch (InternalErrorException e) {
+			assertEquals("Failure invoking interceptor for pointcut(s) TEST_RB", e.getMessage());
+			assertEquals("A MESSAGE", e.getCause().getMessage());
+		}
+	}
+
+	@Test
+	public void testHasHooksReflectsRegistrationChanges() {
+		InterceptorService svc = new InterceptorService();
+		assertFalse(svc.hasHooks(Pointcut.TEST_RB));
+
+		MyTestInterceptorOne interceptor = new MyTestInterceptorOne();
+		svc.registerInterceptor(interceptor);
+		assertTrue(svc.hasHooks(Pointcut.TEST_RB));
+		assertFalse(svc.hasHooks(Pointcut.TEST_RO));
+
+		svc.unregisterInterceptor(interceptor);
+		assertFalse(svc.hasHooks(Pointcut.TEST_RB));
+
+		svc.registerAnonymousInterceptor(Pointcut.TEST_RB, (thePointcut, theArgs) -> myInvocations.add("anonymous"));
+		assertTrue(svc.hasHooks(Pointcut.TEST_RB));
+
+		svc.unregisterInterceptorsIf(t -> true);
+		assertFalse(svc.hasHooks(Pointcut.TEST_RB));
+	}
+
+	@Test
+	public void testInvokeAnonymousAndGlobalInterceptorsInOrder() {
+		InterceptorService svc = new InterceptorService();
+		svc.registerInterceptor(new MyTestInterceptorTwo());
+		svc.registerAnonymousInterceptor(Pointcut.TEST_RB, 200, (thePointcut, theArgs) -> myInvocations.add("anonymous200"));
+		svc.registerInterceptor(new MyTestInterceptorOne());
+		svc.registerAnonymousInterceptor(Pointcut.TEST_RB, 0, (thePointcut, theArgs) -> myInvocations.add("anonymous0"));
+
+		svc.callHooks(Pointcut.TEST_RB, new HookParams("A", "B"));
+		assertThat(myInvocations, contains("anonymous0", "MyTestInterceptorOne.testRb", "anonymous200", "MyTestInterceptorTwo.testRb"));
+	}
+
+	/**
+	 * Hooks are dispatched from an immutable snapshot, so registering and unregistering
+	 * interceptors while other threads are calling hooks should never cause a failure
+	 */
+	@Test
+	public void testRegisterWhileCallingHooks() throws Exception {
+		InterceptorService svc = new InterceptorService();
+
+		class CountingInterceptor {
+			private final AtomicInteger myCount = new AtomicInteger();
+
+			@Hook(Pointcut.TEST_RB)
+			public void testRb(String theString0) {
+				myCount.incrementAndGet();
+			}
+		}
+		CountingInterceptor permanent = new CountingInterceptor();
+		svc.registerInterceptor(permanent);
+
+		int threadCount = 4;
+		int callCount = 10000;
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < threadCount; i++) {
+				futures.add(executor.submit(() -> {
+					HookParams params = new HookParams("A", "B");
+					for (int j = 0; j < callCount; j++) {
+						svc.callHooks(Pointcut.TEST_RB, params);
+					}
+				}));
+			}
+
+			for (int i = 0; i < 1000; i++) {
+				CountingInterceptor transientInterceptor = new CountingInterceptor();
+				svc.registerInterceptor(transientInterceptor);
+				svc.unregisterInterceptor(transientInterceptor);
+			}
+
+			for (Future<?> next : futures) {
+				next.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(threadCount * callCount, permanent.myCount.get());
+		assertThat(svc.getInterceptorsWithInvokersForPointcut(Pointcut.TEST_RB), contains(permanent));
+	}
+
+	/**
+	 * Measures hook dispatch throughput with many threads calling the same pointcut.
+	 * <pre>
+	 * 20201018 - Single CPU container, assertions enabled, so lock contention is barely exercised
+	 *    Synchronized registry + Method.invoke - 12800000 calls on 64 threads - 787207.9 / second
+	 *    Snapshot arrays + MethodHandle        - 12800000 calls on 64 threads - 870807.5 / second
+	 * </pre>
+	 */
+	@Test
+	@Disabled("Performance test - Not needed normally")
+	public void testConcurrentCallHooksMicroBenchmark() throws Exception {
+		InterceptorService svc = new InterceptorService();
+
+		class NoOpInterceptor {
+			private long myCount;
+
+			@Hook(Pointcut.TEST_RB)
+			public void testRb(String theString0, String theString1) {
+				myCount++;
+			}
+		}
+		svc.registerInterceptor(new NoOpInterceptor());
+		svc.registerInterceptor(new NoOpInterceptor());
+
+		int threadCount = 64;
+		int callCount = 200000;
+		for (int pass = 0; pass < 5; pass++) {
+			ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+			StopWatch sw = new StopWatch();
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < threadCount; i++) {
+				futures.add(executor.submit(() -> {
+					HookParams params = new HookParams("A", "B");
+					for (int j = 0; j < callCount; j++) {
+						svc.callHooks(Pointcut.TEST_RB, params);
+					}
+				}));
+			}
+			for (Future<?> next : futures) {
+				next.get();
+			}
+			executor.shutdown();
+			ourLog.info("Performed {} calls on {} threads in {} - {} / second", threadCount * callCount, threadCount, sw.toString(), sw.formatThroughput(threadCount * callCount, TimeUnit.SECONDS));
+		}
+	}
+
 	@BeforeEach
 	public void before() {
 		myInvocations.clear();
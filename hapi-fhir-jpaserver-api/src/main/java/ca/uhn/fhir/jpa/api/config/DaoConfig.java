@@ -54,6 +54,10 @@ public class DaoConfig {
 	 * @see #setTranslationCachesExpireAfterWriteInMinutes(Long)
 	 */
 	public static final Long DEFAULT_TRANSLATION_CACHES_EXPIRE_AFTER_WRITE_IN_MINUTES = 60L;
+	/**
+	 * Default value for {@link #setTermConceptClosureIndexMaxAgeMillis(long)}: 10 minutes
+	 */
+	public static final long DEFAULT_TERM_CONCEPT_CLOSURE_INDEX_MAX_AGE_MILLIS = 10 * DateUtils.MILLIS_PER_MINUTE;
 	/**
 	 * See {@link #setStatusBasedReindexingDisabled(boolean)}
 	 */
@@ -225,6 +229,297 @@ public class DaoConfig {
 	 */
 	private boolean myLastNEnabled = false;
 
+	/**
+	 * @since 5.2.0
+	 */
+	private boolean myRawResourcePassthroughEnabled = false;
+
+	/**
+	 * <p>
+	 * If set to <code>true</code> (default is <code>false</code>), resources returned by a read, vread or search
+	 * will not be parsed from their stored JSON when the server has determined that the response will be
+	 * encoded as compact JSON with no <code>_summary</code> or <code>_elements</code> filtering. Instead, the
+	 * stored JSON is written directly into the response with the resource ID and <code>meta</code> added,
+	 * which avoids a parse and encode round trip for each returned resource.
+	 * </p>
+	 * <p>
+	 * This setting is ignored (and resources are parsed normally) whenever any interceptor is registered for the
+	 * {@link ca.uhn.fhir.interceptor.api.Pointcut#SERVER_OUTGOING_RESPONSE}, {@link ca.uhn.fhir.interceptor.api.Pointcut#STORAGE_PREACCESS_RESOURCES}
+	 * or {@link ca.uhn.fhir.interceptor.api.Pointcut#STORAGE_PRESHOW_RESOURCES} pointcuts. Note that
+	 * the stored content is returned exactly as it was encoded when the resource was stored, so references
+	 * stored as absolute URLs pointing to this server are not converted to relative references.
+	 * </p>
+	 * <p>
+	 * Only resources which go straight into the response are affected: those returned by the resource
+	 * provider read method and those loaded for the page of (non-synchronous) search results being returned.
+	 * Other code reading through the DAOs always gets parsed resources. Stored bodies which would need to be
+	 * corrected when parsed are always parsed.
+	 * </p>
+	 *
+	 * @since 5.2.0
+	 */
+	public boolean isRawResourcePassthroughEnabled() {
+		return myRawResourcePassthroughEnabled;
+	}
+
+	/**
+	 * <p>
+	 * If set to <code>true</code> (default is <code>false</code>), resources returned by a read, vread or search
+	 * will not be parsed from their stored JSON when the server has determined that the response will be
+	 * encoded as compact JSON with no <code>_summary</code> or <code>_elements</code> filtering. Instead, the
+	 * stored JSON is written directly into the response with the resource ID and <code>meta</code> added,
+	 * which avoids a parse and encode round trip for each returned resource.
+	 * </p>
+	 * <p>
+	 * This setting is ignored (and resources are parsed normally) whenever any interceptor is registered for the
+	 * {@link ca.uhn.fhir.interceptor.api.Pointcut#SERVER_OUTGOING_RESPONSE}, {@link ca.uhn.fhir.interceptor.api.Pointcut#STORAGE_PREACCESS_RESOURCES}
+	 * or {@link ca.uhn.fhir.interceptor.api.Pointcut#STORAGE_PRESHOW_RESOURCES} pointcuts. Note that
+	 * the stored content is returned exactly as it was encoded when the resource was stored, so references
+	 * stored as absolute URLs pointing to this server are not converted to relative references.
+	 * </p>
+	 * <p>
+	 * Only resources which go straight into the response are affected: those returned by the resource
+	 * provider read method and those loaded for the page of (non-synchronous) search results being returned.
+	 * Other code reading through the DAOs always gets parsed resources. Stored bodies which would need to be
+	 * corrected when parsed are always parsed.
+	 * </p>
+	 *
+	 * @since 5.2.0
+	 */
+	public void setRawResourcePassthroughEnabled(boolean theRawResourcePassthroughEnabled) {
+		myRawResourcePassthroughEnabled = theRawResourcePassthroughEnabled;
+	}
+
+	/**
+	 * @since 5.2.0
+	 */
+	private boolean myTermConceptClosureIndexEnabled = false;
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), an in-memory index of the parent/child
+	 * hierarchy of each code system version is built in the background the first time the hierarchy is
+	 * queried (and once any deferred terminology storage has completed). Once it is available, the index is
+	 * used for <code>$subsumes</code> and for the <code>:above</code> and <code>:below</code> token search
+	 * modifiers instead of walking the concept links in the database. The index requires memory roughly
+	 * proportional to the number of parent/child links in the code system (around 20MB for SNOMED CT).
+	 *
+	 * @since 5.2.0
+	 */
+	public boolean isTermConceptClosureIndexEnabled() {
+		return myTermConceptClosureIndexEnabled;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), an in-memory index of the parent/child
+	 * hierarchy of each code system version is built in the background the first time the hierarchy is
+	 * queried (and once any deferred terminology storage has completed). Once it is available, the index is
+	 * used for <code>$subsumes</code> and for the <code>:above</code> and <code>:below</code> token search
+	 * modifiers instead of walking the concept links in the database. The index requires memory roughly
+	 * proportional to the number of parent/child links in the code system (around 20MB for SNOMED CT).
+	 *
+	 * @since 5.2.0
+	 */
+	public void setTermConceptClosureIndexEnabled(boolean theTermConceptClosureIndexEnabled) {
+		myTermConceptClosureIndexEnabled = theTermConceptClosureIndexEnabled;
+	}
+
+	/**
+	 * @since 5.2.0
+	 */
+	private long myTermConceptClosureIndexMaxAgeMillis = DEFAULT_TERM_CONCEPT_CLOSURE_INDEX_MAX_AGE_MILLIS;
+
+	/**
+	 * Sets the maximum age of an in-memory terminology closure index (see
+	 * {@link #setTermConceptClosureIndexEnabled(boolean)}). Once an index is older than this, it is
+	 * discarded and rebuilt in the background, and queries fall back to the database until the new one is
+	 * ready. Indexes are discarded immediately on the server where a code system is changed, but other
+	 * servers in a cluster only notice the change once their indexes expire, so this is the longest time
+	 * a change can take to become visible on every server. Default is {@link #DEFAULT_TERM_CONCEPT_CLOSURE_INDEX_MAX_AGE_MILLIS} (10 minutes).
+	 *
+	 * @since 5.2.0
+	 */
+	public long getTermConceptClosureIndexMaxAgeMillis() {
+		return myTermConceptClosureIndexMaxAgeMillis;
+	}
+
+	/**
+	 * Sets the maximum age of an in-memory terminology closure index (see
+	 * {@link #setTermConceptClosureIndexEnabled(boolean)}). Once an index is older than this, it is
+	 * discarded and rebuilt in the background, and queries fall back to the database until the new one is
+	 * ready. Indexes are discarded immediately on the server where a code system is changed, but other
+	 * servers in a cluster only notice the change once their indexes expire, so this is the longest time
+	 * a change can take to become visible on every server. Default is {@link #DEFAULT_TERM_CONCEPT_CLOSURE_INDEX_MAX_AGE_MILLIS} (10 minutes).
+	 *
+	 * @since 5.2.0
+	 */
+	public void setTermConceptClosureIndexMaxAgeMillis(long theTermConceptClosureIndexMaxAgeMillis) {
+		Validate.isTrue(theTermConceptClosureIndexMaxAgeMillis > 0, "theTermConceptClosureIndexMaxAgeMillis must be greater than 0");
+		myTermConceptClosureIndexMaxAgeMillis = theTermConceptClosureIndexMaxAgeMillis;
+	}
+
+	/**
+	 * @since 5.2.0
+	 */
+	private boolean myTermLoaderStagingEnabled = false;
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), SNOMED CT uploads are staged in temporary
+	 * files on local disk and then written to the database in batches, instead of first building the complete
+	 * concept hierarchy in memory. This keeps memory use bounded regardless of the size of the release, at the
+	 * cost of requiring temporary disk space of a few times the size of the uncompressed release files.
+	 *
+	 * @since 5.2.0
+	 */
+	public boolean isTermLoaderStagingEnabled() {
+		return myTermLoaderStagingEnabled;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), SNOMED CT uploads are staged in temporary
+	 * files on local disk and then written to the database in batches, instead of first building the complete
+	 * concept hierarchy in memory. This keeps memory use bounded regardless of the size of the release, at the
+	 * cost of requiring temporary disk space of a few times the size of the uncompressed release files.
+	 *
+	 * @since 5.2.0
+	 */
+	public void setTermLoaderStagingEnabled(boolean theTermLoaderStagingEnabled) {
+		myTermLoaderStagingEnabled = theTermLoaderStagingEnabled;
+	}
+
+	/**
+	 * @since 5.2.0
+	 */
+	private int myTermDeferredStorageThreadCount = 1;
+
+	/**
+	 * The number of threads used to write deferred terminology concepts and parent/child links
+	 * (see {@link #setDeferIndexingForCodesystemsOfSize(int)}) to the database. Each thread writes its
+	 * share of every pass in its own transaction. The default is <code>1</code>, meaning that deferred
+	 * terminology is written by a single thread as it always has been.
+	 *
+	 * @since 5.2.0
+	 */
+	public int getTermDeferredStorageThreadCount() {
+		return myTermDeferredStorageThreadCount;
+	}
+
+	/**
+	 * The number of threads used to write deferred terminology concepts and parent/child links
+	 * (see {@link #setDeferIndexingForCodesystemsOfSize(int)}) to the database. Each thread writes its
+	 * share of every pass in its own transaction. The default is <code>1</code>, meaning that deferred
+	 * terminology is written by a single thread as it always has been.
+	 *
+	 * @since 5.2.0
+	 */
+	public void setTermDeferredStorageThreadCount(int theTermDeferredStorageThreadCount) {
+		Validate.isTrue(theTermDeferredStorageThreadCount > 0, "theTermDeferredStorageThreadCount must be greater than 0");
+		myTermDeferredStorageThreadCount = theTermDeferredStorageThreadCount;
+	}
+
+	/**
+	 * @since 5.2.0
+	 */
+	private boolean mySeekPagingEnabled = false;
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), searches and history operations which are
+	 * paged using <code>_offset</code> include a <code>_seek</code> token in their next page link. The token
+	 * holds the sort value and resource PID of the last row on the page, and the next page is fetched using a
+	 * range predicate on these values instead of asking the database to skip over all of the preceding rows, so
+	 * deep pages cost the same as the first one. This applies to unsorted searches (which are then ordered by
+	 * resource PID), searches sorted only by <code>_lastUpdated</code>, <code>$everything</code>, and
+	 * <code>_history</code>. Searches using any other sort continue to use plain offset paging.
+	 *
+	 * @since 5.2.0
+	 */
+	public boolean isSeekPagingEnabled() {
+		return mySeekPagingEnabled;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), searches and history operations which are
+	 * paged using <code>_offset</code> include a <code>_seek</code> token in their next page link. The token
+	 * holds the sort value and resource PID of the last row on the page, and the next page is fetched using a
+	 * range predicate on these values instead of asking the database to skip over all of the preceding rows, so
+	 * deep pages cost the same as the first one. This applies to unsorted searches (which are then ordered by
+	 * resource PID), searches sorted only by <code>_lastUpdated</code>, <code>$everything</code>, and
+	 * <code>_history</code>. Searches using any other sort continue to use plain offset paging.
+	 *
+	 * @since 5.2.0
+	 */
+	public void setSeekPagingEnabled(boolean theSeekPagingEnabled) {
+		mySeekPagingEnabled = theSeekPagingEnabled;
+	}
+
+	/**
+	 * @since 5.2.0
+	 */
+	private boolean mySearchQueryPlanCacheEnabled = false;
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), unsorted searches made up only of token,
+	 * date and plain reference parameters are executed using native SQL which is generated once per distinct
+	 * search shape (the parameter names, modifiers and number of values) and then reused with different bound
+	 * values, instead of building a new JPA Criteria query for every search. Searches with any other shape
+	 * are built the regular way.
+	 *
+	 * @since 5.2.0
+	 */
+	public boolean isSearchQueryPlanCacheEnabled() {
+		return mySearchQueryPlanCacheEnabled;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), unsorted searches made up only of token,
+	 * date and plain reference parameters are executed using native SQL which is generated once per distinct
+	 * search shape (the parameter names, modifiers and number of values) and then reused with different bound
+	 * values, instead of building a new JPA Criteria query for every search. Searches with any other shape
+	 * are built the regular way.
+	 *
+	 * @since 5.2.0
+	 */
+	public void setSearchQueryPlanCacheEnabled(boolean theSearchQueryPlanCacheEnabled) {
+		mySearchQueryPlanCacheEnabled = theSearchQueryPlanCacheEnabled;
+	}
+
+	/**
+	 * @since 5.2.0
+	 */
+	private int myIncludeQueryThreadCount = 1;
+
+	/**
+	 * This setting controls how many threads are used to run the queries for each round of
+	 * <code>_include</code> and <code>_revinclude</code> resolution. The default is 1, meaning that
+	 * the queries are run one after the other on the connection of the search. If this is set to a
+	 * higher value, the queries for a round are run in parallel, each using its own database
+	 * connection, so the connection pool should be sized to allow for this. This is also a limit
+	 * across all searches: a query which would go over it runs on the connection of its search
+	 * instead. Includes resolved for an entry in a transaction or batch Bundle always use the
+	 * connection of the Bundle's transaction, so that they can see its uncommitted changes.
+	 *
+	 * @since 5.2.0
+	 */
+	public int getIncludeQueryThreadCount() {
+		return myIncludeQueryThreadCount;
+	}
+
+	/**
+	 * This setting controls how many threads are used to run the queries for each round of
+	 * <code>_include</code> and <code>_revinclude</code> resolution. The default is 1, meaning that
+	 * the queries are run one after the other on the connection of the search. If this is set to a
+	 * higher value, the queries for a round are run in parallel, each using its own database
+	 * connection, so the connection pool should be sized to allow for this. This is also a limit
+	 * across all searches: a query which would go over it runs on the connection of its search
+	 * instead. Includes resolved for an entry in a transaction or batch Bundle always use the
+	 * connection of the Bundle's transaction, so that they can see its uncommitted changes.
+	 *
+	 * @since 5.2.0
+	 */
+	public void setIncludeQueryThreadCount(int theIncludeQueryThreadCount) {
+		Validate.isTrue(theIncludeQueryThreadCount > 0, "theIncludeQueryThreadCount must be greater than 0");
+		myIncludeQueryThreadCount = theIncludeQueryThreadCount;
+	}
+
 	/**
 	 * Constructor
 	 */
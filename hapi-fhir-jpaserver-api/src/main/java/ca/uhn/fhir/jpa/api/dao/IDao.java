@@ -4,6 +4,7 @@ import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.jpa.model.entity.BaseHasResource;
 import ca.uhn.fhir.jpa.model.entity.IBaseResourceEntity;
 import ca.uhn.fhir.jpa.model.entity.ResourceTag;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 
 import java.util.Collection;
@@ -46,4 +47,17 @@ public interface IDao {
 
 	<R extends IBaseResource> R toResource(Class<R> theResourceType, IBaseResourceEntity theEntity, Collection<ResourceTag> theTagList, boolean theForHistoryOperation);
 
+	/**
+	 * Converts the given entity to a resource. If <code>theRawJsonBodyPermitted</code> is <code>true</code>
+	 * and {@link ca.uhn.fhir.jpa.api.config.DaoConfig#isRawResourcePassthroughEnabled()} is enabled, the returned
+	 * resource may contain only its ID and metadata, with the stored resource body attached as
+	 * {@link ca.uhn.fhir.rest.api.Constants#RESOURCE_RAW_JSON_BODY user data} instead of being parsed.
+	 *
+	 * @param theRawJsonBodyPermitted Callers must only set this if the returned resource will be placed directly
+	 *                                into a response which the server has found eligible for raw JSON, without
+	 *                                being inspected or modified first
+	 * @since 5.2.0
+	 */
+	<R extends IBaseResource> R toResource(Class<R> theResourceType, IBaseResourceEntity theEntity, Collection<ResourceTag> theTagList, boolean theForHistoryOperation, boolean theRawJsonBodyPermitted, RequestDetails theRequest);
+
 }
@@ -179,6 +179,17 @@ public interface IFhirResourceDao<T extends IBaseResource> extends IDao {
 	 */
 	T read(IIdType theId, RequestDetails theRequestDetails, boolean theDeletedOk);
 
+	/**
+	 * Read a resource which will be returned, unmodified, as the response to the given request
+	 * (e.g. by a resource provider read method). If the server has flagged the request as eligible
+	 * for a raw JSON response (see {@link ca.uhn.fhir.rest.api.Constants#REQUEST_RAW_JSON_RESPONSE_ELIGIBLE}),
+	 * the returned resource may carry only its ID and metadata, with the stored body attached as raw JSON.
+	 * Callers which need the resource contents should use {@link #read(IIdType, RequestDetails)} instead.
+	 *
+	 * @since 5.2.0
+	 */
+	T readForResponse(IIdType theId, RequestDetails theRequestDetails);
+
 	BaseHasResource readEntity(IIdType theId, RequestDetails theRequest);
 
 	/**
@@ -20,6 +20,7 @@ package ca.uhn.fhir.jpa.batch;
  * #L%
  */
 
+import ca.uhn.fhir.jpa.bulk.imprt.job.BulkImportJobConfig;
 import ca.uhn.fhir.jpa.bulk.job.BulkExportJobConfig;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
@@ -28,7 +29,8 @@ import org.springframework.context.annotation.Import;
 //When you define a new batch job, add it here.
 @Import({
 	CommonBatchJobConfig.class,
-	BulkExportJobConfig.class,})
+	BulkExportJobConfig.class,
+	BulkImportJobConfig.class,})
 public class BatchJobsConfig {
 	//Empty config, as this is just an aggregator for all the various batch jobs defined around the system.
 }
@@ -112,6 +112,10 @@ public interface IBulkDataExportSvc {
 	class FileEntry {
 		private String myResourceType;
 		private IIdType myResourceId;
+		private Long myFileId;
+		private String myStorageKey;
+		private Long mySize;
+		private boolean myGzip;
 
 		public String getResourceType() {
 			return myResourceType;
@@ -130,6 +134,46 @@ public interface IBulkDataExportSvc {
 			myResourceId = theResourceId;
 			return this;
 		}
+
+		public Long getFileId() {
+			return myFileId;
+		}
+
+		public FileEntry setFileId(Long theFileId) {
+			myFileId = theFileId;
+			return this;
+		}
+
+		/**
+		 * The key of the file in the {@link IBulkExportFileStorageSvc}, or <code>null</code> if
+		 * the file is stored as a Binary resource (in which case {@link #getResourceId()} is populated)
+		 */
+		public String getStorageKey() {
+			return myStorageKey;
+		}
+
+		public FileEntry setStorageKey(String theStorageKey) {
+			myStorageKey = theStorageKey;
+			return this;
+		}
+
+		public Long getSize() {
+			return mySize;
+		}
+
+		public FileEntry setSize(Long theSize) {
+			mySize = theSize;
+			return this;
+		}
+
+		public boolean isGzip() {
+			return myGzip;
+		}
+
+		public FileEntry setGzip(boolean theGzip) {
+			myGzip = theGzip;
+			return this;
+		}
 	}
 
 
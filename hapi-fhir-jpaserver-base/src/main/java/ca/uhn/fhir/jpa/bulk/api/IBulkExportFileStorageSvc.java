@@ -0,0 +1,86 @@
+package ca.uhn.fhir.jpa.bulk.api;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Storage for the NDJSON files generated by bulk export.
+ * <p>
+ * If a bean of this type is present in the application context, bulk export files are streamed
+ * directly to it and only their metadata is stored in the database. Otherwise, each file is stored
+ * as a Binary resource.
+ * </p>
+ */
+public interface IBulkExportFileStorageSvc {
+
+	/**
+	 * Should files be compressed using GZip? If so, they will be served using
+	 * <code>Content-Encoding: gzip</code> to clients which accept it, and decompressed
+	 * as they are served to clients which don't.
+	 */
+	boolean isGzipEnabled();
+
+	/**
+	 * Creates a new, empty file
+	 *
+	 * @param theJobId        The bulk export job ID
+	 * @param theResourceType The resource type being exported to the file
+	 * @return The new file. The caller writes the file contents to {@link IWritableFile#getChannel()} and then closes the channel.
+	 */
+	IWritableFile createFile(String theJobId, String theResourceType) throws IOException;
+
+	/**
+	 * Copies the contents of a stored file to the given channel
+	 *
+	 * @param theStorageKey The storage key returned by {@link IWritableFile#getStorageKey()} when the file was created
+	 * @param theTarget     The channel to write to. This method does not close it.
+	 * @return Returns <code>false</code> if the file was not found (i.e. it has been deleted)
+	 */
+	boolean transferTo(String theStorageKey, WritableByteChannel theTarget) throws IOException;
+
+	/**
+	 * Opens a stored file for reading
+	 *
+	 * @param theStorageKey The storage key returned by {@link IWritableFile#getStorageKey()} when the file was created
+	 * @return Returns <code>null</code> if the file was not found (i.e. it has been deleted). The caller must close the stream.
+	 */
+	InputStream openInputStream(String theStorageKey) throws IOException;
+
+	/**
+	 * Deletes a stored file. Does nothing if the file does not exist.
+	 */
+	void deleteFile(String theStorageKey);
+
+	interface IWritableFile {
+
+		/**
+		 * An identifier for this file which is unique within the storage service
+		 */
+		String getStorageKey();
+
+		WritableByteChannel getChannel();
+
+	}
+
+}
@@ -0,0 +1,186 @@
+package ca.uhn.fhir.jpa.bulk.imprt.api;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.bulk.imprt.model.BulkImportJobFileJson;
+import ca.uhn.fhir.jpa.bulk.imprt.model.BulkImportJobJson;
+import ca.uhn.fhir.jpa.bulk.imprt.model.BulkImportJobStatusEnum;
+
+import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public interface IBulkDataImportSvc {
+
+	/**
+	 * Create a new job in {@link BulkImportJobStatusEnum#STAGING STAGING} state (meaning it won't yet be
+	 * picked up for processing). More files may be added using {@link #addFilesToJob(String, List)}.
+	 *
+	 * @param theJobDescription The job details
+	 * @param theInitialFiles   The initial files to add to the job (may be empty)
+	 * @return The job ID
+	 */
+	String createNewJob(BulkImportJobJson theJobDescription, List<BulkImportJobFileJson> theInitialFiles);
+
+	/**
+	 * Add more files to a job in {@link BulkImportJobStatusEnum#STAGING STAGING} state
+	 */
+	void addFilesToJob(String theJobId, List<BulkImportJobFileJson> theFiles);
+
+	/**
+	 * Move a job from {@link BulkImportJobStatusEnum#STAGING STAGING} to
+	 * {@link BulkImportJobStatusEnum#READY READY} state, meaning that is is ready to be picked
+	 * up for processing
+	 */
+	void markJobAsReadyForActivation(String theJobId);
+
+	/**
+	 * Moves a job which has failed back to {@link BulkImportJobStatusEnum#READY READY}. When it is
+	 * next activated, each file resumes after the last row that was successfully stored.
+	 * <p>
+	 * A job which is {@link BulkImportJobStatusEnum#RUNNING RUNNING} can only be restarted once it
+	 * has stopped storing rows for a while (e.g. because the server running it was stopped), since
+	 * otherwise it would be processed twice at the same time.
+	 * </p>
+	 */
+	void restartJob(String theJobId);
+
+	/**
+	 * This method is called by the scheduler to start the next job which is
+	 * {@link BulkImportJobStatusEnum#READY READY}
+	 *
+	 * @return Returns <code>true</code> if a job was activated
+	 */
+	@Transactional(value = Transactional.TxType.NEVER)
+	boolean activateNextReadyJob();
+
+	JobInfo getJobInfoOrThrowResourceNotFound(String theJobId);
+
+	/**
+	 * Deletes all import jobs and their files. Jobs that are currently running are not stopped.
+	 */
+	void cancelAndPurgeAllJobs();
+
+	class JobInfo {
+		private String myJobId;
+		private BulkImportJobStatusEnum myStatus;
+		private Date myStatusTime;
+		private String myStatusMessage;
+		private String myJobDescription;
+		private List<FileInfo> myFiles;
+
+		public String getJobId() {
+			return myJobId;
+		}
+
+		public JobInfo setJobId(String theJobId) {
+			myJobId = theJobId;
+			return this;
+		}
+
+		public BulkImportJobStatusEnum getStatus() {
+			return myStatus;
+		}
+
+		public JobInfo setStatus(BulkImportJobStatusEnum theStatus) {
+			myStatus = theStatus;
+			return this;
+		}
+
+		public Date getStatusTime() {
+			return myStatusTime;
+		}
+
+		public JobInfo setStatusTime(Date theStatusTime) {
+			myStatusTime = theStatusTime;
+			return this;
+		}
+
+		public String getStatusMessage() {
+			return myStatusMessage;
+		}
+
+		public JobInfo setStatusMessage(String theStatusMessage) {
+			myStatusMessage = theStatusMessage;
+			return this;
+		}
+
+		public String getJobDescription() {
+			return myJobDescription;
+		}
+
+		public JobInfo setJobDescription(String theJobDescription) {
+			myJobDescription = theJobDescription;
+			return this;
+		}
+
+		public List<FileInfo> getFiles() {
+			if (myFiles == null) {
+				myFiles = new ArrayList<>();
+			}
+			return myFiles;
+		}
+
+		public FileInfo addFile() {
+			FileInfo retVal = new FileInfo();
+			getFiles().add(retVal);
+			return retVal;
+		}
+	}
+
+	class FileInfo {
+		private int myFileIndex;
+		private String myDescription;
+		private int myRowsProcessed;
+
+		public int getFileIndex() {
+			return myFileIndex;
+		}
+
+		public FileInfo setFileIndex(int theFileIndex) {
+			myFileIndex = theFileIndex;
+			return this;
+		}
+
+		public String getDescription() {
+			return myDescription;
+		}
+
+		public FileInfo setDescription(String theDescription) {
+			myDescription = theDescription;
+			return this;
+		}
+
+		/**
+		 * The number of rows from this file which have been stored so far
+		 */
+		public int getRowsProcessed() {
+			return myRowsProcessed;
+		}
+
+		public FileInfo setRowsProcessed(int theRowsProcessed) {
+			myRowsProcessed = theRowsProcessed;
+			return this;
+		}
+	}
+
+}
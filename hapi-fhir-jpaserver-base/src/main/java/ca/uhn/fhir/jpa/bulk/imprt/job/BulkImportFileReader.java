@@ -0,0 +1,131 @@
+package ca.uhn.fhir.jpa.bulk.imprt.job;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.batch.log.Logs;
+import ca.uhn.fhir.jpa.bulk.imprt.svc.BulkImportDaoSvc;
+import ca.uhn.fhir.jpa.entity.BulkImportJobFileEntity;
+import ca.uhn.fhir.rest.api.Constants;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Reads the rows of one NDJSON file, skipping blank lines. When the file is opened, any rows
+ * which were already stored by a previous run of the job are skipped.
+ * <p>
+ * The file contents are streamed from the database into a temporary file when the reader is
+ * opened, and read from there, so the file is never held in memory. The temporary file is
+ * deleted when the reader is closed.
+ * </p>
+ */
+public class BulkImportFileReader implements ItemStreamReader<String> {
+	private static final Logger ourLog = Logs.getBatchTroubleshootingLog();
+
+	@Autowired
+	private BulkImportDaoSvc myBulkImportDaoSvc;
+
+	@Value("#{stepExecutionContext['" + BulkImportJobConfig.CONTEXT_KEY_FILE_PID + "']}")
+	private Long myFilePid;
+
+	private File myTempFile;
+	private BufferedReader myReader;
+
+	@Override
+	public void open(ExecutionContext theExecutionContext) throws ItemStreamException {
+		BulkImportJobFileEntity file = myBulkImportDaoSvc.getFile(myFilePid);
+
+		try {
+			myTempFile = File.createTempFile("hapi-bulk-import-", ".ndjson");
+			try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(myTempFile))) {
+				if (!myBulkImportDaoSvc.copyContentsTo(myFilePid, outputStream)) {
+					throw new ItemStreamException("Contents of bulk import file " + file.getFileSequence() + " are no longer available");
+				}
+			}
+			myReader = new BufferedReader(new InputStreamReader(new FileInputStream(myTempFile), Constants.CHARSET_UTF8));
+		} catch (IOException e) {
+			deleteTempFile();
+			throw new ItemStreamException("Failed to read contents of bulk import file " + file.getFileSequence(), e);
+		} catch (ItemStreamException e) {
+			deleteTempFile();
+			throw e;
+		}
+
+		int skip = file.getRowsProcessed();
+		if (skip > 0) {
+			ourLog.info("Resuming bulk import file {} after {} rows which were already stored", file.getFileSequence(), skip);
+			for (int i = 0; i < skip; i++) {
+				if (read() == null) {
+					break;
+				}
+			}
+		}
+	}
+
+	@Override
+	public String read() {
+		try {
+			String next;
+			do {
+				next = myReader.readLine();
+			} while (next != null && isBlank(next));
+			return next;
+		} catch (IOException e) {
+			throw new ItemStreamException(e);
+		}
+	}
+
+	@Override
+	public void update(ExecutionContext theExecutionContext) throws ItemStreamException {
+		// The checkpoint is stored by the writer, in the same transaction as the rows
+	}
+
+	@Override
+	public void close() throws ItemStreamException {
+		IOUtils.closeQuietly(myReader);
+		myReader = null;
+		deleteTempFile();
+	}
+
+	private void deleteTempFile() {
+		if (myTempFile != null) {
+			if (!myTempFile.delete()) {
+				ourLog.warn("Failed to delete temporary bulk import file: {}", myTempFile.getAbsolutePath());
+			}
+			myTempFile = null;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package ca.uhn.fhir.jpa.bulk.imprt.job;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.api.model.DaoMethodOutcome;
+import ca.uhn.fhir.jpa.batch.log.Logs;
+import ca.uhn.fhir.jpa.bulk.imprt.svc.BulkImportDaoSvc;
+import ca.uhn.fhir.rest.api.server.storage.TransactionDetails;
+import org.hibernate.Session;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.slf4j.Logger;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceContextType;
+import java.util.List;
+
+/**
+ * Stores a chunk of parsed resources. Spring Batch runs each chunk in a single transaction,
+ * so all of the resources in the chunk are committed together with the file checkpoint.
+ * <p>
+ * The resources in a chunk are written as a batch: the inserts are grouped into JDBC batches,
+ * and the whole chunk shares one {@link TransactionDetails}, so once a resource has been stored
+ * (or a reference target has been looked up) references to it from later resources in the same
+ * chunk are resolved without another query.
+ * </p>
+ * <p>
+ * Resources are stored in the order they appear in their file, but the files of a job are
+ * imported in parallel, so no order is guaranteed between files. If referential integrity is
+ * enforced, a resource must be in the same file as (and after) any resources it references
+ * which are being imported by the same job.
+ * </p>
+ */
+public class BulkImportFileWriter implements ItemWriter<IBaseResource> {
+	private static final Logger ourLog = Logs.getBatchTroubleshootingLog();
+
+	@Autowired
+	private DaoRegistry myDaoRegistry;
+
+	@Autowired
+	private BulkImportDaoSvc myBulkImportDaoSvc;
+
+	@PersistenceContext(type = PersistenceContextType.TRANSACTION)
+	private EntityManager myEntityManager;
+
+	@Value("#{stepExecutionContext['" + BulkImportJobConfig.CONTEXT_KEY_FILE_PID + "']}")
+	private Long myFilePid;
+
+	@Value("#{stepExecutionContext['" + BulkImportJobConfig.CONTEXT_KEY_FILE_INDEX + "']}")
+	private Integer myFileIndex;
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void write(List<? extends IBaseResource> theResources) {
+		// Let Hibernate group the inserts for the whole chunk into JDBC batches
+		myEntityManager.unwrap(Session.class).setJdbcBatchSize(theResources.size());
+
+		TransactionDetails transactionDetails = new TransactionDetails();
+		for (IBaseResource next : theResources) {
+			IFhirResourceDao<IBaseResource> dao = myDaoRegistry.getResourceDao((Class<IBaseResource>) next.getClass());
+			DaoMethodOutcome outcome;
+			if (next.getIdElement().hasIdPart()) {
+				outcome = dao.update(next, null, true, false, null, transactionDetails);
+			} else {
+				outcome = dao.create(next, null, true, transactionDetails, null);
+			}
+			if (outcome.getEntity() != null) {
+				transactionDetails.addResolvedResourceId(outcome.getId().toUnqualifiedVersionless(), outcome.getEntity().getPersistentId());
+			}
+		}
+
+		myBulkImportDaoSvc.incrementRowsProcessed(myFilePid, theResources.size());
+		ourLog.info("Stored {} resources from bulk import file {}", theResources.size(), myFileIndex);
+	}
+
+}
@@ -0,0 +1,71 @@
+package ca.uhn.fhir.jpa.bulk.imprt.job;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.bulk.imprt.model.BulkImportJobStatusEnum;
+import ca.uhn.fhir.jpa.bulk.imprt.svc.BulkImportDaoSvc;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Will run after a job to set the status to whatever is appropriate. This is a listener
+ * rather than a final step so that it also runs when one of the partitions fails.
+ */
+public class BulkImportJobCloser implements JobExecutionListener {
+
+	@Autowired
+	private BulkImportDaoSvc myBulkImportDaoSvc;
+
+	@Override
+	public void beforeJob(JobExecution theJobExecution) {
+		// nothing
+	}
+
+	@Override
+	public void afterJob(JobExecution theJobExecution) {
+		String jobUuid = theJobExecution.getJobParameters().getString(BulkImportJobConfig.JOB_PARAM_JOB_UUID);
+		if (theJobExecution.getStatus() == BatchStatus.COMPLETED) {
+			myBulkImportDaoSvc.setJobToStatus(jobUuid, BulkImportJobStatusEnum.COMPLETE, null);
+		} else {
+			String message = "Job finished with status " + theJobExecution.getStatus();
+
+			// Prefer the failure from the file which failed over the generic partition failure
+			List<Throwable> failures = theJobExecution
+				.getStepExecutions()
+				.stream()
+				.filter(t -> !t.getStepName().equals(BulkImportJobConfig.PARTITION_STEP_NAME))
+				.flatMap(t -> t.getFailureExceptions().stream())
+				.collect(Collectors.toList());
+			if (failures.isEmpty()) {
+				failures = theJobExecution.getAllFailureExceptions();
+			}
+			if (!failures.isEmpty()) {
+				message = failures.get(0).getMessage();
+			}
+			myBulkImportDaoSvc.setJobToStatus(jobUuid, BulkImportJobStatusEnum.ERROR, message);
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package ca.uhn.fhir.jpa.bulk.imprt.job;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobParametersValidator;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.JobScope;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.repeat.CompletionPolicy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Spring batch Job configuration file. Contains all necessary plumbing to run a
+ * Bulk Import job.
+ * <p>
+ * Each file in the job is processed by its own partition, and the partitions run in
+ * parallel. Each chunk of rows is parsed and then stored in a single database transaction,
+ * together with a checkpoint that lets the file resume after the last stored row.
+ * </p>
+ */
+@Configuration
+public class BulkImportJobConfig {
+
+	public static final String BULK_IMPORT_JOB_NAME = "bulkImportJob";
+	public static final String JOB_PARAM_JOB_UUID = "jobUUID";
+	public static final String JOB_PARAM_BATCH_SIZE = "batchSize";
+	public static final String PARTITION_STEP_NAME = "bulkImportPartitionStep";
+	public static final String CONTEXT_KEY_FILE_INDEX = "fileIndex";
+	public static final String CONTEXT_KEY_FILE_PID = "filePid";
+
+	@Autowired
+	private StepBuilderFactory myStepBuilderFactory;
+
+	@Autowired
+	private JobBuilderFactory myJobBuilderFactory;
+
+	@Bean(name = BULK_IMPORT_JOB_NAME)
+	@Lazy
+	public Job bulkImportJob() {
+		return myJobBuilderFactory.get(BULK_IMPORT_JOB_NAME)
+			.validator(bulkImportJobParameterValidator())
+			.listener(bulkImportJobCloser())
+			.start(bulkImportPartitionStep())
+			.build();
+	}
+
+	@Bean
+	public JobParametersValidator bulkImportJobParameterValidator() {
+		return new BulkImportJobParameterValidator();
+	}
+
+	@Bean
+	public BulkImportJobCloser bulkImportJobCloser() {
+		return new BulkImportJobCloser();
+	}
+
+	@Bean
+	public Step bulkImportPartitionStep() {
+		return myStepBuilderFactory.get(PARTITION_STEP_NAME)
+			.partitioner("bulkImportProcessFilesStep", bulkImportPartitioner())
+			.step(bulkImportProcessFilesStep())
+			.taskExecutor(bulkImportTaskExecutor())
+			.build();
+	}
+
+	@Bean
+	public Step bulkImportProcessFilesStep() {
+		return myStepBuilderFactory.get("bulkImportProcessFilesStep")
+			.<String, IBaseResource>chunk(bulkImportCompletionPolicy())
+			.reader(bulkImportFileReader())
+			.processor(bulkImportParseProcessor())
+			.writer(bulkImportFileWriter())
+			.build();
+	}
+
+	/**
+	 * The partitions (one per file) are run on this executor, so its pool size
+	 * controls how many files are imported concurrently
+	 */
+	@Bean
+	public TaskExecutor bulkImportTaskExecutor() {
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+		ThreadPoolTaskExecutor retVal = new ThreadPoolTaskExecutor();
+		retVal.setCorePoolSize(threads);
+		retVal.setMaxPoolSize(threads);
+		retVal.setThreadNamePrefix("BulkImport-");
+		retVal.initialize();
+		return retVal;
+	}
+
+	@Bean
+	@JobScope
+	public BulkImportPartitioner bulkImportPartitioner() {
+		return new BulkImportPartitioner();
+	}
+
+	@Bean
+	@StepScope
+	public CompletionPolicy bulkImportCompletionPolicy() {
+		return new BulkImportStepCompletionPolicy();
+	}
+
+	@Bean
+	@StepScope
+	public BulkImportFileReader bulkImportFileReader() {
+		return new BulkImportFileReader();
+	}
+
+	@Bean
+	public BulkImportParseProcessor bulkImportParseProcessor() {
+		return new BulkImportParseProcessor();
+	}
+
+	@Bean
+	@StepScope
+	public BulkImportFileWriter bulkImportFileWriter() {
+		return new BulkImportFileWriter();
+	}
+
+}
@@ -0,0 +1,67 @@
+package ca.uhn.fhir.jpa.bulk.imprt.job;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.dao.data.IBulkImportJobDao;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersInvalidException;
+import org.springframework.batch.core.JobParametersValidator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * This class will prevent a job from running if the UUID does not exist or is invalid.
+ */
+public class BulkImportJobParameterValidator implements JobParametersValidator {
+	@Autowired
+	private IBulkImportJobDao myBulkImportJobDao;
+	@Autowired
+	private PlatformTransactionManager myTransactionManager;
+
+	@Override
+	public void validate(JobParameters theJobParameters) throws JobParametersInvalidException {
+		if (theJobParameters == null) {
+			throw new JobParametersInvalidException("This job needs Parameters: [" + BulkImportJobConfig.JOB_PARAM_JOB_UUID + "], [" + BulkImportJobConfig.JOB_PARAM_BATCH_SIZE + "]");
+		}
+
+		TransactionTemplate txTemplate = new TransactionTemplate(myTransactionManager);
+		String errorMessage = txTemplate.execute(tx -> {
+			StringBuilder errorBuilder = new StringBuilder();
+			Long batchSize = theJobParameters.getLong(BulkImportJobConfig.JOB_PARAM_BATCH_SIZE);
+			if (batchSize == null || batchSize < 1) {
+				errorBuilder.append("There must be a valid number for batchSize, which is at least 1. ");
+			}
+			String jobUUID = theJobParameters.getString(BulkImportJobConfig.JOB_PARAM_JOB_UUID);
+			if (StringUtils.isBlank(jobUUID)) {
+				errorBuilder.append("Missing job UUID. ");
+			} else if (!myBulkImportJobDao.findByJobId(jobUUID).isPresent()) {
+				errorBuilder.append("There is no persisted job that exists with UUID: ").append(jobUUID).append(". ");
+			}
+			return errorBuilder.toString();
+		});
+
+		if (!StringUtils.isEmpty(errorMessage)) {
+			throw new JobParametersInvalidException(errorMessage);
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package ca.uhn.fhir.jpa.bulk.imprt.job;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Parses one NDJSON row. Since each partition runs in its own thread, files are parsed in parallel.
+ */
+public class BulkImportParseProcessor implements ItemProcessor<String, IBaseResource> {
+
+	@Autowired
+	private FhirContext myFhirContext;
+
+	@Override
+	public IBaseResource process(String theRow) {
+		// Parsers are not thread safe, but they are cheap to create
+		return myFhirContext.newJsonParser().parseResource(theRow);
+	}
+
+}
@@ -0,0 +1,66 @@
+package ca.uhn.fhir.jpa.bulk.imprt.job;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.bulk.imprt.svc.BulkImportDaoSvc;
+import ca.uhn.fhir.jpa.entity.BulkImportJobFileEntity;
+import org.slf4j.Logger;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Creates one partition for each file in the job
+ */
+public class BulkImportPartitioner implements Partitioner {
+	private static final Logger ourLog = getLogger(BulkImportPartitioner.class);
+
+	@Value("#{jobParameters['" + BulkImportJobConfig.JOB_PARAM_JOB_UUID + "']}")
+	private String myJobUUID;
+
+	@Autowired
+	private BulkImportDaoSvc myBulkImportDaoSvc;
+
+	@Override
+	public Map<String, ExecutionContext> partition(int gridSize) {
+		Map<String, ExecutionContext> retVal = new HashMap<>();
+
+		for (BulkImportJobFileEntity next : myBulkImportDaoSvc.getFilesForJob(myJobUUID)) {
+			ourLog.debug("Creating a partition step for bulk import job [{}] file [{}]", myJobUUID, next.getFileSequence());
+
+			ExecutionContext context = new ExecutionContext();
+			context.putString(BulkImportJobConfig.JOB_PARAM_JOB_UUID, myJobUUID);
+			context.putInt(BulkImportJobConfig.CONTEXT_KEY_FILE_INDEX, next.getFileSequence());
+			context.putLong(BulkImportJobConfig.CONTEXT_KEY_FILE_PID, next.getId());
+
+			retVal.put("file" + next.getFileSequence(), context);
+		}
+
+		return retVal;
+	}
+
+}
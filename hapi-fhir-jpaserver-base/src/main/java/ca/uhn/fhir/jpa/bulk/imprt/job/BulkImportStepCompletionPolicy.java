@@ -0,0 +1,41 @@
+package ca.uhn.fhir.jpa.bulk.imprt.job;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.springframework.batch.repeat.RepeatContext;
+import org.springframework.batch.repeat.policy.SimpleCompletionPolicy;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Sets the chunk size (i.e. the number of rows stored per transaction) from the job
+ * parameters, since it is chosen per job
+ */
+public class BulkImportStepCompletionPolicy extends SimpleCompletionPolicy {
+
+	@Value("#{jobParameters['" + BulkImportJobConfig.JOB_PARAM_BATCH_SIZE + "']}")
+	private Long myBatchSize;
+
+	@Override
+	public RepeatContext start(RepeatContext theContext) {
+		setChunkSize(myBatchSize.intValue());
+		return super.start(theContext);
+	}
+}
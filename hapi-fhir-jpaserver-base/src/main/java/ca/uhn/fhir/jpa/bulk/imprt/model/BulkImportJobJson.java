@@ -0,0 +1,57 @@
+package ca.uhn.fhir.jpa.bulk.imprt.model;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.model.api.IModelJson;
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonInclude(JsonInclude.Include.NON_DEFAULT)
+@JsonAutoDetect(creatorVisibility = JsonAutoDetect.Visibility.NONE, fieldVisibility = JsonAutoDetect.Visibility.NONE, getterVisibility = JsonAutoDetect.Visibility.NONE, isGetterVisibility = JsonAutoDetect.Visibility.NONE, setterVisibility = JsonAutoDetect.Visibility.NONE)
+public class BulkImportJobJson implements IModelJson {
+
+	@JsonProperty("jobDescription")
+	private String myJobDescription;
+	@JsonProperty("batchSize")
+	private Integer myBatchSize;
+
+	public String getJobDescription() {
+		return myJobDescription;
+	}
+
+	public BulkImportJobJson setJobDescription(String theJobDescription) {
+		myJobDescription = theJobDescription;
+		return this;
+	}
+
+	/**
+	 * The number of resources stored in each database transaction
+	 */
+	public Integer getBatchSize() {
+		return myBatchSize;
+	}
+
+	public BulkImportJobJson setBatchSize(Integer theBatchSize) {
+		myBatchSize = theBatchSize;
+		return this;
+	}
+}
@@ -0,0 +1,237 @@
+package ca.uhn.fhir.jpa.bulk.imprt.provider;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.bulk.imprt.api.IBulkDataImportSvc;
+import ca.uhn.fhir.jpa.bulk.imprt.model.BulkImportJobFileJson;
+import ca.uhn.fhir.jpa.bulk.imprt.model.BulkImportJobJson;
+import ca.uhn.fhir.jpa.bulk.imprt.model.BulkImportResponseJson;
+import ca.uhn.fhir.jpa.model.util.JpaConstants;
+import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.rest.annotation.OperationParam;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.PreferHeader;
+import ca.uhn.fhir.rest.server.RestfulServerUtils;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import ca.uhn.fhir.util.JsonUtil;
+import ca.uhn.fhir.util.OperationOutcomeUtil;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.instance.model.api.IBaseOperationOutcome;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.hl7.fhir.r4.model.InstantType;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Collections;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+public class BulkDataImportProvider {
+
+	/**
+	 * The request body is split into job files of this many rows, so that large
+	 * requests can be processed by several partitions in parallel
+	 */
+	public static final int ROWS_PER_FILE = 10000;
+
+	@Autowired
+	private IBulkDataImportSvc myBulkDataImportSvc;
+	@Autowired
+	private FhirContext myFhirContext;
+	private int myRowsPerFile = ROWS_PER_FILE;
+
+	@VisibleForTesting
+	public void setFhirContextForUnitTest(FhirContext theFhirContext) {
+		myFhirContext = theFhirContext;
+	}
+
+	@VisibleForTesting
+	public void setBulkDataImportSvcForUnitTests(IBulkDataImportSvc theBulkDataImportSvc) {
+		myBulkDataImportSvc = theBulkDataImportSvc;
+	}
+
+	@VisibleForTesting
+	public void setRowsPerFileForUnitTests(int theRowsPerFile) {
+		myRowsPerFile = theRowsPerFile;
+	}
+
+	/**
+	 * $import
+	 * <p>
+	 * The request body is an NDJSON file containing one resource per line. It is streamed
+	 * into a new import job, which is processed asynchronously.
+	 * </p>
+	 */
+	@Operation(name = JpaConstants.OPERATION_IMPORT, manualRequest = true, manualResponse = true, idempotent = false)
+	public void importResources(
+		@OperationParam(name = JpaConstants.PARAM_IMPORT_BATCH_SIZE, min = 0, max = 1, typeName = "integer") IPrimitiveType<Integer> theBatchSize,
+		ServletRequestDetails theRequestDetails
+	) throws IOException {
+
+		String preferHeader = theRequestDetails.getHeader(Constants.HEADER_PREFER);
+		PreferHeader prefer = RestfulServerUtils.parsePreferHeader(null, preferHeader);
+		if (prefer.getRespondAsync() == false) {
+			throw new InvalidRequestException("Must request async processing for " + JpaConstants.OPERATION_IMPORT);
+		}
+
+		String contentType = StringUtils.defaultString(theRequestDetails.getHeader(Constants.HEADER_CONTENT_TYPE)).replaceAll(";.*", "").trim();
+		if (!Constants.CTS_NDJSON.contains(contentType)) {
+			throw new InvalidRequestException("Invalid content type for " + JpaConstants.OPERATION_IMPORT + ", must be " + Constants.CT_FHIR_NDJSON + ": " + contentType);
+		}
+
+		BulkImportJobJson job = new BulkImportJobJson();
+		job.setJobDescription(theRequestDetails.getCompleteUrl());
+		if (theBatchSize != null) {
+			job.setBatchSize(theBatchSize.getValue());
+		}
+
+		// The job is only created once the first file is ready, so that a request with no
+		// resources doesn't leave an empty job behind
+		String jobId = null;
+		int rowCount = 0;
+		int fileFirstRow = 1;
+		StringBuilder fileContents = new StringBuilder();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(theRequestDetails.getInputStream(), Constants.CHARSET_UTF8))) {
+			String next;
+			while ((next = reader.readLine()) != null) {
+				if (isBlank(next)) {
+					continue;
+				}
+				fileContents.append(next).append('\n');
+				rowCount++;
+				if (rowCount - fileFirstRow + 1 >= myRowsPerFile) {
+					jobId = addFile(job, jobId, fileContents, fileFirstRow, rowCount);
+					fileFirstRow = rowCount + 1;
+				}
+			}
+		}
+		if (rowCount == 0) {
+			throw new InvalidRequestException("No resources found in " + JpaConstants.OPERATION_IMPORT + " request body");
+		}
+		if (fileContents.length() > 0) {
+			jobId = addFile(job, jobId, fileContents, fileFirstRow, rowCount);
+		}
+
+		myBulkDataImportSvc.markJobAsReadyForActivation(jobId);
+
+		String serverBase = getServerBase(theRequestDetails);
+		String pollLocation = serverBase + "/" + JpaConstants.OPERATION_IMPORT_POLL_STATUS + "?" + JpaConstants.PARAM_IMPORT_POLL_STATUS_JOB_ID + "=" + jobId;
+
+		HttpServletResponse response = theRequestDetails.getServletResponse();
+
+		// Add standard headers
+		theRequestDetails.getServer().addHeadersToResponse(response);
+
+		// Successful 202 Accepted
+		response.addHeader(Constants.HEADER_CONTENT_LOCATION, pollLocation);
+		response.setStatus(Constants.STATUS_HTTP_202_ACCEPTED);
+	}
+
+	/**
+	 * Adds a file to the job, creating the job first if <code>theJobId</code> is <code>null</code>
+	 *
+	 * @return Returns the job ID
+	 */
+	private String addFile(BulkImportJobJson theJob, String theJobId, StringBuilder theContents, int theFirstRow, int theLastRow) {
+		BulkImportJobFileJson file = new BulkImportJobFileJson();
+		file.setDescription("rows " + theFirstRow + "-" + theLastRow);
+		file.setContents(theContents.toString());
+		theContents.setLength(0);
+
+		if (theJobId == null) {
+			return myBulkDataImportSvc.createNewJob(theJob, Collections.singletonList(file));
+		}
+		myBulkDataImportSvc.addFilesToJob(theJobId, Collections.singletonList(file));
+		return theJobId;
+	}
+
+	/**
+	 * $import-poll-status
+	 */
+	@Operation(name = JpaConstants.OPERATION_IMPORT_POLL_STATUS, manualResponse = true, idempotent = true)
+	public void importPollStatus(
+		@OperationParam(name = JpaConstants.PARAM_IMPORT_POLL_STATUS_JOB_ID, typeName = "string", min = 0, max = 1) IPrimitiveType<String> theJobId,
+		ServletRequestDetails theRequestDetails
+	) throws IOException {
+
+		HttpServletResponse response = theRequestDetails.getServletResponse();
+		theRequestDetails.getServer().addHeadersToResponse(response);
+
+		if (theJobId == null) {
+			throw new InvalidRequestException("Missing " + JpaConstants.PARAM_IMPORT_POLL_STATUS_JOB_ID + " parameter");
+		}
+		IBulkDataImportSvc.JobInfo status = myBulkDataImportSvc.getJobInfoOrThrowResourceNotFound(theJobId.getValueAsString());
+
+		switch (status.getStatus()) {
+			case STAGING:
+			case READY:
+			case RUNNING:
+
+				int rowsProcessed = status.getFiles().stream().mapToInt(IBulkDataImportSvc.FileInfo::getRowsProcessed).sum();
+				response.setStatus(Constants.STATUS_HTTP_202_ACCEPTED);
+				response.addHeader(Constants.HEADER_X_PROGRESS, "Status set to " + status.getStatus() + " at " + new InstantType(status.getStatusTime()).getValueAsString() + " - " + rowsProcessed + " resources stored");
+				response.addHeader(Constants.HEADER_RETRY_AFTER, "120");
+				break;
+
+			case COMPLETE:
+
+				response.setStatus(Constants.STATUS_HTTP_200_OK);
+				response.setContentType(Constants.CT_JSON);
+
+				BulkImportResponseJson bulkResponseDocument = new BulkImportResponseJson();
+				bulkResponseDocument.setTransactionTime(status.getStatusTime());
+				bulkResponseDocument.setRequest(status.getJobDescription());
+				for (IBulkDataImportSvc.FileInfo nextFile : status.getFiles()) {
+					bulkResponseDocument
+						.addOutput()
+						.setInputUrl(nextFile.getDescription())
+						.setCount(nextFile.getRowsProcessed());
+				}
+				JsonUtil.serialize(bulkResponseDocument, response.getWriter());
+				response.getWriter().close();
+				break;
+
+			case ERROR:
+
+				response.setStatus(Constants.STATUS_HTTP_500_INTERNAL_ERROR);
+				response.setContentType(Constants.CT_FHIR_JSON);
+
+				// Create an OperationOutcome response
+				IBaseOperationOutcome oo = OperationOutcomeUtil.newInstance(myFhirContext);
+				OperationOutcomeUtil.addIssue(myFhirContext, oo, "error", status.getStatusMessage(), null, null);
+				myFhirContext.newJsonParser().setPrettyPrint(true).encodeResourceToWriter(oo, response.getWriter());
+				response.getWriter().close();
+
+		}
+
+	}
+
+	private String getServerBase(ServletRequestDetails theRequestDetails) {
+		return StringUtils.removeEnd(theRequestDetails.getServerBaseForRequest(), "/");
+	}
+
+}
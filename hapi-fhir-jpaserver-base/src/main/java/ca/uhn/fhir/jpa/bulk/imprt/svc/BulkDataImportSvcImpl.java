@@ -0,0 +1,300 @@
+package ca.uhn.fhir.jpa.bulk.imprt.svc;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.batch.api.IBatchJobSubmitter;
+import ca.uhn.fhir.jpa.bulk.imprt.api.IBulkDataImportSvc;
+import ca.uhn.fhir.jpa.bulk.imprt.job.BulkImportJobConfig;
+import ca.uhn.fhir.jpa.bulk.imprt.model.BulkImportJobFileJson;
+import ca.uhn.fhir.jpa.bulk.imprt.model.BulkImportJobJson;
+import ca.uhn.fhir.jpa.bulk.imprt.model.BulkImportJobStatusEnum;
+import ca.uhn.fhir.jpa.dao.data.IBulkImportJobDao;
+import ca.uhn.fhir.jpa.dao.data.IBulkImportJobFileDao;
+import ca.uhn.fhir.jpa.entity.BulkImportJobEntity;
+import ca.uhn.fhir.jpa.entity.BulkImportJobFileEntity;
+import ca.uhn.fhir.jpa.model.sched.HapiJob;
+import ca.uhn.fhir.jpa.model.sched.ISchedulerService;
+import ca.uhn.fhir.jpa.model.sched.ScheduledJobDefinition;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.time.DateUtils;
+import org.hibernate.Session;
+import org.quartz.JobExecutionContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.JobParametersInvalidException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceContextType;
+import javax.transaction.Transactional;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+public class BulkDataImportSvcImpl implements IBulkDataImportSvc {
+	public static final int DEFAULT_BATCH_SIZE = 500;
+	/**
+	 * A {@link BulkImportJobStatusEnum#RUNNING RUNNING} job which has not stored any rows for
+	 * this long is assumed to have stalled (e.g. because the server running it was stopped),
+	 * and may be restarted
+	 */
+	public static final long DEFAULT_STALLED_JOB_TIMEOUT_MILLIS = 30 * DateUtils.MILLIS_PER_MINUTE;
+	private static final Logger ourLog = LoggerFactory.getLogger(BulkDataImportSvcImpl.class);
+
+	@Autowired
+	private IBulkImportJobDao myJobDao;
+	@Autowired
+	private IBulkImportJobFileDao myJobFileDao;
+	@Autowired
+	private PlatformTransactionManager myTxManager;
+	@PersistenceContext(type = PersistenceContextType.TRANSACTION)
+	private EntityManager myEntityManager;
+	private TransactionTemplate myTxTemplate;
+	@Autowired
+	private ISchedulerService mySchedulerService;
+	@Autowired
+	private IBatchJobSubmitter myJobSubmitter;
+	@Autowired
+	@Qualifier(BulkImportJobConfig.BULK_IMPORT_JOB_NAME)
+	private org.springframework.batch.core.Job myBulkImportJob;
+	private long myStalledJobTimeoutMillis = DEFAULT_STALLED_JOB_TIMEOUT_MILLIS;
+
+	@VisibleForTesting
+	public void setStalledJobTimeoutMillisForUnitTest(long theStalledJobTimeoutMillis) {
+		myStalledJobTimeoutMillis = theStalledJobTimeoutMillis;
+	}
+
+	@PostConstruct
+	public void start() {
+		myTxTemplate = new TransactionTemplate(myTxManager);
+
+		ScheduledJobDefinition jobDetail = new ScheduledJobDefinition();
+		jobDetail.setId(getClass().getName());
+		jobDetail.setJobClass(ActivationJob.class);
+		mySchedulerService.scheduleClusteredJob(10 * DateUtils.MILLIS_PER_SECOND, jobDetail);
+	}
+
+	@Override
+	@Transactional
+	public String createNewJob(BulkImportJobJson theJobDescription, List<BulkImportJobFileJson> theInitialFiles) {
+		Validate.notNull(theJobDescription);
+		Validate.notNull(theInitialFiles);
+
+		int batchSize = DEFAULT_BATCH_SIZE;
+		if (theJobDescription.getBatchSize() != null) {
+			batchSize = theJobDescription.getBatchSize();
+			if (batchSize < 1) {
+				throw new InvalidRequestException("Batch size must be at least 1, got: " + batchSize);
+			}
+		}
+
+		BulkImportJobEntity job = new BulkImportJobEntity();
+		job.setJobId(UUID.randomUUID().toString());
+		job.setJobDescription(theJobDescription.getJobDescription());
+		job.setBatchSize(batchSize);
+		job.setStatus(BulkImportJobStatusEnum.STAGING);
+		job = myJobDao.save(job);
+
+		addFilesToJob(job, theInitialFiles);
+
+		ourLog.info("Created bulk import job: {}", job);
+		return job.getJobId();
+	}
+
+	@Override
+	@Transactional
+	public void addFilesToJob(String theJobId, List<BulkImportJobFileJson> theFiles) {
+		BulkImportJobEntity job = findJobOrThrowResourceNotFound(theJobId);
+		if (job.getStatus() != BulkImportJobStatusEnum.STAGING) {
+			throw new InvalidRequestException("Bulk import job " + theJobId + " is not in " + BulkImportJobStatusEnum.STAGING + " status (status is " + job.getStatus() + ")");
+		}
+		addFilesToJob(job, theFiles);
+	}
+
+	private void addFilesToJob(BulkImportJobEntity theJob, List<BulkImportJobFileJson> theFiles) {
+		int fileCount = theJob.getFileCount();
+		for (BulkImportJobFileJson next : theFiles) {
+			Validate.notNull(next.getContents(), "File contents must not be null");
+
+			BulkImportJobFileEntity file = new BulkImportJobFileEntity();
+			file.setJob(theJob);
+			file.setFileSequence(fileCount++);
+			file.setFileDescription(next.getDescription());
+			byte[] contents = next.getContents().getBytes(Constants.CHARSET_UTF8);
+			file.setContents(myEntityManager.unwrap(Session.class).getLobHelper().createBlob(contents));
+			myJobFileDao.save(file);
+		}
+
+		theJob.setFileCount(fileCount);
+		myJobDao.save(theJob);
+	}
+
+	@Override
+	@Transactional
+	public void markJobAsReadyForActivation(String theJobId) {
+		BulkImportJobEntity job = findJobOrThrowResourceNotFound(theJobId);
+		if (job.getStatus() != BulkImportJobStatusEnum.STAGING) {
+			throw new InvalidRequestException("Bulk import job " + theJobId + " is not in " + BulkImportJobStatusEnum.STAGING + " status (status is " + job.getStatus() + ")");
+		}
+		job.setStatus(BulkImportJobStatusEnum.READY);
+		myJobDao.save(job);
+	}
+
+	@Override
+	@Transactional
+	public void restartJob(String theJobId) {
+		BulkImportJobEntity job = findJobOrThrowResourceNotFound(theJobId);
+		if (job.getStatus() == BulkImportJobStatusEnum.RUNNING) {
+			// Only a job which has stopped making progress can be restarted, otherwise the job would run twice
+			Date lastActivity = myJobFileDao.findLastUpdatedForJob(theJobId);
+			if (lastActivity == null || lastActivity.before(job.getStatusTime())) {
+				lastActivity = job.getStatusTime();
+			}
+			long idleMillis = System.currentTimeMillis() - lastActivity.getTime();
+			if (idleMillis < myStalledJobTimeoutMillis) {
+				throw new InvalidRequestException("Bulk import job " + theJobId + " can not be restarted because it is still running (last stored rows " + (idleMillis / DateUtils.MILLIS_PER_SECOND) + " seconds ago)");
+			}
+		} else if (job.getStatus() != BulkImportJobStatusEnum.ERROR) {
+			throw new InvalidRequestException("Bulk import job " + theJobId + " can not be restarted (status is " + job.getStatus() + ")");
+		}
+		ourLog.info("Restarting bulk import job: {}", job);
+		job.setStatus(BulkImportJobStatusEnum.READY);
+		job.setStatusMessage(null);
+		myJobDao.save(job);
+	}
+
+	@Transactional(value = Transactional.TxType.NEVER)
+	@Override
+	public synchronized boolean activateNextReadyJob() {
+		Optional<String> jobIdOpt;
+		try {
+			jobIdOpt = myTxTemplate.execute(t -> {
+				Slice<BulkImportJobEntity> readyJobs = myJobDao.findByStatus(PageRequest.of(0, 1), BulkImportJobStatusEnum.READY);
+				if (readyJobs.isEmpty()) {
+					return Optional.empty();
+				}
+
+				// The optimistic lock on the job ensures that only one server in a cluster activates it
+				BulkImportJobEntity job = readyJobs.getContent().get(0);
+				job.setStatus(BulkImportJobStatusEnum.RUNNING);
+				myJobDao.saveAndFlush(job);
+				return Optional.of(job.getJobId());
+			});
+		} catch (ObjectOptimisticLockingFailureException e) {
+			ourLog.info("Bulk import job was activated by another thread or server");
+			return false;
+		}
+
+		if (!jobIdOpt.isPresent()) {
+			return false;
+		}
+
+		String jobId = jobIdOpt.get();
+		try {
+			processJob(jobId);
+		} catch (Exception e) {
+			ourLog.error("Failure while starting bulk import job " + jobId, e);
+			myTxTemplate.execute(t -> {
+				myJobDao.findByJobId(jobId).ifPresent(job -> {
+					job.setStatus(BulkImportJobStatusEnum.ERROR);
+					job.setStatusMessage(e.getMessage());
+					myJobDao.save(job);
+				});
+				return null;
+			});
+		}
+		return true;
+	}
+
+	private void processJob(String theJobId) throws JobParametersInvalidException {
+		BulkImportJobEntity job = myTxTemplate.execute(t -> findJobOrThrowResourceNotFound(theJobId));
+		JobParameters parameters = new JobParametersBuilder()
+			.addString(BulkImportJobConfig.JOB_PARAM_JOB_UUID, theJobId)
+			.addLong(BulkImportJobConfig.JOB_PARAM_BATCH_SIZE, (long) job.getBatchSize())
+			// Allows a job which failed to be launched again
+			.addLong("runTime", System.currentTimeMillis())
+			.toJobParameters();
+
+		ourLog.info("Submitting bulk import job {} to job scheduler", theJobId);
+		myJobSubmitter.runJob(myBulkImportJob, parameters);
+	}
+
+	@Override
+	@Transactional
+	public JobInfo getJobInfoOrThrowResourceNotFound(String theJobId) {
+		BulkImportJobEntity job = findJobOrThrowResourceNotFound(theJobId);
+
+		JobInfo retVal = new JobInfo()
+			.setJobId(job.getJobId())
+			.setStatus(job.getStatus())
+			.setStatusTime(job.getStatusTime())
+			.setStatusMessage(job.getStatusMessage())
+			.setJobDescription(job.getJobDescription());
+		for (BulkImportJobFileEntity next : myJobFileDao.findForJob(theJobId)) {
+			retVal.addFile()
+				.setFileIndex(next.getFileSequence())
+				.setDescription(next.getFileDescription())
+				.setRowsProcessed(next.getRowsProcessed());
+		}
+		return retVal;
+	}
+
+	@Override
+	@Transactional
+	public void cancelAndPurgeAllJobs() {
+		ourLog.info("Deleting all bulk import files");
+		myJobFileDao.deleteAllFiles();
+		ourLog.info("Deleting all bulk import jobs");
+		myJobDao.deleteAllJobs();
+	}
+
+	private BulkImportJobEntity findJobOrThrowResourceNotFound(String theJobId) {
+		return myJobDao
+			.findByJobId(theJobId)
+			.orElseThrow(() -> new ResourceNotFoundException("Unknown bulk import job: " + theJobId));
+	}
+
+	public static class ActivationJob implements HapiJob {
+		@Autowired
+		private IBulkDataImportSvc myTarget;
+
+		@Override
+		public void execute(JobExecutionContext theContext) {
+			myTarget.activateNextReadyJob();
+		}
+	}
+
+}
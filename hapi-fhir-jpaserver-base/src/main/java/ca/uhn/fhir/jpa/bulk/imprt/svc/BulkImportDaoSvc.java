@@ -0,0 +1,120 @@
+package ca.uhn.fhir.jpa.bulk.imprt.svc;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.bulk.imprt.model.BulkImportJobStatusEnum;
+import ca.uhn.fhir.jpa.dao.data.IBulkImportJobDao;
+import ca.uhn.fhir.jpa.dao.data.IBulkImportJobFileDao;
+import ca.uhn.fhir.jpa.entity.BulkImportJobEntity;
+import ca.uhn.fhir.jpa.entity.BulkImportJobFileEntity;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.transaction.Transactional;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Blob;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Database access used by the steps of the bulk import batch job
+ */
+@Service
+public class BulkImportDaoSvc {
+	private static final Logger ourLog = getLogger(BulkImportDaoSvc.class);
+
+	@Autowired
+	private IBulkImportJobDao myJobDao;
+	@Autowired
+	private IBulkImportJobFileDao myJobFileDao;
+
+	@Transactional
+	public List<BulkImportJobFileEntity> getFilesForJob(String theJobId) {
+		return myJobFileDao.findForJob(theJobId);
+	}
+
+	/**
+	 * Loads a file. The contents can not be read from the returned entity, use
+	 * {@link #copyContentsTo(Long, OutputStream)} for that.
+	 */
+	@Transactional
+	public BulkImportJobFileEntity getFile(Long theFilePid) {
+		return myJobFileDao.findById(theFilePid).orElseThrow(() -> new IllegalStateException("Unknown bulk import file: " + theFilePid));
+	}
+
+	/**
+	 * Streams the contents of a file to the given stream, without holding the whole file in memory
+	 *
+	 * @return Returns <code>false</code> if the file contents are no longer available
+	 */
+	@Transactional
+	public boolean copyContentsTo(Long theFilePid, OutputStream theOutputStream) throws IOException {
+		Blob contents = getFile(theFilePid).getContents();
+		if (contents == null) {
+			return false;
+		}
+		try (InputStream inputStream = contents.getBinaryStream()) {
+			IOUtils.copy(inputStream, theOutputStream);
+		} catch (SQLException e) {
+			throw new IOException(e);
+		}
+		return true;
+	}
+
+	/**
+	 * Must be called in the same transaction that stores the rows, so that the count
+	 * can be used as a checkpoint if the job is restarted. This also records the time
+	 * the file was last updated, which is used to tell whether a running job has stalled.
+	 */
+	@Transactional(Transactional.TxType.MANDATORY)
+	public void incrementRowsProcessed(Long theFilePid, int theCount) {
+		myJobFileDao.incrementRowsProcessed(theFilePid, theCount, new Date());
+	}
+
+	@Transactional
+	public void setJobToStatus(String theJobId, BulkImportJobStatusEnum theStatus, String theStatusMessage) {
+		Optional<BulkImportJobEntity> jobOpt = myJobDao.findByJobId(theJobId);
+		if (!jobOpt.isPresent()) {
+			ourLog.warn("Bulk import job with UUID {} appears to be deleted", theJobId);
+			return;
+		}
+
+		ourLog.info("Setting bulk import job with UUID {} to {}", theJobId, theStatus);
+		BulkImportJobEntity job = jobOpt.get();
+		job.setStatus(theStatus);
+		job.setStatusMessage(theStatusMessage);
+		myJobDao.save(job);
+
+		// The file contents are not needed once all rows are stored
+		if (theStatus == BulkImportJobStatusEnum.COMPLETE) {
+			myJobFileDao.clearContentsForJob(job.getId());
+		}
+	}
+
+}
@@ -20,35 +20,51 @@ package ca.uhn.fhir.jpa.bulk.job;
  * #L%
  */
 
-import ca.uhn.fhir.context.FhirContext;
-import ca.uhn.fhir.interceptor.model.RequestPartitionId;
-import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
-import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
 import ca.uhn.fhir.jpa.batch.log.Logs;
-import ca.uhn.fhir.jpa.dao.IResultIterator;
-import ca.uhn.fhir.jpa.dao.ISearchBuilder;
-import ca.uhn.fhir.jpa.dao.SearchBuilderFactory;
 import ca.uhn.fhir.jpa.dao.data.IBulkExportJobDao;
+import ca.uhn.fhir.jpa.dao.data.IResourceTableDao;
 import ca.uhn.fhir.jpa.entity.BulkExportJobEntity;
-import ca.uhn.fhir.jpa.model.search.SearchRuntimeDetails;
-import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
 import ca.uhn.fhir.rest.api.server.storage.ResourcePersistentId;
-import ca.uhn.fhir.rest.param.DateRangeParam;
-import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.slf4j.Logger;
-import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
 import org.springframework.batch.item.NonTransientResourceException;
 import org.springframework.batch.item.ParseException;
 import org.springframework.batch.item.UnexpectedInputException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
-public class BulkItemReader implements ItemReader<List<ResourcePersistentId>> {
+/**
+ * Reads the PIDs of the resources to export for a single resource type, one window of
+ * <code>readChunkSize</code> PIDs at a time.
+ * <p>
+ * Resources are read in order of last updated time and then PID, and each window is fetched
+ * starting after the last key read by the previous one, so memory use does not depend on the
+ * number of resources being exported. The last key read is stored in the step
+ * {@link ExecutionContext} when each chunk is committed, so a restarted step resumes after
+ * the last chunk that was written.
+ * </p>
+ * <p>
+ * The time at which the step first started reading is also stored in the execution context, and
+ * only resources last updated at or before that time are read. Resources which are updated while
+ * the export is running would otherwise move to the end of the ordering and be exported twice, so
+ * they are left out of this export instead (a later export using <code>_since</code> will pick
+ * them up).
+ * </p>
+ */
+public class BulkItemReader implements ItemStreamReader<List<ResourcePersistentId>> {
+	public static final String CONTEXT_KEY_LAST_UPDATED = "bulkExportLastUpdated";
+	public static final String CONTEXT_KEY_LAST_PID = "bulkExportLastPid";
+	public static final String CONTEXT_KEY_READ_START = "bulkExportReadStart";
 	private static final Logger ourLog = Logs.getBatchTroubleshootingLog();
 
 	@Value("#{jobParameters['readChunkSize']}")
@@ -58,13 +74,7 @@ public class BulkItemReader implements ItemReader<List<ResourcePersistentId>> {
 	private IBulkExportJobDao myBulkExportJobDao;
 
 	@Autowired
-	private DaoRegistry myDaoRegistry;
-
-	@Autowired
-	private FhirContext myContext;
-
-	@Autowired
-	private SearchBuilderFactory mySearchBuilderFactory;
+	private IResourceTableDao myResourceTableDao;
 
 	private BulkExportJobEntity myJobEntity;
 
@@ -74,51 +84,81 @@ public class BulkItemReader implements ItemReader<List<ResourcePersistentId>> {
 	@Value("#{stepExecutionContext['resourceType']}")
 	private String myResourceType;
 
-	Iterator<ResourcePersistentId> myPidIterator;
+	private Date myReadStart;
+	private Date myLastUpdated;
+	private Long myLastPid;
+	private boolean myFinished;
 
-	private void loadResourcePids() {
+	@Override
+	public void open(ExecutionContext theExecutionContext) throws ItemStreamException {
+		if (theExecutionContext.containsKey(CONTEXT_KEY_READ_START)) {
+			myReadStart = new Date(theExecutionContext.getLong(CONTEXT_KEY_READ_START));
+		} else {
+			myReadStart = new Date();
+		}
+		if (theExecutionContext.containsKey(CONTEXT_KEY_LAST_UPDATED)) {
+			myLastUpdated = new Date(theExecutionContext.getLong(CONTEXT_KEY_LAST_UPDATED));
+			myLastPid = theExecutionContext.getLong(CONTEXT_KEY_LAST_PID);
+			ourLog.info("Bulk export resuming export of type {} for job {} after resource {} updated at {}", myResourceType, myJobUUID, myLastPid, myLastUpdated);
+		}
+	}
+
+	@Override
+	public void update(ExecutionContext theExecutionContext) throws ItemStreamException {
+		theExecutionContext.putLong(CONTEXT_KEY_READ_START, myReadStart.getTime());
+		if (myLastUpdated != null) {
+			theExecutionContext.putLong(CONTEXT_KEY_LAST_UPDATED, myLastUpdated.getTime());
+			theExecutionContext.putLong(CONTEXT_KEY_LAST_PID, myLastPid);
+		}
+	}
+
+	@Override
+	public void close() throws ItemStreamException {
+		// nothing
+	}
+
+	private boolean loadJob() {
 		Optional<BulkExportJobEntity> jobOpt = myBulkExportJobDao.findByJobId(myJobUUID);
 		if (!jobOpt.isPresent()) {
 			ourLog.warn("Job appears to be deleted");
-			return;
+			return false;
 		}
 		myJobEntity = jobOpt.get();
 		ourLog.info("Bulk export starting generation for batch export job: {}", myJobEntity);
-
-		IFhirResourceDao dao = myDaoRegistry.getResourceDao(myResourceType);
-
 		ourLog.info("Bulk export assembling export of type {} for job {}", myResourceType, myJobUUID);
+		return true;
+	}
 
-		Class<? extends IBaseResource> nextTypeClass = myContext.getResourceDefinition(myResourceType).getImplementingClass();
-		ISearchBuilder sb = mySearchBuilderFactory.newSearchBuilder(dao, myResourceType, nextTypeClass);
-
-		SearchParameterMap map = new SearchParameterMap();
-		map.setLoadSynchronous(true);
-		if (myJobEntity.getSince() != null) {
-			map.setLastUpdated(new DateRangeParam(myJobEntity.getSince(), null));
+	@Override
+	public List<ResourcePersistentId> read() throws Exception, UnexpectedInputException, ParseException, NonTransientResourceException {
+		if (myFinished) {
+			return null;
+		}
+		if (myJobEntity == null && !loadJob()) {
+			myFinished = true;
+			return null;
 		}
 
-		IResultIterator myResultIterator = sb.createQuery(map, new SearchRuntimeDetails(null, myJobUUID), null, RequestPartitionId.allPartitions());
-		List<ResourcePersistentId> myReadPids = new ArrayList<>();
-		while (myResultIterator.hasNext()) {
-			myReadPids.add(myResultIterator.next());
+		Pageable page = PageRequest.of(0, READ_CHUNK_SIZE.intValue());
+		Slice<Object[]> rows;
+		if (myLastUpdated == null) {
+			Date low = myJobEntity.getSince() != null ? myJobEntity.getSince() : new Date(0);
+			rows = myResourceTableDao.findIdsAndUpdatedOfResourcesOfType(page, myResourceType, low, myReadStart);
+		} else {
+			rows = myResourceTableDao.findIdsAndUpdatedOfResourcesOfTypeAfter(page, myResourceType, myLastUpdated, myLastPid, myReadStart);
 		}
-		myPidIterator = myReadPids.iterator();
-	}
 
-	@Override
-	public List<ResourcePersistentId> read() throws Exception, UnexpectedInputException, ParseException, NonTransientResourceException {
-		if (myPidIterator == null) {
-			loadResourcePids();
+		List<ResourcePersistentId> outgoing = new ArrayList<>(rows.getNumberOfElements());
+		for (Object[] next : rows) {
+			myLastPid = (Long) next[0];
+			myLastUpdated = new Date(((Date) next[1]).getTime());
+			outgoing.add(new ResourcePersistentId(myLastPid));
 		}
-		int count = 0;
-		List<ResourcePersistentId> outgoing = new ArrayList<>();
-		while (myPidIterator.hasNext() && count < READ_CHUNK_SIZE) {
-			outgoing.add(myPidIterator.next());
-			count += 1;
+
+		if (!rows.hasNext()) {
+			myFinished = true;
 		}
 
 		return outgoing.size() == 0 ? null : outgoing;
-
 	}
 }
@@ -24,24 +24,32 @@ import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
 import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
 import ca.uhn.fhir.jpa.batch.log.Logs;
+import ca.uhn.fhir.jpa.bulk.api.IBulkExportFileStorageSvc;
 import ca.uhn.fhir.jpa.bulk.svc.BulkExportDaoSvc;
 import ca.uhn.fhir.jpa.entity.BulkExportCollectionFileEntity;
 import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.util.BinaryUtil;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.hl7.fhir.instance.model.api.IBaseBinary;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.slf4j.Logger;
 import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.PostConstruct;
 import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
 import java.util.List;
 import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
 
 public class ResourceToFileWriter implements ItemWriter<List<IBaseResource>> {
 	private static final Logger ourLog = Logs.getBatchTroubleshootingLog();
@@ -55,6 +63,13 @@ public class ResourceToFileWriter implements ItemWriter<List<IBaseResource>> {
 	@Autowired
 	private BulkExportDaoSvc myBulkExportDaoSvc;
 
+	/**
+	 * Optional - Looked up through a provider because this writer is step scoped
+	 */
+	@Autowired
+	private ObjectProvider<IBulkExportFileStorageSvc> myFileStorageSvcProvider;
+	private IBulkExportFileStorageSvc myFileStorageSvc;
+
 	private ByteArrayOutputStream myOutputStream;
 	private OutputStreamWriter myWriter;
 	private IParser myParser;
@@ -65,6 +80,9 @@ public class ResourceToFileWriter implements ItemWriter<List<IBaseResource>> {
 	@Value("#{stepExecutionContext['resourceType']}")
 	private String myReosurceType;
 
+	@Value("#{jobExecutionContext['jobUUID']}")
+	private String myJobUUID;
+
 	private IFhirResourceDao<IBaseBinary> myBinaryDao;
 
 
@@ -77,6 +95,7 @@ public class ResourceToFileWriter implements ItemWriter<List<IBaseResource>> {
 	public void start() {
 		myParser = myFhirContext.newJsonParser().setPrettyPrint(false);
 		myBinaryDao = getBinaryDao();
+		myFileStorageSvc = myFileStorageSvcProvider.getIfAvailable();
 	}
 
 	private Optional<IIdType> flushToFiles() {
@@ -109,8 +128,77 @@ public class ResourceToFileWriter implements ItemWriter<List<IBaseResource>> {
 		return myDaoRegistry.getResourceDao("Binary");
 	}
 
+	/**
+	 * Streams the resources to a new file in the {@link IBulkExportFileStorageSvc} instead
+	 * of buffering them in memory, and stores only the file metadata in the database.
+	 * If writing the file fails, or the chunk transaction is rolled back, the partly
+	 * written file is deleted.
+	 */
+	private void writeToFileStorage(List<? extends List<IBaseResource>> theList) throws Exception {
+		IBulkExportFileStorageSvc.IWritableFile file = myFileStorageSvc.createFile(myJobUUID, myReosurceType);
+		try {
+			writeToFile(file, theList);
+		} catch (Exception | Error e) {
+			ourLog.warn("Failed to write bulk export file {}, deleting it", file.getStorageKey());
+			myFileStorageSvc.deleteFile(file.getStorageKey());
+			throw e;
+		}
+	}
+
+	private void writeToFile(IBulkExportFileStorageSvc.IWritableFile theFile, List<? extends List<IBaseResource>> theList) throws Exception {
+		boolean gzip = myFileStorageSvc.isGzipEnabled();
+
+		int count = 0;
+		CountingOutputStream countingOutputStream;
+		try (OutputStream channelOutputStream = Channels.newOutputStream(theFile.getChannel())) {
+			countingOutputStream = new CountingOutputStream(channelOutputStream);
+			OutputStream outputStream = gzip ? new GZIPOutputStream(countingOutputStream) : countingOutputStream;
+			try (OutputStreamWriter writer = new OutputStreamWriter(outputStream, Constants.CHARSET_UTF8)) {
+				for (List<IBaseResource> resourceList : theList) {
+					for (IBaseResource nextFileResource : resourceList) {
+						myParser.encodeResourceToWriter(nextFileResource, writer);
+						writer.append("\n");
+						count++;
+					}
+				}
+			}
+		}
+
+		if (count == 0) {
+			myFileStorageSvc.deleteFile(theFile.getStorageKey());
+			return;
+		}
+
+		BulkExportCollectionFileEntity entity = new BulkExportCollectionFileEntity();
+		entity.setStorageKey(theFile.getStorageKey());
+		entity.setSize(countingOutputStream.getByteCount());
+		entity.setResourceCount(count);
+		entity.setGzip(gzip);
+		myBulkExportDaoSvc.addFileToCollectionWithId(myBulkExportCollectionEntityId, entity);
+
+		// The file is only referenced once the chunk commits, so remove it if that doesn't happen
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			String storageKey = theFile.getStorageKey();
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int theStatus) {
+					if (theStatus != STATUS_COMMITTED) {
+						ourLog.warn("Bulk export chunk was not committed, deleting file {}", storageKey);
+						myFileStorageSvc.deleteFile(storageKey);
+					}
+				}
+			});
+		}
+
+		ourLog.info("Wrote {} resources of type {} to bulk export file {} ({} bytes)", count, myReosurceType, theFile.getStorageKey(), countingOutputStream.getByteCount());
+	}
+
 	@Override
 	public void write(List<? extends List<IBaseResource>> theList) throws Exception {
+		if (myFileStorageSvc != null) {
+			writeToFileStorage(theList);
+			return;
+		}
 
 		int count = 0;
 		for (List<IBaseResource> resourceList : theList) {
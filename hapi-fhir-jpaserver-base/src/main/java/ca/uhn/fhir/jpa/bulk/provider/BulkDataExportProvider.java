@@ -22,6 +22,7 @@ package ca.uhn.fhir.jpa.bulk.provider;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.jpa.bulk.api.IBulkDataExportSvc;
+import ca.uhn.fhir.jpa.bulk.api.IBulkExportFileStorageSvc;
 import ca.uhn.fhir.jpa.bulk.model.BulkExportResponseJson;
 import ca.uhn.fhir.jpa.model.util.JpaConstants;
 import ca.uhn.fhir.rest.annotation.Operation;
@@ -30,11 +31,13 @@ import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.PreferHeader;
 import ca.uhn.fhir.rest.server.RestfulServerUtils;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
 import ca.uhn.fhir.util.ArrayUtil;
 import ca.uhn.fhir.util.JsonUtil;
 import ca.uhn.fhir.util.OperationOutcomeUtil;
 import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.instance.model.api.IBaseOperationOutcome;
 import org.hl7.fhir.instance.model.api.IPrimitiveType;
@@ -43,8 +46,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
 import java.util.Date;
+import java.util.Objects;
 import java.util.Set;
+import java.util.zip.GZIPInputStream;
 
 public class BulkDataExportProvider {
 
@@ -52,6 +59,8 @@ public class BulkDataExportProvider {
 	private IBulkDataExportSvc myBulkDataExportSvc;
 	@Autowired
 	private FhirContext myFhirContext;
+	@Autowired(required = false)
+	private IBulkExportFileStorageSvc myFileStorageSvc;
 
 	@VisibleForTesting
 	public void setFhirContextForUnitTest(FhirContext theFhirContext) {
@@ -63,6 +72,11 @@ public class BulkDataExportProvider {
 		myBulkDataExportSvc = theBulkDataExportSvc;
 	}
 
+	@VisibleForTesting
+	public void setFileStorageSvcForUnitTests(IBulkExportFileStorageSvc theFileStorageSvc) {
+		myFileStorageSvc = theFileStorageSvc;
+	}
+
 	/**
 	 * $export
 	 */
@@ -147,7 +161,12 @@ public class BulkDataExportProvider {
 				bulkResponseDocument.setRequest(status.getRequest());
 				for (IBulkDataExportSvc.FileEntry nextFile : status.getFiles()) {
 					String serverBase = getServerBase(theRequestDetails);
-					String nextUrl = serverBase + "/" + nextFile.getResourceId().toUnqualifiedVersionless().getValue();
+					String nextUrl;
+					if (nextFile.getResourceId() != null) {
+						nextUrl = serverBase + "/" + nextFile.getResourceId().toUnqualifiedVersionless().getValue();
+					} else {
+						nextUrl = serverBase + "/" + JpaConstants.OPERATION_EXPORT_DOWNLOAD + "?" + JpaConstants.PARAM_EXPORT_POLL_STATUS_JOB_ID + "=" + status.getJobId() + "&" + JpaConstants.PARAM_EXPORT_DOWNLOAD_FILE_ID + "=" + nextFile.getFileId();
+					}
 					bulkResponseDocument
 						.addOutput()
 						.setType(nextFile.getResourceType())
@@ -173,6 +192,75 @@ public class BulkDataExportProvider {
 
 	}
 
+	/**
+	 * $export-download
+	 * <p>
+	 * Serves a bulk export file held in the {@link IBulkExportFileStorageSvc}. The file is copied
+	 * directly from storage to the response without being loaded into memory.
+	 * </p>
+	 */
+	@Operation(name = JpaConstants.OPERATION_EXPORT_DOWNLOAD, manualResponse = true, idempotent = true)
+	public void exportDownload(
+		@OperationParam(name = JpaConstants.PARAM_EXPORT_POLL_STATUS_JOB_ID, typeName = "string", min = 1, max = 1) IPrimitiveType<String> theJobId,
+		@OperationParam(name = JpaConstants.PARAM_EXPORT_DOWNLOAD_FILE_ID, typeName = "string", min = 1, max = 1) IPrimitiveType<String> theFileId,
+		ServletRequestDetails theRequestDetails
+	) throws IOException {
+
+		if (myFileStorageSvc == null) {
+			throw new InvalidRequestException("Bulk export file storage is not enabled on this server");
+		}
+		if (theJobId == null || theFileId == null) {
+			throw new InvalidRequestException("Missing " + JpaConstants.PARAM_EXPORT_POLL_STATUS_JOB_ID + " or " + JpaConstants.PARAM_EXPORT_DOWNLOAD_FILE_ID + " parameter");
+		}
+
+		IBulkDataExportSvc.JobInfo status = myBulkDataExportSvc.getJobInfoOrThrowResourceNotFound(theJobId.getValueAsString());
+		IBulkDataExportSvc.FileEntry file = status
+			.getFiles()
+			.stream()
+			.filter(t -> t.getStorageKey() != null)
+			.filter(t -> Objects.equals(theFileId.getValueAsString(), String.valueOf(t.getFileId())))
+			.findFirst()
+			.orElseThrow(() -> new ResourceNotFoundException("Unknown file ID " + theFileId.getValueAsString() + " for bulk export job " + theJobId.getValueAsString()));
+
+		HttpServletResponse response = theRequestDetails.getServletResponse();
+		theRequestDetails.getServer().addHeadersToResponse(response);
+
+		// Compressed files are decompressed as they are served to clients which don't accept gzip
+		if (file.isGzip() && !theRequestDetails.isRespondGzip()) {
+			InputStream inputStream = myFileStorageSvc.openInputStream(file.getStorageKey());
+			if (inputStream == null) {
+				throw newFileNoLongerAvailableException(theFileId);
+			}
+			response.setStatus(Constants.STATUS_HTTP_200_OK);
+			response.setContentType(Constants.CT_FHIR_NDJSON);
+			try (InputStream gzipInputStream = new GZIPInputStream(inputStream)) {
+				IOUtils.copy(gzipInputStream, response.getOutputStream());
+			}
+			response.getOutputStream().close();
+			return;
+		}
+
+		response.setStatus(Constants.STATUS_HTTP_200_OK);
+		response.setContentType(Constants.CT_FHIR_NDJSON);
+		if (file.isGzip()) {
+			response.addHeader(Constants.HEADER_CONTENT_ENCODING, Constants.ENCODING_GZIP);
+		}
+		if (file.getSize() != null) {
+			response.setContentLengthLong(file.getSize());
+		}
+
+		if (!myFileStorageSvc.transferTo(file.getStorageKey(), Channels.newChannel(response.getOutputStream()))) {
+			// Nothing has been written yet, so discard the headers before the error is rendered
+			response.reset();
+			throw newFileNoLongerAvailableException(theFileId);
+		}
+		response.getOutputStream().close();
+	}
+
+	private static ResourceNotFoundException newFileNoLongerAvailableException(IPrimitiveType<String> theFileId) {
+		return new ResourceNotFoundException("Bulk export file " + theFileId.getValueAsString() + " is no longer available");
+	}
+
 	private String getServerBase(ServletRequestDetails theRequestDetails) {
 		return StringUtils.removeEnd(theRequestDetails.getServerBaseForRequest(), "/");
 	}
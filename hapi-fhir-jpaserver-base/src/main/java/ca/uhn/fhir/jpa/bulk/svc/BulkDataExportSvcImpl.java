@@ -26,6 +26,7 @@ import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
 import ca.uhn.fhir.jpa.api.model.ExpungeOptions;
 import ca.uhn.fhir.jpa.batch.api.IBatchJobSubmitter;
 import ca.uhn.fhir.jpa.bulk.api.IBulkDataExportSvc;
+import ca.uhn.fhir.jpa.bulk.api.IBulkExportFileStorageSvc;
 import ca.uhn.fhir.jpa.bulk.model.BulkJobStatusEnum;
 import ca.uhn.fhir.jpa.dao.data.IBulkExportCollectionDao;
 import ca.uhn.fhir.jpa.dao.data.IBulkExportCollectionFileDao;
@@ -40,6 +41,7 @@ import ca.uhn.fhir.jpa.model.util.JpaConstants;
 import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import com.google.common.annotations.VisibleForTesting;
 import org.apache.commons.lang3.time.DateUtils;
 import org.hl7.fhir.instance.model.api.IBaseBinary;
 import org.hl7.fhir.instance.model.api.IIdType;
@@ -93,6 +95,8 @@ public class BulkDataExportSvcImpl implements IBulkDataExportSvc {
 
 	@Autowired
 	private IBatchJobSubmitter myJobSubmitter;
+	@Autowired(required = false)
+	private IBulkExportFileStorageSvc myFileStorageSvc;
 
 	@Autowired
 	@Qualifier("bulkExportJob")
@@ -168,9 +172,15 @@ public class BulkDataExportSvcImpl implements IBulkDataExportSvc {
 				for (BulkExportCollectionEntity nextCollection : job.getCollections()) {
 					for (BulkExportCollectionFileEntity nextFile : nextCollection.getFiles()) {
 
-						ourLog.info("Purging bulk data file: {}", nextFile.getResourceId());
-						getBinaryDao().delete(toId(nextFile.getResourceId()));
-						getBinaryDao().forceExpungeInExistingTransaction(toId(nextFile.getResourceId()), new ExpungeOptions().setExpungeDeletedResources(true).setExpungeOldVersions(true), null);
+						if (nextFile.getResourceId() != null) {
+							ourLog.info("Purging bulk data file: {}", nextFile.getResourceId());
+							getBinaryDao().delete(toId(nextFile.getResourceId()));
+							getBinaryDao().forceExpungeInExistingTransaction(toId(nextFile.getResourceId()), new ExpungeOptions().setExpungeDeletedResources(true).setExpungeOldVersions(true), null);
+						}
+						if (nextFile.getStorageKey() != null && myFileStorageSvc != null) {
+							ourLog.info("Purging bulk data file: {}", nextFile.getStorageKey());
+							myFileStorageSvc.deleteFile(nextFile.getStorageKey());
+						}
 						myBulkExportCollectionFileDao.deleteByPid(nextFile.getId());
 
 					}
@@ -208,6 +218,11 @@ public class BulkDataExportSvcImpl implements IBulkDataExportSvc {
 		return myDaoRegistry.getResourceDao("Binary");
 	}
 
+	@VisibleForTesting
+	public void setFileStorageSvcForUnitTests(IBulkExportFileStorageSvc theFileStorageSvc) {
+		myFileStorageSvc = theFileStorageSvc;
+	}
+
 	@PostConstruct
 	public void start() {
 		myTxTemplate = new TransactionTemplate(myTxManager);
@@ -338,9 +353,15 @@ public class BulkDataExportSvcImpl implements IBulkDataExportSvc {
 		if (job.getStatus() == BulkJobStatusEnum.COMPLETE) {
 			for (BulkExportCollectionEntity nextCollection : job.getCollections()) {
 				for (BulkExportCollectionFileEntity nextFile : nextCollection.getFiles()) {
-					retVal.addFile()
+					FileEntry fileEntry = retVal.addFile()
 						.setResourceType(nextCollection.getResourceType())
-						.setResourceId(toQualifiedBinaryId(nextFile.getResourceId()));
+						.setFileId(nextFile.getId())
+						.setStorageKey(nextFile.getStorageKey())
+						.setSize(nextFile.getSize())
+						.setGzip(nextFile.isGzip());
+					if (nextFile.getResourceId() != null) {
+						fileEntry.setResourceId(toQualifiedBinaryId(nextFile.getResourceId()));
+					}
 				}
 			}
 		}
@@ -0,0 +1,153 @@
+package ca.uhn.fhir.jpa.bulk.svc;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.bulk.api.IBulkExportFileStorageSvc;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Stores bulk export files in a directory on the local filesystem. Files are served
+ * using {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which avoids
+ * copying the file contents through the heap when the target channel supports it.
+ */
+public class FilesystemBulkExportFileStorageSvcImpl implements IBulkExportFileStorageSvc {
+
+	private static final Logger ourLog = LoggerFactory.getLogger(FilesystemBulkExportFileStorageSvcImpl.class);
+	private final Path myBasePath;
+	private boolean myGzipEnabled;
+
+	public FilesystemBulkExportFileStorageSvcImpl(String theBasePath) {
+		Validate.notBlank(theBasePath);
+		myBasePath = Paths.get(theBasePath).toAbsolutePath().normalize();
+	}
+
+	@PostConstruct
+	public void start() throws IOException {
+		ourLog.info("Starting bulk export file storage service with base path: {}", myBasePath);
+		Files.createDirectories(myBasePath);
+	}
+
+	@Override
+	public boolean isGzipEnabled() {
+		return myGzipEnabled;
+	}
+
+	/**
+	 * Should files be compressed using GZip (default is <code>false</code>)
+	 */
+	public void setGzipEnabled(boolean theGzipEnabled) {
+		myGzipEnabled = theGzipEnabled;
+	}
+
+	@Override
+	public IWritableFile createFile(String theJobId, String theResourceType) throws IOException {
+		Validate.notBlank(theJobId);
+		Validate.notBlank(theResourceType);
+
+		String storageKey = theJobId + "/" + theResourceType + "-" + UUID.randomUUID().toString() + ".ndjson";
+		if (myGzipEnabled) {
+			storageKey = storageKey + ".gz";
+		}
+
+		Path path = toPath(storageKey);
+		Files.createDirectories(path.getParent());
+		ourLog.debug("Writing bulk export file: {}", path);
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+
+		String finalStorageKey = storageKey;
+		return new IWritableFile() {
+			@Override
+			public String getStorageKey() {
+				return finalStorageKey;
+			}
+
+			@Override
+			public WritableByteChannel getChannel() {
+				return channel;
+			}
+		};
+	}
+
+	@Override
+	public boolean transferTo(String theStorageKey, WritableByteChannel theTarget) throws IOException {
+		Path path = toPath(theStorageKey);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long position = 0;
+			while (position < size) {
+				position += channel.transferTo(position, size - position, theTarget);
+			}
+			return true;
+		} catch (NoSuchFileException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public InputStream openInputStream(String theStorageKey) throws IOException {
+		try {
+			return Files.newInputStream(toPath(theStorageKey), StandardOpenOption.READ);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public void deleteFile(String theStorageKey) {
+		Path path = toPath(theStorageKey);
+		try {
+			Files.deleteIfExists(path);
+			Path parent = path.getParent();
+			if (!parent.equals(myBasePath)) {
+				try (Stream<Path> children = Files.list(parent)) {
+					if (!children.findAny().isPresent()) {
+						Files.deleteIfExists(parent);
+					}
+				}
+			}
+		} catch (IOException e) {
+			ourLog.warn("Failed to delete bulk export file {}: {}", path, e.toString());
+		}
+	}
+
+	private Path toPath(String theStorageKey) {
+		Validate.notBlank(theStorageKey);
+		Path retVal = myBasePath.resolve(theStorageKey).normalize();
+		Validate.isTrue(retVal.startsWith(myBasePath) && !retVal.equals(myBasePath), "Invalid storage key: %s", theStorageKey);
+		return retVal;
+	}
+
+}
@@ -14,6 +14,9 @@ import ca.uhn.fhir.jpa.batch.svc.BatchJobSubmitterImpl;
 import ca.uhn.fhir.jpa.binstore.BinaryAccessProvider;
 import ca.uhn.fhir.jpa.binstore.BinaryStorageInterceptor;
 import ca.uhn.fhir.jpa.bulk.api.IBulkDataExportSvc;
+import ca.uhn.fhir.jpa.bulk.imprt.api.IBulkDataImportSvc;
+import ca.uhn.fhir.jpa.bulk.imprt.provider.BulkDataImportProvider;
+import ca.uhn.fhir.jpa.bulk.imprt.svc.BulkDataImportSvcImpl;
 import ca.uhn.fhir.jpa.bulk.provider.BulkDataExportProvider;
 import ca.uhn.fhir.jpa.bulk.svc.BulkDataExportSvcImpl;
 import ca.uhn.fhir.jpa.dao.HistoryBuilder;
@@ -50,11 +53,13 @@ import ca.uhn.fhir.jpa.search.PersistedJpaBundleProvider;
 import ca.uhn.fhir.jpa.search.PersistedJpaBundleProviderFactory;
 import ca.uhn.fhir.jpa.search.PersistedJpaSearchFirstPageBundleProvider;
 import ca.uhn.fhir.jpa.search.SearchCoordinatorSvcImpl;
+import ca.uhn.fhir.jpa.search.SearchIncludeQueryExecutor;
 import ca.uhn.fhir.jpa.search.StaleSearchDeletingSvcImpl;
 import ca.uhn.fhir.jpa.search.cache.DatabaseSearchCacheSvcImpl;
 import ca.uhn.fhir.jpa.search.cache.DatabaseSearchResultCacheSvcImpl;
 import ca.uhn.fhir.jpa.search.cache.ISearchCacheSvc;
 import ca.uhn.fhir.jpa.search.cache.ISearchResultCacheSvc;
+import ca.uhn.fhir.jpa.search.plan.SearchQueryPlanCache;
 import ca.uhn.fhir.jpa.search.reindex.IResourceReindexingSvc;
 import ca.uhn.fhir.jpa.search.reindex.ResourceReindexingSvcImpl;
 import ca.uhn.fhir.jpa.searchparam.config.SearchParamConfig;
@@ -227,6 +232,16 @@ public abstract class BaseConfig {
 		return new MemoryCacheService();
 	}
 
+	@Bean
+	public SearchQueryPlanCache searchQueryPlanCache() {
+		return new SearchQueryPlanCache();
+	}
+
+	@Bean
+	public SearchIncludeQueryExecutor searchIncludeQueryExecutor() {
+		return new SearchIncludeQueryExecutor();
+	}
+
 	@Bean
 	@Primary
 	public IResourceLinkResolver daoResourceLinkResolver() {
@@ -408,6 +423,18 @@ public abstract class BaseConfig {
 		return new BulkDataExportProvider();
 	}
 
+	@Bean
+	@Lazy
+	public IBulkDataImportSvc bulkDataImportSvc() {
+		return new BulkDataImportSvcImpl();
+	}
+
+	@Bean
+	@Lazy
+	public BulkDataImportProvider bulkDataImportProvider() {
+		return new BulkDataImportProvider();
+	}
+
 
 	@Bean
 	public PersistedJpaBundleProviderFactory persistedJpaBundleProviderFactory() {
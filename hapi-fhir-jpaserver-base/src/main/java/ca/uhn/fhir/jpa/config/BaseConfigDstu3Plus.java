@@ -25,9 +25,11 @@ import ca.uhn.fhir.context.support.IValidationSupport;
 import ca.uhn.fhir.jpa.dao.JpaPersistedResourceValidationSupport;
 import ca.uhn.fhir.jpa.dao.ObservationLastNIndexPersistSvc;
 import ca.uhn.fhir.jpa.term.TermCodeSystemStorageSvcImpl;
+import ca.uhn.fhir.jpa.term.TermConceptClosureIndexSvcImpl;
 import ca.uhn.fhir.jpa.term.TermDeferredStorageSvcImpl;
 import ca.uhn.fhir.jpa.term.TermReindexingSvcImpl;
 import ca.uhn.fhir.jpa.term.api.ITermCodeSystemStorageSvc;
+import ca.uhn.fhir.jpa.term.api.ITermConceptClosureIndexSvc;
 import ca.uhn.fhir.jpa.term.api.ITermDeferredStorageSvc;
 import ca.uhn.fhir.jpa.term.api.ITermReadSvc;
 import ca.uhn.fhir.jpa.term.api.ITermReindexingSvc;
@@ -63,6 +65,11 @@ public abstract class BaseConfigDstu3Plus extends BaseConfig {
 		return new TermReindexingSvcImpl();
 	}
 
+	@Bean
+	public ITermConceptClosureIndexSvc termConceptClosureIndexSvc() {
+		return new TermConceptClosureIndexSvcImpl();
+	}
+
 	@Bean
 	public abstract ITermVersionAdapterSvc terminologyVersionAdapterSvc();
 
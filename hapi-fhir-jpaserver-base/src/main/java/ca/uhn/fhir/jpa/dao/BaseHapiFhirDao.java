@@ -819,9 +819,14 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 		return toResource(resourceType, theEntity, null, theForHistoryOperation);
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public <R extends IBaseResource> R toResource(Class<R> theResourceType, IBaseResourceEntity theEntity, Collection<ResourceTag> theTagList, boolean theForHistoryOperation) {
+		return toResource(theResourceType, theEntity, theTagList, theForHistoryOperation, false, null);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <R extends IBaseResource> R toResource(Class<R> theResourceType, IBaseResourceEntity theEntity, Collection<ResourceTag> theTagList, boolean theForHistoryOperation, boolean theRawJsonBodyPermitted, RequestDetails theRequest) {
 
 		// 1. get resource, it's encoding and the tags if any
 		byte[] resourceBytes;
@@ -911,7 +916,14 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 
 		// 4. parse the text to FHIR
 		R retVal;
-		if (resourceEncoding != ResourceEncodingEnum.DEL) {
+		boolean rawJsonBody = false;
+		if (theRawJsonBodyPermitted && resourceEncoding != ResourceEncodingEnum.DEL && resourceType.equals(theResourceType) && isRawJsonBodyAllowed(theResourceType, theEntity, resourceText, theRequest)) {
+
+			// The stored body will be copied directly into the response by the parser
+			retVal = (R) myContext.getResourceDefinition(resourceType).newInstance();
+			rawJsonBody = true;
+
+		} else if (resourceEncoding != ResourceEncodingEnum.DEL) {
 
 			LenientErrorHandler errorHandler = new LenientErrorHandler(false).setErrorOnInvalidValue(false);
 			IParser parser = new TolerantJsonParser(getContext(theEntity.getFhirVersion()), errorHandler, theEntity.getId());
@@ -950,6 +962,10 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 			retVal = populateResourceMetadataRi(resourceType, theEntity, myTagList, theForHistoryOperation, res, version);
 		}
 
+		if (rawJsonBody) {
+			retVal.setUserData(Constants.RESOURCE_RAW_JSON_BODY, resourceText);
+		}
+
 		// 6. Handle source (provenance)
 		if (isNotBlank(provenanceRequestId) || isNotBlank(provenanceSourceUri)) {
 			String sourceString = cleanProvenanceSourceUri(provenanceSourceUri)
@@ -974,6 +990,33 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> extends BaseStora
 		return retVal;
 	}
 
+	/**
+	 * Should the stored JSON for the given entity be returned as-is instead of being parsed? The caller
+	 * has already established that the resource goes straight into a response which can't be modified
+	 * or filtered, so this checks that no storage interceptors need to inspect the resource contents,
+	 * and that the stored body can be copied without the corrections applied by {@link TolerantJsonParser}.
+	 */
+	private boolean isRawJsonBodyAllowed(Class<? extends IBaseResource> theResourceType, IBaseResourceEntity theEntity, String theResourceText, RequestDetails theRequest) {
+		if (theRequest == null || !getConfig().isRawResourcePassthroughEnabled()) {
+			return false;
+		}
+
+		// Binary reads are served from the parsed content, and DSTU2 metadata is handled differently
+		if (!IAnyResource.class.isAssignableFrom(theResourceType) || "Binary".equals(myContext.getResourceType(theResourceType))) {
+			return false;
+		}
+		if (theEntity.getFhirVersion() != myContext.getVersion().getVersion()) {
+			return false;
+		}
+
+		if (JpaInterceptorBroadcaster.hasHooks(Pointcut.STORAGE_PREACCESS_RESOURCES, myInterceptorBroadcaster, theRequest)
+			|| JpaInterceptorBroadcaster.hasHooks(Pointcut.STORAGE_PRESHOW_RESOURCES, myInterceptorBroadcaster, theRequest)) {
+			return false;
+		}
+
+		return TolerantJsonParser.isUsableAsRawBody(theResourceText);
+	}
+
 	public String toResourceName(Class<? extends IBaseResource> theResourceType) {
 		return myContext.getResourceType(theResourceType);
 	}
@@ -89,8 +89,10 @@ import ca.uhn.fhir.validation.IValidationContext;
 import ca.uhn.fhir.validation.IValidatorModule;
 import ca.uhn.fhir.validation.ValidationOptions;
 import ca.uhn.fhir.validation.ValidationResult;
+import com.google.common.collect.Sets;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.text.WordUtils;
+import org.hl7.fhir.common.hapi.validation.validator.FhirInstanceValidator;
 import org.hl7.fhir.instance.model.api.IBaseCoding;
 import org.hl7.fhir.instance.model.api.IBaseMetaType;
 import org.hl7.fhir.instance.model.api.IBaseOperationOutcome;
@@ -132,6 +134,10 @@ import static org.apache.commons.lang3.StringUtils.isNotBlank;
 public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends BaseHapiFhirDao<T> implements IFhirResourceDao<T> {
 
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(BaseHapiFhirResourceDao.class);
+	/**
+	 * Resource types which the instance validator loads (and caches) as conformance resources
+	 */
+	private static final Set<String> CONFORMANCE_RESOURCE_TYPES = Sets.newHashSet("StructureDefinition", "ValueSet", "CodeSystem");
 
 	@Autowired
 	protected PlatformTransactionManager myPlatformTransactionManager;
@@ -965,6 +971,46 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 		myResourceName = def.getName();
 	}
 
+	@Override
+	protected void postPersist(ResourceTable theEntity, T theResource) {
+		super.postPersist(theEntity, theResource);
+		invalidateInstanceValidatorCachesIfConformanceResource();
+	}
+
+	@Override
+	protected void postUpdate(ResourceTable theEntity, T theResource) {
+		super.postUpdate(theEntity, theResource);
+		invalidateInstanceValidatorCachesIfConformanceResource();
+	}
+
+	@Override
+	protected void postDelete(ResourceTable theEntity) {
+		super.postDelete(theEntity);
+		invalidateInstanceValidatorCachesIfConformanceResource();
+	}
+
+	/**
+	 * The instance validator caches conformance resources, and possibly validation results which
+	 * depend on them, so these caches are cleared whenever one of them is written. They are cleared
+	 * again once the transaction completes, in case a validation running in the meantime has cached
+	 * the previous version.
+	 */
+	private void invalidateInstanceValidatorCachesIfConformanceResource() {
+		if (!CONFORMANCE_RESOURCE_TYPES.contains(getResourceName()) || !(myInstanceValidator instanceof FhirInstanceValidator)) {
+			return;
+		}
+		FhirInstanceValidator instanceValidator = (FhirInstanceValidator) myInstanceValidator;
+		instanceValidator.invalidateCaches();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					instanceValidator.invalidateCaches();
+				}
+			});
+		}
+	}
+
 	/**
 	 * Subclasses may override to provide behaviour. Invoked within a delete
 	 * transaction with the resource that is about to be deleted.
@@ -1009,7 +1055,19 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 		return myTransactionService.execute(theRequest, tx-> doRead(theId, theRequest, theDeletedOk));
 	}
 
+	@Override
+	public T readForResponse(IIdType theId, RequestDetails theRequest) {
+		validateResourceTypeAndThrowInvalidRequestException(theId);
+
+		boolean rawJsonBodyPermitted = theRequest != null && Boolean.TRUE.equals(theRequest.getUserData().get(Constants.REQUEST_RAW_JSON_RESPONSE_ELIGIBLE));
+		return myTransactionService.execute(theRequest, tx-> doRead(theId, theRequest, false, rawJsonBodyPermitted));
+	}
+
 	public T doRead(IIdType theId, RequestDetails theRequest, boolean theDeletedOk) {
+		return doRead(theId, theRequest, theDeletedOk, false);
+	}
+
+	private T doRead(IIdType theId, RequestDetails theRequest, boolean theDeletedOk, boolean theRawJsonBodyPermitted) {
 		assert TransactionSynchronizationManager.isActualTransactionActive();
 
 		// Notify interceptors
@@ -1023,7 +1081,7 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 		BaseHasResource entity = readEntity(theId, theRequest);
 		validateResourceType(entity);
 
-		T retVal = toResource(myResourceType, entity, null, false);
+		T retVal = toResource(myResourceType, entity, null, false, theRawJsonBodyPermitted, theRequest);
 
 		if (theDeletedOk == false) {
 			if (entity.getDeleted() != null) {
@@ -23,9 +23,11 @@ package ca.uhn.fhir.jpa.dao;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
 import ca.uhn.fhir.interceptor.model.RequestPartitionId;
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
 import ca.uhn.fhir.jpa.dao.index.IdHelperService;
 import ca.uhn.fhir.jpa.model.config.PartitionSettings;
 import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
+import ca.uhn.fhir.jpa.search.SeekToken;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.Multimaps;
@@ -44,6 +46,7 @@ import javax.persistence.criteria.JoinType;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -71,6 +74,8 @@ public class HistoryBuilder {
 	private FhirContext myCtx;
 	@Autowired
 	private IdHelperService myIdHelperService;
+	@Autowired
+	private DaoConfig myDaoConfig;
 
 	/**
 	 * Constructor
@@ -88,27 +93,52 @@ public class HistoryBuilder {
 		Root<ResourceHistoryTable> from = criteriaQuery.from(ResourceHistoryTable.class);
 		criteriaQuery.select(cb.count(from));
 
-		addPredicatesToQuery(cb, thePartitionId, criteriaQuery, from);
+		addPredicatesToQuery(cb, thePartitionId, criteriaQuery, from, Collections.emptyList());
 
 		TypedQuery<Long> query = myEntityManager.createQuery(criteriaQuery);
 		return query.getSingleResult();
 	}
 
-	@SuppressWarnings("OptionalIsPresent")
 	public List<ResourceHistoryTable> fetchEntities(RequestPartitionId thePartitionId, int theFromIndex, int theToIndex) {
+		return fetchEntities(thePartitionId, theFromIndex, theToIndex, null);
+	}
+
+	/**
+	 * @param theSeekToken If not null, the entries following the position identified by this token are
+	 *                     returned instead of skipping over the first <code>theFromIndex</code> entries. The
+	 *                     token must have been created for this page (see {@link SeekToken#isApplicable(SeekToken.KindEnum, Integer)}).
+	 */
+	@SuppressWarnings("OptionalIsPresent")
+	public List<ResourceHistoryTable> fetchEntities(RequestPartitionId thePartitionId, int theFromIndex, int theToIndex, @Nullable SeekToken theSeekToken) {
 		CriteriaBuilder cb = myEntityManager.getCriteriaBuilder();
 		CriteriaQuery<ResourceHistoryTable> criteriaQuery = cb.createQuery(ResourceHistoryTable.class);
 		Root<ResourceHistoryTable> from = criteriaQuery.from(ResourceHistoryTable.class);
 
-		addPredicatesToQuery(cb, thePartitionId, criteriaQuery, from);
+		List<Predicate> seekPredicates = new ArrayList<>();
+		if (theSeekToken != null) {
+			Date updated = new Date(theSeekToken.getValue());
+			seekPredicates.add(cb.or(
+				cb.lessThan(from.get("myUpdated").as(Date.class), updated),
+				cb.and(
+					cb.equal(from.get("myUpdated").as(Date.class), updated),
+					cb.lessThan(from.get("myId").as(Long.class), theSeekToken.getPid()))));
+		}
+		addPredicatesToQuery(cb, thePartitionId, criteriaQuery, from, seekPredicates);
 
 		from.fetch("myProvenance", JoinType.LEFT);
 
-		criteriaQuery.orderBy(cb.desc(from.get("myUpdated")));
+		if (myDaoConfig.isSeekPagingEnabled()) {
+			// Seek paging needs a total ordering
+			criteriaQuery.orderBy(cb.desc(from.get("myUpdated")), cb.desc(from.get("myId")));
+		} else {
+			criteriaQuery.orderBy(cb.desc(from.get("myUpdated")));
+		}
 
 		TypedQuery<ResourceHistoryTable> query = myEntityManager.createQuery(criteriaQuery);
 
-		query.setFirstResult(theFromIndex);
+		if (theSeekToken == null) {
+			query.setFirstResult(theFromIndex);
+		}
 		query.setMaxResults(theToIndex - theFromIndex);
 
 		List<ResourceHistoryTable> tables = query.getResultList();
@@ -138,8 +168,8 @@ public class HistoryBuilder {
 		return tables;
 	}
 
-	private void addPredicatesToQuery(CriteriaBuilder theCriteriaBuilder, RequestPartitionId thePartitionId, CriteriaQuery<?> theQuery, Root<ResourceHistoryTable> theFrom) {
-		List<Predicate> predicates = new ArrayList<>();
+	private void addPredicatesToQuery(CriteriaBuilder theCriteriaBuilder, RequestPartitionId thePartitionId, CriteriaQuery<?> theQuery, Root<ResourceHistoryTable> theFrom, List<Predicate> theAdditionalPredicates) {
+		List<Predicate> predicates = new ArrayList<>(theAdditionalPredicates);
 
 		if (!thePartitionId.isAllPartitions()) {
 			if (thePartitionId.getPartitionId() != null) {
@@ -47,6 +47,13 @@ public interface ISearchBuilder {
 
 	void loadResourcesByPid(Collection<ResourcePersistentId> thePids, Collection<ResourcePersistentId> theIncludedPids, List<IBaseResource> theResourceListToPopulate, boolean theForHistoryOperation, RequestDetails theDetails);
 
+	/**
+	 * Loads resources as {@link #loadResourcesByPid(Collection, Collection, List, boolean, RequestDetails)} does.
+	 * If <code>theRawJsonBodyPermitted</code> is set, the loaded resources may carry their stored JSON body instead
+	 * of being parsed, so it must only be set when they are going straight into a raw JSON eligible response.
+	 */
+	void loadResourcesByPid(Collection<ResourcePersistentId> thePids, Collection<ResourcePersistentId> theIncludedPids, List<IBaseResource> theResourceListToPopulate, boolean theForHistoryOperation, boolean theRawJsonBodyPermitted, RequestDetails theDetails);
+
 	Set<ResourcePersistentId> loadIncludes(FhirContext theContext, EntityManager theEntityManager, Collection<ResourcePersistentId> theMatches, Set<Include> theRevIncludes, boolean theReverseMode,
 														DateRangeParam theLastUpdated, String theSearchIdOrDescription, RequestDetails theRequest);
 
@@ -57,4 +64,12 @@ public interface ISearchBuilder {
 
 	void setPreviouslyAddedResourcePids(List<ResourcePersistentId> thePreviouslyAddedResourcePids);
 
+	/**
+	 * Returns a seek paging token for the page following the results returned by the most
+	 * recent query, or <code>null</code> if seek paging does not apply to the query
+	 *
+	 * @see ca.uhn.fhir.jpa.search.SeekToken
+	 */
+	String getNextSeekToken();
+
 }
@@ -49,7 +49,10 @@ import ca.uhn.fhir.jpa.model.entity.ResourceTag;
 import ca.uhn.fhir.jpa.model.search.SearchRuntimeDetails;
 import ca.uhn.fhir.jpa.model.search.StorageProcessingMessage;
 import ca.uhn.fhir.jpa.search.DatabaseBackedPagingProvider;
+import ca.uhn.fhir.jpa.search.SearchIncludeQueryExecutor;
+import ca.uhn.fhir.jpa.search.SeekToken;
 import ca.uhn.fhir.jpa.search.lastn.IElasticsearchSvc;
+import ca.uhn.fhir.jpa.search.plan.SearchQueryPlanCache;
 import ca.uhn.fhir.jpa.searchparam.JpaRuntimeSearchParam;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
 import ca.uhn.fhir.jpa.searchparam.registry.ISearchParamRegistry;
@@ -58,6 +61,7 @@ import ca.uhn.fhir.jpa.searchparam.util.LastNParameterHelper;
 import ca.uhn.fhir.jpa.util.BaseIterator;
 import ca.uhn.fhir.jpa.util.CurrentThreadCaptureQueriesListener;
 import ca.uhn.fhir.jpa.util.JpaInterceptorBroadcaster;
+import ca.uhn.fhir.jpa.util.LongHashSet;
 import ca.uhn.fhir.jpa.util.QueryChunker;
 import ca.uhn.fhir.jpa.util.ScrollableResultsIterator;
 import ca.uhn.fhir.jpa.util.SqlQueryList;
@@ -82,6 +86,7 @@ import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
 import ca.uhn.fhir.util.StopWatch;
 import ca.uhn.fhir.util.UrlUtil;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.primitives.Longs;
 import org.apache.commons.lang3.Validate;
 import org.hibernate.ScrollMode;
 import org.hibernate.ScrollableResults;
@@ -100,6 +105,7 @@ import javax.persistence.PersistenceContextType;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
 import javax.persistence.criteria.From;
 import javax.persistence.criteria.Join;
 import javax.persistence.criteria.Order;
@@ -108,13 +114,16 @@ import javax.persistence.criteria.Root;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
 
 import static org.apache.commons.lang3.StringUtils.defaultString;
 import static org.apache.commons.lang3.StringUtils.isBlank;
@@ -164,6 +173,10 @@ public class SearchBuilder implements ISearchBuilder {
 	private ISearchParamRegistry mySearchParamRegistry;
 	@Autowired
 	private PredicateBuilderFactory myPredicateBuilderFactory;
+	@Autowired
+	private SearchQueryPlanCache mySearchQueryPlanCache;
+	@Autowired
+	private SearchIncludeQueryExecutor mySearchIncludeQueryExecutor;
 	private List<ResourcePersistentId> myAlsoIncludePids;
 	private CriteriaBuilder myCriteriaBuilder;
 	private SearchParameterMap myParams;
@@ -173,6 +186,8 @@ public class SearchBuilder implements ISearchBuilder {
 	private Set<ResourcePersistentId> myPidSet;
 	private PredicateBuilder myPredicateBuilder;
 	private RequestPartitionId myRequestPartitionId;
+	private SeekToken.KindEnum mySeekKind;
+	private Long myLastMainQueryPid;
 	@Autowired
 	private PartitionSettings myPartitionSettings;
 
@@ -244,6 +259,14 @@ public class SearchBuilder implements ISearchBuilder {
 			myParams.isAllParametersHaveNoModifier();
 	}
 
+	/**
+	 * Searches which could be satisfied by a unique combo search parameter need to go through
+	 * the regular query builder, since it handles those specially
+	 */
+	private boolean isUniqueSpCandidateWithActiveUniqueSps() {
+		return isCompositeUniqueSpCandidate() && !mySearchParamRegistry.getActiveUniqueSearchParams(myResourceName, myParams.keySet()).isEmpty();
+	}
+
 	@Override
 	public Iterator<Long> createCountQuery(SearchParameterMap theParams, String theSearchUuid, RequestDetails theRequest, @Nonnull RequestPartitionId theRequestPartitionId) {
 		assert theRequestPartitionId != null;
@@ -284,6 +307,8 @@ public class SearchBuilder implements ISearchBuilder {
 		mySearchUuid = theSearchUuid;
 		myPredicateBuilder = new PredicateBuilder(this, myPredicateBuilderFactory);
 		myRequestPartitionId = theRequestPartitionId;
+		mySeekKind = null;
+		myLastMainQueryPid = null;
 	}
 
 	private List<TypedQuery<Long>> createQuery(SortSpec sort, Integer theOffset, Integer theMaximumResults, boolean theCount, RequestDetails theRequest,
@@ -358,6 +383,37 @@ public class SearchBuilder implements ISearchBuilder {
 	}
 
 	private TypedQuery<Long> createChunkedQuery(SortSpec sort, Integer theOffset, Integer theMaximumResults, boolean theCount, RequestDetails theRequest, List<Long> thePidList) {
+		/*
+		 * Seek paging only applies to the main database query (not to fulltext or lastn
+		 * PID lists) when the results are being paged using an offset
+		 */
+		SeekToken.KindEnum seekKind = null;
+		if (!theCount && theOffset != null && thePidList == null) {
+			seekKind = determineSeekKind(sort);
+		}
+		mySeekKind = seekKind;
+
+		/*
+		 * Use a cached plan for simple unsorted searches if we can
+		 */
+		if (myDaoConfig.isSearchQueryPlanCacheEnabled()) {
+			TypedQuery<Long> query = null;
+			if (sort == null && seekKind == null && thePidList == null && !isUniqueSpCandidateWithActiveUniqueSps()) {
+				query = mySearchQueryPlanCache.createQuery(myEntityManager, myResourceName, myParams, myRequestPartitionId, theCount);
+			} else {
+				mySearchQueryPlanCache.recordBypass();
+			}
+			if (query != null) {
+				if (!theCount && theOffset != null) {
+					query.setFirstResult(theOffset);
+				}
+				if (theMaximumResults != null) {
+					query.setMaxResults(theMaximumResults);
+				}
+				return query;
+			}
+		}
+
 		/*
 		 * Sort
 		 *
@@ -370,6 +426,11 @@ public class SearchBuilder implements ISearchBuilder {
 			myQueryStack.pushResourceTableQuery();
 
 			List<Order> orders = createSort(myCriteriaBuilder, myQueryStack, sort);
+			if (seekKind == SeekToken.KindEnum.LAST_UPDATED_ASC) {
+				orders.add(myCriteriaBuilder.asc(myQueryStack.getResourcePidColumn()));
+			} else if (seekKind == SeekToken.KindEnum.LAST_UPDATED_DESC) {
+				orders.add(myCriteriaBuilder.desc(myQueryStack.getResourcePidColumn()));
+			}
 			if (orders.size() > 0) {
 				myQueryStack.orderBy(orders);
 			}
@@ -383,6 +444,10 @@ public class SearchBuilder implements ISearchBuilder {
 			} else {
 				myQueryStack.pushResourceTableQuery();
 			}
+
+			if (seekKind == SeekToken.KindEnum.RESOURCE_ID) {
+				myQueryStack.orderBy(Collections.singletonList(myCriteriaBuilder.asc(myQueryStack.getResourcePidColumn())));
+			}
 		}
 
 		if (myParams.getEverythingMode() != null) {
@@ -417,13 +482,23 @@ public class SearchBuilder implements ISearchBuilder {
 		List<Predicate> lastUpdatedPredicates = createLastUpdatedPredicates(lu, myCriteriaBuilder);
 		myQueryStack.addPredicates(lastUpdatedPredicates);
 
+		// Seek paging - Resume after the last row of the previous page instead of skipping over it
+		boolean seeking = false;
+		if (seekKind != null) {
+			SeekToken seekToken = SeekToken.parse(myParams.getSeekToken());
+			if (seekToken != null && seekToken.isApplicable(seekKind, theOffset)) {
+				myQueryStack.addPredicate(createSeekPredicate(seekToken));
+				seeking = true;
+			}
+		}
+
 		/*
 		 * Now perform the search
 		 */
 		CriteriaQuery<Long> outerQuery = (CriteriaQuery<Long>) myQueryStack.pop();
 		final TypedQuery<Long> query = myEntityManager.createQuery(outerQuery);
 		assert myQueryStack.isEmpty();
-		if (!theCount && theOffset != null) {
+		if (!theCount && theOffset != null && !seeking) {
 			query.setFirstResult(theOffset);
 		}
 		if (theMaximumResults != null) {
@@ -433,6 +508,64 @@ public class SearchBuilder implements ISearchBuilder {
 		return query;
 	}
 
+	/**
+	 * Returns the ordering to use for seek paging with the given sort, or <code>null</code> if
+	 * seek paging is disabled or can't be used with the sort
+	 */
+	private SeekToken.KindEnum determineSeekKind(SortSpec theSort) {
+		if (!myDaoConfig.isSeekPagingEnabled()) {
+			return null;
+		}
+		if (theSort == null) {
+			return SeekToken.KindEnum.RESOURCE_ID;
+		}
+		if (Constants.PARAM_LASTUPDATED.equals(theSort.getParamName()) && theSort.getChain() == null) {
+			if (theSort.getOrder() == SortOrderEnum.DESC) {
+				return SeekToken.KindEnum.LAST_UPDATED_DESC;
+			}
+			return SeekToken.KindEnum.LAST_UPDATED_ASC;
+		}
+		return null;
+	}
+
+	private Predicate createSeekPredicate(SeekToken theSeekToken) {
+		Expression<Long> pidColumn = myQueryStack.getResourcePidColumn();
+		if (theSeekToken.getKind() == SeekToken.KindEnum.RESOURCE_ID) {
+			return myCriteriaBuilder.greaterThan(pidColumn, theSeekToken.getPid());
+		}
+
+		Expression<Date> updatedColumn = myQueryStack.getLastUpdatedColumn();
+		Date updated = new Date(theSeekToken.getValue());
+		Predicate samePredicate = myCriteriaBuilder.equal(updatedColumn, updated);
+		if (theSeekToken.getKind() == SeekToken.KindEnum.LAST_UPDATED_DESC) {
+			return myCriteriaBuilder.or(
+				myCriteriaBuilder.lessThan(updatedColumn, updated),
+				myCriteriaBuilder.and(samePredicate, myCriteriaBuilder.lessThan(pidColumn, theSeekToken.getPid())));
+		}
+		return myCriteriaBuilder.or(
+			myCriteriaBuilder.greaterThan(updatedColumn, updated),
+			myCriteriaBuilder.and(samePredicate, myCriteriaBuilder.greaterThan(pidColumn, theSeekToken.getPid())));
+	}
+
+	@Override
+	public String getNextSeekToken() {
+		if (mySeekKind == null || myLastMainQueryPid == null || myParams.getOffset() == null || myParams.getCount() == null) {
+			return null;
+		}
+
+		Long value = null;
+		if (mySeekKind != SeekToken.KindEnum.RESOURCE_ID) {
+			ResourceTable entity = myEntityManager.find(ResourceTable.class, myLastMainQueryPid);
+			if (entity == null) {
+				return null;
+			}
+			value = entity.getUpdatedDate().getTime();
+		}
+
+		int nextOffset = myParams.getOffset() + myParams.getCount();
+		return new SeekToken(mySeekKind, nextOffset, value, myLastMainQueryPid).encode();
+	}
+
 	private List<Long> normalizeIdListForLastNInClause(List<Long> lastnResourceIds) {
 		/*
 			The following is a workaround to a known issue involving Hibernate. If queries are used with "in" clauses with large and varying
@@ -590,7 +723,7 @@ public class SearchBuilder implements ISearchBuilder {
 
 
 	private void doLoadPids(Collection<ResourcePersistentId> thePids, Collection<ResourcePersistentId> theIncludedPids, List<IBaseResource> theResourceListToPopulate, boolean theForHistoryOperation,
-									Map<ResourcePersistentId, Integer> thePosition) {
+									boolean theRawJsonBodyPermitted, Map<ResourcePersistentId, Integer> thePosition, RequestDetails theRequest) {
 
 		List<Long> myLongPersistentIds;
 		if(thePids.size() < getMaximumPageSize()) {
@@ -615,7 +748,7 @@ public class SearchBuilder implements ISearchBuilder {
 
 			resourceId = new ResourcePersistentId(next.getId());
 
-			IBaseResource resource = myCallingDao.toResource(resourceType, next, tagMap.get(resourceId), theForHistoryOperation);
+			IBaseResource resource = myCallingDao.toResource(resourceType, next, tagMap.get(resourceId), theForHistoryOperation, theRawJsonBodyPermitted, theRequest);
 			if (resource == null) {
 				ourLog.warn("Unable to find resource {}/{}/_history/{} in database", next.getResourceType(), next.getIdDt().getIdPart(), next.getVersion());
 				continue;
@@ -684,6 +817,11 @@ public class SearchBuilder implements ISearchBuilder {
 
 	@Override
 	public void loadResourcesByPid(Collection<ResourcePersistentId> thePids, Collection<ResourcePersistentId> theIncludedPids, List<IBaseResource> theResourceListToPopulate, boolean theForHistoryOperation, RequestDetails theDetails) {
+		loadResourcesByPid(thePids, theIncludedPids, theResourceListToPopulate, theForHistoryOperation, false, theDetails);
+	}
+
+	@Override
+	public void loadResourcesByPid(Collection<ResourcePersistentId> thePids, Collection<ResourcePersistentId> theIncludedPids, List<IBaseResource> theResourceListToPopulate, boolean theForHistoryOperation, boolean theRawJsonBodyPermitted, RequestDetails theDetails) {
 		if (thePids.isEmpty()) {
 			ourLog.debug("The include pids are empty");
 			// return;
@@ -700,7 +838,7 @@ public class SearchBuilder implements ISearchBuilder {
 		}
 
 		List<ResourcePersistentId> pids = new ArrayList<>(thePids);
-		new QueryChunker<ResourcePersistentId>().chunk(pids, t -> doLoadPids(t, theIncludedPids, theResourceListToPopulate, theForHistoryOperation, position));
+		new QueryChunker<ResourcePersistentId>().chunk(pids, t -> doLoadPids(t, theIncludedPids, theResourceListToPopulate, theForHistoryOperation, theRawJsonBodyPermitted, position, theDetails));
 
 	}
 
@@ -717,134 +855,66 @@ public class SearchBuilder implements ISearchBuilder {
 		if (theRevIncludes == null || theRevIncludes.isEmpty()) {
 			return new HashSet<>();
 		}
-		String searchFieldName = theReverseMode ? "myTargetResourcePid" : "mySourceResourcePid";
-		String findFieldName = theReverseMode ? "mySourceResourcePid" : "myTargetResourcePid";
 
-		Collection<ResourcePersistentId> nextRoundMatches = theMatches;
-		HashSet<ResourcePersistentId> allAdded = new HashSet<>();
-		HashSet<ResourcePersistentId> original = new HashSet<>(theMatches);
+		/*
+		 * PIDs are kept as primitives until the included resources are handed off at
+		 * the end, since a large search can include a lot of them
+		 */
+		LongHashSet original = new LongHashSet(theMatches.size());
+		for (ResourcePersistentId next : theMatches) {
+			original.add(next.getIdAsLong());
+		}
+		long[] nextRoundMatches = original.toArray();
+		LongHashSet allAdded = new LongHashSet();
 		ArrayList<Include> includes = new ArrayList<>(theRevIncludes);
 
+		// Earlier entries in a transaction bundle may have written changes that aren't committed yet
+		boolean useCallerConnection = theRequest != null && theRequest.isSubRequest();
+
 		int roundCounts = 0;
 		StopWatch w = new StopWatch();
 
-		boolean addedSomeThisRound;
 		do {
 			roundCounts++;
 
-			HashSet<ResourcePersistentId> pidsToInclude = new HashSet<>();
-
-			for (Iterator<Include> iter = includes.iterator(); iter.hasNext(); ) {
-				Include nextInclude = iter.next();
-				if (nextInclude.isRecurse() == false) {
-					iter.remove();
-				}
-
-				boolean matchAll = "*".equals(nextInclude.getValue());
-				if (matchAll) {
-					String sql;
-					sql = "SELECT r." + findFieldName + " FROM ResourceLink r WHERE r." + searchFieldName + " IN (:target_pids) ";
-					List<Collection<ResourcePersistentId>> partitions = partition(nextRoundMatches, getMaximumPageSize());
-					for (Collection<ResourcePersistentId> nextPartition : partitions) {
-						TypedQuery<Long> q = theEntityManager.createQuery(sql, Long.class);
-						q.setParameter("target_pids", ResourcePersistentId.toLongList(nextPartition));
-						List<Long> results = q.getResultList();
-						for (Long resourceLink : results) {
-							if (resourceLink == null) {
-								continue;
-							}
-							if (theReverseMode) {
-								pidsToInclude.add(new ResourcePersistentId(resourceLink));
-							} else {
-								pidsToInclude.add(new ResourcePersistentId(resourceLink));
-							}
-						}
-					}
-				} else {
-
-					List<String> paths;
-					RuntimeSearchParam param;
-					String resType = nextInclude.getParamType();
-					if (isBlank(resType)) {
-						continue;
-					}
-					RuntimeResourceDefinition def = theContext.getResourceDefinition(resType);
-					if (def == null) {
-						ourLog.warn("Unknown resource type in include/revinclude=" + nextInclude.getValue());
-						continue;
-					}
-
-					String paramName = nextInclude.getParamName();
-					if (isNotBlank(paramName)) {
-						param = mySearchParamRegistry.getSearchParamByName(def, paramName);
-					} else {
-						param = null;
-					}
-					if (param == null) {
-						ourLog.warn("Unknown param name in include/revinclude=" + nextInclude.getValue());
-						continue;
-					}
-
-					paths = param.getPathsSplit();
-
-					String targetResourceType = defaultString(nextInclude.getParamTargetType(), null);
-					for (String nextPath : paths) {
-						String sql;
-
-						boolean haveTargetTypesDefinedByParam = param.hasTargets();
-						if (targetResourceType != null) {
-							sql = "SELECT r." + findFieldName + " FROM ResourceLink r WHERE r.mySourcePath = :src_path AND r." + searchFieldName + " IN (:target_pids) AND r.myTargetResourceType = :target_resource_type";
-						} else if (haveTargetTypesDefinedByParam) {
-							sql = "SELECT r." + findFieldName + " FROM ResourceLink r WHERE r.mySourcePath = :src_path AND r." + searchFieldName + " IN (:target_pids) AND r.myTargetResourceType in (:target_resource_types)";
-						} else {
-							sql = "SELECT r." + findFieldName + " FROM ResourceLink r WHERE r.mySourcePath = :src_path AND r." + searchFieldName + " IN (:target_pids)";
-						}
-
-						List<Collection<ResourcePersistentId>> partitions = partition(nextRoundMatches, getMaximumPageSize());
-						for (Collection<ResourcePersistentId> nextPartition : partitions) {
-							TypedQuery<Long> q = theEntityManager.createQuery(sql, Long.class);
-							q.setParameter("src_path", nextPath);
-							q.setParameter("target_pids", ResourcePersistentId.toLongList(nextPartition));
-							if (targetResourceType != null) {
-								q.setParameter("target_resource_type", targetResourceType);
-							} else if (haveTargetTypesDefinedByParam) {
-								q.setParameter("target_resource_types", param.getTargets());
-							}
-							List<Long> results = q.getResultList();
-							for (Long resourceLink : results) {
-								if (resourceLink != null) {
-									pidsToInclude.add(new ResourcePersistentId(resourceLink));
-								}
-							}
-						}
-					}
-				}
-			}
+			List<SearchIncludeQueryExecutor.IncludeQuery> queries = createIncludeQueries(theContext, includes, nextRoundMatches, theReverseMode);
+			LongHashSet pidsToInclude = new LongHashSet();
+			mySearchIncludeQueryExecutor.execute(theEntityManager, queries, useCallerConnection, pidsToInclude::add);
 
 			if (theReverseMode) {
 				if (theLastUpdated != null && (theLastUpdated.getLowerBoundAsInstant() != null || theLastUpdated.getUpperBoundAsInstant() != null)) {
-					pidsToInclude = new HashSet<>(filterResourceIdsByLastUpdated(theEntityManager, theLastUpdated, pidsToInclude));
-				}
-			}
-			for (ResourcePersistentId next : pidsToInclude) {
-				if (original.contains(next) == false && allAdded.contains(next) == false) {
-					theMatches.add(next);
+					List<ResourcePersistentId> filtered = filterResourceIdsByLastUpdated(theEntityManager, theLastUpdated, ResourcePersistentId.fromLongList(pidsToInclude.toList()));
+					pidsToInclude = new LongHashSet(filtered.size());
+					for (ResourcePersistentId next : filtered) {
+						pidsToInclude.add(next.getIdAsLong());
+					}
 				}
 			}
 
-			addedSomeThisRound = allAdded.addAll(pidsToInclude);
-			nextRoundMatches = pidsToInclude;
-		} while (includes.size() > 0 && nextRoundMatches.size() > 0 && addedSomeThisRound);
+			/*
+			 * Only resources which haven't been seen in an earlier round need to be
+			 * followed in the next one, since the recursive includes have already been
+			 * applied to all of the others
+			 */
+			LongHashSet addedThisRound = new LongHashSet();
+			pidsToInclude.forEach(next -> {
+				if (!original.contains(next) && allAdded.add(next)) {
+					addedThisRound.add(next);
+				}
+			});
 
-		allAdded.removeAll(original);
+			nextRoundMatches = addedThisRound.toArray();
+		} while (includes.size() > 0 && nextRoundMatches.length > 0);
 
 		ourLog.info("Loaded {} {} in {} rounds and {} ms for search {}", allAdded.size(), theReverseMode ? "_revincludes" : "_includes", roundCounts, w.getMillisAndRestart(), theSearchIdOrDescription);
 
+		List<ResourcePersistentId> includedPidList = new ArrayList<>(allAdded.size());
+		allAdded.forEach(next -> includedPidList.add(new ResourcePersistentId(next)));
+
 		// Interceptor call: STORAGE_PREACCESS_RESOURCES
 		// This can be used to remove results from the search result details before
 		// the user has a chance to know that they were in the results
-		if (allAdded.size() > 0) {
-			List<ResourcePersistentId> includedPidList = new ArrayList<>(allAdded);
+		if (includedPidList.size() > 0) {
 			JpaPreResourceAccessDetails accessDetails = new JpaPreResourceAccessDetails(includedPidList, () -> this);
 			HookParams params = new HookParams()
 				.add(IPreResourceAccessDetails.class, accessDetails)
@@ -854,41 +924,94 @@ public class SearchBuilder implements ISearchBuilder {
 
 			for (int i = includedPidList.size() - 1; i >= 0; i--) {
 				if (accessDetails.isDontReturnResourceAtIndex(i)) {
-					ResourcePersistentId value = includedPidList.remove(i);
-					if (value != null) {
-						theMatches.remove(value);
-					}
+					includedPidList.remove(i);
 				}
 			}
-
-			allAdded = new HashSet<>(includedPidList);
 		}
 
-		return allAdded;
+		theMatches.addAll(includedPidList);
+		return new HashSet<>(includedPidList);
 	}
 
-	private List<Collection<ResourcePersistentId>> partition(Collection<ResourcePersistentId> theNextRoundMatches, int theMaxLoad) {
-		if (theNextRoundMatches.size() <= theMaxLoad) {
-			return Collections.singletonList(theNextRoundMatches);
-		} else {
+	/**
+	 * Creates the queries for one round of include resolution. Include specs which differ only
+	 * in their path are combined into a single query, and if the wildcard include is present it
+	 * replaces all of the others since it returns a superset of their results.
+	 */
+	private List<SearchIncludeQueryExecutor.IncludeQuery> createIncludeQueries(FhirContext theContext, List<Include> theIncludes, long[] theMatches, boolean theReverseMode) {
+		String searchFieldName = theReverseMode ? "myTargetResourcePid" : "mySourceResourcePid";
+		String findFieldName = theReverseMode ? "mySourceResourcePid" : "myTargetResourcePid";
 
-			List<Collection<ResourcePersistentId>> retVal = new ArrayList<>();
-			Collection<ResourcePersistentId> current = null;
-			for (ResourcePersistentId next : theNextRoundMatches) {
-				if (current == null) {
-					current = new ArrayList<>(theMaxLoad);
-					retVal.add(current);
-				}
+		boolean matchAll = false;
+		// Source paths, keyed by the target resource types they are restricted to (null for no restriction)
+		Map<Set<String>, Set<String>> pathsByTargetTypes = new LinkedHashMap<>();
+		for (Iterator<Include> iter = theIncludes.iterator(); iter.hasNext(); ) {
+			Include nextInclude = iter.next();
+			if (nextInclude.isRecurse() == false) {
+				iter.remove();
+			}
 
-				current.add(next);
+			if ("*".equals(nextInclude.getValue())) {
+				matchAll = true;
+				continue;
+			}
 
-				if (current.size() >= theMaxLoad) {
-					current = null;
-				}
+			String resType = nextInclude.getParamType();
+			if (isBlank(resType)) {
+				continue;
+			}
+			RuntimeResourceDefinition def = theContext.getResourceDefinition(resType);
+			if (def == null) {
+				ourLog.warn("Unknown resource type in include/revinclude=" + nextInclude.getValue());
+				continue;
 			}
 
-			return retVal;
+			String paramName = nextInclude.getParamName();
+			RuntimeSearchParam param = null;
+			if (isNotBlank(paramName)) {
+				param = mySearchParamRegistry.getSearchParamByName(def, paramName);
+			}
+			if (param == null) {
+				ourLog.warn("Unknown param name in include/revinclude=" + nextInclude.getValue());
+				continue;
+			}
+
+			Set<String> targetResourceTypes = null;
+			String targetResourceType = defaultString(nextInclude.getParamTargetType(), null);
+			if (targetResourceType != null) {
+				targetResourceTypes = new TreeSet<>(Collections.singleton(targetResourceType));
+			} else if (param.hasTargets()) {
+				targetResourceTypes = new TreeSet<>(param.getTargets());
+			}
+			pathsByTargetTypes.computeIfAbsent(targetResourceTypes, t -> new TreeSet<>()).addAll(param.getPathsSplit());
+		}
+
+		List<SearchIncludeQueryExecutor.IncludeQuery> retVal = new ArrayList<>();
+		for (int from = 0; from < theMatches.length; from += getMaximumPageSize()) {
+			// Boxed here since the values are bound as a query parameter
+			List<Long> nextPartition = new ArrayList<>(Longs.asList(theMatches).subList(from, Math.min(from + getMaximumPageSize(), theMatches.length)));
+			if (matchAll) {
+				String sql = "SELECT r." + findFieldName + " FROM ResourceLink r WHERE r." + searchFieldName + " IN (:target_pids) ";
+				retVal.add(new SearchIncludeQueryExecutor.IncludeQuery(sql)
+					.setParameter("target_pids", nextPartition));
+				continue;
+			}
+
+			for (Map.Entry<Set<String>, Set<String>> next : pathsByTargetTypes.entrySet()) {
+				String sql = "SELECT r." + findFieldName + " FROM ResourceLink r WHERE r.mySourcePath IN (:src_paths) AND r." + searchFieldName + " IN (:target_pids)";
+				if (next.getKey() != null) {
+					sql += " AND r.myTargetResourceType IN (:target_resource_types)";
+				}
+				SearchIncludeQueryExecutor.IncludeQuery query = new SearchIncludeQueryExecutor.IncludeQuery(sql)
+					.setParameter("src_paths", new ArrayList<>(next.getValue()))
+					.setParameter("target_pids", nextPartition);
+				if (next.getKey() != null) {
+					query.setParameter("target_resource_types", new ArrayList<>(next.getKey()));
+				}
+				retVal.add(query);
+			}
 		}
+		return retVal;
 	}
 
 	private void attemptCompositeUniqueSpProcessing(@Nonnull SearchParameterMap theParams, RequestDetails theRequest) {
@@ -1179,6 +1302,9 @@ public class SearchBuilder implements ISearchBuilder {
 							}
 
 							Long nextLong = myResultsIterator.next();
+							if (nextLong != null) {
+								myLastMainQueryPid = nextLong;
+							}
 							if (myHavePerfTraceFoundIdHook) {
 								HookParams params = new HookParams()
 									.add(Integer.class, System.identityHashCode(this))
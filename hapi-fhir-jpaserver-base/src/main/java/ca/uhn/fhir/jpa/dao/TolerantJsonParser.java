@@ -27,6 +27,8 @@ import ca.uhn.fhir.parser.DataFormatException;
 import ca.uhn.fhir.parser.IParserErrorHandler;
 import ca.uhn.fhir.parser.JsonParser;
 import ca.uhn.fhir.util.IModelVisitor2;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonToken;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import org.hl7.fhir.instance.model.api.IBase;
@@ -35,6 +37,7 @@ import org.hl7.fhir.instance.model.api.IPrimitiveType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.List;
 
@@ -43,6 +46,7 @@ import static org.apache.commons.lang3.StringUtils.defaultString;
 class TolerantJsonParser extends JsonParser {
 
 	private static final Logger ourLog = LoggerFactory.getLogger(TolerantJsonParser.class);
+	private static final JsonFactory ourJsonFactory = new JsonFactory();
 	private final FhirContext myContext;
 	private final Long myResourcePid;
 
@@ -111,4 +115,37 @@ class TolerantJsonParser extends JsonParser {
 			throw e;
 		}
 	}
+
+	/**
+	 * Can the given stored resource body be copied into a response as-is? This requires that the body
+	 * is well formed JSON (i.e. it doesn't need the corrections applied by {@link #parseResource(Class, String)}),
+	 * that <code>resourceType</code> is its first property, and that it has no top level <code>id</code>
+	 * or <code>meta</code>, since those are populated from the database. Tokenizing the body is much
+	 * cheaper than parsing it into a resource.
+	 */
+	static boolean isUsableAsRawBody(String theResourceText) {
+		try (com.fasterxml.jackson.core.JsonParser parser = ourJsonFactory.createParser(theResourceText)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return false;
+			}
+			if (parser.nextToken() != JsonToken.FIELD_NAME || !"resourceType".equals(parser.getCurrentName())) {
+				return false;
+			}
+			parser.nextToken();
+
+			JsonToken token;
+			while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+				String name = parser.getCurrentName();
+				if ("id".equals(name) || "meta".equals(name)) {
+					return false;
+				}
+				parser.nextToken();
+				parser.skipChildren();
+			}
+			return token == JsonToken.END_OBJECT && parser.nextToken() == null;
+		} catch (IOException e) {
+			ourLog.debug("Stored resource body can not be copied as-is: {}", e.toString());
+			return false;
+		}
+	}
 }
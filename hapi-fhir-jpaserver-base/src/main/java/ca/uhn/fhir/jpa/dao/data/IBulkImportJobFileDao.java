@@ -0,0 +1,58 @@
+package ca.uhn.fhir.jpa.dao.data;
+
+import ca.uhn.fhir.jpa.entity.BulkImportJobFileEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+public interface IBulkImportJobFileDao extends JpaRepository<BulkImportJobFileEntity, Long> {
+
+	@Query("SELECT f FROM BulkImportJobFileEntity f WHERE f.myJob.myJobId = :jobId ORDER BY f.myFileSequence ASC")
+	List<BulkImportJobFileEntity> findForJob(@Param("jobId") String theJobId);
+
+	@Query("SELECT f FROM BulkImportJobFileEntity f WHERE f.myJob.myJobId = :jobId AND f.myFileSequence = :fileIndex")
+	Optional<BulkImportJobFileEntity> findForJob(@Param("jobId") String theJobId, @Param("fileIndex") int theFileIndex);
+
+	@Query("SELECT f.myFileSequence FROM BulkImportJobFileEntity f WHERE f.myJob.myJobId = :jobId ORDER BY f.myFileSequence ASC")
+	List<Integer> findFileIndexesForJob(@Param("jobId") String theJobId);
+
+	@Query("SELECT MAX(f.myLastUpdated) FROM BulkImportJobFileEntity f WHERE f.myJob.myJobId = :jobId")
+	Date findLastUpdatedForJob(@Param("jobId") String theJobId);
+
+	@Modifying
+	@Query("UPDATE BulkImportJobFileEntity f SET f.myRowsProcessed = f.myRowsProcessed + :count, f.myLastUpdated = :updated WHERE f.myId = :pid")
+	void incrementRowsProcessed(@Param("pid") Long thePid, @Param("count") int theCount, @Param("updated") Date theUpdated);
+
+	@Modifying
+	@Query("UPDATE BulkImportJobFileEntity f SET f.myContents = NULL WHERE f.myJob.myId = :jobPid")
+	void clearContentsForJob(@Param("jobPid") Long theJobPid);
+
+	@Modifying
+	@Query("DELETE FROM BulkImportJobFileEntity t")
+	void deleteAllFiles();
+}
@@ -57,6 +57,18 @@ public interface IResourceTableDao extends JpaRepository<ResourceTable, Long> {
 	@Query("SELECT t.myId FROM ResourceTable t WHERE t.myUpdated >= :low AND t.myUpdated <= :high AND t.myResourceType = :restype ORDER BY t.myUpdated ASC")
 	Slice<Long> findIdsOfResourcesWithinUpdatedRangeOrderedFromOldest(Pageable thePage, @Param("restype") String theResourceType, @Param("low") Date theLow, @Param("high") Date theHigh);
 
+	/**
+	 * Returns the ID and last updated time of non-deleted resources of the given type which were last updated
+	 * between <code>theLow</code> and <code>theHigh</code> (inclusive), ordered by last updated time and then by ID.
+	 * Use {@link #findIdsAndUpdatedOfResourcesOfTypeAfter(Pageable, String, Date, Long, Date)} with the last row
+	 * returned to fetch the next page.
+	 */
+	@Query("SELECT t.myId, t.myUpdated FROM ResourceTable t WHERE t.myResourceType = :restype AND t.myUpdated >= :low AND t.myUpdated <= :high AND t.myDeleted IS NULL ORDER BY t.myUpdated ASC, t.myId ASC")
+	Slice<Object[]> findIdsAndUpdatedOfResourcesOfType(Pageable thePage, @Param("restype") String theResourceType, @Param("low") Date theLow, @Param("high") Date theHigh);
+
+	@Query("SELECT t.myId, t.myUpdated FROM ResourceTable t WHERE t.myResourceType = :restype AND (t.myUpdated > :updated OR (t.myUpdated = :updated AND t.myId > :pid)) AND t.myUpdated <= :high AND t.myDeleted IS NULL ORDER BY t.myUpdated ASC, t.myId ASC")
+	Slice<Object[]> findIdsAndUpdatedOfResourcesOfTypeAfter(Pageable thePage, @Param("restype") String theResourceType, @Param("updated") Date theLastUpdated, @Param("pid") Long theLastId, @Param("high") Date theHigh);
+
 	@Modifying
 	@Query("UPDATE ResourceTable t SET t.myIndexStatus = :status WHERE t.myId = :id")
 	void updateIndexStatus(@Param("id") Long theId, @Param("status") Long theIndexStatus);
@@ -0,0 +1,42 @@
+package ca.uhn.fhir.jpa.dao.data;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.entity.SearchResultPage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface ISearchResultPageDao extends JpaRepository<SearchResultPage, Long> {
+
+	@Query(value = "SELECT p FROM SearchResultPage p WHERE p.mySearchPid = :search AND p.myPageIndex >= :fromIndex AND p.myPageIndex <= :toIndex ORDER BY p.myPageIndex ASC")
+	List<SearchResultPage> findPagesForSearch(@Param("search") Long theSearchPid, @Param("fromIndex") int theFromPageIndex, @Param("toIndex") int theToPageIndex);
+
+	@Query(value = "SELECT p FROM SearchResultPage p WHERE p.mySearchPid = :search ORDER BY p.myPageIndex ASC")
+	List<SearchResultPage> findAllPagesForSearch(@Param("search") Long theSearchPid);
+
+	@Modifying
+	@Query(value = "DELETE FROM SearchResultPage p WHERE p.mySearchPid = :search")
+	void deleteForSearch(@Param("search") Long theSearchPid);
+}
@@ -9,6 +9,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.util.Collection;
+import java.util.List;
 
 /*
  * #%L
@@ -41,6 +42,13 @@ public interface ITermConceptParentChildLinkDao extends IHapiJpaRepository<TermC
 	@Query("SELECT t.myPid FROM TermConceptParentChildLink t WHERE t.myCodeSystem.myId = :cs_pid")
 	Slice<Long> findIdsByCodeSystemVersion(Pageable thePage, @Param("cs_pid") Long thePid);
 
+	/**
+	 * Returns rows of [link PID, parent concept PID, child concept PID] for links with a PID greater than
+	 * the given one, in PID order
+	 */
+	@Query("SELECT t.myPid, t.myParentPid, t.myChildPid FROM TermConceptParentChildLink t WHERE t.myCodeSystemVersionPid = :cs_pid AND t.myPid > :after_pid ORDER BY t.myPid")
+	List<Object[]> findParentAndChildPidsByCodeSystemVersion(Pageable thePage, @Param("cs_pid") Long theCodeSystemVersionPid, @Param("after_pid") Long theAfterPid);
+
 	@Modifying
 	@Query("DELETE FROM TermConceptParentChildLink t WHERE t.myChildPid = :pid OR t.myParentPid = :pid")
 	void deleteByConceptPid(@Param("pid") Long theId);
@@ -24,6 +24,7 @@ import ca.uhn.fhir.jpa.api.config.DaoConfig;
 import ca.uhn.fhir.jpa.model.config.PartitionSettings;
 import ca.uhn.fhir.jpa.model.entity.BaseResourceIndex;
 import ca.uhn.fhir.jpa.model.entity.ModelConfig;
+import ca.uhn.fhir.jpa.model.entity.ResourceIndexedSearchParamQuantity;
 import ca.uhn.fhir.jpa.model.entity.ResourceTable;
 import ca.uhn.fhir.jpa.searchparam.extractor.ResourceIndexedSearchParams;
 import ca.uhn.fhir.jpa.util.AddRemoveCount;
@@ -80,19 +81,34 @@ public class DaoSearchParamSynchronizer {
 		 */
 		newParams = new HashSet<>(newParams);
 
+		/*
+		 * Index rows compare equal by their hashes, so the existing rows are put in
+		 * a set as well in order to keep the diff linear in the number of rows
+		 */
 		List<T> paramsToRemove = subtract(theExistingParams, newParams);
-		List<T> paramsToAdd = subtract(newParams, theExistingParams);
+		List<T> paramsToAdd = subtract(newParams, new HashSet<>(theExistingParams));
 		tryToReuseIndexEntities(paramsToRemove, paramsToAdd);
 
 		for (T next : paramsToRemove) {
 			myEntityManager.remove(next);
-			theEntity.getParamsQuantity().remove(next);
+			if (next instanceof ResourceIndexedSearchParamQuantity) {
+				theEntity.getParamsQuantity().remove(next);
+			}
 		}
 		for (T next : paramsToAdd) {
-			myEntityManager.merge(next);
+			if (next.getId() == null) {
+				/*
+				 * New rows are persisted rather than merged, which avoids copying each
+				 * row (and resolving its associations) into a new managed instance. The
+				 * SQL written is the same either way.
+				 */
+				myEntityManager.persist(next);
+			} else {
+				myEntityManager.merge(next);
+			}
 		}
 
-		theAddRemoveCount.addToAddCount(paramsToRemove.size());
+		theAddRemoveCount.addToAddCount(paramsToAdd.size());
 		theAddRemoveCount.addToRemoveCount(paramsToRemove.size());
 	}
 
@@ -25,10 +25,8 @@ import ca.uhn.fhir.interceptor.model.RequestPartitionId;
 import ca.uhn.fhir.jpa.dao.SearchBuilder;
 import ca.uhn.fhir.jpa.model.entity.ResourceIndexedSearchParamDate;
 import ca.uhn.fhir.model.api.IQueryParameterType;
-import ca.uhn.fhir.model.api.TemporalPrecisionEnum;
 import ca.uhn.fhir.rest.param.DateParam;
 import ca.uhn.fhir.rest.param.DateRangeParam;
-import ca.uhn.fhir.rest.param.ParamPrefixEnum;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -149,10 +147,6 @@ public class PredicateBuilderDate extends BasePredicateBuilder implements IPredi
 		return p;
 	}
 
-	private boolean isNullOrDayPrecision(DateParam theDateParam) {
-		return theDateParam == null || theDateParam.getPrecision().ordinal() == TemporalPrecisionEnum.DAY.ordinal();
-	}
-
 	private Predicate createPredicateDateFromRange(CriteriaBuilder theBuilder,
 																  From<?, ResourceIndexedSearchParamDate> theFrom,
 																  DateRangeParam theRange,
@@ -166,11 +160,7 @@ public class PredicateBuilderDate extends BasePredicateBuilder implements IPredi
 		Integer upperBoundAsOrdinal = theRange.getUpperBoundAsDateInteger();
 		Comparable genericLowerBound;
 		Comparable genericUpperBound;
-		/**
-		 * If all present search parameters are of DAY precision, and {@link DaoConfig#getUseOrdinalDatesForDayPrecisionSearches()} is true,
-		 * then we attempt to use the ordinal field for date comparisons instead of the date field.
-		 */
-		boolean isOrdinalComparison = isNullOrDayPrecision(lowerBound) && isNullOrDayPrecision(upperBound) && myDaoConfig.getModelConfig().getUseOrdinalDatesForDayPrecisionSearches();
+		boolean isOrdinalComparison = SearchPredicateUtil.isOrdinalDateComparison(theRange, myDaoConfig.getModelConfig());
 
 		Predicate lt = null;
 		Predicate gt = null;
@@ -226,7 +216,7 @@ public class PredicateBuilderDate extends BasePredicateBuilder implements IPredi
 			if (lowerBoundInstant != null) {
 				gt = theBuilder.greaterThanOrEqualTo(theFrom.get(lowValueField), genericLowerBound);
 				lt = theBuilder.greaterThanOrEqualTo(theFrom.get(highValueField), genericLowerBound);
-				if (lowerBound.getPrefix() == ParamPrefixEnum.STARTS_AFTER || lowerBound.getPrefix() == ParamPrefixEnum.EQUAL) {
+				if (SearchPredicateUtil.isLowerDateBoundOnLowValueOnly(lowerBound)) {
 					lb = gt;
 				} else {
 					lb = theBuilder.or(gt, lt);
@@ -238,7 +228,7 @@ public class PredicateBuilderDate extends BasePredicateBuilder implements IPredi
 				lt = theBuilder.lessThanOrEqualTo(theFrom.get(highValueField), genericUpperBound);
 
 
-				if (theRange.getUpperBound().getPrefix() == ParamPrefixEnum.ENDS_BEFORE || theRange.getUpperBound().getPrefix() == ParamPrefixEnum.EQUAL) {
+				if (SearchPredicateUtil.isUpperDateBoundOnHighValueOnly(upperBound)) {
 					ub = lt;
 				} else {
 					ub = theBuilder.or(gt, lt);
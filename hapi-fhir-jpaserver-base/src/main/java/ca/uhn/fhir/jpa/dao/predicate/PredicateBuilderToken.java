@@ -219,12 +219,7 @@ class PredicateBuilderToken extends BasePredicateBuilder implements IPredicateBu
 
 		}
 
-		List<FhirVersionIndependentConcept> sortedCodesList = codes
-			.stream()
-			.filter(t -> t.getCode() != null || t.getSystem() != null)
-			.sorted()
-			.distinct()
-			.collect(Collectors.toList());
+		List<FhirVersionIndependentConcept> sortedCodesList = SearchPredicateUtil.normalizeTokenCodes(codes);
 
 		if (codes.isEmpty()) {
 			// This will never match anything
@@ -234,19 +229,19 @@ class PredicateBuilderToken extends BasePredicateBuilder implements IPredicateBu
 		List<Predicate> retVal = new ArrayList<>();
 
 		// System only
-		List<FhirVersionIndependentConcept> systemOnlyCodes = sortedCodesList.stream().filter(t -> isBlank(t.getCode())).collect(Collectors.toList());
+		List<FhirVersionIndependentConcept> systemOnlyCodes = SearchPredicateUtil.filterTokenCodes(sortedCodesList, SearchBuilderTokenModeEnum.SYSTEM_ONLY);
 		if (!systemOnlyCodes.isEmpty()) {
 			retVal.add(addPredicate(theResourceName, paramName, theBuilder, theFrom, systemOnlyCodes, modifier, SearchBuilderTokenModeEnum.SYSTEM_ONLY, theRequestPartitionId));
 		}
 
 		// Code only
-		List<FhirVersionIndependentConcept> codeOnlyCodes = sortedCodesList.stream().filter(t -> t.getSystem() == null).collect(Collectors.toList());
+		List<FhirVersionIndependentConcept> codeOnlyCodes = SearchPredicateUtil.filterTokenCodes(sortedCodesList, SearchBuilderTokenModeEnum.VALUE_ONLY);
 		if (!codeOnlyCodes.isEmpty()) {
 			retVal.add(addPredicate(theResourceName, paramName, theBuilder, theFrom, codeOnlyCodes, modifier, SearchBuilderTokenModeEnum.VALUE_ONLY, theRequestPartitionId));
 		}
 
 		// System and code
-		List<FhirVersionIndependentConcept> systemAndCodeCodes = sortedCodesList.stream().filter(t -> isNotBlank(t.getCode()) && t.getSystem() != null).collect(Collectors.toList());
+		List<FhirVersionIndependentConcept> systemAndCodeCodes = SearchPredicateUtil.filterTokenCodes(sortedCodesList, SearchBuilderTokenModeEnum.SYSTEM_AND_VALUE);
 		if (!systemAndCodeCodes.isEmpty()) {
 			retVal.add(addPredicate(theResourceName, paramName, theBuilder, theFrom, systemAndCodeCodes, modifier, SearchBuilderTokenModeEnum.SYSTEM_AND_VALUE, theRequestPartitionId));
 		}
@@ -334,37 +329,20 @@ class PredicateBuilderToken extends BasePredicateBuilder implements IPredicateBu
 			return combineParamIndexPredicateWithParamNamePredicate(theResourceName, theParamName, theFrom, or, theRequestPartitionId);
 		}
 
-		/*
-		 * Note: A null system value means "match any system", but
-		 * an empty-string system value means "match values that
-		 * explicitly have no system".
-		 */
 		Expression<Long> hashField;
-		List<Long> values;
 		switch (theTokenMode) {
 			case SYSTEM_ONLY:
 				hashField = theFrom.get("myHashSystem").as(Long.class);
-				values = theTokens
-					.stream()
-					.map(t -> ResourceIndexedSearchParamToken.calculateHashSystem(getPartitionSettings(), theRequestPartitionId, theResourceName, theParamName, t.getSystem()))
-					.collect(Collectors.toList());
 				break;
 			case VALUE_ONLY:
 				hashField = theFrom.get("myHashValue").as(Long.class);
-				values = theTokens
-					.stream()
-					.map(t -> ResourceIndexedSearchParamToken.calculateHashValue(getPartitionSettings(), theRequestPartitionId, theResourceName, theParamName, t.getCode()))
-					.collect(Collectors.toList());
 				break;
 			case SYSTEM_AND_VALUE:
 			default:
 				hashField = theFrom.get("myHashSystemAndValue").as(Long.class);
-				values = theTokens
-					.stream()
-					.map(t -> ResourceIndexedSearchParamToken.calculateHashSystemAndValue(getPartitionSettings(), theRequestPartitionId, theResourceName, theParamName, t.getSystem(), t.getCode()))
-					.collect(Collectors.toList());
 				break;
 		}
+		List<Long> values = SearchPredicateUtil.calculateTokenHashes(getPartitionSettings(), theRequestPartitionId, theResourceName, theParamName, theTokenMode, theTokens);
 
 		/*
 		 * Note: At one point we had an IF-ELSE here that did an equals if there was only 1 value, and an IN if there
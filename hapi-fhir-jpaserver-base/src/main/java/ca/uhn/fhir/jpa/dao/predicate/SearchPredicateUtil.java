@@ -0,0 +1,131 @@
+package ca.uhn.fhir.jpa.dao.predicate;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.interceptor.model.RequestPartitionId;
+import ca.uhn.fhir.jpa.model.config.PartitionSettings;
+import ca.uhn.fhir.jpa.model.entity.ModelConfig;
+import ca.uhn.fhir.jpa.model.entity.ResourceIndexedSearchParamToken;
+import ca.uhn.fhir.model.api.TemporalPrecisionEnum;
+import ca.uhn.fhir.rest.param.DateParam;
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.param.ParamPrefixEnum;
+import ca.uhn.fhir.util.FhirVersionIndependentConcept;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Rules for turning search parameter values into index table predicates, shared by the
+ * predicate builders and the {@link ca.uhn.fhir.jpa.search.plan.SearchQueryPlanCache search query plan cache}
+ * so that both always produce the same matches
+ */
+public interface SearchPredicateUtil {
+
+	/**
+	 * Removes empty and duplicate codes, and sorts the rest so that equivalent searches
+	 * produce the same predicates
+	 */
+	static List<FhirVersionIndependentConcept> normalizeTokenCodes(Collection<FhirVersionIndependentConcept> theCodes) {
+		return theCodes
+			.stream()
+			.filter(t -> t.getCode() != null || t.getSystem() != null)
+			.sorted()
+			.distinct()
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * Returns the codes which are matched using the given token mode
+	 */
+	static List<FhirVersionIndependentConcept> filterTokenCodes(List<FhirVersionIndependentConcept> theCodes, SearchBuilderTokenModeEnum theTokenMode) {
+		switch (theTokenMode) {
+			case SYSTEM_ONLY:
+				return theCodes.stream().filter(t -> isBlank(t.getCode())).collect(Collectors.toList());
+			case VALUE_ONLY:
+				return theCodes.stream().filter(t -> t.getSystem() == null).collect(Collectors.toList());
+			case SYSTEM_AND_VALUE:
+			default:
+				return theCodes.stream().filter(t -> isNotBlank(t.getCode()) && t.getSystem() != null).collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Calculates the token index hashes to match for the given codes. Note: A null system value
+	 * means "match any system", but an empty-string system value means "match values that
+	 * explicitly have no system".
+	 */
+	static List<Long> calculateTokenHashes(PartitionSettings thePartitionSettings, RequestPartitionId theRequestPartitionId, String theResourceName, String theParamName, SearchBuilderTokenModeEnum theTokenMode, List<FhirVersionIndependentConcept> theCodes) {
+		switch (theTokenMode) {
+			case SYSTEM_ONLY:
+				return theCodes
+					.stream()
+					.map(t -> ResourceIndexedSearchParamToken.calculateHashSystem(thePartitionSettings, theRequestPartitionId, theResourceName, theParamName, t.getSystem()))
+					.collect(Collectors.toList());
+			case VALUE_ONLY:
+				return theCodes
+					.stream()
+					.map(t -> ResourceIndexedSearchParamToken.calculateHashValue(thePartitionSettings, theRequestPartitionId, theResourceName, theParamName, t.getCode()))
+					.collect(Collectors.toList());
+			case SYSTEM_AND_VALUE:
+			default:
+				return theCodes
+					.stream()
+					.map(t -> ResourceIndexedSearchParamToken.calculateHashSystemAndValue(thePartitionSettings, theRequestPartitionId, theResourceName, theParamName, t.getSystem(), t.getCode()))
+					.collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * If all present bounds are of DAY precision, and {@link ModelConfig#getUseOrdinalDatesForDayPrecisionSearches()} is true,
+	 * then the ordinal fields are used for date comparisons instead of the date fields.
+	 */
+	static boolean isOrdinalDateComparison(DateRangeParam theRange, ModelConfig theModelConfig) {
+		return isNullOrDayPrecision(theRange.getLowerBound()) && isNullOrDayPrecision(theRange.getUpperBound()) && theModelConfig.getUseOrdinalDatesForDayPrecisionSearches();
+	}
+
+	/**
+	 * Returns <code>true</code> if a lower date bound only needs to be compared against the low value
+	 * of the indexed range, or <code>false</code> if it matches when either the low or the high value
+	 * is within it
+	 */
+	static boolean isLowerDateBoundOnLowValueOnly(DateParam theLowerBound) {
+		return theLowerBound.getPrefix() == ParamPrefixEnum.STARTS_AFTER || theLowerBound.getPrefix() == ParamPrefixEnum.EQUAL;
+	}
+
+	/**
+	 * Returns <code>true</code> if an upper date bound only needs to be compared against the high value
+	 * of the indexed range, or <code>false</code> if it matches when either the low or the high value
+	 * is within it
+	 */
+	static boolean isUpperDateBoundOnHighValueOnly(DateParam theUpperBound) {
+		return theUpperBound.getPrefix() == ParamPrefixEnum.ENDS_BEFORE || theUpperBound.getPrefix() == ParamPrefixEnum.EQUAL;
+	}
+
+	static boolean isNullOrDayPrecision(DateParam theDateParam) {
+		return theDateParam == null || theDateParam.getPrecision().ordinal() == TemporalPrecisionEnum.DAY.ordinal();
+	}
+
+}
@@ -39,6 +39,8 @@ import java.io.Serializable;
 @Table(name = "HFJ_BLK_EXPORT_COLFILE")
 public class BulkExportCollectionFileEntity implements Serializable {
 
+	public static final int MAX_STORAGE_KEY_LENGTH = 200;
+
 	@Id
 	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_BLKEXCOLFILE_PID")
 	@SequenceGenerator(name = "SEQ_BLKEXCOLFILE_PID", sequenceName = "SEQ_BLKEXCOLFILE_PID")
@@ -49,9 +51,21 @@ public class BulkExportCollectionFileEntity implements Serializable {
 	@JoinColumn(name = "COLLECTION_PID", referencedColumnName = "PID", nullable = false, foreignKey = @ForeignKey(name="FK_BLKEXCOLFILE_COLLECT"))
 	private BulkExportCollectionEntity myCollection;
 
-	@Column(name = "RES_ID", length = ForcedId.MAX_FORCED_ID_LENGTH, nullable = false)
+	@Column(name = "RES_ID", length = ForcedId.MAX_FORCED_ID_LENGTH, nullable = true)
 	private String myResourceId;
 
+	@Column(name = "STORAGE_KEY", length = MAX_STORAGE_KEY_LENGTH, nullable = true)
+	private String myStorageKey;
+
+	@Column(name = "FILE_SIZE", nullable = true)
+	private Long mySize;
+
+	@Column(name = "RES_COUNT", nullable = true)
+	private Integer myResourceCount;
+
+	@Column(name = "GZIP", nullable = true)
+	private Boolean myGzip;
+
 	public void setCollection(BulkExportCollectionEntity theCollection) {
 		myCollection = theCollection;
 	}
@@ -67,4 +81,40 @@ public class BulkExportCollectionFileEntity implements Serializable {
 	public Long getId() {
 		return myId;
 	}
+
+	/**
+	 * The key of the file in the {@link ca.uhn.fhir.jpa.bulk.api.IBulkExportFileStorageSvc},
+	 * or <code>null</code> if the file is stored as a Binary resource
+	 */
+	public String getStorageKey() {
+		return myStorageKey;
+	}
+
+	public void setStorageKey(String theStorageKey) {
+		myStorageKey = theStorageKey;
+	}
+
+	public Long getSize() {
+		return mySize;
+	}
+
+	public void setSize(Long theSize) {
+		mySize = theSize;
+	}
+
+	public Integer getResourceCount() {
+		return myResourceCount;
+	}
+
+	public void setResourceCount(Integer theResourceCount) {
+		myResourceCount = theResourceCount;
+	}
+
+	public boolean isGzip() {
+		return Boolean.TRUE.equals(myGzip);
+	}
+
+	public void setGzip(boolean theGzip) {
+		myGzip = theGzip;
+	}
 }
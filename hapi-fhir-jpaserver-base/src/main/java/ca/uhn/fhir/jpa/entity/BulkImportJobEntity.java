@@ -0,0 +1,163 @@
+package ca.uhn.fhir.jpa.entity;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.bulk.imprt.model.BulkImportJobStatusEnum;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.hl7.fhir.r5.model.InstantType;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
+import java.io.Serializable;
+import java.util.Date;
+
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+import static org.apache.commons.lang3.StringUtils.left;
+
+@Entity
+@Table(name = "HFJ_BLK_IMPORT_JOB", uniqueConstraints = {
+	@UniqueConstraint(name = "IDX_BLKIM_JOB_ID", columnNames = "JOB_ID")
+})
+public class BulkImportJobEntity implements Serializable {
+
+	public static final int STATUS_MESSAGE_LEN = 500;
+	public static final int JOB_DESC_LEN = 500;
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_BLKIMJOB_PID")
+	@SequenceGenerator(name = "SEQ_BLKIMJOB_PID", sequenceName = "SEQ_BLKIMJOB_PID")
+	@Column(name = "PID")
+	private Long myId;
+
+	@Column(name = "JOB_ID", length = Search.UUID_COLUMN_LENGTH, nullable = false, updatable = false)
+	private String myJobId;
+	@Column(name = "JOB_DESC", nullable = true, length = JOB_DESC_LEN)
+	private String myJobDescription;
+	@Enumerated(EnumType.STRING)
+	@Column(name = "JOB_STATUS", length = 10, nullable = false)
+	private BulkImportJobStatusEnum myStatus;
+	@Version
+	@Column(name = "OPTLOCK", nullable = false)
+	private int myVersion;
+	@Column(name = "FILE_COUNT", nullable = false)
+	private int myFileCount;
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "STATUS_TIME", nullable = false)
+	private Date myStatusTime;
+	@Column(name = "STATUS_MESSAGE", nullable = true, length = STATUS_MESSAGE_LEN)
+	private String myStatusMessage;
+	@Column(name = "BATCH_SIZE", nullable = false, updatable = false)
+	private int myBatchSize;
+
+	public Long getId() {
+		return myId;
+	}
+
+	public String getJobId() {
+		return myJobId;
+	}
+
+	public void setJobId(String theJobId) {
+		myJobId = theJobId;
+	}
+
+	public String getJobDescription() {
+		return myJobDescription;
+	}
+
+	public void setJobDescription(String theJobDescription) {
+		myJobDescription = left(theJobDescription, JOB_DESC_LEN);
+	}
+
+	public BulkImportJobStatusEnum getStatus() {
+		return myStatus;
+	}
+
+	public void setStatus(BulkImportJobStatusEnum theStatus) {
+		if (myStatus != theStatus) {
+			myStatusTime = new Date();
+			myStatus = theStatus;
+		}
+	}
+
+	public Date getStatusTime() {
+		return myStatusTime;
+	}
+
+	public String getStatusMessage() {
+		return myStatusMessage;
+	}
+
+	public void setStatusMessage(String theStatusMessage) {
+		myStatusMessage = left(theStatusMessage, STATUS_MESSAGE_LEN);
+	}
+
+	public int getFileCount() {
+		return myFileCount;
+	}
+
+	public void setFileCount(int theFileCount) {
+		myFileCount = theFileCount;
+	}
+
+	public int getBatchSize() {
+		return myBatchSize;
+	}
+
+	public void setBatchSize(int theBatchSize) {
+		myBatchSize = theBatchSize;
+	}
+
+	public int getVersion() {
+		return myVersion;
+	}
+
+	@Override
+	public String toString() {
+		ToStringBuilder b = new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE);
+		b.append("pid", myId);
+		b.append("jobId", myJobId);
+		if (myStatus != null) {
+			b.append("status", myStatus + " " + new InstantType(myStatusTime).getValueAsString());
+		}
+		b.append("fileCount", myFileCount);
+		b.append("batchSize", myBatchSize);
+		if (isNotBlank(myJobDescription)) {
+			b.append("description", myJobDescription);
+		}
+		if (isNotBlank(myStatusMessage)) {
+			b.append("statusMessage", myStatusMessage);
+		}
+		return b.toString();
+	}
+}
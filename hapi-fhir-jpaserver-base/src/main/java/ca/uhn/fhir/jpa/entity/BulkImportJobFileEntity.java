@@ -0,0 +1,147 @@
+package ca.uhn.fhir.jpa.entity;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.ForeignKey;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.Lob;
+import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import java.io.Serializable;
+import java.sql.Blob;
+import java.util.Date;
+
+import static org.apache.commons.lang3.StringUtils.left;
+
+/**
+ * One NDJSON file belonging to a bulk import job. {@link #getRowsProcessed()} is updated in the
+ * same transaction as the resources it accounts for, so an interrupted job can resume from it.
+ */
+@Entity
+@Table(name = "HFJ_BLK_IMPORT_JOBFILE", indexes = {
+	@Index(name = "IDX_BLKIM_JOBFILE_JOBID", columnList = "JOB_PID")
+})
+public class BulkImportJobFileEntity implements Serializable {
+
+	public static final int MAX_DESCRIPTION_LENGTH = 500;
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_BLKIMJOBFILE_PID")
+	@SequenceGenerator(name = "SEQ_BLKIMJOBFILE_PID", sequenceName = "SEQ_BLKIMJOBFILE_PID")
+	@Column(name = "PID")
+	private Long myId;
+
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "JOB_PID", referencedColumnName = "PID", nullable = false, foreignKey = @ForeignKey(name = "FK_BLKIMJOBFILE_JOB"))
+	private BulkImportJobEntity myJob;
+
+	@Column(name = "FILE_SEQ", nullable = false)
+	private int myFileSequence;
+
+	@Column(name = "FILE_DESCRIPTION", nullable = true, length = MAX_DESCRIPTION_LENGTH)
+	private String myFileDescription;
+
+	@Lob
+	@Basic(fetch = FetchType.LAZY)
+	@Column(name = "JOB_CONTENTS", nullable = true)
+	private Blob myContents;
+
+	@Column(name = "ROWS_PROCESSED", nullable = false)
+	private int myRowsProcessed;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "LAST_UPDATED", nullable = true)
+	private Date myLastUpdated;
+
+	public Long getId() {
+		return myId;
+	}
+
+	public BulkImportJobEntity getJob() {
+		return myJob;
+	}
+
+	public void setJob(BulkImportJobEntity theJob) {
+		myJob = theJob;
+	}
+
+	public int getFileSequence() {
+		return myFileSequence;
+	}
+
+	public void setFileSequence(int theFileSequence) {
+		myFileSequence = theFileSequence;
+	}
+
+	public String getFileDescription() {
+		return myFileDescription;
+	}
+
+	public void setFileDescription(String theFileDescription) {
+		myFileDescription = left(theFileDescription, MAX_DESCRIPTION_LENGTH);
+	}
+
+	/**
+	 * The file contents. This is a LOB locator, so it can only be read while the
+	 * transaction which loaded the entity is still open.
+	 */
+	public Blob getContents() {
+		return myContents;
+	}
+
+	public void setContents(Blob theContents) {
+		myContents = theContents;
+	}
+
+	/**
+	 * The number of non-blank NDJSON rows which have been stored
+	 */
+	public int getRowsProcessed() {
+		return myRowsProcessed;
+	}
+
+	public void setRowsProcessed(int theRowsProcessed) {
+		myRowsProcessed = theRowsProcessed;
+	}
+
+	/**
+	 * The time at which rows from this file were last stored (or <code>null</code> if
+	 * no rows have been stored yet)
+	 */
+	public Date getLastUpdated() {
+		return myLastUpdated;
+	}
+
+	public void setLastUpdated(Date theLastUpdated) {
+		myLastUpdated = theLastUpdated;
+	}
+}
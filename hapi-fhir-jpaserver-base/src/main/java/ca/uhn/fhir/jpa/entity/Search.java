@@ -310,6 +310,13 @@ public class Search implements ICachedSearchDetails, Serializable {
 		myLastUpdatedHigh = theUpperBound;
 	}
 
+	/**
+	 * Returns the hash of the search query string, or <code>null</code> if this search can not be reused
+	 */
+	public Integer getSearchQueryStringHash() {
+		return mySearchQueryStringHash;
+	}
+
 	public void setSearchQueryStringHash(Integer theSearchQueryStringHash) {
 		mySearchQueryStringHash = theSearchQueryStringHash;
 	}
@@ -0,0 +1,126 @@
+package ca.uhn.fhir.jpa.entity;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import java.io.Serializable;
+
+/**
+ * A fixed-size page of the resource PIDs matched by a {@link Search}, stored as a single
+ * compressed blob. Used by {@link ca.uhn.fhir.jpa.search.cache.CompressedSearchResultCacheSvcImpl}
+ * as an alternative to storing one {@link SearchResult} row per match.
+ */
+@Entity
+@Table(name = "HFJ_SEARCH_RESULT_PAGE", uniqueConstraints = {
+	@UniqueConstraint(name = "IDX_SEARCHRESPAGE_PAGE", columnNames = {"SEARCH_PID", "PAGE_INDEX"})
+})
+public class SearchResultPage implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_SEARCH_RES_PAGE")
+	@SequenceGenerator(name = "SEQ_SEARCH_RES_PAGE", sequenceName = "SEQ_SEARCH_RES_PAGE")
+	@Id
+	@Column(name = "PID")
+	private Long myId;
+	@Column(name = "SEARCH_PID", insertable = true, updatable = false, nullable = false)
+	private Long mySearchPid;
+	@Column(name = "PAGE_INDEX", insertable = true, updatable = false, nullable = false)
+	private int myPageIndex;
+	@Column(name = "PID_COUNT", nullable = false)
+	private int myPidCount;
+	/*
+	 * Not a @Lob, since on Postgres that would store each page as a large object, which is
+	 * left behind when the row is updated or deleted. Mapped as a plain binary column (bytea)
+	 * instead.
+	 */
+	@Column(name = "PIDS", nullable = false, length = Integer.MAX_VALUE - 1)
+	private byte[] myPids;
+
+	/**
+	 * Constructor
+	 */
+	public SearchResultPage() {
+		// nothing
+	}
+
+	/**
+	 * Constructor
+	 */
+	public SearchResultPage(Search theSearch, int thePageIndex) {
+		Validate.notNull(theSearch.getId());
+		mySearchPid = theSearch.getId();
+		myPageIndex = thePageIndex;
+	}
+
+	public Long getId() {
+		return myId;
+	}
+
+	public Long getSearchPid() {
+		return mySearchPid;
+	}
+
+	public int getPageIndex() {
+		return myPageIndex;
+	}
+
+	/**
+	 * The number of resource PIDs held in {@link #getPids()}
+	 */
+	public int getPidCount() {
+		return myPidCount;
+	}
+
+	public void setPidCount(int thePidCount) {
+		myPidCount = thePidCount;
+	}
+
+	/**
+	 * The encoded resource PIDs for this page
+	 */
+	public byte[] getPids() {
+		return myPids;
+	}
+
+	public void setPids(byte[] thePids) {
+		myPids = thePids;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+			.append("search", mySearchPid)
+			.append("pageIndex", myPageIndex)
+			.append("pidCount", myPidCount)
+			.toString();
+	}
+}
@@ -137,7 +137,7 @@ public abstract class BaseJpaResourceProvider<T extends IBaseResource> extends B
 	public T read(HttpServletRequest theRequest, @IdParam IIdType theId, RequestDetails theRequestDetails) {
 		startRequest(theRequest);
 		try {
-			return myDao.read(theId, theRequestDetails);
+			return myDao.readForResponse(theId, theRequestDetails);
 		} finally {
 			endRequest(theRequest);
 		}
@@ -25,6 +25,7 @@ import ca.uhn.fhir.context.RuntimeResourceDefinition;
 import ca.uhn.fhir.jpa.model.util.JpaConstants;
 import ca.uhn.fhir.jpa.term.TermLoaderSvcImpl;
 import ca.uhn.fhir.jpa.term.UploadStatistics;
+import ca.uhn.fhir.jpa.term.api.ITermDeferredStorageSvc;
 import ca.uhn.fhir.jpa.term.api.ITermLoaderSvc;
 import ca.uhn.fhir.jpa.term.custom.ConceptHandler;
 import ca.uhn.fhir.jpa.term.custom.HierarchyHandler;
@@ -35,6 +36,7 @@ import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.util.AttachmentUtil;
 import ca.uhn.fhir.util.ParametersUtil;
+import ca.uhn.fhir.util.StopWatch;
 import ca.uhn.fhir.util.ValidateUtil;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ArrayListMultimap;
@@ -71,9 +73,19 @@ public class TerminologyUploaderProvider extends BaseJpaProvider {
 	private static final String RESP_PARAM_TARGET = "target";
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(TerminologyUploaderProvider.class);
 	private static final String RESP_PARAM_SUCCESS = "success";
+	private static final String RESP_PARAM_CONCEPTS_REMAINING = "conceptsRemaining";
+	private static final String RESP_PARAM_RELATIONSHIPS_REMAINING = "relationshipsRemaining";
+	private static final String RESP_PARAM_VALUESETS_REMAINING = "valueSetsRemaining";
+	private static final String RESP_PARAM_CONCEPTMAPS_REMAINING = "conceptMapsRemaining";
+	private static final String RESP_PARAM_CONCEPTS_SAVED = "conceptsSaved";
+	private static final String RESP_PARAM_RELATIONSHIPS_SAVED = "relationshipsSaved";
+	private static final String RESP_PARAM_ELAPSED = "elapsed";
+	private static final String RESP_PARAM_ESTIMATED_REMAINING = "estimatedRemaining";
 
 	@Autowired
 	private ITermLoaderSvc myTerminologyLoaderSvc;
+	@Autowired(required = false)
+	private ITermDeferredStorageSvc myDeferredStorageSvc;
 
 	/**
 	 * Constructor
@@ -212,6 +224,55 @@ public class TerminologyUploaderProvider extends BaseJpaProvider {
 
 	}
 
+	/**
+	 * <code>
+	 * $terminology-storage-status
+	 * </code>
+	 * <p>
+	 * Reports how much terminology is still waiting in the deferred storage queue, along with the
+	 * progress and estimated time remaining for the current upload.
+	 * </p>
+	 * <p>
+	 * Note that the deferred storage queue is held in memory on the node which received the upload,
+	 * so in a clustered deployment this operation only reports on the node which happens to serve
+	 * the request. Other nodes will report an empty queue even if an upload is still being stored.
+	 * </p>
+	 */
+	@Operation(typeName = "CodeSystem", name = JpaConstants.OPERATION_TERMINOLOGY_STORAGE_STATUS, idempotent = true, returnParameters = {
+		@OperationParam(name = RESP_PARAM_CONCEPTS_REMAINING, typeName = "integer", min = 1),
+		@OperationParam(name = RESP_PARAM_RELATIONSHIPS_REMAINING, typeName = "integer", min = 1),
+		@OperationParam(name = RESP_PARAM_VALUESETS_REMAINING, typeName = "integer", min = 1),
+		@OperationParam(name = RESP_PARAM_CONCEPTMAPS_REMAINING, typeName = "integer", min = 1),
+		@OperationParam(name = RESP_PARAM_CONCEPTS_SAVED, typeName = "integer", min = 1),
+		@OperationParam(name = RESP_PARAM_RELATIONSHIPS_SAVED, typeName = "integer", min = 1),
+		@OperationParam(name = RESP_PARAM_ELAPSED, typeName = "string", min = 1),
+		@OperationParam(name = RESP_PARAM_ESTIMATED_REMAINING, typeName = "string", min = 0)
+	})
+	public IBaseParameters storageStatus(HttpServletRequest theServletRequest) {
+		startRequest(theServletRequest);
+		try {
+			if (myDeferredStorageSvc == null) {
+				throw new InternalErrorException("Deferred terminology storage is not enabled on this server");
+			}
+
+			ITermDeferredStorageSvc.StorageProgress progress = myDeferredStorageSvc.getStorageProgress();
+			IBaseParameters retVal = ParametersUtil.newInstance(getContext());
+			ParametersUtil.addParameterToParametersInteger(getContext(), retVal, RESP_PARAM_CONCEPTS_REMAINING, progress.getConceptsRemaining());
+			ParametersUtil.addParameterToParametersInteger(getContext(), retVal, RESP_PARAM_RELATIONSHIPS_REMAINING, progress.getConceptLinksRemaining());
+			ParametersUtil.addParameterToParametersInteger(getContext(), retVal, RESP_PARAM_VALUESETS_REMAINING, progress.getValueSetsRemaining());
+			ParametersUtil.addParameterToParametersInteger(getContext(), retVal, RESP_PARAM_CONCEPTMAPS_REMAINING, progress.getConceptMapsRemaining());
+			ParametersUtil.addParameterToParametersInteger(getContext(), retVal, RESP_PARAM_CONCEPTS_SAVED, (int) progress.getConceptsSaved());
+			ParametersUtil.addParameterToParametersInteger(getContext(), retVal, RESP_PARAM_RELATIONSHIPS_SAVED, (int) progress.getConceptLinksSaved());
+			ParametersUtil.addParameterToParametersString(getContext(), retVal, RESP_PARAM_ELAPSED, StopWatch.formatMillis(progress.getElapsedMillis()));
+			if (progress.getEstimatedMillisRemaining() != null) {
+				ParametersUtil.addParameterToParametersString(getContext(), retVal, RESP_PARAM_ESTIMATED_REMAINING, StopWatch.formatMillis(progress.getEstimatedMillisRemaining()));
+			}
+			return retVal;
+		} finally {
+			endRequest(theServletRequest);
+		}
+	}
+
 	private void convertCodeSystemsToFileDescriptors(List<ITermLoaderSvc.FileDescriptor> theFiles, List<IBaseResource> theCodeSystems) {
 		Map<String, String> codes = new LinkedHashMap<>();
 		Multimap<String, String> codeToParentCodes = ArrayListMultimap.create();
@@ -25,6 +25,7 @@ import ca.uhn.fhir.interceptor.api.HookParams;
 import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
 import ca.uhn.fhir.interceptor.api.Pointcut;
 import ca.uhn.fhir.interceptor.model.RequestPartitionId;
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
 import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
 import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
 import ca.uhn.fhir.jpa.api.svc.ISearchCoordinatorSvc;
@@ -48,6 +49,7 @@ import ca.uhn.fhir.rest.api.server.IPreResourceShowDetails;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.api.server.SimplePreResourceAccessDetails;
 import ca.uhn.fhir.rest.api.server.SimplePreResourceShowDetails;
+import ca.uhn.fhir.rest.server.RestfulServerUtils;
 import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
 import com.google.common.annotations.VisibleForTesting;
 import org.hl7.fhir.instance.model.api.IBaseResource;
@@ -99,6 +101,8 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 	private ISearchCacheSvc mySearchCacheSvc;
 	@Autowired
 	private RequestPartitionHelperSvc myRequestPartitionHelperSvc;
+	@Autowired
+	private DaoConfig myDaoConfig;
 
 	/*
 	 * Non autowired fields (will be different for every instance
@@ -106,10 +110,12 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 	 */
 
 	private final RequestDetails myRequest;
+	private boolean myRawJsonBodyPermitted;
 	private Search mySearchEntity;
 	private String myUuid;
 	private boolean myCacheHit;
 	private RequestPartitionId myRequestPartitionId;
+	private String myNextSeekToken;
 
 	/**
 	 * Constructor
@@ -146,8 +152,22 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 
 		HistoryBuilder historyBuilder = myHistoryBuilderFactory.newHistoryBuilder(mySearchEntity.getResourceType(), mySearchEntity.getResourceId(), mySearchEntity.getLastUpdatedLow(), mySearchEntity.getLastUpdatedHigh());
 
+		SeekToken seekToken = null;
+		if (myDaoConfig.isSeekPagingEnabled() && myRequest != null && myRequest.getParameters() != null) {
+			seekToken = SeekToken.parse(RestfulServerUtils.extractSeekParameter(myRequest));
+			if (seekToken != null && !seekToken.isApplicable(SeekToken.KindEnum.HISTORY, theFromIndex)) {
+				seekToken = null;
+			}
+		}
+
 		RequestPartitionId partitionId = getRequestPartitionId();
-		List<ResourceHistoryTable> results = historyBuilder.fetchEntities(partitionId, theFromIndex, theToIndex);
+		List<ResourceHistoryTable> results = historyBuilder.fetchEntities(partitionId, theFromIndex, theToIndex, seekToken);
+
+		myNextSeekToken = null;
+		if (myDaoConfig.isSeekPagingEnabled() && results.size() > 0 && results.size() == theToIndex - theFromIndex) {
+			ResourceHistoryTable last = results.get(results.size() - 1);
+			myNextSeekToken = new SeekToken(SeekToken.KindEnum.HISTORY, theToIndex, last.getUpdatedDate().getTime(), last.getId()).encode();
+		}
 
 		List<IBaseResource> retVal = new ArrayList<>();
 		for (ResourceHistoryTable next : results) {
@@ -294,11 +314,31 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 		}
 	}
 
+	/**
+	 * The server only calls this when the resources go straight into a raw JSON eligible response,
+	 * so only the resources loaded here may carry their stored body instead of being parsed.
+	 */
+	@Nonnull
+	@Override
+	public List<IBaseResource> getResourcesForRawJsonResponse(int theFromIndex, int theToIndex) {
+		myRawJsonBodyPermitted = true;
+		try {
+			return getResources(theFromIndex, theToIndex);
+		} finally {
+			myRawJsonBodyPermitted = false;
+		}
+	}
+
 	@Override
 	public String getUuid() {
 		return myUuid;
 	}
 
+	@Override
+	public String getNextSeekToken() {
+		return myNextSeekToken;
+	}
+
 	public boolean isCacheHit() {
 		return myCacheHit;
 	}
@@ -374,7 +414,7 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 
 		// Execute the query and make sure we return distinct results
 		List<IBaseResource> resources = new ArrayList<>();
-		theSearchBuilder.loadResourcesByPid(thePids, includedPidList, resources, false, myRequest);
+		theSearchBuilder.loadResourcesByPid(thePids, includedPidList, resources, false, myRawJsonBodyPermitted, myRequest);
 
 		resources = InterceptorUtil.fireStoragePreshowResource(resources, myRequest, myInterceptorBroadcaster);
 
@@ -0,0 +1,312 @@
+package ca.uhn.fhir.jpa.search;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceContextType;
+import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
+
+/**
+ * Runs the queries for one round of <code>_include</code> / <code>_revinclude</code> resolution.
+ * <p>
+ * If {@link DaoConfig#getIncludeQueryThreadCount()} is greater than 1 and a round has more than
+ * one query, the queries are run in parallel, each in its own read-only transaction (and therefore
+ * on its own database connection). The thread count is also a limit on the number of these queries
+ * in flight across all searches, so that a burst of searches can't use up the connection pool. A query
+ * which would go over that limit is run using the entity manager of the calling search instead, as are
+ * all queries when parallel execution is disabled or when the caller may have uncommitted writes which a
+ * separate connection would not see. Either way, the PIDs found by each query are passed to the consumer
+ * on the calling thread as soon as that query completes.
+ * </p>
+ * <p>
+ * Note that queries run on the pool threads are not seen by
+ * {@link ca.uhn.fhir.jpa.util.CurrentThreadCaptureQueriesListener}, which only captures the queries of
+ * the calling thread. This includes the SQL passed to the <code>JPA_PERFTRACE_RAW_SQL</code> pointcut,
+ * and query counts in tests.
+ * </p>
+ */
+public class SearchIncludeQueryExecutor {
+
+	private static final Logger ourLog = LoggerFactory.getLogger(SearchIncludeQueryExecutor.class);
+
+	@Autowired
+	private DaoConfig myDaoConfig;
+	@Autowired
+	private PlatformTransactionManager myTransactionManager;
+	@PersistenceContext(type = PersistenceContextType.TRANSACTION)
+	private EntityManager myEntityManager;
+	private ExecutorService myExecutor;
+	private Semaphore myInFlightPermits;
+	private int myExecutorThreadCount;
+
+	/**
+	 * Runs the given queries, passing every non-null PID they return to <code>theConsumer</code>. The
+	 * same PID may be passed more than once if it is returned by more than one query.
+	 *
+	 * @param theUseCallerConnection If <code>true</code>, all queries are run using <code>theEntityManager</code>.
+	 *                               This must be set if the calling transaction may have written changes which
+	 *                               have not been committed yet (e.g. within a transaction bundle), since queries
+	 *                               on other connections wouldn't see them.
+	 */
+	public void execute(EntityManager theEntityManager, List<IncludeQuery> theQueries, boolean theUseCallerConnection, LongConsumer theConsumer) {
+		int threadCount = myDaoConfig.getIncludeQueryThreadCount();
+		if (threadCount <= 1 || theQueries.size() <= 1 || theUseCallerConnection) {
+			for (IncludeQuery next : theQueries) {
+				next.execute(theEntityManager, theConsumer);
+			}
+			return;
+		}
+
+		ExecutorService executor;
+		Semaphore permits;
+		synchronized (this) {
+			executor = getExecutor(threadCount);
+			permits = myInFlightPermits;
+		}
+
+		CompletionService<long[]> completionService = new ExecutorCompletionService<>(executor);
+		List<IncludeQueryTask> submitted = new ArrayList<>();
+		List<IncludeQuery> runOnCaller = new ArrayList<>();
+		try {
+			for (IncludeQuery next : theQueries) {
+				if (!permits.tryAcquire()) {
+					runOnCaller.add(next);
+					continue;
+				}
+				IncludeQueryTask task = new IncludeQueryTask(next, permits);
+				try {
+					task.setFuture(completionService.submit(task));
+				} catch (RejectedExecutionException e) {
+					// The executor was replaced or stopped after we fetched it
+					permits.release();
+					runOnCaller.add(next);
+					continue;
+				}
+				submitted.add(task);
+			}
+
+			if (!runOnCaller.isEmpty()) {
+				ourLog.debug("Running {} of {} include queries on the calling connection", runOnCaller.size(), theQueries.size());
+			}
+			for (IncludeQuery next : runOnCaller) {
+				next.execute(theEntityManager, theConsumer);
+			}
+
+			for (int i = 0; i < submitted.size(); i++) {
+				long[] results;
+				try {
+					results = completionService.take().get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InternalErrorException("Interrupted while loading includes", e);
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof RuntimeException) {
+						throw (RuntimeException) e.getCause();
+					}
+					throw new InternalErrorException("Failure while loading includes", e.getCause());
+				}
+				for (long next : results) {
+					theConsumer.accept(next);
+				}
+			}
+		} finally {
+			// Only does anything if we're leaving early because of a failure
+			for (IncludeQueryTask next : submitted) {
+				next.cancel();
+			}
+		}
+	}
+
+	private TransactionTemplate newTransactionTemplate() {
+		TransactionTemplate retVal = new TransactionTemplate(myTransactionManager);
+		retVal.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		retVal.setReadOnly(true);
+		return retVal;
+	}
+
+	private synchronized ExecutorService getExecutor(int theThreadCount) {
+		if (myExecutor == null || myExecutorThreadCount != theThreadCount) {
+			if (myExecutor != null) {
+				myExecutor.shutdown();
+			}
+			ourLog.info("Starting include query executor with {} threads", theThreadCount);
+			BasicThreadFactory threadFactory = new BasicThreadFactory.Builder()
+				.namingPattern("search-include-%d")
+				.daemon(true)
+				.build();
+			myExecutor = Executors.newFixedThreadPool(theThreadCount, threadFactory);
+			myInFlightPermits = new Semaphore(theThreadCount);
+			myExecutorThreadCount = theThreadCount;
+		}
+		return myExecutor;
+	}
+
+	@PreDestroy
+	public synchronized void stop() {
+		if (myExecutor != null) {
+			myExecutor.shutdownNow();
+			myExecutor = null;
+			myInFlightPermits = null;
+		}
+	}
+
+	@VisibleForTesting
+	synchronized int getAvailablePermitsForUnitTest() {
+		return myInFlightPermits != null ? myInFlightPermits.availablePermits() : -1;
+	}
+
+	@VisibleForTesting
+	void setDaoConfigForUnitTest(DaoConfig theDaoConfig) {
+		myDaoConfig = theDaoConfig;
+	}
+
+	@VisibleForTesting
+	void setTransactionManagerForUnitTest(PlatformTransactionManager theTransactionManager) {
+		myTransactionManager = theTransactionManager;
+	}
+
+	@VisibleForTesting
+	void setEntityManagerForUnitTest(EntityManager theEntityManager) {
+		myEntityManager = theEntityManager;
+	}
+
+	/**
+	 * A query submitted to the pool. It holds one of the in-flight permits from the time it is
+	 * submitted until it either finishes running or is cancelled before it starts.
+	 */
+	private class IncludeQueryTask implements Callable<long[]> {
+
+		private final IncludeQuery myQuery;
+		private final Semaphore myPermits;
+		private final AtomicBoolean myClaimed = new AtomicBoolean();
+		private Future<long[]> myFuture;
+
+		private IncludeQueryTask(IncludeQuery theQuery, Semaphore thePermits) {
+			myQuery = theQuery;
+			myPermits = thePermits;
+		}
+
+		private void setFuture(Future<long[]> theFuture) {
+			myFuture = theFuture;
+		}
+
+		@Override
+		public long[] call() {
+			if (!myClaimed.compareAndSet(false, true)) {
+				return new long[0];
+			}
+			try {
+				return newTransactionTemplate().execute(t -> myQuery.execute(myEntityManager));
+			} finally {
+				myPermits.release();
+			}
+		}
+
+		private void cancel() {
+			if (myClaimed.compareAndSet(false, true)) {
+				myPermits.release();
+			}
+			myFuture.cancel(true);
+		}
+	}
+
+	/**
+	 * A JPQL query selecting a single column of resource PIDs
+	 */
+	public static class IncludeQuery {
+
+		private final String myJpql;
+		private final Map<String, Object> myParameters = new LinkedHashMap<>();
+
+		public IncludeQuery(String theJpql) {
+			myJpql = theJpql;
+		}
+
+		public IncludeQuery setParameter(String theName, Object theValue) {
+			myParameters.put(theName, theValue);
+			return this;
+		}
+
+		public String getJpql() {
+			return myJpql;
+		}
+
+		public Map<String, Object> getParameters() {
+			return Collections.unmodifiableMap(myParameters);
+		}
+
+		private void execute(EntityManager theEntityManager, LongConsumer theConsumer) {
+			for (long next : execute(theEntityManager)) {
+				theConsumer.accept(next);
+			}
+		}
+
+		private long[] execute(EntityManager theEntityManager) {
+			TypedQuery<Long> q = theEntityManager.createQuery(myJpql, Long.class);
+			myParameters.forEach(q::setParameter);
+			List<Long> results = q.getResultList();
+			long[] retVal = new long[results.size()];
+			int count = 0;
+			for (Long next : results) {
+				if (next != null) {
+					retVal[count++] = next;
+				}
+			}
+			return count == retVal.length ? retVal : Arrays.copyOf(retVal, count);
+		}
+
+		@Override
+		public String toString() {
+			return myJpql + " " + myParameters;
+		}
+	}
+
+}
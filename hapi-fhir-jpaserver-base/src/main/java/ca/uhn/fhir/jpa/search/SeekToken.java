@@ -0,0 +1,181 @@
+package ca.uhn.fhir.jpa.search;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import org.apache.commons.lang3.Validate;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Position marker used for seek (keyset) paging of offset searches and history, passed
+ * to the client in the {@link Constants#PARAM_SEEK} parameter of the next page link.
+ * <p>
+ * The token records the sort value and PID of the last row of the main query on the
+ * previous page, so that the next page can be fetched with a range predicate on
+ * <code>(sort value, RES_ID)</code> instead of asking the database to skip over all of
+ * the preceding rows. It also records the offset it was issued for: a token is only
+ * honoured if the request is for that same offset, so a client that edits the offset
+ * (or pages backwards) simply falls back to regular offset paging.
+ * </p>
+ */
+public class SeekToken {
+
+	private static final char SEPARATOR = '|';
+	private final KindEnum myKind;
+	private final int myOffset;
+	private final Long myValue;
+	private final long myPid;
+
+	/**
+	 * Constructor
+	 *
+	 * @param theKind   The ordering the token applies to
+	 * @param theOffset The offset of the page this token can be used to fetch
+	 * @param theValue  The sort value (lastUpdated time in milliseconds) of the last row, or <code>null</code> for {@link KindEnum#RESOURCE_ID}
+	 * @param thePid    The PID of the last row
+	 */
+	public SeekToken(KindEnum theKind, int theOffset, @Nullable Long theValue, long thePid) {
+		Validate.notNull(theKind, "theKind must not be null");
+		Validate.isTrue(theKind == KindEnum.RESOURCE_ID || theValue != null, "theValue must not be null for kind %s", theKind);
+		myKind = theKind;
+		myOffset = theOffset;
+		myValue = theValue;
+		myPid = thePid;
+	}
+
+	public KindEnum getKind() {
+		return myKind;
+	}
+
+	public int getOffset() {
+		return myOffset;
+	}
+
+	@Nullable
+	public Long getValue() {
+		return myValue;
+	}
+
+	public long getPid() {
+		return myPid;
+	}
+
+	/**
+	 * Returns <code>true</code> if this token can be used to fetch the page at the given offset
+	 * using the given ordering
+	 */
+	public boolean isApplicable(KindEnum theKind, Integer theOffset) {
+		return myKind == theKind && theOffset != null && myOffset == theOffset;
+	}
+
+	public String encode() {
+		String value = myKind.getCode() + SEPARATOR + myOffset + SEPARATOR + (myValue != null ? myValue : "") + SEPARATOR + myPid;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public String toString() {
+		return encode();
+	}
+
+	/**
+	 * Parses a token created by {@link #encode()}
+	 *
+	 * @return Returns <code>null</code> if the token is blank
+	 * @throws InvalidRequestException If the token is not valid
+	 */
+	@Nullable
+	public static SeekToken parse(@Nullable String theToken) {
+		if (isBlank(theToken)) {
+			return null;
+		}
+
+		try {
+			String decoded = new String(Base64.getUrlDecoder().decode(theToken), StandardCharsets.UTF_8);
+			String[] parts = decoded.split("\\" + SEPARATOR, -1);
+			if (parts.length == 4) {
+				KindEnum kind = KindEnum.forCode(parts[0]);
+				if (kind != null) {
+					int offset = Integer.parseInt(parts[1]);
+					Long value = isBlank(parts[2]) ? null : Long.parseLong(parts[2]);
+					long pid = Long.parseLong(parts[3]);
+					if (offset >= 0 && (kind == KindEnum.RESOURCE_ID || value != null)) {
+						return new SeekToken(kind, offset, value, pid);
+					}
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			// fall through (NumberFormatException is an IllegalArgumentException too)
+		}
+
+		throw new InvalidRequestException("Invalid " + Constants.PARAM_SEEK + " value: " + theToken);
+	}
+
+	public enum KindEnum {
+
+		/**
+		 * Unsorted search, ordered by <code>RES_ID</code>
+		 */
+		RESOURCE_ID("I"),
+
+		/**
+		 * Search sorted by <code>_lastUpdated</code> ascending, then <code>RES_ID</code> ascending
+		 */
+		LAST_UPDATED_ASC("UA"),
+
+		/**
+		 * Search sorted by <code>_lastUpdated</code> descending, then <code>RES_ID</code> descending
+		 */
+		LAST_UPDATED_DESC("UD"),
+
+		/**
+		 * History, ordered by <code>RES_UPDATED</code> descending, then <code>PID</code> descending
+		 */
+		HISTORY("H");
+
+		private final String myCode;
+
+		KindEnum(String theCode) {
+			myCode = theCode;
+		}
+
+		public String getCode() {
+			return myCode;
+		}
+
+		@Nullable
+		public static KindEnum forCode(String theCode) {
+			for (KindEnum next : values()) {
+				if (next.getCode().equals(theCode)) {
+					return next;
+				}
+			}
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,244 @@
+package ca.uhn.fhir.jpa.search.cache;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.dao.data.ISearchResultPageDao;
+import ca.uhn.fhir.jpa.entity.Search;
+import ca.uhn.fhir.jpa.entity.SearchResultPage;
+import ca.uhn.fhir.rest.api.server.storage.ResourcePersistentId;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.transaction.Transactional;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * {@link ISearchResultCacheSvc} which stores the PIDs matched by a search in fixed-size pages,
+ * one HFJ_SEARCH_RESULT_PAGE row per page, instead of one HFJ_SEARCH_RESULT row per match.
+ * <p>
+ * Each page holds the PIDs in search order, delta-encoded as variable length integers and
+ * then deflated. Since PIDs in a result set are usually close together, a full page typically
+ * takes a few bytes per PID. Fetching a page of results normally reads a single row, and
+ * deleting a search removes one row per {@link #DEFAULT_PAGE_SIZE} results.
+ * </p>
+ * <p>
+ * To use this implementation, override the <code>searchResultCacheSvc()</code> bean in your
+ * configuration so that it returns an instance of this class.
+ * </p>
+ */
+public class CompressedSearchResultCacheSvcImpl implements ISearchResultCacheSvc {
+	public static final int DEFAULT_PAGE_SIZE = 10000;
+	private static final Logger ourLog = LoggerFactory.getLogger(CompressedSearchResultCacheSvcImpl.class);
+
+	@Autowired
+	private ISearchResultPageDao mySearchResultPageDao;
+	private int myPageSize = DEFAULT_PAGE_SIZE;
+
+	@Override
+	@Transactional(Transactional.TxType.REQUIRED)
+	public List<ResourcePersistentId> fetchResultPids(Search theSearch, int theFrom, int theTo) {
+		if (theTo <= theFrom) {
+			return Collections.emptyList();
+		}
+
+		int firstPageIndex = theFrom / myPageSize;
+		int lastPageIndex = (theTo - 1) / myPageSize;
+		List<Long> pids = new ArrayList<>();
+		for (SearchResultPage next : mySearchResultPageDao.findPagesForSearch(theSearch.getId(), firstPageIndex, lastPageIndex)) {
+			pids.addAll(decodePids(next.getPids()));
+		}
+
+		int offset = firstPageIndex * myPageSize;
+		int from = Math.min(theFrom - offset, pids.size());
+		int to = Math.min(theTo - offset, pids.size());
+		List<Long> retVal = pids.subList(from, to);
+
+		ourLog.debug("fetchResultPids for range {}-{} returned {} pids", theFrom, theTo, retVal.size());
+
+		return ResourcePersistentId.fromLongList(retVal);
+	}
+
+	@Override
+	@Transactional(Transactional.TxType.REQUIRED)
+	public List<ResourcePersistentId> fetchAllResultPids(Search theSearch) {
+		List<Long> retVal = new ArrayList<>();
+		for (SearchResultPage next : mySearchResultPageDao.findAllPagesForSearch(theSearch.getId())) {
+			retVal.addAll(decodePids(next.getPids()));
+		}
+		ourLog.trace("fetchAllResultPids returned {} pids", retVal.size());
+		return ResourcePersistentId.fromLongList(retVal);
+	}
+
+	@Override
+	@Transactional(Transactional.TxType.REQUIRED)
+	public void storeResults(Search theSearch, List<ResourcePersistentId> thePreviouslyStoredResourcePids, List<ResourcePersistentId> theNewResourcePids) {
+		ourLog.trace("Storing {} results with {} previous for search", theNewResourcePids.size(), thePreviouslyStoredResourcePids.size());
+
+		int previousCount = thePreviouslyStoredResourcePids.size();
+		int pageIndex = previousCount / myPageSize;
+		int pageStart = pageIndex * myPageSize;
+
+		// If the last stored page isn't full, it gets rewritten with the new PIDs appended
+		SearchResultPage page = null;
+		List<Long> pagePids = new ArrayList<>(myPageSize);
+		if (pageStart < previousCount) {
+			List<SearchResultPage> existing = mySearchResultPageDao.findPagesForSearch(theSearch.getId(), pageIndex, pageIndex);
+			if (!existing.isEmpty()) {
+				page = existing.get(0);
+			}
+			for (ResourcePersistentId next : thePreviouslyStoredResourcePids.subList(pageStart, previousCount)) {
+				pagePids.add(next.getIdAsLong());
+			}
+		}
+
+		List<SearchResultPage> pagesToSave = new ArrayList<>();
+		for (ResourcePersistentId next : theNewResourcePids) {
+			pagePids.add(next.getIdAsLong());
+			if (pagePids.size() == myPageSize) {
+				pagesToSave.add(toPage(theSearch, page, pageIndex, pagePids));
+				page = null;
+				pagePids = new ArrayList<>(myPageSize);
+				pageIndex++;
+			}
+		}
+		if (!pagePids.isEmpty()) {
+			pagesToSave.add(toPage(theSearch, page, pageIndex, pagePids));
+		}
+
+		mySearchResultPageDao.saveAll(pagesToSave);
+	}
+
+	/**
+	 * Pages are only a handful of rows per search, so they are all deleted in one statement
+	 */
+	@Override
+	@Transactional(Transactional.TxType.REQUIRED)
+	public void deleteResultsForSearch(Search theSearch) {
+		mySearchResultPageDao.deleteForSearch(theSearch.getId());
+	}
+
+	private SearchResultPage toPage(Search theSearch, SearchResultPage theExistingPage, int thePageIndex, List<Long> thePids) {
+		SearchResultPage retVal = theExistingPage;
+		if (retVal == null) {
+			retVal = new SearchResultPage(theSearch, thePageIndex);
+		}
+		retVal.setPids(encodePids(thePids));
+		retVal.setPidCount(thePids.size());
+		ourLog.trace("Saving page {} with {} PIDs ({} bytes)", thePageIndex, thePids.size(), retVal.getPids().length);
+		return retVal;
+	}
+
+	@VisibleForTesting
+	void setSearchResultPageDaoForUnitTest(ISearchResultPageDao theSearchResultPageDao) {
+		mySearchResultPageDao = theSearchResultPageDao;
+	}
+
+	@VisibleForTesting
+	void setPageSizeForUnitTest(int thePageSize) {
+		Validate.isTrue(thePageSize > 0);
+		myPageSize = thePageSize;
+	}
+
+	/**
+	 * Encodes a list of PIDs as a count followed by the (zig-zag encoded) difference between each
+	 * PID and the one before it, all written as variable length integers, and then deflates the result.
+	 */
+	static byte[] encodePids(List<Long> thePids) {
+		ByteArrayOutputStream raw = new ByteArrayOutputStream(thePids.size() * 2 + 5);
+		writeVarLong(raw, thePids.size());
+		long previous = 0;
+		for (Long next : thePids) {
+			long delta = next - previous;
+			writeVarLong(raw, (delta << 1) ^ (delta >> 63));
+			previous = next;
+		}
+
+		ByteArrayOutputStream retVal = new ByteArrayOutputStream(raw.size() / 2 + 16);
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try (DeflaterOutputStream out = new DeflaterOutputStream(retVal, deflater)) {
+			raw.writeTo(out);
+		} catch (IOException e) {
+			throw new InternalErrorException("Failed to encode search result PIDs", e);
+		} finally {
+			deflater.end();
+		}
+		return retVal.toByteArray();
+	}
+
+	/**
+	 * Reverses {@link #encodePids(List)}
+	 */
+	static List<Long> decodePids(byte[] theEncoded) {
+		try (InputStream in = new BufferedInputStream(new InflaterInputStream(new ByteArrayInputStream(theEncoded)))) {
+			int count = (int) readVarLong(in);
+			List<Long> retVal = new ArrayList<>(count);
+			long previous = 0;
+			for (int i = 0; i < count; i++) {
+				long zigZag = readVarLong(in);
+				previous += (zigZag >>> 1) ^ -(zigZag & 1);
+				retVal.add(previous);
+			}
+			return retVal;
+		} catch (IOException e) {
+			throw new InternalErrorException("Failed to decode search result PIDs", e);
+		}
+	}
+
+	private static void writeVarLong(ByteArrayOutputStream theOutput, long theValue) {
+		long value = theValue;
+		while ((value & ~0x7FL) != 0) {
+			theOutput.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		theOutput.write((int) value);
+	}
+
+	private static long readVarLong(InputStream theInput) throws IOException {
+		long retVal = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int next = theInput.read();
+			if (next == -1) {
+				throw new EOFException("Unexpected end of encoded PIDs");
+			}
+			retVal |= (long) (next & 0x7F) << shift;
+			if ((next & 0x80) == 0) {
+				return retVal;
+			}
+		}
+		throw new IOException("Malformed encoded PIDs");
+	}
+
+}
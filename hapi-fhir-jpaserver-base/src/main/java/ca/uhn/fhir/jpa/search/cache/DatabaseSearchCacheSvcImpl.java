@@ -73,6 +73,8 @@ public class DatabaseSearchCacheSvcImpl implements ISearchCacheSvc {
 	@Autowired
 	private ISearchResultDao mySearchResultDao;
 	@Autowired
+	private ISearchResultCacheSvc mySearchResultCacheSvc;
+	@Autowired
 	private ISearchIncludeDao mySearchIncludeDao;
 	@Autowired
 	private PlatformTransactionManager myTxManager;
@@ -114,6 +116,10 @@ public class DatabaseSearchCacheSvcImpl implements ISearchCacheSvc {
 		myTxManager = theTxManager;
 	}
 
+	void setSearchResultCacheSvcForUnitTest(ISearchResultCacheSvc theSearchResultCacheSvc) {
+		mySearchResultCacheSvc = theSearchResultCacheSvc;
+	}
+
 	@Override
 	@Transactional(Transactional.TxType.NEVER)
 	public Optional<Search> tryToMarkSearchAsInProgress(Search theSearch) {
@@ -206,6 +212,8 @@ public class DatabaseSearchCacheSvcImpl implements ISearchCacheSvc {
 		mySearchDao.findById(theSearchPid).ifPresent(searchToDelete -> {
 			mySearchIncludeDao.deleteForSearch(searchToDelete.getId());
 
+			mySearchResultCacheSvc.deleteResultsForSearch(searchToDelete);
+
 			/*
 			 * Note, we're only deleting up to 500 results in an individual search here. This
 			 * is to prevent really long running transactions in cases where there are
@@ -56,4 +56,15 @@ public interface ISearchResultCacheSvc {
 	@Nullable
 	List<ResourcePersistentId> fetchAllResultPids(Search theSearch);
 
+	/**
+	 * Called by the stale search cleanup, in its transaction, each time it purges the results of a
+	 * search which is being deleted. Rows in HFJ_SEARCH_RESULT are purged by the cleanup itself, so
+	 * this only needs to be implemented by services which store results somewhere else.
+	 *
+	 * @param theSearch The search being deleted
+	 */
+	default void deleteResultsForSearch(Search theSearch) {
+		// nothing
+	}
+
 }
@@ -0,0 +1,198 @@
+package ca.uhn.fhir.jpa.search.cache;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.entity.Search;
+import ca.uhn.fhir.jpa.model.search.SearchStatusEnum;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ISearchCacheSvc} which keeps searches on the heap, for deployments where a single node
+ * serves all paging requests for the searches it creates.
+ * <p>
+ * Searches are held until they have not been accessed for a configurable amount of time, and
+ * the least recently used searches are evicted once the maximum number of searches is reached.
+ * </p>
+ * <p>
+ * If a delegate is supplied (normally a {@link DatabaseSearchCacheSvcImpl}), every change is also
+ * written through to it, searches which are not held in memory are looked up there, and the
+ * delegate remains responsible for marking searches as in progress and for finding searches to
+ * reuse, so that other nodes continue to see a consistent view. Without a delegate, nothing is
+ * written to the database at all, and searches do not survive a restart. This class is intended
+ * to be used together with {@link MemorySearchResultCacheSvcImpl}, configured the same way. For
+ * example:
+ * </p>
+ * <pre>
+ * &#64;Bean
+ * &#64;Primary
+ * public ISearchCacheSvc searchCacheSvc() {
+ *    return new MemorySearchCacheSvcImpl(databaseSearchCacheSvc());
+ * }
+ *
+ * &#64;Bean
+ * public DatabaseSearchCacheSvcImpl databaseSearchCacheSvc() {
+ *    return new DatabaseSearchCacheSvcImpl();
+ * }
+ * </pre>
+ */
+public class MemorySearchCacheSvcImpl implements ISearchCacheSvc {
+	public static final long DEFAULT_MAX_SEARCHES = 10000;
+	public static final long DEFAULT_EXPIRE_AFTER_ACCESS_MILLIS = TimeUnit.HOURS.toMillis(1);
+	private static final Logger ourLog = LoggerFactory.getLogger(MemorySearchCacheSvcImpl.class);
+
+	private final ISearchCacheSvc myDelegate;
+	private final Cache<String, Search> mySearches;
+
+	/**
+	 * Constructor which holds up to {@link #DEFAULT_MAX_SEARCHES} searches for
+	 * {@link #DEFAULT_EXPIRE_AFTER_ACCESS_MILLIS} milliseconds after they were last accessed
+	 *
+	 * @param theDelegate The service to write through to, or <code>null</code> to keep searches in memory only
+	 */
+	public MemorySearchCacheSvcImpl(@Nullable ISearchCacheSvc theDelegate) {
+		this(theDelegate, DEFAULT_MAX_SEARCHES, DEFAULT_EXPIRE_AFTER_ACCESS_MILLIS);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param theDelegate               The service to write through to, or <code>null</code> to keep searches in memory only
+	 * @param theMaxSearches            The maximum number of searches to hold
+	 * @param theExpireAfterAccessMillis The number of milliseconds after which a search which has not been accessed is discarded
+	 */
+	public MemorySearchCacheSvcImpl(@Nullable ISearchCacheSvc theDelegate, long theMaxSearches, long theExpireAfterAccessMillis) {
+		Validate.isTrue(theMaxSearches > 0, "theMaxSearches must be greater than 0");
+		Validate.isTrue(theExpireAfterAccessMillis > 0, "theExpireAfterAccessMillis must be greater than 0");
+		myDelegate = theDelegate;
+		mySearches = Caffeine
+			.newBuilder()
+			.maximumSize(theMaxSearches)
+			.expireAfterAccess(theExpireAfterAccessMillis, TimeUnit.MILLISECONDS)
+			.build();
+	}
+
+	@Override
+	public Search save(Search theSearch) {
+		Validate.notBlank(theSearch.getUuid());
+		Search retVal = theSearch;
+		if (myDelegate != null) {
+			retVal = myDelegate.save(theSearch);
+			if (retVal == null) {
+				return null;
+			}
+		}
+		mySearches.put(retVal.getUuid(), retVal);
+		return retVal;
+	}
+
+	@Override
+	public Optional<Search> fetchByUuid(String theUuid) {
+		Validate.notBlank(theUuid);
+		Search retVal = mySearches.getIfPresent(theUuid);
+		if (retVal != null) {
+			return Optional.of(retVal);
+		}
+		if (myDelegate == null) {
+			return Optional.empty();
+		}
+
+		Optional<Search> fromDelegate = myDelegate.fetchByUuid(theUuid);
+		fromDelegate.ifPresent(t -> mySearches.put(theUuid, t));
+		return fromDelegate;
+	}
+
+	@Override
+	public Optional<Search> tryToMarkSearchAsInProgress(Search theSearch) {
+		if (myDelegate != null) {
+			Optional<Search> retVal = myDelegate.tryToMarkSearchAsInProgress(theSearch);
+			retVal.ifPresent(t -> mySearches.put(t.getUuid(), t));
+			return retVal;
+		}
+
+		Search search = mySearches.getIfPresent(theSearch.getUuid());
+		if (search == null) {
+			search = theSearch;
+		}
+		synchronized (search) {
+			if (search.getStatus() != SearchStatusEnum.PASSCMPLET) {
+				ourLog.warn("Failed to activate search: Can't change to LOADING because state is {}", search.getStatus());
+				return Optional.empty();
+			}
+			search.setStatus(SearchStatusEnum.LOADING);
+		}
+		mySearches.put(search.getUuid(), search);
+		return Optional.of(search);
+	}
+
+	@Override
+	public Collection<Search> findCandidatesForReuse(String theResourceType, String theQueryString, int theQueryStringHash, Date theCreatedAfter) {
+		if (myDelegate != null) {
+			return myDelegate.findCandidatesForReuse(theResourceType, theQueryString, theQueryStringHash, theCreatedAfter);
+		}
+
+		List<Search> retVal = new ArrayList<>();
+		for (Search next : mySearches.asMap().values()) {
+			if (!Objects.equals(theResourceType, next.getResourceType())) {
+				continue;
+			}
+			if (!Objects.equals(theQueryStringHash, next.getSearchQueryStringHash())) {
+				continue;
+			}
+			if (next.getCreated() == null || !next.getCreated().after(theCreatedAfter)) {
+				continue;
+			}
+			if (Boolean.TRUE.equals(next.getDeleted()) || next.getStatus() == SearchStatusEnum.FAILED) {
+				continue;
+			}
+			retVal.add(next);
+		}
+		return retVal;
+	}
+
+	@Override
+	public void pollForStaleSearchesAndDeleteThem() {
+		mySearches.cleanUp();
+		if (myDelegate != null) {
+			myDelegate.pollForStaleSearchesAndDeleteThem();
+		}
+	}
+
+	/**
+	 * Returns the number of searches currently held in memory
+	 */
+	public long getSearchCount() {
+		return mySearches.estimatedSize();
+	}
+
+}
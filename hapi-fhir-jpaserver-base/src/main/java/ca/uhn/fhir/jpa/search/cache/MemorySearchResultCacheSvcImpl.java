@@ -0,0 +1,373 @@
+package ca.uhn.fhir.jpa.search.cache;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.entity.Search;
+import ca.uhn.fhir.rest.api.server.storage.ResourcePersistentId;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ISearchResultCacheSvc} which keeps the PIDs matched by each search in off-heap (direct)
+ * buffers, for deployments where a single node serves all paging requests for the searches it
+ * creates. Paging requests for a search held here never touch the database.
+ * <p>
+ * The total size of all buffers is limited to a configurable number of bytes. When storing new
+ * results would go over that budget, the least recently used searches are evicted. Searches which
+ * have not been accessed for a configurable amount of time are evicted too.
+ * </p>
+ * <p>
+ * Direct buffers are not released when a search is evicted. Their memory is only returned when the
+ * garbage collector collects the buffer object, which can take a while since it is tiny on the heap.
+ * The budget only counts buffers which are still held, so the process can briefly use more direct
+ * memory than the budget, and <code>-XX:MaxDirectMemorySize</code> should leave some room above it.
+ * </p>
+ * <p>
+ * Each search's buffer is guarded by its own lock, so paging through different searches never
+ * contends. Only the LRU eviction and expiry sweeps, which run when results are stored, share a lock.
+ * </p>
+ * <p>
+ * If a delegate is supplied (normally a {@link DatabaseSearchResultCacheSvcImpl}), all results are
+ * also written through to it, and any search which is not held in memory (because it was evicted,
+ * or was created on another node) is read from there instead. Without a delegate, results which
+ * are evicted are gone, and clients paging through them will receive an HTTP 410 as they would
+ * for an expired search. In that mode the search being written is never evicted to make room for
+ * itself, so a single search larger than the budget can still go over it.
+ * </p>
+ * <p>
+ * See {@link MemorySearchCacheSvcImpl} for how to configure this class.
+ * </p>
+ */
+public class MemorySearchResultCacheSvcImpl implements ISearchResultCacheSvc {
+	public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+	public static final long DEFAULT_EXPIRE_AFTER_ACCESS_MILLIS = TimeUnit.HOURS.toMillis(1);
+	private static final Logger ourLog = LoggerFactory.getLogger(MemorySearchResultCacheSvcImpl.class);
+	private static final int INITIAL_CAPACITY = 1000;
+
+	private final ISearchResultCacheSvc myDelegate;
+	private final long myMaxBytes;
+	private final long myExpireAfterAccessMillis;
+	private final ConcurrentHashMap<String, PidBuffer> myBuffers = new ConcurrentHashMap<>();
+	private final AtomicLong myTotalBytes = new AtomicLong();
+	private final AtomicLong myAccessSequence = new AtomicLong();
+	private final Object myEvictionLock = new Object();
+	private Long myNowForUnitTest;
+
+	/**
+	 * Constructor which allows up to {@link #DEFAULT_MAX_BYTES} bytes of results, and discards results
+	 * {@link #DEFAULT_EXPIRE_AFTER_ACCESS_MILLIS} milliseconds after they were last accessed
+	 *
+	 * @param theDelegate The service to write through to, or <code>null</code> to keep results in memory only
+	 */
+	public MemorySearchResultCacheSvcImpl(@Nullable ISearchResultCacheSvc theDelegate) {
+		this(theDelegate, DEFAULT_MAX_BYTES, DEFAULT_EXPIRE_AFTER_ACCESS_MILLIS);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param theDelegate                The service to write through to, or <code>null</code> to keep results in memory only
+	 * @param theMaxBytes                The maximum number of bytes to allocate for results across all searches
+	 * @param theExpireAfterAccessMillis The number of milliseconds after which results which have not been accessed are discarded
+	 */
+	public MemorySearchResultCacheSvcImpl(@Nullable ISearchResultCacheSvc theDelegate, long theMaxBytes, long theExpireAfterAccessMillis) {
+		Validate.isTrue(theMaxBytes > 0, "theMaxBytes must be greater than 0");
+		Validate.isTrue(theExpireAfterAccessMillis > 0, "theExpireAfterAccessMillis must be greater than 0");
+		myDelegate = theDelegate;
+		myMaxBytes = theMaxBytes;
+		myExpireAfterAccessMillis = theExpireAfterAccessMillis;
+	}
+
+	@Override
+	public void storeResults(Search theSearch, List<ResourcePersistentId> thePreviouslyStoredResourcePids, List<ResourcePersistentId> theNewResourcePids) {
+		if (myDelegate != null) {
+			myDelegate.storeResults(theSearch, thePreviouslyStoredResourcePids, theNewResourcePids);
+		}
+
+		String uuid = theSearch.getUuid();
+		expireStaleBuffers();
+
+		while (true) {
+			PidBuffer buffer = myBuffers.get(uuid);
+			if (buffer == null) {
+				if (!thePreviouslyStoredResourcePids.isEmpty() && myDelegate != null) {
+					// The delegate has the complete results, so keep reading them from there
+					return;
+				}
+				buffer = new PidBuffer(thePreviouslyStoredResourcePids.size() + theNewResourcePids.size());
+				synchronized (buffer) {
+					buffer.addAll(thePreviouslyStoredResourcePids);
+					buffer.touch(now(), myAccessSequence.incrementAndGet());
+					if (myBuffers.putIfAbsent(uuid, buffer) != null) {
+						// Somebody else got there first
+						continue;
+					}
+					myTotalBytes.addAndGet(buffer.capacityBytes());
+				}
+			}
+
+			synchronized (buffer) {
+				if (buffer.isRemoved()) {
+					continue;
+				}
+				if (buffer.size() != thePreviouslyStoredResourcePids.size()) {
+					// Results were stored somewhere else in the meantime, so what we hold is incomplete
+					removeBuffer(uuid, buffer);
+					continue;
+				}
+				long capacityBefore = buffer.capacityBytes();
+				buffer.addAll(theNewResourcePids);
+				myTotalBytes.addAndGet(buffer.capacityBytes() - capacityBefore);
+				buffer.touch(now(), myAccessSequence.incrementAndGet());
+			}
+			break;
+		}
+
+		evictToBudget(uuid);
+	}
+
+	@Nullable
+	@Override
+	public List<ResourcePersistentId> fetchResultPids(Search theSearch, int theFrom, int theTo) {
+		List<ResourcePersistentId> retVal = fetchFromBuffer(theSearch.getUuid(), theFrom, theTo);
+		if (retVal != null) {
+			ourLog.debug("fetchResultPids for range {}-{} returned {} pids from memory", theFrom, theTo, retVal.size());
+			return retVal;
+		}
+
+		if (myDelegate != null) {
+			return myDelegate.fetchResultPids(theSearch, theFrom, theTo);
+		}
+		return null;
+	}
+
+	@Nullable
+	@Override
+	public List<ResourcePersistentId> fetchAllResultPids(Search theSearch) {
+		List<ResourcePersistentId> retVal = fetchFromBuffer(theSearch.getUuid(), 0, Integer.MAX_VALUE);
+		if (retVal != null) {
+			return retVal;
+		}
+
+		if (myDelegate != null) {
+			return myDelegate.fetchAllResultPids(theSearch);
+		}
+		return null;
+	}
+
+	@Override
+	public void deleteResultsForSearch(Search theSearch) {
+		if (myDelegate != null) {
+			myDelegate.deleteResultsForSearch(theSearch);
+		}
+
+		PidBuffer buffer = myBuffers.get(theSearch.getUuid());
+		if (buffer != null) {
+			removeBuffer(theSearch.getUuid(), buffer);
+		}
+	}
+
+	/**
+	 * Returns the number of bytes currently allocated for results. Buffers which have been
+	 * evicted but not yet garbage collected are not included.
+	 */
+	public long getTotalBytes() {
+		return myTotalBytes.get();
+	}
+
+	/**
+	 * Returns the number of searches whose results are currently held in memory
+	 */
+	public int getSearchCount() {
+		return myBuffers.size();
+	}
+
+	@VisibleForTesting
+	void setNowForUnitTest(Long theNowForUnitTest) {
+		myNowForUnitTest = theNowForUnitTest;
+	}
+
+	private long now() {
+		if (myNowForUnitTest != null) {
+			return myNowForUnitTest;
+		}
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 * @return Returns <code>null</code> if the search is not held in memory
+	 */
+	@Nullable
+	private List<ResourcePersistentId> fetchFromBuffer(String theUuid, int theFrom, int theTo) {
+		PidBuffer buffer = myBuffers.get(theUuid);
+		if (buffer == null) {
+			return null;
+		}
+		synchronized (buffer) {
+			if (buffer.isRemoved()) {
+				return null;
+			}
+			if (isStale(buffer)) {
+				ourLog.debug("Expiring in-memory results for search {}", theUuid);
+				removeBuffer(theUuid, buffer);
+				return null;
+			}
+			buffer.touch(now(), myAccessSequence.incrementAndGet());
+			return buffer.get(theFrom, theTo);
+		}
+	}
+
+	private boolean isStale(PidBuffer theBuffer) {
+		return theBuffer.getLastAccessed() < now() - myExpireAfterAccessMillis;
+	}
+
+	private void removeBuffer(String theUuid, PidBuffer theBuffer) {
+		synchronized (theBuffer) {
+			if (theBuffer.isRemoved()) {
+				return;
+			}
+			theBuffer.markRemoved();
+			myTotalBytes.addAndGet(-theBuffer.capacityBytes());
+		}
+		myBuffers.remove(theUuid, theBuffer);
+	}
+
+	private void expireStaleBuffers() {
+		synchronized (myEvictionLock) {
+			for (Map.Entry<String, PidBuffer> next : myBuffers.entrySet()) {
+				if (isStale(next.getValue())) {
+					ourLog.debug("Expiring in-memory results for search {}", next.getKey());
+					removeBuffer(next.getKey(), next.getValue());
+				}
+			}
+		}
+	}
+
+	private void evictToBudget(String theCurrentUuid) {
+		if (myTotalBytes.get() <= myMaxBytes) {
+			return;
+		}
+
+		synchronized (myEvictionLock) {
+			List<Map.Entry<String, PidBuffer>> leastRecentlyUsedFirst = new ArrayList<>(myBuffers.entrySet());
+			leastRecentlyUsedFirst.sort(Comparator.comparingLong(t -> t.getValue().getAccessSequence()));
+			for (Map.Entry<String, PidBuffer> next : leastRecentlyUsedFirst) {
+				if (myTotalBytes.get() <= myMaxBytes) {
+					break;
+				}
+				if (next.getKey().equals(theCurrentUuid) && myDelegate == null) {
+					continue;
+				}
+				ourLog.debug("Evicting in-memory results for search {} to stay within {} bytes", next.getKey(), myMaxBytes);
+				removeBuffer(next.getKey(), next.getValue());
+			}
+		}
+
+		long totalBytes = myTotalBytes.get();
+		if (totalBytes > myMaxBytes) {
+			ourLog.warn("In-memory search results are using {} bytes, which is more than the configured maximum of {} bytes", totalBytes, myMaxBytes);
+		}
+	}
+
+	/**
+	 * A growable list of PIDs held in a direct buffer. The contents must only be accessed while
+	 * holding the lock on this object, while the access times can be read without it.
+	 */
+	private static class PidBuffer {
+		private ByteBuffer myBuffer;
+		private int mySize;
+		private boolean myRemoved;
+		private volatile long myLastAccessed;
+		private volatile long myAccessSequence;
+
+		PidBuffer(int theInitialCapacity) {
+			myBuffer = ByteBuffer.allocateDirect(Math.max(theInitialCapacity, INITIAL_CAPACITY) * Long.BYTES);
+		}
+
+		void addAll(List<ResourcePersistentId> thePids) {
+			int required = mySize + thePids.size();
+			int capacity = myBuffer.capacity() / Long.BYTES;
+			if (required > capacity) {
+				ByteBuffer newBuffer = ByteBuffer.allocateDirect(Math.max(required, capacity * 2) * Long.BYTES);
+				for (int i = 0; i < mySize; i++) {
+					newBuffer.putLong(i * Long.BYTES, myBuffer.getLong(i * Long.BYTES));
+				}
+				myBuffer = newBuffer;
+			}
+			for (ResourcePersistentId next : thePids) {
+				myBuffer.putLong(mySize * Long.BYTES, next.getIdAsLong());
+				mySize++;
+			}
+		}
+
+		List<ResourcePersistentId> get(int theFrom, int theTo) {
+			int from = Math.max(0, Math.min(theFrom, mySize));
+			int to = Math.max(from, Math.min(theTo, mySize));
+			List<ResourcePersistentId> retVal = new ArrayList<>(to - from);
+			for (int i = from; i < to; i++) {
+				retVal.add(new ResourcePersistentId(myBuffer.getLong(i * Long.BYTES)));
+			}
+			return retVal;
+		}
+
+		int size() {
+			return mySize;
+		}
+
+		long capacityBytes() {
+			return myBuffer.capacity();
+		}
+
+		long getLastAccessed() {
+			return myLastAccessed;
+		}
+
+		long getAccessSequence() {
+			return myAccessSequence;
+		}
+
+		void touch(long theNow, long theAccessSequence) {
+			myLastAccessed = theNow;
+			myAccessSequence = theAccessSequence;
+		}
+
+		boolean isRemoved() {
+			return myRemoved;
+		}
+
+		void markRemoved() {
+			myRemoved = true;
+		}
+	}
+
+}
@@ -0,0 +1,463 @@
+package ca.uhn.fhir.jpa.search.plan;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import ca.uhn.fhir.interceptor.model.RequestPartitionId;
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
+import ca.uhn.fhir.jpa.dao.predicate.SearchBuilderTokenModeEnum;
+import ca.uhn.fhir.jpa.dao.predicate.SearchPredicateUtil;
+import ca.uhn.fhir.jpa.dao.index.IdHelperService;
+import ca.uhn.fhir.jpa.model.config.PartitionSettings;
+import ca.uhn.fhir.jpa.model.entity.BaseResourceIndexedSearchParam;
+import ca.uhn.fhir.jpa.model.entity.ResourceIndexedSearchParamToken;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.searchparam.registry.ISearchParamRegistry;
+import ca.uhn.fhir.model.api.IQueryParameterType;
+import ca.uhn.fhir.model.primitive.IdDt;
+import ca.uhn.fhir.rest.api.server.storage.ResourcePersistentId;
+import ca.uhn.fhir.rest.param.DateParam;
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import ca.uhn.fhir.util.FhirVersionIndependentConcept;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.lang3.Validate;
+import org.hibernate.Session;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.LongType;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.annotation.Nullable;
+import javax.persistence.EntityManager;
+import javax.persistence.TemporalType;
+import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+import static org.apache.commons.lang3.StringUtils.trim;
+
+/**
+ * Cache of native SQL statements for common search shapes, used by the search builder
+ * (when {@link DaoConfig#isSearchQueryPlanCacheEnabled() enabled}) instead of building a
+ * JPA Criteria query for every search.
+ * <p>
+ * Each search is reduced to a normalized shape: the parameter names and types, modifiers,
+ * date prefixes and the number of values in each clause. The SQL for a shape is rendered
+ * the first time the shape is seen, and later searches with the same shape only need to
+ * compute their bind values. The rendered SQL never contains parameter values, so the
+ * database and JDBC driver can reuse their statement plans too.
+ * </p>
+ * <p>
+ * Only searches made up of token (exact match), date and plain (unchained) reference
+ * parameters, without a sort, are supported. Anything else (modifiers, chains, special
+ * parameters, partitioning, fulltext, $everything, and so on) bypasses the cache and is
+ * built using the regular Criteria query builder.
+ * </p>
+ * <p>
+ * Code normalization, token hashes and date bound handling come from {@link SearchPredicateUtil},
+ * which is also used by the predicate builders, so that the two ways of building a search can not
+ * drift apart in how they match values.
+ * </p>
+ */
+public class SearchQueryPlanCache {
+
+	public static final long DEFAULT_MAXIMUM_SIZE = 1000;
+	/**
+	 * Clauses with more values than this bypass the cache, since each distinct number of values
+	 * is a separate shape
+	 */
+	static final int MAX_VALUES_PER_CLAUSE = 100;
+	private static final Logger ourLog = LoggerFactory.getLogger(SearchQueryPlanCache.class);
+
+	private final Cache<String, String> myPlans;
+	private final AtomicLong myBypassCount = new AtomicLong();
+	@Autowired
+	private DaoConfig myDaoConfig;
+	@Autowired
+	private PartitionSettings myPartitionSettings;
+	@Autowired
+	private ISearchParamRegistry mySearchParamRegistry;
+	@Autowired
+	private IdHelperService myIdHelperService;
+
+	/**
+	 * Constructor which holds up to {@link #DEFAULT_MAXIMUM_SIZE} shapes
+	 */
+	public SearchQueryPlanCache() {
+		this(DEFAULT_MAXIMUM_SIZE);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param theMaximumSize The maximum number of shapes to hold
+	 */
+	public SearchQueryPlanCache(long theMaximumSize) {
+		Validate.isTrue(theMaximumSize > 0, "theMaximumSize must be greater than 0");
+		myPlans = Caffeine
+			.newBuilder()
+			.maximumSize(theMaximumSize)
+			.recordStats()
+			.build();
+	}
+
+	/**
+	 * Creates the query for a search, using a cached plan where possible
+	 *
+	 * @return Returns <code>null</code> if the search can not be handled by this cache, in which case the
+	 * caller should build the query itself
+	 */
+	@Nullable
+	@SuppressWarnings("unchecked")
+	public TypedQuery<Long> createQuery(EntityManager theEntityManager, String theResourceName, SearchParameterMap theParams, RequestPartitionId theRequestPartitionId, boolean theCount) {
+		SearchQueryShape shape = createShape(theResourceName, theParams, theRequestPartitionId);
+		if (shape == null) {
+			recordBypass();
+			return null;
+		}
+
+		String key = (theCount ? "count:" : "select:") + shape.getKey();
+		String sql = myPlans.get(key, t -> {
+			String retVal = shape.renderSql(theCount);
+			ourLog.debug("Rendered search plan for shape {}: {}", t, retVal);
+			return retVal;
+		});
+
+		NativeQuery<Long> query = theEntityManager.unwrap(Session.class).createNativeQuery(sql);
+		query.addScalar(theCount ? "RES_COUNT" : "RES_ID", LongType.INSTANCE);
+		List<Object> bindValues = shape.getBindValues();
+		for (int i = 0; i < bindValues.size(); i++) {
+			Object next = bindValues.get(i);
+			if (next instanceof Date) {
+				query.setParameter(i + 1, (Date) next, TemporalType.TIMESTAMP);
+			} else {
+				query.setParameter(i + 1, next);
+			}
+		}
+		return query;
+	}
+
+	/**
+	 * Records a search which could not use the cache for reasons determined by the caller
+	 */
+	public void recordBypass() {
+		myBypassCount.incrementAndGet();
+	}
+
+	/**
+	 * Returns the number of searches which used an already cached plan
+	 */
+	public long getHitCount() {
+		return myPlans.stats().hitCount();
+	}
+
+	/**
+	 * Returns the number of searches which had a supported shape that was not already cached
+	 */
+	public long getMissCount() {
+		return myPlans.stats().missCount();
+	}
+
+	/**
+	 * Returns the number of searches which could not use the cache at all
+	 */
+	public long getBypassCount() {
+		return myBypassCount.get();
+	}
+
+	/**
+	 * Returns the ratio of all searches (including bypassed ones) which used an already
+	 * cached plan (between 0.0 and 1.0)
+	 */
+	public double getHitRate() {
+		long hits = getHitCount();
+		long total = hits + getMissCount() + getBypassCount();
+		return total == 0 ? 1.0 : (double) hits / total;
+	}
+
+	/**
+	 * Returns the number of shapes currently held
+	 */
+	public long getSize() {
+		return myPlans.estimatedSize();
+	}
+
+	/**
+	 * Discards all cached plans
+	 */
+	public void invalidateAll() {
+		myPlans.invalidateAll();
+	}
+
+	/**
+	 * @return Returns <code>null</code> if the search has a shape that is not supported
+	 */
+	@Nullable
+	SearchQueryShape createShape(String theResourceName, SearchParameterMap theParams, RequestPartitionId theRequestPartitionId) {
+		if (theParams.getEverythingMode() != null || theParams.getLastUpdated() != null || theParams.isLastN()) {
+			return null;
+		}
+		if (myPartitionSettings.isPartitioningEnabled() || !theRequestPartitionId.isAllPartitions() || myDaoConfig.getDisableHashBasedSearches()) {
+			return null;
+		}
+
+		SearchQueryShape retVal = new SearchQueryShape(theResourceName);
+
+		List<String> paramNames = new ArrayList<>(theParams.keySet());
+		Collections.sort(paramNames);
+		for (String nextParamName : paramNames) {
+			List<List<IQueryParameterType>> andOrParams = theParams.get(nextParamName);
+			if (nextParamName.startsWith("_") || andOrParams.isEmpty() || andOrParams.size() > MAX_VALUES_PER_CLAUSE) {
+				return null;
+			}
+
+			RuntimeSearchParam param = mySearchParamRegistry.getActiveSearchParam(theResourceName, nextParamName);
+			if (param == null) {
+				return null;
+			}
+
+			boolean supported;
+			switch (param.getParamType()) {
+				case TOKEN:
+					supported = !"Location.position".equals(param.getPath()) && addTokenClauses(retVal, theResourceName, nextParamName, andOrParams, theRequestPartitionId);
+					break;
+				case DATE:
+					supported = addDateClauses(retVal, theResourceName, nextParamName, andOrParams, theRequestPartitionId);
+					break;
+				case REFERENCE:
+					supported = addReferenceClauses(retVal, theResourceName, param, andOrParams, theRequestPartitionId);
+					break;
+				default:
+					supported = false;
+					break;
+			}
+			if (!supported) {
+				return null;
+			}
+		}
+
+		return retVal;
+	}
+
+	/**
+	 * Mirrors the hash based token predicates created by the token predicate builder
+	 */
+	private boolean addTokenClauses(SearchQueryShape theShape, String theResourceName, String theParamName, List<List<IQueryParameterType>> theAndOrParams, RequestPartitionId theRequestPartitionId) {
+		for (List<IQueryParameterType> nextOrParams : theAndOrParams) {
+			if (nextOrParams.isEmpty() || nextOrParams.size() > MAX_VALUES_PER_CLAUSE) {
+				return false;
+			}
+
+			List<FhirVersionIndependentConcept> codes = new ArrayList<>();
+			for (IQueryParameterType nextOr : nextOrParams) {
+				if (!(nextOr instanceof TokenParam)) {
+					return false;
+				}
+				TokenParam token = (TokenParam) nextOr;
+				if (token.getMissing() != null || token.getModifier() != null) {
+					return false;
+				}
+				String system = token.getSystem();
+				String code = token.getValue();
+				if ((system != null && system.length() > ResourceIndexedSearchParamToken.MAX_LENGTH) || (code != null && code.length() > ResourceIndexedSearchParamToken.MAX_LENGTH)) {
+					// Let the regular query builder reject this
+					return false;
+				}
+				codes.add(new FhirVersionIndependentConcept(system, code));
+			}
+
+			List<FhirVersionIndependentConcept> sortedCodes = SearchPredicateUtil.normalizeTokenCodes(codes);
+			List<Long> systemHashes = calculateTokenHashes(theResourceName, theParamName, theRequestPartitionId, SearchBuilderTokenModeEnum.SYSTEM_ONLY, sortedCodes);
+			List<Long> valueHashes = calculateTokenHashes(theResourceName, theParamName, theRequestPartitionId, SearchBuilderTokenModeEnum.VALUE_ONLY, sortedCodes);
+			List<Long> systemAndValueHashes = calculateTokenHashes(theResourceName, theParamName, theRequestPartitionId, SearchBuilderTokenModeEnum.SYSTEM_AND_VALUE, sortedCodes);
+			if (systemHashes.isEmpty() && valueHashes.isEmpty() && systemAndValueHashes.isEmpty()) {
+				return false;
+			}
+
+			String alias = theShape.addJoin("HFJ_SPIDX_TOKEN", "RES_ID", "token:" + theParamName);
+			theShape.startOr();
+			if (!systemHashes.isEmpty()) {
+				theShape.addInClause(alias, "HASH_SYS", systemHashes);
+			}
+			if (!valueHashes.isEmpty()) {
+				theShape.addInClause(alias, "HASH_VALUE", valueHashes);
+			}
+			if (!systemAndValueHashes.isEmpty()) {
+				theShape.addInClause(alias, "HASH_SYS_AND_VALUE", systemAndValueHashes);
+			}
+			theShape.endOr();
+		}
+		return true;
+	}
+
+	/**
+	 * Mirrors the date predicates created by the date predicate builder. All of the AND
+	 * clauses for a single parameter share a single join.
+	 */
+	private boolean addDateClauses(SearchQueryShape theShape, String theResourceName, String theParamName, List<List<IQueryParameterType>> theAndOrParams, RequestPartitionId theRequestPartitionId) {
+		String alias = theShape.addJoin("HFJ_SPIDX_DATE", "RES_ID", "date:" + theParamName);
+		long hashIdentity = BaseResourceIndexedSearchParam.calculateHashIdentity(myPartitionSettings, theRequestPartitionId, theResourceName, theParamName);
+		theShape.addInClause(alias, "HASH_IDENTITY", Collections.singletonList(hashIdentity));
+
+		for (List<IQueryParameterType> nextOrParams : theAndOrParams) {
+			if (nextOrParams.isEmpty() || nextOrParams.size() > MAX_VALUES_PER_CLAUSE) {
+				return false;
+			}
+
+			theShape.startOr();
+			for (IQueryParameterType nextOr : nextOrParams) {
+				if (!(nextOr instanceof DateParam)) {
+					return false;
+				}
+				DateParam date = (DateParam) nextOr;
+				if (date.getMissing() != null || date.isEmpty()) {
+					return false;
+				}
+				if (!addDateRangeClause(theShape, alias, new DateRangeParam(date))) {
+					return false;
+				}
+			}
+			theShape.endOr();
+		}
+		return true;
+	}
+
+	private boolean addDateRangeClause(SearchQueryShape theShape, String theAlias, DateRangeParam theRange) {
+		Date lowerBoundInstant = theRange.getLowerBoundAsInstant();
+		Date upperBoundInstant = theRange.getUpperBoundAsInstant();
+		if (lowerBoundInstant == null && upperBoundInstant == null) {
+			return false;
+		}
+
+		DateParam lowerBound = theRange.getLowerBound();
+		DateParam upperBound = theRange.getUpperBound();
+		boolean ordinal = SearchPredicateUtil.isOrdinalDateComparison(theRange, myDaoConfig.getModelConfig());
+		String lowColumn = ordinal ? "SP_VALUE_LOW_DATE_ORDINAL" : "SP_VALUE_LOW";
+		String highColumn = ordinal ? "SP_VALUE_HIGH_DATE_ORDINAL" : "SP_VALUE_HIGH";
+
+		theShape.startAnd();
+		if (lowerBoundInstant != null) {
+			Object lowerValue = ordinal ? theRange.getLowerBoundAsDateInteger() : lowerBoundInstant;
+			if (SearchPredicateUtil.isLowerDateBoundOnLowValueOnly(lowerBound)) {
+				theShape.addComparison(theAlias, lowColumn, ">=", lowerValue);
+			} else {
+				theShape.startOr();
+				theShape.addComparison(theAlias, lowColumn, ">=", lowerValue);
+				theShape.addComparison(theAlias, highColumn, ">=", lowerValue);
+				theShape.endOr();
+			}
+		}
+		if (upperBoundInstant != null) {
+			Object upperValue = ordinal ? theRange.getUpperBoundAsDateInteger() : upperBoundInstant;
+			if (SearchPredicateUtil.isUpperDateBoundOnHighValueOnly(upperBound)) {
+				theShape.addComparison(theAlias, highColumn, "<=", upperValue);
+			} else {
+				theShape.startOr();
+				theShape.addComparison(theAlias, lowColumn, "<=", upperValue);
+				theShape.addComparison(theAlias, highColumn, "<=", upperValue);
+				theShape.endOr();
+			}
+		}
+		theShape.endAnd();
+		return true;
+	}
+
+	/**
+	 * Mirrors the predicates created by the reference predicate builder for references to
+	 * local resources, e.g. <code>Observation?subject=Patient/123</code>
+	 */
+	private boolean addReferenceClauses(SearchQueryShape theShape, String theResourceName, RuntimeSearchParam theParam, List<List<IQueryParameterType>> theAndOrParams, RequestPartitionId theRequestPartitionId) {
+		List<String> paths = new ArrayList<>(theParam.getPathsSplit());
+		paths.removeIf(t -> !trim(t).contains(theResourceName + "."));
+		if (paths.isEmpty()) {
+			return false;
+		}
+
+		for (List<IQueryParameterType> nextOrParams : theAndOrParams) {
+			if (nextOrParams.isEmpty() || nextOrParams.size() > MAX_VALUES_PER_CLAUSE) {
+				return false;
+			}
+
+			List<IIdType> targetIds = new ArrayList<>();
+			for (IQueryParameterType nextOr : nextOrParams) {
+				if (!(nextOr instanceof ReferenceParam)) {
+					return false;
+				}
+				ReferenceParam ref = (ReferenceParam) nextOr;
+				if (ref.getMissing() != null || isNotBlank(ref.getChain()) || isBlank(ref.getIdPart())) {
+					return false;
+				}
+				IIdType targetId = new IdDt(ref.getBaseUrl(), ref.getResourceType(), ref.getIdPart(), null);
+				if (targetId.hasBaseUrl() || !targetId.hasResourceType()) {
+					return false;
+				}
+				targetIds.add(targetId);
+			}
+
+			List<ResourcePersistentId> targetPids = myIdHelperService.resolveResourcePersistentIdsWithCache(theRequestPartitionId, targetIds);
+			if (targetPids.isEmpty()) {
+				return false;
+			}
+
+			String alias = theShape.addJoin("HFJ_RES_LINK", "SRC_RESOURCE_ID", "reference:" + theParam.getName());
+			theShape.addInClause(alias, "SRC_PATH", paths);
+			theShape.addInClause(alias, "TARGET_RESOURCE_ID", ResourcePersistentId.toLongList(targetPids));
+		}
+		return true;
+	}
+
+	private List<Long> calculateTokenHashes(String theResourceName, String theParamName, RequestPartitionId theRequestPartitionId, SearchBuilderTokenModeEnum theTokenMode, List<FhirVersionIndependentConcept> theSortedCodes) {
+		List<FhirVersionIndependentConcept> codes = SearchPredicateUtil.filterTokenCodes(theSortedCodes, theTokenMode);
+		return SearchPredicateUtil.calculateTokenHashes(myPartitionSettings, theRequestPartitionId, theResourceName, theParamName, theTokenMode, codes);
+	}
+
+	@VisibleForTesting
+	void setDaoConfigForUnitTest(DaoConfig theDaoConfig) {
+		myDaoConfig = theDaoConfig;
+	}
+
+	@VisibleForTesting
+	void setPartitionSettingsForUnitTest(PartitionSettings thePartitionSettings) {
+		myPartitionSettings = thePartitionSettings;
+	}
+
+	@VisibleForTesting
+	void setSearchParamRegistryForUnitTest(ISearchParamRegistry theSearchParamRegistry) {
+		mySearchParamRegistry = theSearchParamRegistry;
+	}
+
+	@VisibleForTesting
+	void setIdHelperServiceForUnitTest(IdHelperService theIdHelperService) {
+		myIdHelperService = theIdHelperService;
+	}
+
+}
@@ -0,0 +1,230 @@
+package ca.uhn.fhir.jpa.search.plan;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The normalized "shape" of a search (the parameter names, types, modifiers, prefixes and
+ * the number of values in each clause) along with the values to bind for one particular
+ * execution of it. Two searches with the same {@link #getKey() key} always produce the
+ * same SQL, so the SQL only needs to be rendered once per shape.
+ * <p>
+ * Values are added in the same order that their placeholders appear in the rendered SQL.
+ * </p>
+ */
+class SearchQueryShape {
+
+	private final String myResourceType;
+	private final StringBuilder myKey = new StringBuilder();
+	private final List<Join> myJoins = new ArrayList<>();
+	private final List<Clause> myClauses = new ArrayList<>();
+	private final List<Object> myBindValues = new ArrayList<>();
+
+	SearchQueryShape(String theResourceType) {
+		myResourceType = theResourceType;
+		myKey.append(theResourceType);
+	}
+
+	String getKey() {
+		return myKey.toString();
+	}
+
+	List<Object> getBindValues() {
+		if (myJoins.isEmpty()) {
+			return Collections.singletonList(myResourceType);
+		}
+		return myBindValues;
+	}
+
+	/**
+	 * Adds a join to an index table and returns its alias
+	 */
+	String addJoin(String theTable, String theResourceIdColumn, String theKey) {
+		String alias = "t" + myJoins.size();
+		myJoins.add(new Join(theTable, alias, theResourceIdColumn));
+		myKey.append('|').append(theKey);
+		return alias;
+	}
+
+	/**
+	 * <code>theAlias.theColumn IN (?, ?, ...)</code> (or <code>=</code> for a single value)
+	 */
+	void addInClause(String theAlias, String theColumn, List<?> theValues) {
+		myClauses.add(new InClause(theAlias + "." + theColumn, theValues.size()));
+		myBindValues.addAll(theValues);
+		myKey.append(',').append(theAlias).append('.').append(theColumn).append('*').append(theValues.size());
+	}
+
+	/**
+	 * Starts an <code>OR</code> group. Clauses added until the matching {@link #endOr()} are
+	 * combined using <code>OR</code>; groups are combined with everything else using <code>AND</code>.
+	 */
+	void startOr() {
+		myClauses.add(GroupClause.OR_START);
+		myKey.append(",(");
+	}
+
+	void startAnd() {
+		myClauses.add(GroupClause.AND_START);
+		myKey.append(",[");
+	}
+
+	void endOr() {
+		myClauses.add(GroupClause.END);
+		myKey.append(')');
+	}
+
+	void endAnd() {
+		myClauses.add(GroupClause.END);
+		myKey.append(']');
+	}
+
+	/**
+	 * <code>theAlias.theColumn &lt;operator&gt; ?</code>
+	 */
+	void addComparison(String theAlias, String theColumn, String theOperator, Object theValue) {
+		myClauses.add(new ComparisonClause(theAlias + "." + theColumn, theOperator));
+		myBindValues.add(theValue);
+		myKey.append(',').append(theAlias).append('.').append(theColumn).append(theOperator).append(theValue instanceof Date ? 'D' : 'O');
+	}
+
+	String renderSql(boolean theCount) {
+		StringBuilder b = new StringBuilder();
+		if (theCount) {
+			b.append("SELECT COUNT(DISTINCT r.RES_ID) AS RES_COUNT FROM HFJ_RESOURCE r");
+		} else {
+			b.append("SELECT r.RES_ID AS RES_ID FROM HFJ_RESOURCE r");
+		}
+
+		/*
+		 * If we have any joins to index tables, the index hashes make sure we only include
+		 * non-deleted resources of the right type, so we don't need explicit predicates for it
+		 */
+		if (myJoins.isEmpty()) {
+			b.append(" WHERE r.RES_TYPE = ? AND r.RES_DELETED_AT IS NULL");
+			return b.toString();
+		}
+
+		for (Join next : myJoins) {
+			b.append(" INNER JOIN ").append(next.myTable).append(' ').append(next.myAlias);
+			b.append(" ON (").append(next.myAlias).append('.').append(next.myResourceIdColumn).append(" = r.RES_ID)");
+		}
+
+		b.append(" WHERE ");
+		List<String> separators = new ArrayList<>();
+		separators.add(" AND ");
+		boolean first = true;
+		for (Clause next : myClauses) {
+			if (next == GroupClause.END) {
+				b.append(')');
+				separators.remove(separators.size() - 1);
+				first = false;
+				continue;
+			}
+			if (!first) {
+				b.append(separators.get(separators.size() - 1));
+			}
+			if (next instanceof GroupClause) {
+				b.append('(');
+				separators.add(next == GroupClause.OR_START ? " OR " : " AND ");
+				first = true;
+				continue;
+			}
+			next.render(b);
+			first = false;
+		}
+		return b.toString();
+	}
+
+	private static class Join {
+		private final String myTable;
+		private final String myAlias;
+		private final String myResourceIdColumn;
+
+		private Join(String theTable, String theAlias, String theResourceIdColumn) {
+			myTable = theTable;
+			myAlias = theAlias;
+			myResourceIdColumn = theResourceIdColumn;
+		}
+	}
+
+	private abstract static class Clause {
+		abstract void render(StringBuilder theBuilder);
+	}
+
+	private static class GroupClause extends Clause {
+		private static final GroupClause OR_START = new GroupClause();
+		private static final GroupClause AND_START = new GroupClause();
+		private static final GroupClause END = new GroupClause();
+
+		@Override
+		void render(StringBuilder theBuilder) {
+			throw new IllegalStateException();
+		}
+	}
+
+	private static class InClause extends Clause {
+		private final String myColumn;
+		private final int myCount;
+
+		private InClause(String theColumn, int theCount) {
+			myColumn = theColumn;
+			myCount = theCount;
+		}
+
+		@Override
+		void render(StringBuilder theBuilder) {
+			theBuilder.append(myColumn);
+			if (myCount == 1) {
+				theBuilder.append(" = ?");
+				return;
+			}
+			theBuilder.append(" IN (");
+			for (int i = 0; i < myCount; i++) {
+				if (i > 0) {
+					theBuilder.append(", ");
+				}
+				theBuilder.append('?');
+			}
+			theBuilder.append(')');
+		}
+	}
+
+	private static class ComparisonClause extends Clause {
+		private final String myColumn;
+		private final String myOperator;
+
+		private ComparisonClause(String theColumn, String theOperator) {
+			myColumn = theColumn;
+			myOperator = theOperator;
+		}
+
+		@Override
+		void render(StringBuilder theBuilder) {
+			theBuilder.append(myColumn).append(' ').append(myOperator).append(" ?");
+		}
+	}
+
+}
@@ -67,6 +67,7 @@ import ca.uhn.fhir.jpa.model.sched.HapiJob;
 import ca.uhn.fhir.jpa.model.sched.ISchedulerService;
 import ca.uhn.fhir.jpa.model.sched.ScheduledJobDefinition;
 import ca.uhn.fhir.jpa.term.api.ITermCodeSystemStorageSvc;
+import ca.uhn.fhir.jpa.term.api.ITermConceptClosureIndexSvc;
 import ca.uhn.fhir.jpa.term.api.ITermDeferredStorageSvc;
 import ca.uhn.fhir.jpa.term.api.ITermLoaderSvc;
 import ca.uhn.fhir.jpa.term.api.ITermReadSvc;
@@ -237,6 +238,8 @@ public abstract class BaseTermReadSvcImpl implements ITermReadSvc {
 	private ITermDeferredStorageSvc myDeferredStorageSvc;
 	@Autowired(required = false)
 	private ITermCodeSystemStorageSvc myConceptStorageSvc;
+	@Autowired(required = false)
+	private ITermConceptClosureIndexSvc myConceptClosureIndexSvc;
 	@Autowired
 	private ApplicationContext myApplicationContext;
 	private volatile IValidationSupport myJpaValidationSupport;
@@ -331,6 +334,9 @@ public abstract class BaseTermReadSvcImpl implements ITermReadSvc {
 		myTranslationCache.invalidateAll();
 		myTranslationWithReverseCache.invalidateAll();
 		myCodeSystemCurrentVersionCache.invalidateAll();
+		if (myConceptClosureIndexSvc != null) {
+			myConceptClosureIndexSvc.invalidateIndexes();
+		}
 	}
 
 	public void deleteConceptMap(ResourceTable theResourceTable) {
@@ -1392,6 +1398,25 @@ public abstract class BaseTermReadSvcImpl implements ITermReadSvc {
 		}
 	}
 
+	private void fetchConceptsByPid(List<Long> thePids, Set<TermConcept> theSetToPopulate) {
+		if (theSetToPopulate.size() + thePids.size() >= myDaoConfig.getMaximumExpansionSize()) {
+			String msg = myContext.getLocalizer().getMessage(BaseTermReadSvcImpl.class, "expansionTooLarge", myDaoConfig.getMaximumExpansionSize());
+			throw new ExpansionTooCostlyException(msg);
+		}
+		for (int i = 0; i < thePids.size(); i += 1000) {
+			List<Long> nextChunk = thePids.subList(i, Math.min(i + 1000, thePids.size()));
+			theSetToPopulate.addAll(myConceptDao.findAllById(nextChunk));
+		}
+	}
+
+	@Nullable
+	private TermConceptClosureIndex getClosureIndex(TermConcept theConcept) {
+		if (myConceptClosureIndexSvc == null) {
+			return null;
+		}
+		return myConceptClosureIndexSvc.getIndexOrScheduleBuild(theConcept.getCodeSystemVersion().getPid());
+	}
+
 	private Optional<TermConcept> fetchLoadedCode(Long theCodeSystemResourcePid, String theCode) {
 		TermCodeSystemVersion codeSystem = myCodeSystemVersionDao.findCurrentVersionForCodeSystemResourcePid(theCodeSystemResourcePid);
 		return myConceptDao.findByCodeSystemAndCode(codeSystem, theCode);
@@ -1499,7 +1524,12 @@ public abstract class BaseTermReadSvcImpl implements ITermReadSvc {
 		Set<TermConcept> retVal = new HashSet<>();
 		retVal.add(concept.get());
 
-		fetchParents(concept.get(), retVal);
+		TermConceptClosureIndex closureIndex = getClosureIndex(concept.get());
+		if (closureIndex != null) {
+			fetchConceptsByPid(closureIndex.getAncestorPids(concept.get().getId()), retVal);
+		} else {
+			fetchParents(concept.get(), retVal);
+		}
 
 		ourLog.debug("Fetched {} codes above code {} in {}ms", retVal.size(), theCode, stopwatch.getMillis());
 		return retVal;
@@ -1531,7 +1561,12 @@ public abstract class BaseTermReadSvcImpl implements ITermReadSvc {
 		Set<TermConcept> retVal = new HashSet<>();
 		retVal.add(concept.get());
 
-		fetchChildren(concept.get(), retVal);
+		TermConceptClosureIndex closureIndex = getClosureIndex(concept.get());
+		if (closureIndex != null) {
+			fetchConceptsByPid(closureIndex.getDescendantPids(concept.get().getId()), retVal);
+		} else {
+			fetchChildren(concept.get(), retVal);
+		}
 
 		ourLog.debug("Fetched {} codes below code {} in {}ms", retVal.size(), theCode, stopwatch.elapsed(TimeUnit.MILLISECONDS));
 		return retVal;
@@ -1968,12 +2003,21 @@ public abstract class BaseTermReadSvcImpl implements ITermReadSvc {
 		TermConcept codeB = findCode(codeBSystemIdentifier, conceptB.getCode())
 			.orElseThrow(() -> new InvalidRequestException("Unknown code: " + conceptB));
 
-		FullTextEntityManager em = org.hibernate.search.jpa.Search.getFullTextEntityManager(myEntityManager);
-
 		ConceptSubsumptionOutcome subsumes;
-		subsumes = testForSubsumption(em, codeA, codeB, ConceptSubsumptionOutcome.SUBSUMES);
-		if (subsumes == null) {
-			subsumes = testForSubsumption(em, codeB, codeA, ConceptSubsumptionOutcome.SUBSUMEDBY);
+		TermConceptClosureIndex closureIndex = getClosureIndex(codeA);
+		if (closureIndex != null) {
+			subsumes = null;
+			if (closureIndex.isAncestor(codeB.getId(), codeA.getId())) {
+				subsumes = ConceptSubsumptionOutcome.SUBSUMES;
+			} else if (closureIndex.isAncestor(codeA.getId(), codeB.getId())) {
+				subsumes = ConceptSubsumptionOutcome.SUBSUMEDBY;
+			}
+		} else {
+			FullTextEntityManager em = org.hibernate.search.jpa.Search.getFullTextEntityManager(myEntityManager);
+			subsumes = testForSubsumption(em, codeA, codeB, ConceptSubsumptionOutcome.SUBSUMES);
+			if (subsumes == null) {
+				subsumes = testForSubsumption(em, codeB, codeA, ConceptSubsumptionOutcome.SUBSUMEDBY);
+			}
 		}
 		if (subsumes == null) {
 			subsumes = ConceptSubsumptionOutcome.NOTSUBSUMED;
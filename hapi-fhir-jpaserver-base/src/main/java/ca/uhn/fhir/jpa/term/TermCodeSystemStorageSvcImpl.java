@@ -42,6 +42,7 @@ import ca.uhn.fhir.jpa.entity.TermConceptParentChildLink;
 import ca.uhn.fhir.jpa.entity.TermConceptProperty;
 import ca.uhn.fhir.jpa.model.entity.ResourceTable;
 import ca.uhn.fhir.jpa.term.api.ITermCodeSystemStorageSvc;
+import ca.uhn.fhir.jpa.term.api.ITermConceptClosureIndexSvc;
 import ca.uhn.fhir.jpa.term.api.ITermDeferredStorageSvc;
 import ca.uhn.fhir.jpa.term.api.ITermReadSvc;
 import ca.uhn.fhir.jpa.term.api.ITermVersionAdapterSvc;
@@ -55,6 +56,7 @@ import ca.uhn.fhir.util.ObjectUtil;
 import ca.uhn.fhir.util.StopWatch;
 import ca.uhn.fhir.util.ValidateUtil;
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.tuple.Pair;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.r4.model.CodeSystem;
 import org.hl7.fhir.r4.model.ConceptMap;
@@ -68,6 +70,8 @@ import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.annotation.Nonnull;
@@ -125,6 +129,8 @@ public class TermCodeSystemStorageSvcImpl implements ITermCodeSystemStorageSvc {
 	private DaoConfig myDaoConfig;
 	@Autowired
 	private IResourceTableDao myResourceTableDao;
+	@Autowired(required = false)
+	private ITermConceptClosureIndexSvc myConceptClosureIndexSvc;
 
 	@Override
 	public ResourcePersistentId getValueSetResourcePid(IIdType theIdType) {
@@ -170,6 +176,7 @@ public class TermCodeSystemStorageSvcImpl implements ITermCodeSystemStorageSvc {
 			addConceptInHierarchy(csv, parentCodes, nextRootConcept, retVal, codeToConcept, 0);
 		}
 
+		invalidateClosureIndexes();
 		return retVal;
 	}
 
@@ -194,6 +201,7 @@ public class TermCodeSystemStorageSvcImpl implements ITermCodeSystemStorageSvc {
 			}
 		}
 
+		invalidateClosureIndexes();
 		IIdType target = cs.getResource().getIdDt();
 		return new UploadStatistics(removeCounter.get(), target);
 	}
@@ -240,6 +248,25 @@ public class TermCodeSystemStorageSvcImpl implements ITermCodeSystemStorageSvc {
 
 	}
 
+	/**
+	 * Discards any in-memory closure indexes, both now and once the current transaction (if any)
+	 * completes, so that an index built from uncommitted data is not kept
+	 */
+	private void invalidateClosureIndexes() {
+		if (myConceptClosureIndexSvc == null) {
+			return;
+		}
+		myConceptClosureIndexSvc.invalidateIndexes();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					myConceptClosureIndexSvc.invalidateIndexes();
+				}
+			});
+		}
+	}
+
 	/**
 	 * Returns the number of saved concepts
 	 */
@@ -282,6 +309,38 @@ public class TermCodeSystemStorageSvcImpl implements ITermCodeSystemStorageSvc {
 		return retVal;
 	}
 
+	@Override
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	public List<Long> storeConceptBatch(Long theCodeSystemVersionPid, List<TermConcept> theConcepts) {
+		TermCodeSystemVersion codeSystemVersion = myCodeSystemVersionDao.getOne(theCodeSystemVersionPid);
+		List<Long> retVal = new ArrayList<>(theConcepts.size());
+		for (TermConcept next : theConcepts) {
+			next.setCodeSystemVersion(codeSystemVersion);
+			next.setIndexStatus(null);
+			next.setUpdated(new Date());
+			myConceptDao.save(next);
+			retVal.add(next.getId());
+		}
+		myConceptDao.flush();
+		return retVal;
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	public void storeConceptLinkBatch(Long theCodeSystemVersionPid, List<Pair<Long, Long>> theParentAndChildPids) {
+		TermCodeSystemVersion codeSystemVersion = myCodeSystemVersionDao.getOne(theCodeSystemVersionPid);
+		for (Pair<Long, Long> next : theParentAndChildPids) {
+			TermConceptParentChildLink link = new TermConceptParentChildLink();
+			link.setParent(myConceptDao.getOne(next.getLeft()));
+			link.setChild(myConceptDao.getOne(next.getRight()));
+			link.setRelationshipType(TermConceptParentChildLink.RelationshipTypeEnum.ISA);
+			link.setCodeSystem(codeSystemVersion);
+			myConceptParentChildLinkDao.save(link);
+		}
+		myConceptParentChildLinkDao.flush();
+		invalidateClosureIndexes();
+	}
+
 	@Override
 	@Transactional(propagation = Propagation.MANDATORY)
 	public void storeNewCodeSystemVersionIfNeeded(CodeSystem theCodeSystem, ResourceTable theResourceEntity) {
@@ -428,6 +487,7 @@ public class TermCodeSystemStorageSvcImpl implements ITermCodeSystemStorageSvc {
 
 	private void deleteCodeSystemVersion(final Long theCodeSystemVersionPid) {
 		ourLog.info(" * Deleting code system version {}", theCodeSystemVersionPid);
+		invalidateClosureIndexes();
 
 		PageRequest page1000 = PageRequest.of(0, 1000);
 
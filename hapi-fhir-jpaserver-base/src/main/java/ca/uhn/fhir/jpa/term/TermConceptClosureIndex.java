@@ -0,0 +1,197 @@
+package ca.uhn.fhir.jpa.term;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Immutable in-memory index of the parent/child hierarchy of a single code system version,
+ * used to answer subsumption and ancestor/descendant queries without going to the database.
+ * <p>
+ * Concepts are identified by their PID. Internally each concept which takes part in at least
+ * one link is assigned a dense ordinal, and the links are held as two compressed adjacency
+ * lists (one for parents, one for children) in plain <code>int</code> arrays. Transitive
+ * queries walk these lists, tracking visited concepts in a {@link BitSet}.
+ * </p>
+ * <p>
+ * This class is thread safe.
+ * </p>
+ */
+public class TermConceptClosureIndex {
+
+	private final long myCodeSystemVersionPid;
+	private final long[] myConceptPids;
+	private final int[] myParentOffsets;
+	private final int[] myParents;
+	private final int[] myChildOffsets;
+	private final int[] myChildren;
+
+	/**
+	 * Constructor
+	 *
+	 * @param theCodeSystemVersionPid The code system version this index belongs to
+	 * @param theParentPids           The parent concept PID of each link
+	 * @param theChildPids            The child concept PID of each link
+	 * @param theLinkCount            The number of links (the arrays may be larger than this)
+	 */
+	public TermConceptClosureIndex(long theCodeSystemVersionPid, long[] theParentPids, long[] theChildPids, int theLinkCount) {
+		Validate.isTrue(theParentPids.length >= theLinkCount && theChildPids.length >= theLinkCount, "Link arrays are too short");
+		myCodeSystemVersionPid = theCodeSystemVersionPid;
+
+		long[] conceptPids = new long[theLinkCount * 2];
+		System.arraycopy(theParentPids, 0, conceptPids, 0, theLinkCount);
+		System.arraycopy(theChildPids, 0, conceptPids, theLinkCount, theLinkCount);
+		Arrays.sort(conceptPids);
+		int conceptCount = 0;
+		for (int i = 0; i < conceptPids.length; i++) {
+			if (i == 0 || conceptPids[i] != conceptPids[i - 1]) {
+				conceptPids[conceptCount++] = conceptPids[i];
+			}
+		}
+		myConceptPids = Arrays.copyOf(conceptPids, conceptCount);
+
+		int[] parentOrdinals = new int[theLinkCount];
+		int[] childOrdinals = new int[theLinkCount];
+		for (int i = 0; i < theLinkCount; i++) {
+			parentOrdinals[i] = Arrays.binarySearch(myConceptPids, theParentPids[i]);
+			childOrdinals[i] = Arrays.binarySearch(myConceptPids, theChildPids[i]);
+		}
+
+		myParentOffsets = new int[conceptCount + 1];
+		myParents = new int[theLinkCount];
+		populateAdjacency(childOrdinals, parentOrdinals, theLinkCount, myParentOffsets, myParents);
+
+		myChildOffsets = new int[conceptCount + 1];
+		myChildren = new int[theLinkCount];
+		populateAdjacency(parentOrdinals, childOrdinals, theLinkCount, myChildOffsets, myChildren);
+	}
+
+	public long getCodeSystemVersionPid() {
+		return myCodeSystemVersionPid;
+	}
+
+	public int getConceptCount() {
+		return myConceptPids.length;
+	}
+
+	public int getLinkCount() {
+		return myParents.length;
+	}
+
+	/**
+	 * Returns <code>true</code> if the concept with PID <code>theAncestorPid</code> is a (direct or indirect)
+	 * parent of the concept with PID <code>theDescendantPid</code>. A concept is not its own ancestor.
+	 */
+	public boolean isAncestor(long theAncestorPid, long theDescendantPid) {
+		int ancestor = Arrays.binarySearch(myConceptPids, theAncestorPid);
+		int descendant = Arrays.binarySearch(myConceptPids, theDescendantPid);
+		if (ancestor < 0 || descendant < 0 || ancestor == descendant) {
+			return false;
+		}
+
+		BitSet visited = new BitSet(myConceptPids.length);
+		int[] stack = new int[16];
+		int stackSize = 0;
+		stack[stackSize++] = descendant;
+		while (stackSize > 0) {
+			int next = stack[--stackSize];
+			for (int i = myParentOffsets[next]; i < myParentOffsets[next + 1]; i++) {
+				int parent = myParents[i];
+				if (parent == ancestor) {
+					return true;
+				}
+				if (!visited.get(parent)) {
+					visited.set(parent);
+					if (stackSize == stack.length) {
+						stack = Arrays.copyOf(stack, stackSize * 2);
+					}
+					stack[stackSize++] = parent;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the PIDs of all (direct and indirect) parents of the given concept, not including the concept itself
+	 */
+	public List<Long> getAncestorPids(long theConceptPid) {
+		return walk(theConceptPid, myParentOffsets, myParents);
+	}
+
+	/**
+	 * Returns the PIDs of all (direct and indirect) children of the given concept, not including the concept itself
+	 */
+	public List<Long> getDescendantPids(long theConceptPid) {
+		return walk(theConceptPid, myChildOffsets, myChildren);
+	}
+
+	private List<Long> walk(long theConceptPid, int[] theOffsets, int[] theTargets) {
+		int start = Arrays.binarySearch(myConceptPids, theConceptPid);
+		if (start < 0) {
+			return new ArrayList<>();
+		}
+
+		BitSet visited = new BitSet(myConceptPids.length);
+		visited.set(start);
+		int[] queue = new int[16];
+		int queueSize = 0;
+		queue[queueSize++] = start;
+		for (int queueIndex = 0; queueIndex < queueSize; queueIndex++) {
+			int next = queue[queueIndex];
+			for (int i = theOffsets[next]; i < theOffsets[next + 1]; i++) {
+				int target = theTargets[i];
+				if (!visited.get(target)) {
+					visited.set(target);
+					if (queueSize == queue.length) {
+						queue = Arrays.copyOf(queue, queueSize * 2);
+					}
+					queue[queueSize++] = target;
+				}
+			}
+		}
+
+		List<Long> retVal = new ArrayList<>(queueSize - 1);
+		for (int i = 1; i < queueSize; i++) {
+			retVal.add(myConceptPids[queue[i]]);
+		}
+		return retVal;
+	}
+
+	private static void populateAdjacency(int[] theFrom, int[] theTo, int theLinkCount, int[] theOffsets, int[] theTargets) {
+		for (int i = 0; i < theLinkCount; i++) {
+			theOffsets[theFrom[i] + 1]++;
+		}
+		for (int i = 1; i < theOffsets.length; i++) {
+			theOffsets[i] += theOffsets[i - 1];
+		}
+		int[] positions = Arrays.copyOf(theOffsets, theOffsets.length - 1);
+		for (int i = 0; i < theLinkCount; i++) {
+			theTargets[positions[theFrom[i]]++] = theTo[i];
+		}
+	}
+
+}
@@ -0,0 +1,193 @@
+package ca.uhn.fhir.jpa.term;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
+import ca.uhn.fhir.jpa.dao.data.ITermConceptParentChildLinkDao;
+import ca.uhn.fhir.jpa.term.api.ITermConceptClosureIndexSvc;
+import ca.uhn.fhir.jpa.term.api.ITermDeferredStorageSvc;
+import ca.uhn.fhir.util.StopWatch;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class TermConceptClosureIndexSvcImpl implements ITermConceptClosureIndexSvc {
+	private static final Logger ourLog = LoggerFactory.getLogger(TermConceptClosureIndexSvcImpl.class);
+	private static final int LINK_PAGE_SIZE = 10000;
+	private final Map<Long, IndexEntry> myIndexes = new ConcurrentHashMap<>();
+	private final Set<Long> myIndexesBeingBuilt = ConcurrentHashMap.newKeySet();
+	private final Object myLock = new Object();
+	/**
+	 * Incremented every time the indexes are invalidated, so that a build which was started
+	 * before an invalidation is not stored afterwards. Only read and changed while holding {@link #myLock}.
+	 */
+	private long myGeneration;
+	@Autowired
+	private DaoConfig myDaoConfig;
+	@Autowired
+	private ITermConceptParentChildLinkDao myConceptParentChildLinkDao;
+	@Autowired
+	private PlatformTransactionManager myTransactionMgr;
+	@Autowired(required = false)
+	private ITermDeferredStorageSvc myDeferredStorageSvc;
+	private ExecutorService myExecutor;
+
+	@PostConstruct
+	public void start() {
+		BasicThreadFactory threadFactory = new BasicThreadFactory.Builder()
+			.namingPattern("term-closure-index-%d")
+			.daemon(true)
+			.build();
+		myExecutor = Executors.newSingleThreadExecutor(threadFactory);
+	}
+
+	@PreDestroy
+	public void stop() {
+		myExecutor.shutdownNow();
+	}
+
+	@Nullable
+	@Override
+	public TermConceptClosureIndex getIndexOrScheduleBuild(Long theCodeSystemVersionPid) {
+		if (!myDaoConfig.isTermConceptClosureIndexEnabled() || theCodeSystemVersionPid == null) {
+			return null;
+		}
+
+		// While deferred concepts and links are still being written the hierarchy is incomplete
+		if (myDeferredStorageSvc != null && !myDeferredStorageSvc.isStorageQueueEmpty()) {
+			return null;
+		}
+
+		IndexEntry entry = myIndexes.get(theCodeSystemVersionPid);
+		if (entry != null && System.currentTimeMillis() - entry.myBuildStarted > myDaoConfig.getTermConceptClosureIndexMaxAgeMillis()) {
+			/*
+			 * Changes made on other servers in a cluster don't invalidate the indexes on this one, so
+			 * indexes are only trusted for a limited time
+			 */
+			myIndexes.remove(theCodeSystemVersionPid, entry);
+			entry = null;
+		}
+
+		if (entry == null && myIndexesBeingBuilt.add(theCodeSystemVersionPid)) {
+			long generation;
+			synchronized (myLock) {
+				generation = myGeneration;
+			}
+			myExecutor.submit(() -> {
+				try {
+					long buildStarted = System.currentTimeMillis();
+					TermConceptClosureIndex index = buildIndex(theCodeSystemVersionPid);
+					synchronized (myLock) {
+						if (myGeneration == generation) {
+							myIndexes.put(theCodeSystemVersionPid, new IndexEntry(index, buildStarted));
+						}
+					}
+				} catch (Exception e) {
+					ourLog.warn("Failed to build closure index for code system version {}: {}", theCodeSystemVersionPid, e.toString());
+				} finally {
+					myIndexesBeingBuilt.remove(theCodeSystemVersionPid);
+				}
+			});
+		}
+		return entry != null ? entry.myIndex : null;
+	}
+
+	@Override
+	public void invalidateIndexes() {
+		synchronized (myLock) {
+			myGeneration++;
+			myIndexes.clear();
+		}
+	}
+
+	@Override
+	public TermConceptClosureIndex buildIndex(Long theCodeSystemVersionPid) {
+		StopWatch sw = new StopWatch();
+		TransactionTemplate txTemplate = new TransactionTemplate(myTransactionMgr);
+		txTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		txTemplate.setReadOnly(true);
+
+		long[] parentPids = new long[LINK_PAGE_SIZE];
+		long[] childPids = new long[LINK_PAGE_SIZE];
+		int linkCount = 0;
+		long lastLinkPid = -1L;
+		while (true) {
+			long afterPid = lastLinkPid;
+			List<Object[]> page = txTemplate.execute(t -> myConceptParentChildLinkDao.findParentAndChildPidsByCodeSystemVersion(PageRequest.of(0, LINK_PAGE_SIZE), theCodeSystemVersionPid, afterPid));
+			if (page == null || page.isEmpty()) {
+				break;
+			}
+
+			if (linkCount + page.size() > parentPids.length) {
+				int newLength = Math.max(parentPids.length * 2, linkCount + page.size());
+				parentPids = Arrays.copyOf(parentPids, newLength);
+				childPids = Arrays.copyOf(childPids, newLength);
+			}
+			for (Object[] next : page) {
+				lastLinkPid = ((Number) next[0]).longValue();
+				parentPids[linkCount] = ((Number) next[1]).longValue();
+				childPids[linkCount] = ((Number) next[2]).longValue();
+				linkCount++;
+			}
+
+			if (page.size() < LINK_PAGE_SIZE) {
+				break;
+			}
+		}
+
+		TermConceptClosureIndex retVal = new TermConceptClosureIndex(theCodeSystemVersionPid, parentPids, childPids, linkCount);
+		ourLog.info("Built closure index for code system version {} with {} concepts and {} links in {}", theCodeSystemVersionPid, retVal.getConceptCount(), retVal.getLinkCount(), sw);
+		return retVal;
+	}
+
+	@VisibleForTesting
+	void setDaoConfigForUnitTest(DaoConfig theDaoConfig) {
+		myDaoConfig = theDaoConfig;
+	}
+
+	private static class IndexEntry {
+		private final TermConceptClosureIndex myIndex;
+		private final long myBuildStarted;
+
+		private IndexEntry(TermConceptClosureIndex theIndex, long theBuildStarted) {
+			myIndex = theIndex;
+			myBuildStarted = theBuildStarted;
+		}
+	}
+
+}
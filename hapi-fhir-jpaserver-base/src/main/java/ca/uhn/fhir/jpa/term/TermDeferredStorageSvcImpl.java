@@ -20,6 +20,7 @@ package ca.uhn.fhir.jpa.term;
  * #L%
  */
 
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
 import ca.uhn.fhir.jpa.dao.data.ITermCodeSystemDao;
 import ca.uhn.fhir.jpa.dao.data.ITermCodeSystemVersionDao;
 import ca.uhn.fhir.jpa.dao.data.ITermConceptDao;
@@ -33,11 +34,14 @@ import ca.uhn.fhir.jpa.model.sched.HapiJob;
 import ca.uhn.fhir.jpa.model.sched.ISchedulerService;
 import ca.uhn.fhir.jpa.model.sched.ScheduledJobDefinition;
 import ca.uhn.fhir.jpa.term.api.ITermCodeSystemStorageSvc;
+import ca.uhn.fhir.jpa.term.api.ITermConceptClosureIndexSvc;
 import ca.uhn.fhir.jpa.term.api.ITermDeferredStorageSvc;
 import ca.uhn.fhir.jpa.term.api.ITermVersionAdapterSvc;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.util.StopWatch;
 import com.google.common.annotations.VisibleForTesting;
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.hl7.fhir.r4.model.ConceptMap;
 import org.hl7.fhir.r4.model.ValueSet;
 import org.quartz.JobExecutionContext;
@@ -51,14 +55,25 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
 
 public class TermDeferredStorageSvcImpl implements ITermDeferredStorageSvc {
 
 	private static final Logger ourLog = LoggerFactory.getLogger(TermDeferredStorageSvcImpl.class);
+	private static final int BATCH_SIZE = 1000;
 	@Autowired
 	protected ITermConceptDao myConceptDao;
 	@Autowired
@@ -82,16 +97,27 @@ public class TermDeferredStorageSvcImpl implements ITermDeferredStorageSvc {
 	private ITermVersionAdapterSvc myTerminologyVersionAdapterSvc;
 	@Autowired
 	private ITermCodeSystemStorageSvc myCodeSystemStorageSvc;
+	@Autowired(required = false)
+	private ITermConceptClosureIndexSvc myConceptClosureIndexSvc;
+	@Autowired
+	private DaoConfig myDaoConfig;
+	private ExecutorService myFlushExecutor;
+	private int myFlushExecutorThreadCount;
+	private final AtomicLong myConceptsSavedInRun = new AtomicLong();
+	private final AtomicLong myConceptLinksSavedInRun = new AtomicLong();
+	private volatile StopWatch myRunStopWatch;
 
 	@Override
 	public void addConceptToStorageQueue(TermConcept theConcept) {
 		Validate.notNull(theConcept);
+		startRunIfNeeded();
 		myDeferredConcepts.add(theConcept);
 	}
 
 	@Override
 	public void addConceptLinkToStorageQueue(TermConceptParentChildLink theConceptLink) {
 		Validate.notNull(theConceptLink);
+		startRunIfNeeded();
 		myConceptLinksToSaveLater.add(theConceptLink);
 	}
 
@@ -156,22 +182,13 @@ public class TermDeferredStorageSvcImpl implements ITermDeferredStorageSvc {
 		int codeCount = 0, relCount = 0;
 		StopWatch stopwatch = new StopWatch();
 
-		int count = Math.min(1000, myDeferredConcepts.size());
+		int count = Math.min(BATCH_SIZE, myDeferredConcepts.size());
 		ourLog.info("Saving {} deferred concepts...", count);
 		while (codeCount < count && myDeferredConcepts.size() > 0) {
 			TermConcept next = myDeferredConcepts.remove(0);
-			if(myCodeSystemVersionDao.findById(next.getCodeSystemVersion().getPid()).isPresent()) {
-				try {
-					codeCount += myCodeSystemStorageSvc.saveConcept(next);
-				} catch (Exception theE) {
-					ourLog.error("Exception thrown when attempting to save TermConcept {} in Code System {}",
-						next.getCode(), next.getCodeSystemVersion().getCodeSystemDisplayName(), theE);
-				}
-			} else {
-				ourLog.warn("Unable to save deferred TermConcept {} because Code System {} version PID {} is no longer valid. Code system may have since been replaced.",
-					next.getCode(), next.getCodeSystemVersion().getCodeSystemDisplayName(), next.getCodeSystemVersion().getPid());
-			}
+			codeCount += saveDeferredConcept(next);
 		}
+		myConceptsSavedInRun.addAndGet(codeCount);
 
 		if (codeCount > 0) {
 			ourLog.info("Saved {} deferred concepts ({} codes remain and {} relationships remain) in {}ms ({}ms / code)",
@@ -179,32 +196,324 @@ public class TermDeferredStorageSvcImpl implements ITermDeferredStorageSvc {
 		}
 
 		if (codeCount == 0) {
-			count = Math.min(1000, myConceptLinksToSaveLater.size());
+			count = Math.min(BATCH_SIZE, myConceptLinksToSaveLater.size());
 			ourLog.info("Saving {} deferred concept relationships...", count);
 			while (relCount < count && myConceptLinksToSaveLater.size() > 0) {
 				TermConceptParentChildLink next = myConceptLinksToSaveLater.remove(0);
-				assert next.getChild() != null;
-				assert next.getParent() != null;
+				relCount += saveDeferredConceptLink(next);
+			}
+			myConceptLinksSavedInRun.addAndGet(relCount);
+		}
+
+		if (relCount > 0) {
+			ourLog.info("Saved {} deferred relationships ({} remain) in {}ms ({}ms / entry)",
+				relCount, myConceptLinksToSaveLater.size(), stopwatch.getMillis(), stopwatch.getMillisPerOperation(relCount));
+		}
+
+		logProgressOrEndRun();
+	}
+
+	private int saveDeferredConcept(TermConcept theConcept) {
+		if (myCodeSystemVersionDao.findById(theConcept.getCodeSystemVersion().getPid()).isPresent()) {
+			try {
+				return myCodeSystemStorageSvc.saveConcept(theConcept);
+			} catch (Exception theE) {
+				ourLog.error("Exception thrown when attempting to save TermConcept {} in Code System {}",
+					theConcept.getCode(), theConcept.getCodeSystemVersion().getCodeSystemDisplayName(), theE);
+			}
+		} else {
+			ourLog.warn("Unable to save deferred TermConcept {} because Code System {} version PID {} is no longer valid. Code system may have since been replaced.",
+				theConcept.getCode(), theConcept.getCodeSystemVersion().getCodeSystemDisplayName(), theConcept.getCodeSystemVersion().getPid());
+		}
+		return 0;
+	}
+
+	private int saveDeferredConceptLink(TermConceptParentChildLink theLink) {
+		assert theLink.getChild() != null;
+		assert theLink.getParent() != null;
+
+		if ((theLink.getChild().getId() == null || !myConceptDao.findById(theLink.getChild().getId()).isPresent())
+			|| (theLink.getParent().getId() == null || !myConceptDao.findById(theLink.getParent().getId()).isPresent())) {
+			ourLog.warn("Not inserting link from child {} to parent {} because it appears to have been deleted", theLink.getParent().getCode(), theLink.getChild().getCode());
+			return 0;
+		}
+
+		saveConceptLink(theLink);
+		return 1;
+	}
+
+	/**
+	 * Saves the next batch of deferred concepts (or, once there are none left, links) using several threads.
+	 * Each thread saves its share of the batch in its own transaction. Concepts are only ever saved on the
+	 * same thread as any unsaved parents they have, since saving a concept needs the PIDs of its parents.
+	 */
+	private void processDeferredConceptsInParallel(int theThreadCount) {
+		StopWatch stopwatch = new StopWatch();
+
+		if (isDeferredConcepts()) {
+			List<List<TermConcept>> partitions = takeIndependentConceptPartitions(theThreadCount * BATCH_SIZE, theThreadCount);
+			if (partitions.isEmpty()) {
+				// Nothing at the head of the queue can be saved independently, so fall back to a
+				// single threaded pass which saves parents as needed
+				newTransactionTemplate().execute(t -> {
+					processDeferredConcepts();
+					return null;
+				});
+				return;
+			}
+			int codeCount = saveInParallel(partitions, this::saveDeferredConcept, myConceptsSavedInRun);
+			ourLog.info("Saved {} deferred concepts using {} threads in {}ms ({}ms / code)", codeCount, partitions.size(), stopwatch.getMillis(), stopwatch.getMillisPerOperation(codeCount));
+
+		} else if (isConceptLinksToSaveLater()) {
+			List<TermConceptParentChildLink> links = new ArrayList<>();
+			synchronized (myConceptLinksToSaveLater) {
+				List<TermConceptParentChildLink> head = myConceptLinksToSaveLater.subList(0, Math.min(theThreadCount * BATCH_SIZE, myConceptLinksToSaveLater.size()));
+				links.addAll(head);
+				head.clear();
+			}
+			List<List<TermConceptParentChildLink>> partitions = new ArrayList<>();
+			int partitionSize = Math.max(1, (links.size() + theThreadCount - 1) / theThreadCount);
+			for (int i = 0; i < links.size(); i += partitionSize) {
+				partitions.add(links.subList(i, Math.min(i + partitionSize, links.size())));
+			}
+			int relCount = saveInParallel(partitions, this::saveDeferredConceptLink, myConceptLinksSavedInRun);
+			ourLog.info("Saved {} deferred relationships using {} threads in {}ms ({}ms / entry)", relCount, partitions.size(), stopwatch.getMillis(), stopwatch.getMillisPerOperation(relCount));
+		}
+
+		logProgressOrEndRun();
+	}
+
+	/**
+	 * Removes up to <code>theMaxCount</code> concepts from the head of the queue and splits them into at most
+	 * <code>theThreadCount</code> partitions which can be saved independently. A concept is only taken if each
+	 * of its parents has either been saved already, or is taken too, in which case both end up in the same
+	 * partition in the order they were queued. Concepts which can't be taken yet are put back at the head
+	 * of the queue.
+	 */
+	private List<List<TermConcept>> takeIndependentConceptPartitions(int theMaxCount, int theThreadCount) {
+		List<TermConcept> window;
+		synchronized (myDeferredConcepts) {
+			List<TermConcept> head = myDeferredConcepts.subList(0, Math.min(theMaxCount, myDeferredConcepts.size()));
+			window = new ArrayList<>(head);
+			head.clear();
+		}
+
+		IdentityHashMap<TermConcept, Integer> conceptToIndex = new IdentityHashMap<>();
+		for (int i = 0; i < window.size(); i++) {
+			conceptToIndex.put(window.get(i), i);
+		}
 
-				if ((next.getChild().getId() == null || !myConceptDao.findById(next.getChild().getId()).isPresent())
-					|| (next.getParent().getId() == null || !myConceptDao.findById(next.getParent().getId()).isPresent())) {
-					ourLog.warn("Not inserting link from child {} to parent {} because it appears to have been deleted", next.getParent().getCode(), next.getChild().getCode());
+		// A concept must wait if any unsaved parent isn't in the window, or must wait itself
+		boolean[] mustWait = new boolean[window.size()];
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int i = 0; i < window.size(); i++) {
+				if (mustWait[i]) {
 					continue;
 				}
+				for (TermConceptParentChildLink nextLink : window.get(i).getParents()) {
+					TermConcept parent = nextLink.getParent();
+					if (parent != null && parent.getId() == null) {
+						Integer parentIndex = conceptToIndex.get(parent);
+						if (parentIndex == null || mustWait[parentIndex]) {
+							mustWait[i] = true;
+							changed = true;
+							break;
+						}
+					}
+				}
+			}
+		}
 
-				saveConceptLink(next);
-				relCount++;
+		// Group each concept with its unsaved parents (union-find over the window indexes)
+		int[] groupRoots = new int[window.size()];
+		for (int i = 0; i < window.size(); i++) {
+			groupRoots[i] = i;
+		}
+		for (int i = 0; i < window.size(); i++) {
+			if (mustWait[i]) {
+				continue;
+			}
+			for (TermConceptParentChildLink nextLink : window.get(i).getParents()) {
+				TermConcept parent = nextLink.getParent();
+				if (parent != null && parent.getId() == null) {
+					groupRoots[findGroupRoot(groupRoots, i)] = findGroupRoot(groupRoots, conceptToIndex.get(parent));
+				}
 			}
 		}
 
-		if (relCount > 0) {
-			ourLog.info("Saved {} deferred relationships ({} remain) in {}ms ({}ms / entry)",
-				relCount, myConceptLinksToSaveLater.size(), stopwatch.getMillis(), stopwatch.getMillisPerOperation(relCount));
+		List<TermConcept> waiting = new ArrayList<>();
+		Map<Integer, List<TermConcept>> groups = new LinkedHashMap<>();
+		for (int i = 0; i < window.size(); i++) {
+			if (mustWait[i]) {
+				waiting.add(window.get(i));
+			} else {
+				groups.computeIfAbsent(findGroupRoot(groupRoots, i), t -> new ArrayList<>()).add(window.get(i));
+			}
+		}
+		if (!waiting.isEmpty()) {
+			myDeferredConcepts.addAll(0, waiting);
 		}
 
-		if ((myDeferredConcepts.size() + myConceptLinksToSaveLater.size()) == 0) {
+		// Spread the groups over the partitions, largest first
+		List<List<TermConcept>> sortedGroups = new ArrayList<>(groups.values());
+		sortedGroups.sort((t1, t2) -> Integer.compare(t2.size(), t1.size()));
+		List<List<TermConcept>> retVal = new ArrayList<>();
+		for (List<TermConcept> nextGroup : sortedGroups) {
+			if (retVal.size() < theThreadCount) {
+				retVal.add(new ArrayList<>(nextGroup));
+			} else {
+				List<TermConcept> smallest = retVal.get(0);
+				for (List<TermConcept> nextPartition : retVal) {
+					if (nextPartition.size() < smallest.size()) {
+						smallest = nextPartition;
+					}
+				}
+				smallest.addAll(nextGroup);
+			}
+		}
+		return retVal;
+	}
+
+	private static int findGroupRoot(int[] theGroupRoots, int theIndex) {
+		int retVal = theIndex;
+		while (theGroupRoots[retVal] != retVal) {
+			theGroupRoots[retVal] = theGroupRoots[theGroupRoots[retVal]];
+			retVal = theGroupRoots[retVal];
+		}
+		return retVal;
+	}
+
+	/**
+	 * Saves each partition in its own transaction and adds the number of entries saved to
+	 * <code>theSavedCounter</code> as each one commits. If any partition fails, the remaining
+	 * partitions are still waited for and an exception is then thrown, since the entries in a
+	 * failed partition have already been removed from the queue and will not be retried.
+	 */
+	private <T> int saveInParallel(List<List<T>> thePartitions, ToIntFunction<T> theSaver, AtomicLong theSavedCounter) {
+		ExecutorService executor = getFlushExecutor(thePartitions.size());
+		List<Future<Integer>> futures = new ArrayList<>();
+		for (List<T> nextPartition : thePartitions) {
+			futures.add(executor.submit(() -> newTransactionTemplate().execute(t -> {
+				int count = 0;
+				for (T next : nextPartition) {
+					count += theSaver.applyAsInt(next);
+				}
+				return count;
+			})));
+		}
+
+		int retVal = 0;
+		int failedEntries = 0;
+		Throwable firstFailure = null;
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				int count = futures.get(i).get();
+				theSavedCounter.addAndGet(count);
+				retVal += count;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failedEntries += thePartitions.get(i).size();
+				firstFailure = firstFailure != null ? firstFailure : e;
+			} catch (ExecutionException e) {
+				ourLog.error("Failure while saving deferred terminology", e.getCause());
+				failedEntries += thePartitions.get(i).size();
+				firstFailure = firstFailure != null ? firstFailure : e.getCause();
+			}
+		}
+
+		if (firstFailure != null) {
+			String msg = "Failed to save " + failedEntries + " deferred terminology entries (" + retVal + " were saved): " + firstFailure.toString();
+			throw new InternalErrorException(msg, firstFailure);
+		}
+
+		return retVal;
+	}
+
+	private TransactionTemplate newTransactionTemplate() {
+		TransactionTemplate retVal = new TransactionTemplate(myTransactionMgr);
+		retVal.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		return retVal;
+	}
+
+	private synchronized ExecutorService getFlushExecutor(int theThreadCount) {
+		if (myFlushExecutor == null || myFlushExecutorThreadCount < theThreadCount) {
+			if (myFlushExecutor != null) {
+				myFlushExecutor.shutdown();
+			}
+			BasicThreadFactory threadFactory = new BasicThreadFactory.Builder()
+				.namingPattern("term-deferred-storage-%d")
+				.daemon(true)
+				.build();
+			myFlushExecutor = Executors.newFixedThreadPool(theThreadCount, threadFactory);
+			myFlushExecutorThreadCount = theThreadCount;
+		}
+		return myFlushExecutor;
+	}
+
+	@PreDestroy
+	public synchronized void stop() {
+		if (myFlushExecutor != null) {
+			myFlushExecutor.shutdownNow();
+			myFlushExecutor = null;
+		}
+	}
+
+	private int getThreadCount() {
+		if (myDaoConfig == null) {
+			return 1;
+		}
+		return myDaoConfig.getTermDeferredStorageThreadCount();
+	}
+
+	private void startRunIfNeeded() {
+		// Don't lock on this, since saveDeferred() holds that lock while it is flushing
+		synchronized (myConceptsSavedInRun) {
+			if (myRunStopWatch == null) {
+				myConceptsSavedInRun.set(0);
+				myConceptLinksSavedInRun.set(0);
+				myRunStopWatch = new StopWatch();
+			}
+		}
+	}
+
+	private void logProgressOrEndRun() {
+		StorageProgress progress = getStorageProgress();
+		if ((progress.getConceptsRemaining() + progress.getConceptLinksRemaining()) == 0) {
 			ourLog.info("All deferred concepts and relationships have now been synchronized to the database");
+			synchronized (myConceptsSavedInRun) {
+				if (!isDeferredConceptsOrConceptLinksToSaveLater()) {
+					myRunStopWatch = null;
+				}
+			}
+		} else if (progress.getEstimatedMillisRemaining() != null) {
+			ourLog.info("Have saved {} deferred concepts and {} relationships in {} - {} concepts and {} relationships remain (estimated {} remaining)",
+				progress.getConceptsSaved(), progress.getConceptLinksSaved(), StopWatch.formatMillis(progress.getElapsedMillis()),
+				progress.getConceptsRemaining(), progress.getConceptLinksRemaining(), StopWatch.formatMillis(progress.getEstimatedMillisRemaining()));
+		}
+	}
+
+	@Override
+	public StorageProgress getStorageProgress() {
+		int conceptsRemaining = myDeferredConcepts.size();
+		int linksRemaining = myConceptLinksToSaveLater.size();
+		long conceptsSaved = myConceptsSavedInRun.get();
+		long linksSaved = myConceptLinksSavedInRun.get();
+
+		StopWatch runStopWatch = myRunStopWatch;
+		long elapsedMillis = 0;
+		Long estimatedMillisRemaining = null;
+		if (runStopWatch != null) {
+			elapsedMillis = runStopWatch.getMillis();
+			long saved = conceptsSaved + linksSaved;
+			if (saved > 0) {
+				double millisPerEntry = (double) elapsedMillis / saved;
+				estimatedMillisRemaining = (long) (millisPerEntry * (conceptsRemaining + linksRemaining));
+			}
 		}
+
+		return new StorageProgress(conceptsRemaining, linksRemaining, myDeferredValueSets.size(), myDeferredConceptMaps.size(), conceptsSaved, linksSaved, elapsedMillis, estimatedMillisRemaining);
 	}
 
 	private void processDeferredValueSets() {
@@ -246,13 +555,24 @@ public class TermDeferredStorageSvcImpl implements ITermDeferredStorageSvc {
 				return;
 			}
 
-			TransactionTemplate tt = new TransactionTemplate(myTransactionMgr);
-			tt.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+			TransactionTemplate tt = newTransactionTemplate();
 			if (isDeferredConceptsOrConceptLinksToSaveLater()) {
-				tt.execute(t -> {
-					processDeferredConcepts();
-					return null;
-				});
+				int threadCount = getThreadCount();
+				try {
+					if (threadCount > 1) {
+						processDeferredConceptsInParallel(threadCount);
+					} else {
+						tt.execute(t -> {
+							processDeferredConcepts();
+							return null;
+						});
+					}
+				} finally {
+					// The hierarchy has changed (possibly only partly), so any closure index is now out of date
+					if (myConceptClosureIndexSvc != null) {
+						myConceptClosureIndexSvc.invalidateIndexes();
+					}
+				}
 
 				continue;
 			}
@@ -376,6 +696,11 @@ public class TermDeferredStorageSvcImpl implements ITermDeferredStorageSvc {
 		myConceptDao = theConceptDao;
 	}
 
+	@VisibleForTesting
+	void setDaoConfigForUnitTest(DaoConfig theDaoConfig) {
+		myDaoConfig = theDaoConfig;
+	}
+
 	@VisibleForTesting
 	void setCodeSystemVersionDaoForUnitTest(ITermCodeSystemVersionDao theCodeSystemVersionDao) {
 		myCodeSystemVersionDao = theCodeSystemVersionDao;
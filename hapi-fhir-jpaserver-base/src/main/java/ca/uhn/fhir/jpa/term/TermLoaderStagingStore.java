@@ -0,0 +1,322 @@
+package ca.uhn.fhir.jpa.term;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Scratch storage on local disk for terminology loaders which must not hold an
+ * entire terminology in memory. Rows of string columns are appended to staging
+ * files, which can then be sorted (using an external merge sort, so that only
+ * a bounded number of rows is ever held in memory) and read back in order.
+ * <p>
+ * All files are deleted when the store is closed. Instances are not thread safe.
+ * </p>
+ */
+public class TermLoaderStagingStore implements Closeable {
+
+	public static final int DEFAULT_SORT_CHUNK_SIZE = 100000;
+	/**
+	 * Orders rows by their first column. This is the order expected by {@link #join(File, File, BiConsumer)}
+	 * and {@link #forEachGroup(File, Consumer)}.
+	 */
+	public static final Comparator<String[]> BY_FIRST_COLUMN = Comparator.comparing(t -> t[0]);
+	private static final char SEPARATOR = '\t';
+	private final File myDirectory;
+	private final int mySortChunkSize;
+	private int myNextFileIndex;
+
+	/**
+	 * Constructor which sorts using chunks of {@link #DEFAULT_SORT_CHUNK_SIZE} rows
+	 */
+	public TermLoaderStagingStore() {
+		this(DEFAULT_SORT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param theSortChunkSize The maximum number of rows to hold in memory while sorting
+	 */
+	public TermLoaderStagingStore(int theSortChunkSize) {
+		Validate.isTrue(theSortChunkSize > 1, "theSortChunkSize must be greater than 1");
+		mySortChunkSize = theSortChunkSize;
+		try {
+			myDirectory = Files.createTempDirectory("hapi-fhir-term-staging").toFile();
+		} catch (IOException e) {
+			throw new InternalErrorException("Failed to create terminology staging directory", e);
+		}
+	}
+
+	/**
+	 * Creates a new, empty staging file and returns a writer for it
+	 */
+	public StagingWriter newWriter() {
+		return new StagingWriter(new File(myDirectory, "staging-" + myNextFileIndex++ + ".tsv"));
+	}
+
+	/**
+	 * Returns a reader for a staging file which was previously written
+	 */
+	public StagingReader newReader(File theFile) {
+		return new StagingReader(theFile);
+	}
+
+	/**
+	 * Sorts the rows in a staging file, returning a new file. The sort is stable, so rows which
+	 * compare as equal are kept in the order they were written.
+	 */
+	public File sort(File theFile, Comparator<String[]> theComparator) {
+		List<File> runs = new ArrayList<>();
+		try (StagingReader reader = newReader(theFile)) {
+			List<String[]> chunk = new ArrayList<>();
+			for (String[] next = reader.next(); next != null; next = reader.next()) {
+				chunk.add(next);
+				if (chunk.size() >= mySortChunkSize) {
+					runs.add(writeSortedRun(chunk, theComparator));
+					chunk.clear();
+				}
+			}
+			if (!chunk.isEmpty() || runs.isEmpty()) {
+				runs.add(writeSortedRun(chunk, theComparator));
+			}
+		}
+
+		if (runs.size() == 1) {
+			return runs.get(0);
+		}
+		return mergeRuns(runs, theComparator);
+	}
+
+	/**
+	 * Walks two staging files which are both sorted using {@link #BY_FIRST_COLUMN}, passing every row of the
+	 * left file to the handler along with the row of the right file which has the same first column (or
+	 * <code>null</code> if there is none). The first column of the right file must be unique.
+	 */
+	public void join(File theLeft, File theRight, BiConsumer<String[], String[]> theHandler) {
+		try (StagingReader left = newReader(theLeft); StagingReader right = newReader(theRight)) {
+			String[] nextRight = right.next();
+			for (String[] nextLeft = left.next(); nextLeft != null; nextLeft = left.next()) {
+				while (nextRight != null && nextRight[0].compareTo(nextLeft[0]) < 0) {
+					nextRight = right.next();
+				}
+				if (nextRight != null && nextRight[0].equals(nextLeft[0])) {
+					theHandler.accept(nextLeft, nextRight);
+				} else {
+					theHandler.accept(nextLeft, null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Walks a staging file which is sorted using {@link #BY_FIRST_COLUMN}, passing each group of consecutive
+	 * rows which share the same first column to the handler
+	 */
+	public void forEachGroup(File theFile, Consumer<List<String[]>> theHandler) {
+		try (StagingReader reader = newReader(theFile)) {
+			List<String[]> group = new ArrayList<>();
+			for (String[] next = reader.next(); next != null; next = reader.next()) {
+				if (!group.isEmpty() && !group.get(0)[0].equals(next[0])) {
+					theHandler.accept(group);
+					group = new ArrayList<>();
+				}
+				group.add(next);
+			}
+			if (!group.isEmpty()) {
+				theHandler.accept(group);
+			}
+		}
+	}
+
+	private File writeSortedRun(List<String[]> theChunk, Comparator<String[]> theComparator) {
+		theChunk.sort(theComparator);
+		try (StagingWriter writer = newWriter()) {
+			for (String[] next : theChunk) {
+				writer.write(next);
+			}
+			return writer.getFile();
+		}
+	}
+
+	private File mergeRuns(List<File> theRuns, Comparator<String[]> theComparator) {
+		List<StagingReader> readers = new ArrayList<>();
+		// Ties are broken by run index so that the merge stays stable
+		PriorityQueue<MergeEntry> queue = new PriorityQueue<>((t1, t2) -> {
+			int retVal = theComparator.compare(t1.myRow, t2.myRow);
+			if (retVal == 0) {
+				retVal = Integer.compare(t1.myRunIndex, t2.myRunIndex);
+			}
+			return retVal;
+		});
+
+		try (StagingWriter writer = newWriter()) {
+			for (int i = 0; i < theRuns.size(); i++) {
+				StagingReader reader = newReader(theRuns.get(i));
+				readers.add(reader);
+				String[] first = reader.next();
+				if (first != null) {
+					queue.add(new MergeEntry(first, i));
+				}
+			}
+
+			while (!queue.isEmpty()) {
+				MergeEntry next = queue.poll();
+				writer.write(next.myRow);
+				String[] following = readers.get(next.myRunIndex).next();
+				if (following != null) {
+					queue.add(new MergeEntry(following, next.myRunIndex));
+				}
+			}
+
+			return writer.getFile();
+		} finally {
+			for (StagingReader next : readers) {
+				next.close();
+			}
+			for (File next : theRuns) {
+				FileUtils.deleteQuietly(next);
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		FileUtils.deleteQuietly(myDirectory);
+	}
+
+	private static class MergeEntry {
+		private final String[] myRow;
+		private final int myRunIndex;
+
+		private MergeEntry(String[] theRow, int theRunIndex) {
+			myRow = theRow;
+			myRunIndex = theRunIndex;
+		}
+	}
+
+	public static class StagingWriter implements Closeable {
+		private final File myFile;
+		private final BufferedWriter myWriter;
+		private long myRowCount;
+
+		private StagingWriter(File theFile) {
+			myFile = theFile;
+			try {
+				myWriter = Files.newBufferedWriter(theFile.toPath(), StandardCharsets.UTF_8);
+			} catch (IOException e) {
+				throw new InternalErrorException("Failed to create terminology staging file " + theFile, e);
+			}
+		}
+
+		/**
+		 * Appends a row. Tabs and line breaks within values are replaced with spaces,
+		 * and <code>null</code> values are written as empty strings.
+		 */
+		public void write(String... theColumns) {
+			try {
+				for (int i = 0; i < theColumns.length; i++) {
+					if (i > 0) {
+						myWriter.write(SEPARATOR);
+					}
+					String value = StringUtils.defaultString(theColumns[i]);
+					myWriter.write(StringUtils.replaceChars(value, "\t\r\n", "   "));
+				}
+				myWriter.newLine();
+				myRowCount++;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		public File getFile() {
+			return myFile;
+		}
+
+		public long getRowCount() {
+			return myRowCount;
+		}
+
+		@Override
+		public void close() {
+			try {
+				myWriter.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	public static class StagingReader implements Closeable {
+		private final BufferedReader myReader;
+
+		private StagingReader(File theFile) {
+			try {
+				myReader = Files.newBufferedReader(theFile.toPath(), StandardCharsets.UTF_8);
+			} catch (IOException e) {
+				throw new InternalErrorException("Failed to open terminology staging file " + theFile, e);
+			}
+		}
+
+		/**
+		 * Returns the next row, or <code>null</code> if there are no more rows
+		 */
+		public String[] next() {
+			try {
+				String line = myReader.readLine();
+				if (line == null) {
+					return null;
+				}
+				return StringUtils.splitPreserveAllTokens(line, SEPARATOR);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		@Override
+		public void close() {
+			try {
+				myReader.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+}
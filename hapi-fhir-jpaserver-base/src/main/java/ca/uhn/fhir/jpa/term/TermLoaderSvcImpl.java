@@ -1,6 +1,7 @@
 package ca.uhn.fhir.jpa.term;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
 import ca.uhn.fhir.jpa.entity.TermCodeSystemVersion;
 import ca.uhn.fhir.jpa.entity.TermConcept;
 import ca.uhn.fhir.jpa.entity.TermConceptParentChildLink;
@@ -28,6 +29,7 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.tuple.Pair;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.r4.model.CodeSystem;
 import org.hl7.fhir.r4.model.ConceptMap;
@@ -40,6 +42,7 @@ import javax.validation.constraints.NotNull;
 import java.io.*;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static ca.uhn.fhir.jpa.term.loinc.LoincUploadPropertiesEnum.*;
@@ -75,6 +78,8 @@ public class TermLoaderSvcImpl implements ITermLoaderSvc {
 	private static final String SCT_FILE_DESCRIPTION = "Terminology/sct2_Description_Full-en";
 	private static final String SCT_FILE_RELATIONSHIP = "Terminology/sct2_Relationship_Full";
 	private static final String CUSTOM_CODESYSTEM_XML = "codesystem.xml";
+	private static final String SCT_IS_A_DISPLAY = "Is a (attribute)";
+	private static final int STAGED_STORAGE_BATCH_SIZE = 1000;
 
 	private static final int LOG_INCREMENT = 1000;
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(TermLoaderSvcImpl.class);
@@ -84,6 +89,8 @@ public class TermLoaderSvcImpl implements ITermLoaderSvc {
 	private ITermDeferredStorageSvc myDeferredStorageSvc;
 	@Autowired
 	private ITermCodeSystemStorageSvc myCodeSystemStorageSvc;
+	@Autowired
+	private DaoConfig myDaoConfig;
 
 	@Override
 	public UploadStatistics loadImgthla(List<FileDescriptor> theFiles, RequestDetails theRequestDetails) {
@@ -153,6 +160,9 @@ public class TermLoaderSvcImpl implements ITermLoaderSvc {
 
 			ourLog.info("Beginning SNOMED CT processing");
 
+			if (myDaoConfig.isTermLoaderStagingEnabled()) {
+				return processSnomedCtFilesStaged(descriptors, theRequestDetails);
+			}
 			return processSnomedCtFiles(descriptors, theRequestDetails);
 		}
 	}
@@ -568,14 +578,201 @@ public class TermLoaderSvcImpl implements ITermLoaderSvc {
 
 		codeSystemVersion.getConcepts().addAll(rootConcepts.values());
 
+		CodeSystem cs = newSnomedCtCodeSystem();
+		IIdType target = storeCodeSystem(theRequestDetails, codeSystemVersion, cs, null, null);
+
+		return new UploadStatistics(code2concept.size(), target);
+	}
+
+	/**
+	 * Loads SNOMED CT without ever holding the whole terminology in memory. The release files are
+	 * streamed into a {@link TermLoaderStagingStore}, where they are sorted and joined on disk, and the
+	 * resulting concepts and is-a links are then written to the database in batches.
+	 */
+	private UploadStatistics processSnomedCtFilesStaged(LoadedFileDescriptors theDescriptors, RequestDetails theRequestDetails) {
+		try (TermLoaderStagingStore store = new TermLoaderStagingStore()) {
+
+			// Keep the most recent row for each concept, and only keep the concept if that row is active
+			File conceptRows;
+			try (TermLoaderStagingStore.StagingWriter writer = store.newWriter()) {
+				iterateOverZipFile(theDescriptors, SCT_FILE_CONCEPT, t -> writer.write(t.get("id"), t.get("effectiveTime"), t.get("active")), '\t', null, true);
+				conceptRows = writer.getFile();
+			}
+			File validConceptIds;
+			try (TermLoaderStagingStore.StagingWriter writer = store.newWriter()) {
+				store.forEachGroup(store.sort(conceptRows, TermLoaderStagingStore.BY_FIRST_COLUMN), rows -> {
+					String[] mostRecent = rows.get(0);
+					for (String[] next : rows) {
+						if (next[1].compareTo(mostRecent[1]) > 0) {
+							mostRecent = next;
+						}
+					}
+					if ("1".equals(mostRecent[2])) {
+						writer.write(mostRecent[0]);
+					}
+				});
+				validConceptIds = writer.getFile();
+			}
+			ourLog.info("Have staged valid concept IDs");
+
+			// Each concept takes its display from the last active description
+			File descriptionRows;
+			try (TermLoaderStagingStore.StagingWriter writer = store.newWriter()) {
+				iterateOverZipFile(theDescriptors, SCT_FILE_DESCRIPTION, t -> {
+					if ("1".equals(t.get("active"))) {
+						writer.write(t.get("conceptId"), t.get("term"));
+					}
+				}, '\t', null, true);
+				descriptionRows = writer.getFile();
+			}
+			File validDescriptionRows;
+			try (TermLoaderStagingStore.StagingWriter writer = store.newWriter()) {
+				store.join(store.sort(descriptionRows, TermLoaderStagingStore.BY_FIRST_COLUMN), validConceptIds, (description, conceptId) -> {
+					if (conceptId != null) {
+						writer.write(description);
+					}
+				});
+				validDescriptionRows = writer.getFile();
+			}
+			Set<String> isATypeIds = new HashSet<>();
+			File concepts;
+			try (TermLoaderStagingStore.StagingWriter writer = store.newWriter()) {
+				store.forEachGroup(validDescriptionRows, rows -> {
+					String[] last = rows.get(rows.size() - 1);
+					if (SCT_IS_A_DISPLAY.equals(last[1])) {
+						isATypeIds.add(last[0]);
+					}
+					writer.write(last);
+				});
+				concepts = writer.getFile();
+			}
+			ourLog.info("Have staged concepts");
+
+			// A link exists if the last is-a relationship row between the two concepts is active
+			File relationshipRows;
+			try (TermLoaderStagingStore.StagingWriter writer = store.newWriter()) {
+				iterateOverZipFile(theDescriptors, SCT_FILE_RELATIONSHIP, t -> {
+					String sourceId = t.get("sourceId");
+					String destinationId = t.get("destinationId");
+					if (isATypeIds.contains(t.get("typeId")) && !sourceId.equals(destinationId)) {
+						writer.write(sourceId, destinationId, t.get("active"));
+					}
+				}, '\t', null, true);
+				relationshipRows = writer.getFile();
+			}
+			File links;
+			try (TermLoaderStagingStore.StagingWriter writer = store.newWriter()) {
+				store.forEachGroup(store.sort(relationshipRows, TermLoaderStagingStore.BY_FIRST_COLUMN), rows -> {
+					Map<String, Boolean> destinationToActive = new LinkedHashMap<>();
+					for (String[] next : rows) {
+						destinationToActive.put(next[1], "1".equals(next[2]));
+					}
+					destinationToActive.forEach((destinationId, active) -> {
+						if (active) {
+							writer.write(rows.get(0)[0], destinationId);
+						}
+					});
+				});
+				links = writer.getFile();
+			}
+			ourLog.info("Have staged relationships");
+
+			IOUtils.closeQuietly(theDescriptors);
+
+			return storeStagedCodeSystem(theRequestDetails, store, concepts, links);
+		}
+	}
+
+	/**
+	 * @param theConcepts Staged concepts as [code, display] rows, sorted by code
+	 * @param theLinks    Staged links as [child code, parent code] rows, sorted by child code
+	 */
+	private UploadStatistics storeStagedCodeSystem(RequestDetails theRequestDetails, TermLoaderStagingStore theStore, File theConcepts, File theLinks) {
+		TermCodeSystemVersion codeSystemVersion = new TermCodeSystemVersion();
+		CodeSystem cs = newSnomedCtCodeSystem();
+
+		myDeferredStorageSvc.setProcessDeferred(false);
+		try {
+			IIdType target = myCodeSystemStorageSvc.storeNewCodeSystemVersion(cs, codeSystemVersion, theRequestDetails, Collections.emptyList(), Collections.emptyList());
+			Long codeSystemVersionPid = codeSystemVersion.getPid();
+
+			// Store the concepts, recording the PID assigned to each code
+			int conceptCount = 0;
+			File codeToPid;
+			try (TermLoaderStagingStore.StagingWriter writer = theStore.newWriter();
+				  TermLoaderStagingStore.StagingReader reader = theStore.newReader(theConcepts)) {
+				List<TermConcept> batch = new ArrayList<>();
+				for (String[] next = reader.next(); next != null; next = reader.next()) {
+					batch.add(new TermConcept().setCode(next[0]).setDisplay(next[1]));
+					if (batch.size() >= STAGED_STORAGE_BATCH_SIZE) {
+						conceptCount += storeStagedConceptBatch(codeSystemVersionPid, batch, writer);
+						ourLog.info("Have stored {} concepts", conceptCount);
+					}
+				}
+				conceptCount += storeStagedConceptBatch(codeSystemVersionPid, batch, writer);
+				codeToPid = writer.getFile();
+			}
+
+			// Resolve both ends of each link to a PID, dropping links to concepts which were not stored
+			File parentCodeAndChildPid;
+			try (TermLoaderStagingStore.StagingWriter writer = theStore.newWriter()) {
+				theStore.join(theLinks, codeToPid, (link, child) -> {
+					if (child != null) {
+						writer.write(link[1], child[1]);
+					}
+				});
+				parentCodeAndChildPid = writer.getFile();
+			}
+			AtomicInteger linkCount = new AtomicInteger();
+			List<Pair<Long, Long>> batch = new ArrayList<>();
+			theStore.join(theStore.sort(parentCodeAndChildPid, TermLoaderStagingStore.BY_FIRST_COLUMN), codeToPid, (link, parent) -> {
+				if (parent != null) {
+					batch.add(Pair.of(Long.parseLong(parent[1]), Long.parseLong(link[1])));
+					if (batch.size() >= STAGED_STORAGE_BATCH_SIZE) {
+						myCodeSystemStorageSvc.storeConceptLinkBatch(codeSystemVersionPid, batch);
+						linkCount.addAndGet(batch.size());
+						ourLog.info("Have stored {} links", linkCount.get());
+						batch.clear();
+					}
+				}
+			});
+			if (!batch.isEmpty()) {
+				myCodeSystemStorageSvc.storeConceptLinkBatch(codeSystemVersionPid, batch);
+				linkCount.addAndGet(batch.size());
+			}
+
+			ourLog.info("Done loading SNOMED CT - stored {} concepts and {} links", conceptCount, linkCount.get());
+			return new UploadStatistics(conceptCount, target);
+		} finally {
+			myDeferredStorageSvc.setProcessDeferred(true);
+		}
+	}
+
+	/**
+	 * Stores and then clears the given batch of concepts
+	 *
+	 * @return Returns the number of concepts stored
+	 */
+	private int storeStagedConceptBatch(Long theCodeSystemVersionPid, List<TermConcept> theBatch, TermLoaderStagingStore.StagingWriter theCodeToPidWriter) {
+		int retVal = theBatch.size();
+		if (retVal > 0) {
+			List<Long> pids = myCodeSystemStorageSvc.storeConceptBatch(theCodeSystemVersionPid, theBatch);
+			for (int i = 0; i < theBatch.size(); i++) {
+				theCodeToPidWriter.write(theBatch.get(i).getCode(), Long.toString(pids.get(i)));
+			}
+			theBatch.clear();
+		}
+		return retVal;
+	}
+
+	@Nonnull
+	private CodeSystem newSnomedCtCodeSystem() {
 		CodeSystem cs = new org.hl7.fhir.r4.model.CodeSystem();
 		cs.setUrl(SCT_URI);
 		cs.setName("SNOMED CT");
 		cs.setContent(CodeSystem.CodeSystemContentMode.NOTPRESENT);
 		cs.setStatus(Enumerations.PublicationStatus.ACTIVE);
-		IIdType target = storeCodeSystem(theRequestDetails, codeSystemVersion, cs, null, null);
-
-		return new UploadStatistics(code2concept.size(), target);
+		return cs;
 	}
 
 	@VisibleForTesting
@@ -583,6 +780,11 @@ public class TermLoaderSvcImpl implements ITermLoaderSvc {
 		myDeferredStorageSvc = theDeferredStorageSvc;
 	}
 
+	@VisibleForTesting
+	void setDaoConfigForUnitTests(DaoConfig theDaoConfig) {
+		myDaoConfig = theDaoConfig;
+	}
+
 	@VisibleForTesting
 	void setTermCodeSystemStorageSvcForUnitTests(ITermCodeSystemStorageSvc theTermCodeSystemStorageSvc) {
 		myCodeSystemStorageSvc = theTermCodeSystemStorageSvc;
@@ -48,7 +48,9 @@ import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.annotation.PostConstruct;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
@@ -78,7 +80,7 @@ public class TermReindexingSvcImpl implements ITermReindexingSvc {
 		TransactionTemplate tt = new TransactionTemplate(myTransactionMgr);
 		tt.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
 		tt.execute(new TransactionCallbackWithoutResult() {
-			private void createParentsString(StringBuilder theParentsBuilder, Long theConceptPid) {
+			private void createParentsString(StringBuilder theParentsBuilder, Long theConceptPid, Set<Long> theVisitedPids) {
 				Validate.notNull(theConceptPid, "theConceptPid must not be null");
 				List<Long> parents = myChildToParentPidCache.get(theConceptPid);
 				if (parents.contains(-1L)) {
@@ -99,11 +101,15 @@ public class TermReindexingSvcImpl implements ITermReindexingSvc {
 				}
 
 				for (Long nextParent : parents) {
+					// Guards against circular hierarchies, which staged loads do not remove
+					if (!theVisitedPids.add(nextParent)) {
+						continue;
+					}
 					if (theParentsBuilder.length() > 0) {
 						theParentsBuilder.append(' ');
 					}
 					theParentsBuilder.append(nextParent);
-					createParentsString(theParentsBuilder, nextParent);
+					createParentsString(theParentsBuilder, nextParent, theVisitedPids);
 				}
 
 			}
@@ -134,7 +140,9 @@ public class TermReindexingSvcImpl implements ITermReindexingSvc {
 
 					if (isBlank(nextConcept.getParentPidsAsString())) {
 						StringBuilder parentsBuilder = new StringBuilder();
-						createParentsString(parentsBuilder, nextConcept.getId());
+						Set<Long> visitedPids = new HashSet<>();
+						visitedPids.add(nextConcept.getId());
+						createParentsString(parentsBuilder, nextConcept.getId(), visitedPids);
 						nextConcept.setParentPids(parentsBuilder.toString());
 					}
 
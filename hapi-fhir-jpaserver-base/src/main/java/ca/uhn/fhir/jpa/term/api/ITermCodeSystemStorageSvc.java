@@ -28,6 +28,7 @@ import ca.uhn.fhir.jpa.model.entity.ResourceTable;
 import ca.uhn.fhir.jpa.term.UploadStatistics;
 import ca.uhn.fhir.jpa.term.custom.CustomTerminologySet;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
+import org.apache.commons.lang3.tuple.Pair;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.r4.model.CodeSystem;
 import org.hl7.fhir.r4.model.ValueSet;
@@ -58,5 +59,22 @@ public interface ITermCodeSystemStorageSvc {
 
 	int saveConcept(TermConcept theNextConcept);
 
+	/**
+	 * Saves a batch of new concepts belonging to an existing code system version, in a new transaction.
+	 * This is used by loaders which stage large terminologies on disk instead of building the whole
+	 * hierarchy in memory. The concepts are left unindexed, so their parent PIDs are populated by the
+	 * reindexing job once the links have been stored using {@link #storeConceptLinkBatch(Long, List)}.
+	 *
+	 * @return Returns the PIDs of the saved concepts, in the same order as the supplied concepts
+	 */
+	List<Long> storeConceptBatch(Long theCodeSystemVersionPid, List<TermConcept> theConcepts);
+
+	/**
+	 * Saves a batch of is-a links between concepts which have already been saved, in a new transaction
+	 *
+	 * @param theParentAndChildPids Pairs of concept PIDs, where the left element is the parent and the right element is the child
+	 */
+	void storeConceptLinkBatch(Long theCodeSystemVersionPid, List<Pair<Long, Long>> theParentAndChildPids);
+
 	ResourcePersistentId getValueSetResourcePid(IIdType theIdElement);
 }
@@ -0,0 +1,57 @@
+package ca.uhn.fhir.jpa.term.api;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.term.TermConceptClosureIndex;
+
+import javax.annotation.Nullable;
+
+/**
+ * Maintains a {@link TermConceptClosureIndex} for each code system version, which is used to
+ * answer subsumption and <code>:above</code> / <code>:below</code> queries from memory instead
+ * of walking the concept hierarchy in the database.
+ * <p>
+ * Indexes are built in the background, and only when
+ * {@link ca.uhn.fhir.jpa.api.config.DaoConfig#isTermConceptClosureIndexEnabled()} is set.
+ * </p>
+ */
+public interface ITermConceptClosureIndexSvc {
+
+	/**
+	 * Returns the index for the given code system version if one has been built and is still current.
+	 * If not, a background build is started (unless one is already running) and <code>null</code>
+	 * is returned, in which case callers should fall back to querying the database.
+	 */
+	@Nullable
+	TermConceptClosureIndex getIndexOrScheduleBuild(Long theCodeSystemVersionPid);
+
+	/**
+	 * Discards all indexes. Must be called whenever concepts or links are added or removed.
+	 */
+	void invalidateIndexes();
+
+	/**
+	 * Builds an index synchronously. This is mostly for unit tests, normally indexes are built
+	 * in the background by {@link #getIndexOrScheduleBuild(Long)}.
+	 */
+	TermConceptClosureIndex buildIndex(Long theCodeSystemVersionPid);
+
+}
@@ -63,4 +63,79 @@ public interface ITermDeferredStorageSvc {
 	 */
 	void saveAllDeferred();
 
+	/**
+	 * Returns the progress of writing the deferred concepts and links queued on this server. Note that
+	 * the storage queue is held in memory, so in a clustered deployment this only reflects uploads which
+	 * were received by this server.
+	 */
+	StorageProgress getStorageProgress();
+
+	class StorageProgress {
+		private final int myConceptsRemaining;
+		private final int myConceptLinksRemaining;
+		private final int myValueSetsRemaining;
+		private final int myConceptMapsRemaining;
+		private final long myConceptsSaved;
+		private final long myConceptLinksSaved;
+		private final long myElapsedMillis;
+		private final Long myEstimatedMillisRemaining;
+
+		public StorageProgress(int theConceptsRemaining, int theConceptLinksRemaining, int theValueSetsRemaining, int theConceptMapsRemaining, long theConceptsSaved, long theConceptLinksSaved, long theElapsedMillis, Long theEstimatedMillisRemaining) {
+			myConceptsRemaining = theConceptsRemaining;
+			myConceptLinksRemaining = theConceptLinksRemaining;
+			myValueSetsRemaining = theValueSetsRemaining;
+			myConceptMapsRemaining = theConceptMapsRemaining;
+			myConceptsSaved = theConceptsSaved;
+			myConceptLinksSaved = theConceptLinksSaved;
+			myElapsedMillis = theElapsedMillis;
+			myEstimatedMillisRemaining = theEstimatedMillisRemaining;
+		}
+
+		public int getConceptsRemaining() {
+			return myConceptsRemaining;
+		}
+
+		public int getConceptLinksRemaining() {
+			return myConceptLinksRemaining;
+		}
+
+		public int getValueSetsRemaining() {
+			return myValueSetsRemaining;
+		}
+
+		public int getConceptMapsRemaining() {
+			return myConceptMapsRemaining;
+		}
+
+		/**
+		 * The number of concepts saved since the storage queue was last empty
+		 */
+		public long getConceptsSaved() {
+			return myConceptsSaved;
+		}
+
+		/**
+		 * The number of links saved since the storage queue was last empty
+		 */
+		public long getConceptLinksSaved() {
+			return myConceptLinksSaved;
+		}
+
+		/**
+		 * The time since concepts or links were first queued after the storage queue was last empty,
+		 * or <code>0</code> if nothing is queued
+		 */
+		public long getElapsedMillis() {
+			return myElapsedMillis;
+		}
+
+		/**
+		 * An estimate of the time needed to save the remaining concepts and links, based on the rate
+		 * achieved so far, or <code>null</code> if no estimate is available yet
+		 */
+		public Long getEstimatedMillisRemaining() {
+			return myEstimatedMillisRemaining;
+		}
+	}
+
 }
@@ -0,0 +1,174 @@
+package ca.uhn.fhir.jpa.util;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * A set of primitive <code>long</code> values (typically resource PIDs), using open
+ * addressing with linear probing. This avoids allocating a boxed key and a hash map
+ * entry for every value, which adds up when collecting the PIDs for large searches.
+ * <p>
+ * This class is not thread safe.
+ * </p>
+ */
+public class LongHashSet {
+
+	private static final long EMPTY = 0L;
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] myTable;
+	private int mySize;
+	private boolean myContainsEmptyValue;
+
+	public LongHashSet() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * @param theExpectedSize The number of values the set should be able to hold without resizing
+	 */
+	public LongHashSet(int theExpectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity < theExpectedSize * 2L && capacity < (1 << 30)) {
+			capacity <<= 1;
+		}
+		myTable = new long[capacity];
+	}
+
+	/**
+	 * @return Returns <code>true</code> if the value was not already present
+	 */
+	public boolean add(long theValue) {
+		if (theValue == EMPTY) {
+			if (myContainsEmptyValue) {
+				return false;
+			}
+			myContainsEmptyValue = true;
+			mySize++;
+			return true;
+		}
+
+		int mask = myTable.length - 1;
+		int index = hash(theValue) & mask;
+		while (myTable[index] != EMPTY) {
+			if (myTable[index] == theValue) {
+				return false;
+			}
+			index = (index + 1) & mask;
+		}
+		myTable[index] = theValue;
+		mySize++;
+		if (mySize * 2 > myTable.length) {
+			resize();
+		}
+		return true;
+	}
+
+	public boolean contains(long theValue) {
+		if (theValue == EMPTY) {
+			return myContainsEmptyValue;
+		}
+
+		int mask = myTable.length - 1;
+		int index = hash(theValue) & mask;
+		while (myTable[index] != EMPTY) {
+			if (myTable[index] == theValue) {
+				return true;
+			}
+			index = (index + 1) & mask;
+		}
+		return false;
+	}
+
+	public int size() {
+		return mySize;
+	}
+
+	public boolean isEmpty() {
+		return mySize == 0;
+	}
+
+	public void forEach(LongConsumer theConsumer) {
+		if (myContainsEmptyValue) {
+			theConsumer.accept(EMPTY);
+		}
+		for (long next : myTable) {
+			if (next != EMPTY) {
+				theConsumer.accept(next);
+			}
+		}
+	}
+
+	/**
+	 * Returns the values in this set, in no particular order
+	 */
+	public List<Long> toList() {
+		List<Long> retVal = new ArrayList<>(mySize);
+		forEach(retVal::add);
+		return retVal;
+	}
+
+	/**
+	 * Returns the values in this set, in no particular order
+	 */
+	public long[] toArray() {
+		long[] retVal = new long[mySize];
+		int[] count = new int[1];
+		forEach(t -> retVal[count[0]++] = t);
+		return retVal;
+	}
+
+	private void resize() {
+		long[] oldTable = myTable;
+		myTable = new long[oldTable.length * 2];
+		int mask = myTable.length - 1;
+		for (long next : oldTable) {
+			if (next != EMPTY) {
+				int index = hash(next) & mask;
+				while (myTable[index] != EMPTY) {
+					index = (index + 1) & mask;
+				}
+				myTable[index] = next;
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		long[] values = toArray();
+		Arrays.sort(values);
+		return Arrays.toString(values);
+	}
+
+	private static int hash(long theValue) {
+		// Spread sequential PIDs across the table (the finalization step of MurmurHash3)
+		long h = theValue;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+
+}
@@ -3,9 +3,11 @@ package ca.uhn.fhir.jpa.bulk;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.FhirVersionEnum;
 import ca.uhn.fhir.jpa.bulk.api.IBulkDataExportSvc;
+import ca.uhn.fhir.jpa.bulk.api.IBulkExportFileStorageSvc;
 import ca.uhn.fhir.jpa.bulk.model.BulkExportResponseJson;
 import ca.uhn.fhir.jpa.bulk.model.BulkJobStatusEnum;
 import ca.uhn.fhir.jpa.bulk.provider.BulkDataExportProvider;
+import ca.uhn.fhir.jpa.bulk.svc.FilesystemBulkExportFileStorageSvcImpl;
 import ca.uhn.fhir.jpa.model.util.JpaConstants;
 import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.client.apache.ResourceEntity;
@@ -33,6 +35,7 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
@@ -40,16 +43,21 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
 import java.util.Date;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.times;
@@ -75,6 +83,9 @@ public class BulkDataExportProviderTest {
 	private ArgumentCaptor<Date> mySinceCaptor;
 	@Captor
 	private ArgumentCaptor<Set<String>> myFiltersCaptor;
+	@TempDir
+	File myTempDir;
+	private FilesystemBulkExportFileStorageSvcImpl myFileStorageSvc;
 
 	@AfterEach
 	public void after() throws Exception {
@@ -90,6 +101,10 @@ public class BulkDataExportProviderTest {
 		provider.setBulkDataExportSvcForUnitTests(myBulkDataExportSvc);
 		provider.setFhirContextForUnitTest(myCtx);
 
+		myFileStorageSvc = new FilesystemBulkExportFileStorageSvcImpl(myTempDir.getAbsolutePath());
+		myFileStorageSvc.start();
+		provider.setFileStorageSvcForUnitTests(myFileStorageSvc);
+
 		ServletHandler proxyHandler = new ServletHandler();
 		RestfulServer servlet = new RestfulServer(myCtx);
 		servlet.registerProvider(provider);
@@ -286,5 +301,124 @@ public class BulkDataExportProviderTest {
 
 	}
 
+	@Test
+	public void testPollForStatus_COMPLETED_FileStorage() throws IOException {
+
+		IBulkDataExportSvc.JobInfo jobInfo = new IBulkDataExportSvc.JobInfo()
+			.setJobId(A_JOB_ID)
+			.setStatus(BulkJobStatusEnum.COMPLETE)
+			.setStatusTime(InstantType.now().getValue());
+		jobInfo.addFile().setResourceType("Patient").setFileId(111L).setStorageKey(A_JOB_ID + "/Patient-1.ndjson");
+		when(myBulkDataExportSvc.getJobInfoOrThrowResourceNotFound(eq(A_JOB_ID))).thenReturn(jobInfo);
+
+		String url = "http://localhost:" + myPort + "/" + JpaConstants.OPERATION_EXPORT_POLL_STATUS + "?" +
+			JpaConstants.PARAM_EXPORT_POLL_STATUS_JOB_ID + "=" + A_JOB_ID;
+		HttpGet get = new HttpGet(url);
+		try (CloseableHttpResponse response = myClient.execute(get)) {
+			assertEquals(200, response.getStatusLine().getStatusCode());
+
+			String responseContent = IOUtils.toString(response.getEntity().getContent(), Charsets.UTF_8);
+			ourLog.info("Response content: {}", responseContent);
+			BulkExportResponseJson responseJson = JsonUtil.deserialize(responseContent, BulkExportResponseJson.class);
+			assertEquals(1, responseJson.getOutput().size());
+			assertEquals("Patient", responseJson.getOutput().get(0).getType());
+			assertEquals("http://localhost:" + myPort + "/" + JpaConstants.OPERATION_EXPORT_DOWNLOAD + "?" + JpaConstants.PARAM_EXPORT_POLL_STATUS_JOB_ID + "=" + A_JOB_ID + "&" + JpaConstants.PARAM_EXPORT_DOWNLOAD_FILE_ID + "=111", responseJson.getOutput().get(0).getUrl());
+		}
+
+	}
+
+	@Test
+	public void testDownload() throws IOException {
+		String contents = "{\"resourceType\":\"Patient\",\"id\":\"1\"}\n{\"resourceType\":\"Patient\",\"id\":\"2\"}\n";
+		IBulkExportFileStorageSvc.IWritableFile file = myFileStorageSvc.createFile(A_JOB_ID, "Patient");
+		try (OutputStream os = Channels.newOutputStream(file.getChannel())) {
+			os.write(contents.getBytes(Charsets.UTF_8));
+		}
+
+		IBulkDataExportSvc.JobInfo jobInfo = new IBulkDataExportSvc.JobInfo()
+			.setJobId(A_JOB_ID)
+			.setStatus(BulkJobStatusEnum.COMPLETE)
+			.setStatusTime(InstantType.now().getValue());
+		jobInfo.addFile().setResourceType("Patient").setFileId(111L).setStorageKey(file.getStorageKey()).setSize((long) contents.length());
+		when(myBulkDataExportSvc.getJobInfoOrThrowResourceNotFound(eq(A_JOB_ID))).thenReturn(jobInfo);
+
+		HttpGet get = new HttpGet(getDownloadUrl("111"));
+		try (CloseableHttpResponse response = myClient.execute(get)) {
+			assertEquals(200, response.getStatusLine().getStatusCode());
+			assertEquals(Constants.CT_FHIR_NDJSON, response.getEntity().getContentType().getValue().replaceAll(";.*", "").trim());
+			assertEquals(contents.length(), response.getEntity().getContentLength());
+			assertEquals(contents, IOUtils.toString(response.getEntity().getContent(), Charsets.UTF_8));
+		}
+
+		// Unknown file
+		get = new HttpGet(getDownloadUrl("222"));
+		try (CloseableHttpResponse response = myClient.execute(get)) {
+			assertEquals(404, response.getStatusLine().getStatusCode());
+		}
+
+		// Purged file
+		myFileStorageSvc.deleteFile(file.getStorageKey());
+		get = new HttpGet(getDownloadUrl("111"));
+		try (CloseableHttpResponse response = myClient.execute(get)) {
+			assertEquals(404, response.getStatusLine().getStatusCode());
+		}
+	}
+
+	@Test
+	public void testDownloadGzip() throws IOException {
+		myFileStorageSvc.setGzipEnabled(true);
+		String contents = "{\"resourceType\":\"Patient\",\"id\":\"1\"}\n";
+		IBulkExportFileStorageSvc.IWritableFile file = myFileStorageSvc.createFile(A_JOB_ID, "Patient");
+		try (OutputStream os = new GZIPOutputStream(Channels.newOutputStream(file.getChannel()))) {
+			os.write(contents.getBytes(Charsets.UTF_8));
+		}
+		assertThat(file.getStorageKey(), containsString(".ndjson.gz"));
+
+		IBulkDataExportSvc.JobInfo jobInfo = new IBulkDataExportSvc.JobInfo()
+			.setJobId(A_JOB_ID)
+			.setStatus(BulkJobStatusEnum.COMPLETE)
+			.setStatusTime(InstantType.now().getValue());
+		jobInfo.addFile().setResourceType("Patient").setFileId(111L).setStorageKey(file.getStorageKey()).setGzip(true);
+		when(myBulkDataExportSvc.getJobInfoOrThrowResourceNotFound(eq(A_JOB_ID))).thenReturn(jobInfo);
+
+		HttpGet get = new HttpGet(getDownloadUrl("111"));
+		try (CloseableHttpResponse response = myClient.execute(get)) {
+			assertEquals(200, response.getStatusLine().getStatusCode());
+			// The client transparently decompresses the response
+			assertEquals(contents, IOUtils.toString(response.getEntity().getContent(), Charsets.UTF_8));
+		}
+	}
+
+	@Test
+	public void testDownloadGzip_ClientDoesNotAcceptGzip() throws IOException {
+		myFileStorageSvc.setGzipEnabled(true);
+		String contents = "{\"resourceType\":\"Patient\",\"id\":\"1\"}\n";
+		IBulkExportFileStorageSvc.IWritableFile file = myFileStorageSvc.createFile(A_JOB_ID, "Patient");
+		try (OutputStream os = new GZIPOutputStream(Channels.newOutputStream(file.getChannel()))) {
+			os.write(contents.getBytes(Charsets.UTF_8));
+		}
+
+		IBulkDataExportSvc.JobInfo jobInfo = new IBulkDataExportSvc.JobInfo()
+			.setJobId(A_JOB_ID)
+			.setStatus(BulkJobStatusEnum.COMPLETE)
+			.setStatusTime(InstantType.now().getValue());
+		jobInfo.addFile().setResourceType("Patient").setFileId(111L).setStorageKey(file.getStorageKey()).setGzip(true);
+		when(myBulkDataExportSvc.getJobInfoOrThrowResourceNotFound(eq(A_JOB_ID))).thenReturn(jobInfo);
+
+		try (CloseableHttpClient client = HttpClientBuilder.create().disableContentCompression().build()) {
+			HttpGet get = new HttpGet(getDownloadUrl("111"));
+			try (CloseableHttpResponse response = client.execute(get)) {
+				assertEquals(200, response.getStatusLine().getStatusCode());
+				assertNull(response.getFirstHeader(Constants.HEADER_CONTENT_ENCODING));
+				assertEquals(contents, IOUtils.toString(response.getEntity().getContent(), Charsets.UTF_8));
+			}
+		}
+	}
+
+	private String getDownloadUrl(String theFileId) {
+		return "http://localhost:" + myPort + "/" + JpaConstants.OPERATION_EXPORT_DOWNLOAD + "?" +
+			JpaConstants.PARAM_EXPORT_POLL_STATUS_JOB_ID + "=" + A_JOB_ID + "&" +
+			JpaConstants.PARAM_EXPORT_DOWNLOAD_FILE_ID + "=" + theFileId;
+	}
 
 }
@@ -2,8 +2,12 @@ package ca.uhn.fhir.jpa.bulk;
 
 import ca.uhn.fhir.jpa.batch.api.IBatchJobSubmitter;
 import ca.uhn.fhir.jpa.bulk.api.IBulkDataExportSvc;
+import ca.uhn.fhir.jpa.bulk.api.IBulkExportFileStorageSvc;
 import ca.uhn.fhir.jpa.bulk.job.BulkExportJobParametersBuilder;
+import ca.uhn.fhir.jpa.bulk.job.BulkItemReader;
 import ca.uhn.fhir.jpa.bulk.model.BulkJobStatusEnum;
+import ca.uhn.fhir.jpa.bulk.svc.BulkDataExportSvcImpl;
+import ca.uhn.fhir.jpa.bulk.svc.FilesystemBulkExportFileStorageSvcImpl;
 import ca.uhn.fhir.jpa.dao.data.IBulkExportCollectionDao;
 import ca.uhn.fhir.jpa.dao.data.IBulkExportCollectionFileDao;
 import ca.uhn.fhir.jpa.dao.data.IBulkExportJobDao;
@@ -11,7 +15,9 @@ import ca.uhn.fhir.jpa.dao.r4.BaseJpaR4Test;
 import ca.uhn.fhir.jpa.entity.BulkExportCollectionEntity;
 import ca.uhn.fhir.jpa.entity.BulkExportCollectionFileEntity;
 import ca.uhn.fhir.jpa.entity.BulkExportJobEntity;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
 import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.server.storage.ResourcePersistentId;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import com.google.common.base.Charsets;
 import com.google.common.collect.Sets;
@@ -19,10 +25,12 @@ import org.apache.commons.lang3.time.DateUtils;
 import org.hamcrest.Matchers;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.r4.model.Binary;
+import org.hl7.fhir.r4.model.IdType;
 import org.hl7.fhir.r4.model.InstantType;
 import org.hl7.fhir.r4.model.Observation;
 import org.hl7.fhir.r4.model.Patient;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.BatchStatus;
@@ -31,13 +39,24 @@ import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.JobInstance;
 import org.springframework.batch.core.JobParametersBuilder;
 import org.springframework.batch.core.JobParametersInvalidException;
+import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.item.ExecutionContext;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.util.AopTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
@@ -47,8 +66,12 @@ import static org.awaitility.Awaitility.await;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 public class BulkDataExportSvcImplR4Test extends BaseJpaR4Test {
@@ -400,6 +423,174 @@ public class BulkDataExportSvcImplR4Test extends BaseJpaR4Test {
 		}
 	}
 
+	@Test
+	public void testBatchJobReadsInWindowsAndSkipsDeleted() throws Exception {
+		createResources();
+		myObservationDao.delete(new IdType("Observation/OBS0"));
+		myPatientDao.delete(new IdType("Patient/PAT0"));
+
+		IBulkDataExportSvc.JobInfo jobDetails = myBulkDataExportSvc.submitJob(null, Sets.newHashSet("Patient"), null, null);
+		BulkExportJobParametersBuilder paramBuilder = new BulkExportJobParametersBuilder()
+			.setJobUUID(jobDetails.getJobId())
+			.setReadChunkSize(3L);
+
+		JobExecution jobExecution = myBatchJobSubmitter.runJob(myBulkJob, paramBuilder.toJobParameters());
+		awaitJobCompletion(jobExecution);
+
+		IBulkDataExportSvc.JobInfo jobInfo = myBulkDataExportSvc.getJobInfoOrThrowResourceNotFound(jobDetails.getJobId());
+		assertEquals(BulkJobStatusEnum.COMPLETE, jobInfo.getStatus());
+		assertEquals(1, jobInfo.getFiles().size());
+
+		Binary nextBinary = myBinaryDao.read(jobInfo.getFiles().get(0).getResourceId());
+		String nextContents = new String(nextBinary.getContent(), Constants.CHARSET_UTF8);
+		ourLog.info("Next contents:\n{}", nextContents);
+		assertEquals(9, nextContents.split("\n").length);
+		assertThat(nextContents, not(containsString("\"id\":\"PAT0\"")));
+		assertThat(nextContents, containsString("\"id\":\"PAT9\""));
+	}
+
+	@Test
+	public void testBatchJobWritesToFileStorage(@TempDir File theTempDir) throws Exception {
+		FilesystemBulkExportFileStorageSvcImpl fileStorageSvc = new FilesystemBulkExportFileStorageSvcImpl(theTempDir.getAbsolutePath());
+		fileStorageSvc.start();
+		DefaultListableBeanFactory beanFactory = (DefaultListableBeanFactory) ((ConfigurableApplicationContext) myAppCtx).getBeanFactory();
+		BulkDataExportSvcImpl bulkDataExportSvc = AopTestUtils.getTargetObject(myBulkDataExportSvc);
+		beanFactory.registerSingleton("bulkExportFileStorageSvc", fileStorageSvc);
+		bulkDataExportSvc.setFileStorageSvcForUnitTests(fileStorageSvc);
+		try {
+			createResources();
+
+			IBulkDataExportSvc.JobInfo jobDetails = myBulkDataExportSvc.submitJob(null, Sets.newHashSet("Patient", "Observation"), null, null);
+			myBulkDataExportSvc.buildExportFiles();
+			awaitAllBulkJobCompletions();
+
+			IBulkDataExportSvc.JobInfo status = myBulkDataExportSvc.getJobInfoOrThrowResourceNotFound(jobDetails.getJobId());
+			assertEquals(BulkJobStatusEnum.COMPLETE, status.getStatus());
+			assertEquals(2, status.getFiles().size());
+			runInTransaction(() -> assertEquals(0, myBinaryDao.search(SearchParameterMap.newSynchronous()).size().intValue()));
+
+			for (IBulkDataExportSvc.FileEntry next : status.getFiles()) {
+				assertNull(next.getResourceId());
+				assertNotNull(next.getFileId());
+				assertNotNull(next.getStorageKey());
+				assertFalse(next.isGzip());
+
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				assertTrue(fileStorageSvc.transferTo(next.getStorageKey(), Channels.newChannel(bytes)));
+				assertEquals(next.getSize().longValue(), bytes.size());
+				String nextContents = new String(bytes.toByteArray(), Constants.CHARSET_UTF8);
+				ourLog.info("Next contents for type {}:\n{}", next.getResourceType(), nextContents);
+				assertEquals(10, nextContents.split("\n").length);
+			}
+
+			// Expire the job and purge it
+			runInTransaction(() -> {
+				BulkExportJobEntity job = myBulkExportJobDao.findByJobId(jobDetails.getJobId()).get();
+				job.setExpiry(DateUtils.addHours(new Date(), -1));
+				myBulkExportJobDao.save(job);
+			});
+			myBulkDataExportSvc.purgeExpiredFiles();
+			for (IBulkDataExportSvc.FileEntry next : status.getFiles()) {
+				assertFalse(fileStorageSvc.transferTo(next.getStorageKey(), Channels.newChannel(new ByteArrayOutputStream())));
+			}
+		} finally {
+			bulkDataExportSvc.setFileStorageSvcForUnitTests(null);
+			beanFactory.destroySingleton("bulkExportFileStorageSvc");
+		}
+	}
+
+	@Test
+	public void testItemReaderResumesFromExecutionContext() throws Exception {
+		createResources();
+		IBulkDataExportSvc.JobInfo jobDetails = myBulkDataExportSvc.submitJob(null, Sets.newHashSet("Patient"), null, null);
+
+		List<ResourcePersistentId> pids = new ArrayList<>();
+		ExecutionContext savedContext = new ExecutionContext();
+
+		// Read one window and save a checkpoint, as happens when a chunk is committed
+		BulkItemReader reader = openItemReader(jobDetails.getJobId(), savedContext);
+		try {
+			pids.addAll(reader.read());
+			reader.update(savedContext);
+			assertEquals(4, pids.size());
+		} finally {
+			StepSynchronizationManager.close();
+		}
+
+		// A new reader (e.g. after a restart) continues from the checkpoint
+		reader = openItemReader(jobDetails.getJobId(), savedContext);
+		try {
+			List<ResourcePersistentId> next;
+			while ((next = reader.read()) != null) {
+				pids.addAll(next);
+			}
+		} finally {
+			StepSynchronizationManager.close();
+		}
+
+		assertEquals(10, pids.size());
+		assertEquals(10, new HashSet<>(pids).size());
+		List<Long> expected = runInTransaction(() -> myResourceTableDao.findAll()
+			.stream()
+			.filter(t -> t.getResourceType().equals("Patient"))
+			.map(t -> t.getId())
+			.sorted()
+			.collect(Collectors.toList()));
+		assertEquals(expected, pids.stream().map(ResourcePersistentId::getIdAsLong).sorted().collect(Collectors.toList()));
+	}
+
+	@Test
+	public void testItemReaderSkipsResourcesUpdatedAfterReadStarted() throws Exception {
+		createResources();
+		IBulkDataExportSvc.JobInfo jobDetails = myBulkDataExportSvc.submitJob(null, Sets.newHashSet("Patient"), null, null);
+
+		List<ResourcePersistentId> pids = new ArrayList<>();
+		ExecutionContext savedContext = new ExecutionContext();
+		BulkItemReader reader = openItemReader(jobDetails.getJobId(), savedContext);
+		try {
+			pids.addAll(reader.read());
+			reader.update(savedContext);
+			assertEquals(4, pids.size());
+			assertTrue(savedContext.containsKey(BulkItemReader.CONTEXT_KEY_READ_START));
+
+			// Update a patient which has already been read, and one which hasn't been read yet
+			sleepUntilTimeChanges();
+			Patient patient = new Patient();
+			patient.setId("PAT0");
+			patient.setActive(true);
+			myPatientDao.update(patient);
+			patient = new Patient();
+			patient.setId("PAT9");
+			patient.setActive(true);
+			myPatientDao.update(patient);
+
+			List<ResourcePersistentId> next;
+			while ((next = reader.read()) != null) {
+				pids.addAll(next);
+			}
+		} finally {
+			StepSynchronizationManager.close();
+		}
+
+		// Neither updated patient is read again, so nothing is exported twice
+		assertEquals(9, pids.size());
+		assertEquals(9, new HashSet<>(pids).size());
+		Long updatedPid = runInTransaction(() -> myPatientDao.readEntity(new IdType("Patient/PAT9"), null).getId());
+		assertFalse(pids.contains(new ResourcePersistentId(updatedPid)));
+	}
+
+	private BulkItemReader openItemReader(String theJobUUID, ExecutionContext theSavedContext) {
+		JobExecution jobExecution = new JobExecution(new JobInstance(1L, "bulkExportJob"), 1L, new JobParametersBuilder().addLong("readChunkSize", 4L).toJobParameters(), null);
+		jobExecution.getExecutionContext().putString("jobUUID", theJobUUID);
+		StepExecution stepExecution = new StepExecution("bulkExportGenerateResourceFilesStep", jobExecution);
+		stepExecution.getExecutionContext().putString("resourceType", "Patient");
+		StepSynchronizationManager.register(stepExecution);
+
+		BulkItemReader reader = myAppCtx.getBean("bulkItemReader", BulkItemReader.class);
+		reader.open(theSavedContext);
+		return reader;
+	}
+
 	private void createResources() {
 		for (int i = 0; i < 10; i++) {
 			Patient patient = new Patient();
@@ -0,0 +1,121 @@
+package ca.uhn.fhir.jpa.bulk.imprt;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.FhirVersionEnum;
+import ca.uhn.fhir.jpa.bulk.imprt.api.IBulkDataImportSvc;
+import ca.uhn.fhir.jpa.bulk.imprt.model.BulkImportJobFileJson;
+import ca.uhn.fhir.jpa.bulk.imprt.provider.BulkDataImportProvider;
+import ca.uhn.fhir.jpa.model.util.JpaConstants;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.server.RestfulServer;
+import ca.uhn.fhir.test.utilities.JettyUtil;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.endsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class BulkDataImportProviderTest {
+
+	private static final String A_JOB_ID = "0000000-AAAAAA";
+	private Server myServer;
+	private FhirContext myCtx = FhirContext.forCached(FhirVersionEnum.R4);
+	private int myPort;
+	@Mock
+	private IBulkDataImportSvc myBulkDataImportSvc;
+	@Captor
+	private ArgumentCaptor<List<BulkImportJobFileJson>> myFilesCaptor;
+	private CloseableHttpClient myClient;
+
+	@AfterEach
+	public void after() throws Exception {
+		JettyUtil.closeServer(myServer);
+		myClient.close();
+	}
+
+	@BeforeEach
+	public void start() throws Exception {
+		myServer = new Server(0);
+
+		BulkDataImportProvider provider = new BulkDataImportProvider();
+		provider.setBulkDataImportSvcForUnitTests(myBulkDataImportSvc);
+		provider.setFhirContextForUnitTest(myCtx);
+		provider.setRowsPerFileForUnitTests(2);
+
+		ServletHandler proxyHandler = new ServletHandler();
+		RestfulServer servlet = new RestfulServer(myCtx);
+		servlet.registerProvider(provider);
+		ServletHolder servletHolder = new ServletHolder(servlet);
+		proxyHandler.addServletWithMapping(servletHolder, "/*");
+		myServer.setHandler(proxyHandler);
+		JettyUtil.startServer(myServer);
+		myPort = JettyUtil.getPortForStartedServer(myServer);
+
+		myClient = HttpClientBuilder.create().build();
+	}
+
+	@Test
+	public void testImport_SplitsIntoFiles() throws IOException {
+		when(myBulkDataImportSvc.createNewJob(any(), any())).thenReturn(A_JOB_ID);
+
+		String body = "{\"resourceType\":\"Patient\",\"id\":\"A\"}\n" +
+			"{\"resourceType\":\"Patient\",\"id\":\"B\"}\n" +
+			"\n" +
+			"{\"resourceType\":\"Patient\",\"id\":\"C\"}\n";
+
+		try (CloseableHttpResponse response = myClient.execute(createImportRequest(body))) {
+			assertEquals(202, response.getStatusLine().getStatusCode());
+			assertThat(response.getFirstHeader(Constants.HEADER_CONTENT_LOCATION).getValue(), endsWith(JpaConstants.OPERATION_IMPORT_POLL_STATUS + "?" + JpaConstants.PARAM_IMPORT_POLL_STATUS_JOB_ID + "=" + A_JOB_ID));
+		}
+
+		verify(myBulkDataImportSvc).createNewJob(any(), myFilesCaptor.capture());
+		assertEquals("rows 1-2", myFilesCaptor.getValue().get(0).getDescription());
+		verify(myBulkDataImportSvc).addFilesToJob(eq(A_JOB_ID), myFilesCaptor.capture());
+		assertEquals("rows 3-3", myFilesCaptor.getValue().get(0).getDescription());
+		verify(myBulkDataImportSvc).markJobAsReadyForActivation(eq(A_JOB_ID));
+		verifyNoMoreInteractions(myBulkDataImportSvc);
+	}
+
+	@Test
+	public void testImport_EmptyBodyDoesNotCreateJob() throws IOException {
+		try (CloseableHttpResponse response = myClient.execute(createImportRequest("\n\n"))) {
+			assertEquals(400, response.getStatusLine().getStatusCode());
+		}
+
+		verifyNoInteractions(myBulkDataImportSvc);
+	}
+
+	private HttpPost createImportRequest(String theBody) {
+		HttpPost retVal = new HttpPost("http://localhost:" + myPort + "/" + JpaConstants.OPERATION_IMPORT);
+		retVal.addHeader(Constants.HEADER_PREFER, Constants.HEADER_PREFER_RESPOND_ASYNC);
+		retVal.setEntity(new StringEntity(theBody, ContentType.create(Constants.CT_FHIR_NDJSON, Constants.CHARSET_UTF8)));
+		return retVal;
+	}
+
+}
@@ -0,0 +1,246 @@
+package ca.uhn.fhir.jpa.bulk.imprt;
+
+import ca.uhn.fhir.jpa.bulk.imprt.api.IBulkDataImportSvc;
+import ca.uhn.fhir.jpa.bulk.imprt.model.BulkImportJobFileJson;
+import ca.uhn.fhir.jpa.bulk.imprt.model.BulkImportJobJson;
+import ca.uhn.fhir.jpa.bulk.imprt.model.BulkImportJobStatusEnum;
+import ca.uhn.fhir.jpa.bulk.imprt.svc.BulkDataImportSvcImpl;
+import ca.uhn.fhir.jpa.dao.data.IBulkImportJobDao;
+import ca.uhn.fhir.jpa.dao.data.IBulkImportJobFileDao;
+import ca.uhn.fhir.jpa.dao.r4.BaseJpaR4Test;
+import ca.uhn.fhir.jpa.entity.BulkImportJobEntity;
+import ca.uhn.fhir.jpa.entity.BulkImportJobFileEntity;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.util.StopWatch;
+import org.hibernate.Session;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.util.AopTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+public class BulkDataImportSvcImplR4Test extends BaseJpaR4Test {
+
+	private static final Logger ourLog = LoggerFactory.getLogger(BulkDataImportSvcImplR4Test.class);
+	@Autowired
+	private IBulkDataImportSvc mySvc;
+	@Autowired
+	private IBulkImportJobFileDao myBulkImportJobFileDao;
+	@Autowired
+	private IBulkImportJobDao myBulkImportJobDao;
+
+	@AfterEach
+	public void after() {
+		mySvc.cancelAndPurgeAllJobs();
+	}
+
+	@Test
+	public void testImportMultipleFiles() {
+		List<BulkImportJobFileJson> files = new ArrayList<>();
+		files.add(createFile(0, 10, true));
+		files.add(createFile(10, 15, false));
+		files.add(createFile(25, 7, true));
+
+		BulkImportJobJson job = new BulkImportJobJson();
+		job.setJobDescription("testImportMultipleFiles");
+		job.setBatchSize(4);
+		String jobId = mySvc.createNewJob(job, files);
+		assertEquals(BulkImportJobStatusEnum.STAGING, mySvc.getJobInfoOrThrowResourceNotFound(jobId).getStatus());
+
+		// Staging jobs are not activated
+		assertFalse(mySvc.activateNextReadyJob());
+
+		mySvc.markJobAsReadyForActivation(jobId);
+		assertTrue(mySvc.activateNextReadyJob());
+		IBulkDataImportSvc.JobInfo jobInfo = awaitJobStatus(jobId, BulkImportJobStatusEnum.COMPLETE);
+
+		assertEquals("testImportMultipleFiles", jobInfo.getJobDescription());
+		assertThat(jobInfo.getFiles().stream().map(t -> t.getRowsProcessed()).collect(Collectors.toList()), contains(10, 15, 7));
+		runInTransaction(() -> assertEquals(32, myPatientDao.search(SearchParameterMap.newSynchronous()).size().intValue()));
+		assertEquals("Family 3", myPatientDao.read(new IdType("Patient/PT3")).getNameFirstRep().getFamily());
+
+		// File contents are discarded once the job is complete
+		runInTransaction(() -> {
+			for (BulkImportJobFileEntity next : myBulkImportJobFileDao.findForJob(jobId)) {
+				assertNull(next.getContents());
+			}
+		});
+	}
+
+	@Test
+	public void testRestartFailedJobResumesAfterLastStoredChunk() {
+		String contents = createFile(0, 2, true).getContents() + "{\"resourceType\":\"Patient\",\"id\":\"PT2\",\"gender\":\"BLAH\"}\n" + createFile(3, 2, true).getContents();
+		BulkImportJobFileJson file = new BulkImportJobFileJson();
+		file.setDescription("file 0");
+		file.setContents(contents);
+
+		BulkImportJobJson job = new BulkImportJobJson();
+		job.setBatchSize(1);
+		String jobId = mySvc.createNewJob(job, Collections.singletonList(file));
+		mySvc.markJobAsReadyForActivation(jobId);
+		assertTrue(mySvc.activateNextReadyJob());
+
+		IBulkDataImportSvc.JobInfo jobInfo = awaitJobStatus(jobId, BulkImportJobStatusEnum.ERROR);
+		ourLog.info("Job failed with message: {}", jobInfo.getStatusMessage());
+		assertThat(jobInfo.getStatusMessage(), containsString("BLAH"));
+		assertEquals(2, jobInfo.getFiles().get(0).getRowsProcessed());
+
+		// Fix the bad row and restart
+		runInTransaction(() -> {
+			BulkImportJobFileEntity entity = myBulkImportJobFileDao.findForJob(jobId).get(0);
+			byte[] fixedContents = contents.replace("BLAH", "male").getBytes(Constants.CHARSET_UTF8);
+			entity.setContents(myEntityManager.unwrap(Session.class).getLobHelper().createBlob(fixedContents));
+			myBulkImportJobFileDao.save(entity);
+		});
+		mySvc.restartJob(jobId);
+		assertTrue(mySvc.activateNextReadyJob());
+
+		jobInfo = awaitJobStatus(jobId, BulkImportJobStatusEnum.COMPLETE);
+		assertEquals(5, jobInfo.getFiles().get(0).getRowsProcessed());
+		runInTransaction(() -> assertEquals(5, myPatientDao.search(SearchParameterMap.newSynchronous()).size().intValue()));
+
+		// Rows stored by the first run were not stored a second time
+		assertEquals("1", myPatientDao.read(new IdType("Patient/PT0")).getIdElement().getVersionIdPart());
+		assertEquals("1", myPatientDao.read(new IdType("Patient/PT4")).getIdElement().getVersionIdPart());
+	}
+
+	@Test
+	public void testRestartRunningJobOnlyOnceStalled() {
+		String jobId = mySvc.createNewJob(new BulkImportJobJson(), Collections.singletonList(createFile(0, 1, true)));
+		runInTransaction(() -> {
+			BulkImportJobEntity job = myBulkImportJobDao.findByJobId(jobId).orElseThrow(() -> new IllegalStateException());
+			job.setStatus(BulkImportJobStatusEnum.RUNNING);
+			myBulkImportJobDao.save(job);
+		});
+
+		// A job which is still making progress can't be restarted
+		try {
+			mySvc.restartJob(jobId);
+			fail();
+		} catch (InvalidRequestException e) {
+			assertThat(e.getMessage(), containsString("still running"));
+		}
+		assertEquals(BulkImportJobStatusEnum.RUNNING, mySvc.getJobInfoOrThrowResourceNotFound(jobId).getStatus());
+
+		// Once it has stalled, it can
+		BulkDataImportSvcImpl svc = AopTestUtils.getTargetObject(mySvc);
+		svc.setStalledJobTimeoutMillisForUnitTest(0);
+		try {
+			mySvc.restartJob(jobId);
+		} finally {
+			svc.setStalledJobTimeoutMillisForUnitTest(BulkDataImportSvcImpl.DEFAULT_STALLED_JOB_TIMEOUT_MILLIS);
+		}
+		assertEquals(BulkImportJobStatusEnum.READY, mySvc.getJobInfoOrThrowResourceNotFound(jobId).getStatus());
+	}
+
+	@Test
+	public void testRestartCompletedJobFails() {
+		String jobId = mySvc.createNewJob(new BulkImportJobJson(), Collections.singletonList(createFile(0, 1, true)));
+		try {
+			mySvc.restartJob(jobId);
+			fail();
+		} catch (InvalidRequestException e) {
+			assertThat(e.getMessage(), containsString("can not be restarted"));
+		}
+	}
+
+	@Test
+	public void testInvalidBatchSize() {
+		BulkImportJobJson job = new BulkImportJobJson();
+		job.setBatchSize(0);
+		try {
+			mySvc.createNewJob(job, Collections.singletonList(createFile(0, 1, true)));
+			fail();
+		} catch (InvalidRequestException e) {
+			assertEquals("Batch size must be at least 1, got: 0", e.getMessage());
+		}
+	}
+
+	/**
+	 * 2000 patients in 4 files
+	 */
+	@Test
+	public void testTimingsImportVersusTransaction() {
+		int count = 2000;
+		int files = 4;
+
+		StopWatch sw = new StopWatch();
+		for (int i = 0; i < count; i += 500) {
+			Bundle bundle = new Bundle();
+			bundle.setType(Bundle.BundleType.TRANSACTION);
+			for (int j = i; j < i + 500; j++) {
+				Patient patient = createPatient(j, false);
+				bundle.addEntry().setResource(patient).getRequest().setMethod(Bundle.HTTPVerb.POST).setUrl("Patient");
+			}
+			mySystemDao.transaction(mySrd, bundle);
+		}
+		ourLog.info("Stored {} patients using transactions in {} ({}/resource)", count, sw, sw.formatMillisPerOperation(count));
+
+		List<BulkImportJobFileJson> jobFiles = new ArrayList<>();
+		for (int i = 0; i < files; i++) {
+			jobFiles.add(createFile(count + (i * count / files), count / files, false));
+		}
+		BulkImportJobJson job = new BulkImportJobJson();
+		String jobId = mySvc.createNewJob(job, jobFiles);
+		mySvc.markJobAsReadyForActivation(jobId);
+
+		sw.restart();
+		mySvc.activateNextReadyJob();
+		awaitJobStatus(jobId, BulkImportJobStatusEnum.COMPLETE);
+		ourLog.info("Stored {} patients using bulk import in {} ({}/resource)", count, sw, sw.formatMillisPerOperation(count));
+	}
+
+	private IBulkDataImportSvc.JobInfo awaitJobStatus(String theJobId, BulkImportJobStatusEnum theStatus) {
+		await().atMost(120, TimeUnit.SECONDS).until(() -> mySvc.getJobInfoOrThrowResourceNotFound(theJobId).getStatus() == theStatus);
+		return mySvc.getJobInfoOrThrowResourceNotFound(theJobId);
+	}
+
+	private BulkImportJobFileJson createFile(int theFrom, int theCount, boolean theWithIds) {
+		StringBuilder contents = new StringBuilder();
+		for (int i = theFrom; i < theFrom + theCount; i++) {
+			contents.append(myFhirCtx.newJsonParser().encodeResourceToString(createPatient(i, theWithIds)));
+			contents.append("\n");
+			if (i % 3 == 0) {
+				// Blank lines are ignored
+				contents.append("\n");
+			}
+		}
+		BulkImportJobFileJson retVal = new BulkImportJobFileJson();
+		retVal.setDescription("rows " + theFrom + "-" + (theFrom + theCount - 1));
+		retVal.setContents(contents.toString());
+		return retVal;
+	}
+
+	private static Patient createPatient(int theIndex, boolean theWithId) {
+		Patient patient = new Patient();
+		if (theWithId) {
+			patient.setId("PT" + theIndex);
+		}
+		patient.addName().setFamily("Family " + theIndex);
+		patient.setActive(true);
+		return patient;
+	}
+
+}
@@ -9,6 +9,8 @@ import org.junit.jupiter.api.Test;
 
 import static org.hamcrest.Matchers.containsString;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 public class TolerantJsonParserR4Test {
@@ -82,4 +84,21 @@ public class TolerantJsonParserR4Test {
 
 	}
 
+	@Test
+	public void testIsUsableAsRawBody() {
+		assertTrue(TolerantJsonParser.isUsableAsRawBody("{\"resourceType\":\"Observation\",\"status\":\"final\",\"valueQuantity\":{\"value\":0.5}}"));
+		assertTrue(TolerantJsonParser.isUsableAsRawBody("{\"resourceType\":\"Observation\"}"));
+
+		// Needs the corrections applied when parsing
+		assertFalse(TolerantJsonParser.isUsableAsRawBody("{\"resourceType\":\"Observation\",\"valueQuantity\":{\"value\":.5}}"));
+		assertFalse(TolerantJsonParser.isUsableAsRawBody("{\"resourceType\":\"Observation\",\"valueQuantity\":{\"value\":00.5}}"));
+
+		// Not structured the way the raw body is copied
+		assertFalse(TolerantJsonParser.isUsableAsRawBody("{\"status\":\"final\",\"resourceType\":\"Observation\"}"));
+		assertFalse(TolerantJsonParser.isUsableAsRawBody("{\"resourceType\":\"Observation\",\"id\":\"1\"}"));
+		assertFalse(TolerantJsonParser.isUsableAsRawBody("{\"resourceType\":\"Observation\",\"meta\":{\"versionId\":\"1\"}}"));
+		assertFalse(TolerantJsonParser.isUsableAsRawBody("{\"resourceType\":\"Observation\"}{}"));
+		assertFalse(TolerantJsonParser.isUsableAsRawBody("{\"resourceType\":\"Observation\""));
+	}
+
 }
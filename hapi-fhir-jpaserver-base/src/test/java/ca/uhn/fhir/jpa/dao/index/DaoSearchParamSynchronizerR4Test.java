@@ -0,0 +1,158 @@
+package ca.uhn.fhir.jpa.dao.index;
+
+import ca.uhn.fhir.jpa.dao.r4.BaseJpaR4Test;
+import ca.uhn.fhir.jpa.model.entity.BaseResourceIndexedSearchParam;
+import ca.uhn.fhir.jpa.model.entity.ResourceLink;
+import ca.uhn.fhir.jpa.model.entity.ResourceTable;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Quantity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the index rows that {@link DaoSearchParamSynchronizer} leaves in the database
+ * when a resource is updated with the rows written for the same content from scratch
+ */
+public class DaoSearchParamSynchronizerR4Test extends BaseJpaR4Test {
+
+	private IIdType myPatientId;
+
+	@BeforeEach
+	public void beforeCreatePatient() {
+		Patient patient = new Patient();
+		patient.setActive(true);
+		myPatientId = myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless();
+	}
+
+	@Test
+	public void testUpdateWithoutIndexChangesKeepsRows() {
+		IIdType id = myObservationDao.create(createObservation("1", 100, true), mySrd).getId().toUnqualifiedVersionless();
+		List<String> before = describeRows(id);
+
+		// The note isn't indexed, so the resource changes but its index rows don't
+		Observation observation = createObservation("1", 100, true);
+		observation.setId(id);
+		observation.addNote().setText("Changed");
+		myObservationDao.update(observation, mySrd);
+
+		// Same rows, with the same IDs
+		assertEquals(before, describeRows(id));
+	}
+
+	@Test
+	public void testUpdateWithIndexChangesMatchesRowsForNewResource() {
+		IIdType id = myObservationDao.create(createObservation("1", 100, true), mySrd).getId().toUnqualifiedVersionless();
+		Set<String> idsBefore = getRowIds(id);
+
+		// Changes tokens, dates and quantities, and drops the component quantity
+		Observation observation = createObservation("2", 200, false);
+		observation.setId(id);
+		myObservationDao.update(observation, mySrd);
+
+		IIdType expectedId = myObservationDao.create(createObservation("2", 200, false), mySrd).getId().toUnqualifiedVersionless();
+
+		runInTransaction(() -> {
+			ResourceTable actual = myResourceTableDao.findById(id.getIdPartAsLong()).orElseThrow(IllegalStateException::new);
+			ResourceTable expected = myResourceTableDao.findById(expectedId.getIdPartAsLong()).orElseThrow(IllegalStateException::new);
+
+			// Index rows compare equal by their values, regardless of the resource they belong to
+			assertEquals(toSet(expected.getParamsString()), toSet(actual.getParamsString()));
+			assertEquals(toSet(expected.getParamsToken()), toSet(actual.getParamsToken()));
+			assertEquals(toSet(expected.getParamsDate()), toSet(actual.getParamsDate()));
+			assertEquals(toSet(expected.getParamsQuantity()), toSet(actual.getParamsQuantity()));
+			assertEquals(toSet(expected.getParamsUri()), toSet(actual.getParamsUri()));
+			assertEquals(describeLinks(expected), describeLinks(actual));
+
+			// No leftover or duplicate rows
+			assertEquals(expected.getParamsToken().size(), actual.getParamsToken().size());
+			assertEquals(expected.getParamsDate().size(), actual.getParamsDate().size());
+			assertEquals(expected.getParamsQuantity().size(), actual.getParamsQuantity().size());
+			assertEquals(expected.getParamsUri().size(), actual.getParamsUri().size());
+			assertEquals(expected.getResourceLinks().size(), actual.getResourceLinks().size());
+		});
+
+		// Rows for unchanged values are kept, and removed rows are reused for new values,
+		// so an update with fewer rows of each type doesn't insert any new ones
+		Set<String> idsAfter = getRowIds(id);
+		assertThat(idsAfter.size(), lessThan(idsBefore.size()));
+		assertThat(idsBefore, hasItems(idsAfter.toArray(new String[0])));
+	}
+
+	private Observation createObservation(String theCode, int theValue, boolean theWithComponent) {
+		Observation retVal = new Observation();
+		retVal.getMeta().addProfile("http://example.com/StructureDefinition/obs");
+		retVal.addIdentifier().setSystem("http://example.com/ids").setValue("ID");
+		retVal.setStatus(Observation.ObservationStatus.FINAL);
+		retVal.getCode().addCoding().setSystem("http://loinc.org").setCode(theCode);
+		retVal.getSubject().setReference(myPatientId.getValue());
+		retVal.setEffective(new DateTimeType("2020-0" + theCode + "-01"));
+		retVal.setValue(new Quantity().setValue(theValue).setSystem("http://unitsofmeasure.org").setCode("mm[Hg]"));
+		if (theWithComponent) {
+			Observation.ObservationComponentComponent component = retVal.addComponent();
+			component.getCode().addCoding().setSystem("http://loinc.org").setCode("C" + theCode);
+			component.setValue(new Quantity().setValue(theValue + 1).setSystem("http://unitsofmeasure.org").setCode("mm[Hg]"));
+		}
+		return retVal;
+	}
+
+	/**
+	 * Describes all index rows of a resource, including their IDs
+	 */
+	private List<String> describeRows(IIdType theId) {
+		return runInTransaction(() -> {
+			ResourceTable entity = myResourceTableDao.findById(theId.getIdPartAsLong()).orElseThrow(IllegalStateException::new);
+			List<String> retVal = new ArrayList<>();
+			entity.getParamsString().forEach(t -> retVal.add(t.getId() + " " + t));
+			entity.getParamsToken().forEach(t -> retVal.add(t.getId() + " " + t));
+			entity.getParamsDate().forEach(t -> retVal.add(t.getId() + " " + t));
+			entity.getParamsQuantity().forEach(t -> retVal.add(t.getId() + " " + t));
+			entity.getParamsUri().forEach(t -> retVal.add(t.getId() + " " + t));
+			entity.getResourceLinks().forEach(t -> retVal.add(t.getId() + " " + t));
+			retVal.sort(String::compareTo);
+			return retVal;
+		});
+	}
+
+	private Set<String> getRowIds(IIdType theId) {
+		return runInTransaction(() -> {
+			ResourceTable entity = myResourceTableDao.findById(theId.getIdPartAsLong()).orElseThrow(IllegalStateException::new);
+			Set<String> retVal = new HashSet<>();
+			entity.getParamsString().forEach(t -> retVal.add(t.getClass().getSimpleName() + "/" + t.getId()));
+			entity.getParamsToken().forEach(t -> retVal.add(t.getClass().getSimpleName() + "/" + t.getId()));
+			entity.getParamsDate().forEach(t -> retVal.add(t.getClass().getSimpleName() + "/" + t.getId()));
+			entity.getParamsQuantity().forEach(t -> retVal.add(t.getClass().getSimpleName() + "/" + t.getId()));
+			entity.getParamsUri().forEach(t -> retVal.add(t.getClass().getSimpleName() + "/" + t.getId()));
+			return retVal;
+		});
+	}
+
+	private static Set<BaseResourceIndexedSearchParam> toSet(Iterable<? extends BaseResourceIndexedSearchParam> theRows) {
+		Set<BaseResourceIndexedSearchParam> retVal = new HashSet<>();
+		theRows.forEach(retVal::add);
+		return retVal;
+	}
+
+	private static Set<String> describeLinks(ResourceTable theEntity) {
+		return theEntity
+			.getResourceLinks()
+			.stream()
+			.map(ResourceLink::toString)
+			.map(t -> t.replaceAll("src=[0-9]+", ""))
+			.collect(Collectors.toSet());
+	}
+
+}
@@ -0,0 +1,84 @@
+package ca.uhn.fhir.jpa.dao.index;
+
+import ca.uhn.fhir.jpa.model.config.PartitionSettings;
+import ca.uhn.fhir.jpa.model.entity.ResourceIndexedSearchParamToken;
+import ca.uhn.fhir.jpa.model.entity.ResourceTable;
+import ca.uhn.fhir.jpa.searchparam.extractor.ResourceIndexedSearchParams;
+import ca.uhn.fhir.jpa.util.AddRemoveCount;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.persistence.EntityManager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class DaoSearchParamSynchronizerTest {
+
+	private final PartitionSettings myPartitionSettings = new PartitionSettings();
+	@Mock
+	private EntityManager myEntityManager;
+	private DaoSearchParamSynchronizer mySvc;
+	private ResourceTable myEntity;
+
+	@BeforeEach
+	public void before() {
+		mySvc = new DaoSearchParamSynchronizer();
+		mySvc.myEntityManager = myEntityManager;
+		myEntity = new ResourceTable();
+		myEntity.setResourceType("Patient");
+	}
+
+	@Test
+	public void testNewRowsArePersistedAndRemovedRowsReused() {
+		ResourceIndexedSearchParams existing = new ResourceIndexedSearchParams();
+		existing.myTokenParams.add(createToken(1L, "A"));
+		existing.myTokenParams.add(createToken(2L, "B"));
+
+		ResourceIndexedSearchParams params = new ResourceIndexedSearchParams();
+		params.myTokenParams.add(createToken(null, "A"));
+		params.myTokenParams.add(createToken(null, "C"));
+		params.myTokenParams.add(createToken(null, "D"));
+
+		AddRemoveCount count = mySvc.synchronizeSearchParamsToDatabase(params, myEntity, existing);
+
+		// "B" is reused for one of the new rows, so nothing is deleted
+		assertEquals(2, count.getAddCount());
+		assertEquals(0, count.getRemoveCount());
+		verify(myEntityManager, never()).remove(any());
+		verify(myEntityManager, times(1)).persist(any(ResourceIndexedSearchParamToken.class));
+		verify(myEntityManager, times(1)).merge(any(ResourceIndexedSearchParamToken.class));
+	}
+
+	@Test
+	public void testUnchangedRowsAreNotWritten() {
+		ResourceIndexedSearchParams existing = new ResourceIndexedSearchParams();
+		existing.myTokenParams.add(createToken(1L, "A"));
+
+		ResourceIndexedSearchParams params = new ResourceIndexedSearchParams();
+		params.myTokenParams.add(createToken(null, "A"));
+
+		AddRemoveCount count = mySvc.synchronizeSearchParamsToDatabase(params, myEntity, existing);
+
+		assertEquals(0, count.getAddCount());
+		assertEquals(0, count.getRemoveCount());
+		verify(myEntityManager, never()).remove(any());
+		verify(myEntityManager, never()).persist(any());
+		verify(myEntityManager, never()).merge(any());
+	}
+
+	private ResourceIndexedSearchParamToken createToken(Long theId, String theValue) {
+		ResourceIndexedSearchParamToken retVal = new ResourceIndexedSearchParamToken(myPartitionSettings, "Patient", "identifier", "http://foo", theValue);
+		retVal.setResource(myEntity);
+		retVal.setId(theId);
+		return retVal;
+	}
+
+}
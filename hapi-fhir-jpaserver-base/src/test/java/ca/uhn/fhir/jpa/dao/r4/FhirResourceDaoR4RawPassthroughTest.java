@@ -0,0 +1,208 @@
+package ca.uhn.fhir.jpa.dao.r4;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
+import ca.uhn.fhir.jpa.model.entity.ResourceEncodingEnum;
+import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.narrative.INarrativeGenerator;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.param.StringParam;
+import com.google.common.base.Charsets;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Quantity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+public class FhirResourceDaoR4RawPassthroughTest extends BaseJpaR4Test {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(FhirResourceDaoR4RawPassthroughTest.class);
+	private INarrativeGenerator myNarrativeGenerator;
+	private Map<Object, Object> myUserData;
+
+	@BeforeEach
+	public void before() {
+		myDaoConfig.setRawResourcePassthroughEnabled(true);
+		myNarrativeGenerator = myFhirCtx.getNarrativeGenerator();
+		myFhirCtx.setNarrativeGenerator(null);
+
+		myUserData = new HashMap<>();
+		myUserData.put(Constants.REQUEST_RAW_JSON_RESPONSE_ELIGIBLE, Boolean.TRUE);
+		when(mySrd.getUserData()).thenReturn(myUserData);
+	}
+
+	@AfterEach
+	public void after() {
+		myDaoConfig.setRawResourcePassthroughEnabled(new DaoConfig().isRawResourcePassthroughEnabled());
+		myFhirCtx.setNarrativeGenerator(myNarrativeGenerator);
+		when(mySrd.getUserData()).thenReturn(new HashMap<>());
+	}
+
+	@Test
+	public void testRead() {
+		IIdType id = createPatient();
+
+		Patient expected = myPatientDao.read(id);
+		assertNull(expected.getUserData(Constants.RESOURCE_RAW_JSON_BODY));
+
+		Patient actual = myPatientDao.readForResponse(id, mySrd);
+		assertNotNull(actual.getUserData(Constants.RESOURCE_RAW_JSON_BODY));
+		assertFalse(actual.hasName());
+		assertEquals("2", actual.getMeta().getVersionId());
+		assertEquals(id.getIdPart(), actual.getIdElement().getIdPart());
+
+		String encoded = myFhirCtx.newJsonParser().encodeResourceToString(actual);
+		ourLog.info("Encoded: {}", encoded);
+		assertEquals(myFhirCtx.newJsonParser().encodeResourceToString(expected), encoded);
+	}
+
+	@Test
+	public void testVRead() {
+		IIdType id = createPatient();
+
+		Patient actual = myPatientDao.readForResponse(id.withVersion("1"), mySrd);
+		assertNotNull(actual.getUserData(Constants.RESOURCE_RAW_JSON_BODY));
+		assertEquals(myFhirCtx.newJsonParser().encodeResourceToString(myPatientDao.read(id.withVersion("1"))), myFhirCtx.newJsonParser().encodeResourceToString(actual));
+	}
+
+	@Test
+	public void testSearch() {
+		createPatient();
+		createPatient();
+
+		SearchParameterMap map = new SearchParameterMap(Patient.SP_FAMILY, new StringParam("FAMILY"));
+		List<IBaseResource> expected = myPatientDao.search(map).getResources(0, 10);
+		IBundleProvider outcome = myPatientDao.search(map, mySrd);
+		List<IBaseResource> actual = outcome.getResourcesForRawJsonResponse(0, 10);
+		assertEquals(2, actual.size());
+
+		Bundle expectedBundle = new Bundle();
+		expected.forEach(t -> expectedBundle.addEntry().setResource((Patient) t));
+		Bundle actualBundle = new Bundle();
+		actual.forEach(t -> actualBundle.addEntry().setResource((Patient) t));
+		for (IBaseResource next : actual) {
+			assertNotNull(next.getUserData(Constants.RESOURCE_RAW_JSON_BODY));
+		}
+		assertEquals(myFhirCtx.newJsonParser().encodeResourceToString(expectedBundle), myFhirCtx.newJsonParser().encodeResourceToString(actualBundle));
+	}
+
+	@Test
+	public void testNotUsedForPlainReadOrSearch() {
+		IIdType id = createPatient();
+
+		// Other code reading through the DAO during an eligible request needs the contents
+		Patient actual = myPatientDao.read(id, mySrd);
+		assertNull(actual.getUserData(Constants.RESOURCE_RAW_JSON_BODY));
+		assertTrue(actual.hasName());
+
+		actual = (Patient) myPatientDao.search(new SearchParameterMap(), mySrd).getResources(0, 1).get(0);
+		assertNull(actual.getUserData(Constants.RESOURCE_RAW_JSON_BODY));
+		assertTrue(actual.hasName());
+
+		actual = (Patient) myPatientDao.search(SearchParameterMap.newSynchronous(), mySrd).getResources(0, 1).get(0);
+		assertNull(actual.getUserData(Constants.RESOURCE_RAW_JSON_BODY));
+		assertTrue(actual.hasName());
+	}
+
+	@Test
+	public void testNotUsedIfRequestNotEligible() {
+		IIdType id = createPatient();
+		myUserData.clear();
+
+		Patient actual = myPatientDao.readForResponse(id, mySrd);
+		assertNull(actual.getUserData(Constants.RESOURCE_RAW_JSON_BODY));
+		assertTrue(actual.hasName());
+	}
+
+	@Test
+	public void testNotUsedIfDisabled() {
+		IIdType id = createPatient();
+		myDaoConfig.setRawResourcePassthroughEnabled(false);
+
+		Patient actual = myPatientDao.readForResponse(id, mySrd);
+		assertNull(actual.getUserData(Constants.RESOURCE_RAW_JSON_BODY));
+		assertTrue(actual.hasName());
+	}
+
+	@Test
+	public void testNotUsedIfPreAccessInterceptorRegistered() {
+		IIdType id = createPatient();
+		myInterceptorRegistry.registerInterceptor(new Object() {
+			@Hook(Pointcut.STORAGE_PREACCESS_RESOURCES)
+			public void preAccess() {
+				// nothing
+			}
+		});
+
+		Patient actual = myPatientDao.readForResponse(id, mySrd);
+		assertNull(actual.getUserData(Constants.RESOURCE_RAW_JSON_BODY));
+		assertTrue(actual.hasName());
+
+		actual = (Patient) myPatientDao.search(new SearchParameterMap(), mySrd).getResourcesForRawJsonResponse(0, 1).get(0);
+		assertNull(actual.getUserData(Constants.RESOURCE_RAW_JSON_BODY));
+		assertTrue(actual.hasName());
+	}
+
+	@Test
+	public void testNotUsedIfStoredBodyNeedsCorrecting() {
+		Observation obs = new Observation();
+		obs.setStatus(Observation.ObservationStatus.FINAL);
+		obs.setValue(new Quantity().setValue(0.5));
+		IIdType id = myObservationDao.create(obs).getId().toUnqualifiedVersionless();
+
+		runInTransaction(() -> {
+			ResourceHistoryTable table = myResourceHistoryTableDao.findForIdAndVersionAndFetchProvenance(id.getIdPartAsLong(), 1L);
+			String newContent = myFhirCtx.newJsonParser().encodeResourceToString(obs).replace("0.5", ".5");
+			table.setResource(newContent.getBytes(Charsets.UTF_8));
+			table.setEncoding(ResourceEncodingEnum.JSON);
+			myResourceHistoryTableDao.save(table);
+		});
+
+		Observation actual = myObservationDao.readForResponse(id, mySrd);
+		assertNull(actual.getUserData(Constants.RESOURCE_RAW_JSON_BODY));
+		assertEquals("0.5", actual.getValueQuantity().getValueElement().getValueAsString());
+	}
+
+	@Test
+	public void testEncodedAsXml() {
+		IIdType id = createPatient();
+
+		Patient actual = myPatientDao.readForResponse(id, mySrd);
+		assertNotNull(actual.getUserData(Constants.RESOURCE_RAW_JSON_BODY));
+
+		String encoded = myFhirCtx.newXmlParser().encodeResourceToString(actual);
+		assertEquals(myFhirCtx.newXmlParser().encodeResourceToString(myPatientDao.read(id)), encoded);
+	}
+
+	private IIdType createPatient() {
+		Patient patient = new Patient();
+		patient.getMeta().addTag("http://tags", "tag1", null);
+		patient.getText().setDivAsString("<div>HELLO</div>");
+		patient.setActive(true);
+		patient.addName().setFamily("FAMILY").addGiven("GIVEN");
+		IIdType id = myPatientDao.create(patient).getId().toUnqualifiedVersionless();
+
+		patient.setId(id);
+		patient.addName().setFamily("FAMILY2");
+		return myPatientDao.update(patient).getId().toUnqualifiedVersionless();
+	}
+
+}
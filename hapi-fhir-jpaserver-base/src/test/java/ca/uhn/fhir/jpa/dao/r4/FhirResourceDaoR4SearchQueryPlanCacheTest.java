@@ -0,0 +1,237 @@
+package ca.uhn.fhir.jpa.dao.r4;
+
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
+import ca.uhn.fhir.jpa.search.plan.SearchQueryPlanCache;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.model.api.IQueryParameterOr;
+import ca.uhn.fhir.rest.api.SummaryEnum;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.param.DateParam;
+import ca.uhn.fhir.rest.param.ParamPrefixEnum;
+import ca.uhn.fhir.rest.param.ReferenceOrListParam;
+import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.param.TokenOrListParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Period;
+import org.hl7.fhir.r4.model.Type;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs a set of searches with the {@link SearchQueryPlanCache} disabled and enabled, and makes
+ * sure that both ways of building the query give the same results
+ */
+public class FhirResourceDaoR4SearchQueryPlanCacheTest extends BaseJpaR4Test {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(FhirResourceDaoR4SearchQueryPlanCacheTest.class);
+	private static final String SYSTEM = "http://foo";
+
+	@Autowired
+	private SearchQueryPlanCache mySearchQueryPlanCache;
+	private IIdType myPatientIdA;
+	private IIdType myPatientIdB;
+
+	@BeforeEach
+	public void beforeCreateObservations() {
+		myPatientIdA = myPatientDao.create(new Patient().setActive(true), mySrd).getId().toUnqualifiedVersionless();
+		myPatientIdB = myPatientDao.create(new Patient().setActive(false), mySrd).getId().toUnqualifiedVersionless();
+
+		createObservation(myPatientIdA, new DateTimeType("2020-01-10"), SYSTEM + "|a");
+		createObservation(myPatientIdB, new DateTimeType("2020-01-15T10:00:00Z"), SYSTEM + "|b");
+		createObservation(myPatientIdA, new DateTimeType("2020-02-01"), SYSTEM + "|a", SYSTEM + "|b");
+		createObservation(myPatientIdB, new Period().setStartElement(new DateTimeType("2019-12-30")).setEndElement(new DateTimeType("2020-01-02")), "http://bar|a");
+		createObservation(null, new DateTimeType("2020-01-15T12:00:00Z"), SYSTEM + "|c");
+		createObservation(myPatientIdA, new DateTimeType("2020-01-31T23:59:59Z"), "|a");
+	}
+
+	@AfterEach
+	public void afterResetPlanCache() {
+		myDaoConfig.setSearchQueryPlanCacheEnabled(new DaoConfig().isSearchQueryPlanCacheEnabled());
+		mySearchQueryPlanCache.invalidateAll();
+	}
+
+	@Test
+	public void testSearchResultsMatchWithAndWithoutPlanCache() {
+		for (Map.Entry<String, Supplier<SearchParameterMap>> next : createShapes().entrySet()) {
+			String shape = next.getKey();
+
+			myDaoConfig.setSearchQueryPlanCacheEnabled(false);
+			List<String> expected = searchForIds(next.getValue().get());
+
+			myDaoConfig.setSearchQueryPlanCacheEnabled(true);
+			long planned = mySearchQueryPlanCache.getHitCount() + mySearchQueryPlanCache.getMissCount();
+			List<String> actual = searchForIds(next.getValue().get());
+			ourLog.info("Shape {} matched {}", shape, actual);
+
+			assertEquals(expected, actual, shape);
+			assertEquals(planned + 1, mySearchQueryPlanCache.getHitCount() + mySearchQueryPlanCache.getMissCount(), shape + " did not use the plan cache");
+		}
+	}
+
+	@Test
+	public void testCountsMatchWithAndWithoutPlanCache() {
+		for (Map.Entry<String, Supplier<SearchParameterMap>> next : createShapes().entrySet()) {
+			String shape = next.getKey();
+
+			myDaoConfig.setSearchQueryPlanCacheEnabled(false);
+			Integer expected = searchForCount(next.getValue().get());
+
+			myDaoConfig.setSearchQueryPlanCacheEnabled(true);
+			long planned = mySearchQueryPlanCache.getHitCount() + mySearchQueryPlanCache.getMissCount();
+			Integer actual = searchForCount(next.getValue().get());
+
+			assertEquals(expected, actual, shape);
+			assertEquals(planned + 1, mySearchQueryPlanCache.getHitCount() + mySearchQueryPlanCache.getMissCount(), shape + " did not use the plan cache");
+		}
+	}
+
+	@Test
+	public void testOffsetPagesMatchWithAndWithoutPlanCache() {
+		for (Map.Entry<String, Supplier<SearchParameterMap>> next : createShapes().entrySet()) {
+			String shape = next.getKey();
+
+			myDaoConfig.setSearchQueryPlanCacheEnabled(false);
+			List<String> expected = searchForIdsUsingOffsetPages(next.getValue());
+
+			myDaoConfig.setSearchQueryPlanCacheEnabled(true);
+			long hits = mySearchQueryPlanCache.getHitCount();
+			List<String> actual = searchForIdsUsingOffsetPages(next.getValue());
+
+			// Unsorted searches don't have a defined order, so compare the combined pages
+			assertEquals(new TreeSet<>(expected), new TreeSet<>(actual), shape);
+			assertEquals(expected.size(), actual.size(), shape);
+			if (actual.size() > 2) {
+				assertThat(shape + " did not reuse its plan for later pages", mySearchQueryPlanCache.getHitCount() - hits, not(0L));
+			}
+		}
+	}
+
+	@Test
+	public void testSameShapeReusesPlan() {
+		myDaoConfig.setSearchQueryPlanCacheEnabled(true);
+
+		SearchParameterMap map = SearchParameterMap.newSynchronous(Observation.SP_CODE, new TokenParam(SYSTEM, "a"));
+		assertThat(searchForIds(map), not(empty()));
+		long hits = mySearchQueryPlanCache.getHitCount();
+		long misses = mySearchQueryPlanCache.getMissCount();
+
+		map = SearchParameterMap.newSynchronous(Observation.SP_CODE, new TokenParam(SYSTEM, "b"));
+		assertThat(searchForIds(map), not(empty()));
+		assertEquals(hits + 1, mySearchQueryPlanCache.getHitCount());
+		assertEquals(misses, mySearchQueryPlanCache.getMissCount());
+	}
+
+	/**
+	 * Every one of these has a shape the plan cache supports
+	 */
+	private Map<String, Supplier<SearchParameterMap>> createShapes() {
+		Map<String, Supplier<SearchParameterMap>> retVal = new LinkedHashMap<>();
+		retVal.put("no parameters", SearchParameterMap::new);
+
+		// Tokens
+		retVal.put("token", () -> new SearchParameterMap(Observation.SP_CODE, new TokenParam(SYSTEM, "a")));
+		retVal.put("token value only", () -> new SearchParameterMap(Observation.SP_CODE, new TokenParam(null, "a")));
+		retVal.put("token system only", () -> new SearchParameterMap(Observation.SP_CODE, new TokenParam(SYSTEM, "")));
+		retVal.put("token empty system", () -> new SearchParameterMap(Observation.SP_CODE, new TokenParam("", "a")));
+		retVal.put("token OR", () -> newMap(Observation.SP_CODE, new TokenOrListParam().add(SYSTEM, "a").add(SYSTEM, "b")));
+		retVal.put("token OR mixed modes", () -> newMap(Observation.SP_CODE, new TokenOrListParam().add(SYSTEM, "b").add(null, "a").add("http://bar", "")));
+		retVal.put("token AND", () -> new SearchParameterMap()
+			.add(Observation.SP_CODE, new TokenParam(SYSTEM, "a"))
+			.add(Observation.SP_CODE, new TokenParam(SYSTEM, "b")));
+
+		// Dates, using the ordinal columns for day precision and the instant columns otherwise
+		retVal.put("date eq day", () -> new SearchParameterMap(Observation.SP_DATE, new DateParam("2020-01-10")));
+		retVal.put("date ge day", () -> new SearchParameterMap(Observation.SP_DATE, new DateParam(ParamPrefixEnum.GREATERTHAN_OR_EQUALS, "2020-01-10")));
+		retVal.put("date lt day", () -> new SearchParameterMap(Observation.SP_DATE, new DateParam(ParamPrefixEnum.LESSTHAN, "2020-01-15")));
+		retVal.put("date sa day", () -> new SearchParameterMap(Observation.SP_DATE, new DateParam(ParamPrefixEnum.STARTS_AFTER, "2019-12-31")));
+		retVal.put("date eb day", () -> new SearchParameterMap(Observation.SP_DATE, new DateParam(ParamPrefixEnum.ENDS_BEFORE, "2020-01-15")));
+		retVal.put("date eq month", () -> new SearchParameterMap(Observation.SP_DATE, new DateParam("2020-01")));
+		retVal.put("date ge instant", () -> new SearchParameterMap(Observation.SP_DATE, new DateParam(ParamPrefixEnum.GREATERTHAN_OR_EQUALS, "2020-01-15T11:00:00Z")));
+		retVal.put("date le instant", () -> new SearchParameterMap(Observation.SP_DATE, new DateParam(ParamPrefixEnum.LESSTHAN_OR_EQUALS, "2020-01-15T11:00:00Z")));
+		retVal.put("date AND range", () -> new SearchParameterMap()
+			.add(Observation.SP_DATE, new DateParam(ParamPrefixEnum.GREATERTHAN_OR_EQUALS, "2020-01-01"))
+			.add(Observation.SP_DATE, new DateParam(ParamPrefixEnum.LESSTHAN, "2020-01-31T12:00:00Z")));
+
+		// References
+		retVal.put("reference", () -> new SearchParameterMap(Observation.SP_SUBJECT, new ReferenceParam(myPatientIdA.getValue())));
+		retVal.put("reference OR", () -> newMap(Observation.SP_SUBJECT, new ReferenceOrListParam()
+			.addOr(new ReferenceParam(myPatientIdA.getValue()))
+			.addOr(new ReferenceParam(myPatientIdB.getValue()))));
+
+		// Combinations
+		retVal.put("reference AND token AND date", () -> newMap(Observation.SP_CODE, new TokenOrListParam().add(SYSTEM, "a").add(null, "a"))
+			.add(Observation.SP_SUBJECT, new ReferenceParam(myPatientIdA.getValue()))
+			.add(Observation.SP_DATE, new DateParam(ParamPrefixEnum.LESSTHAN, "2020-02-01")));
+
+		return retVal;
+	}
+
+	private List<String> searchForIds(SearchParameterMap theMap) {
+		theMap.setLoadSynchronous(true);
+		IBundleProvider results = myObservationDao.search(theMap);
+		List<String> retVal = toUnqualifiedVersionlessIdValues(results);
+		retVal.sort(String::compareTo);
+		return retVal;
+	}
+
+	private Integer searchForCount(SearchParameterMap theMap) {
+		theMap.setLoadSynchronous(true);
+		theMap.setSummaryMode(SummaryEnum.COUNT);
+		return myObservationDao.search(theMap).size();
+	}
+
+	private List<String> searchForIdsUsingOffsetPages(Supplier<SearchParameterMap> theMapSupplier) {
+		List<String> retVal = new ArrayList<>();
+		for (int offset = 0; ; offset += 2) {
+			SearchParameterMap map = theMapSupplier.get();
+			map.setLoadSynchronous(true);
+			map.setCount(2);
+			map.setOffset(offset);
+			List<String> page = toUnqualifiedVersionlessIdValues(myObservationDao.search(map));
+			if (page.isEmpty()) {
+				break;
+			}
+			retVal.addAll(page);
+		}
+		return retVal;
+	}
+
+	private static SearchParameterMap newMap(String theName, IQueryParameterOr<?> theOr) {
+		SearchParameterMap retVal = new SearchParameterMap();
+		retVal.add(theName, theOr);
+		return retVal;
+	}
+
+	private void createObservation(IIdType theSubject, Type theEffective, String... theCodes) {
+		Observation obs = new Observation();
+		obs.setStatus(Observation.ObservationStatus.FINAL);
+		if (theSubject != null) {
+			obs.getSubject().setReferenceElement(theSubject);
+		}
+		obs.setEffective(theEffective);
+		for (String next : theCodes) {
+			int idx = next.indexOf('|');
+			obs.getCode().addCoding().setSystem(idx > 0 ? next.substring(0, idx) : null).setCode(next.substring(idx + 1));
+		}
+		myObservationDao.create(obs, mySrd);
+	}
+
+}
@@ -26,9 +26,11 @@ import ca.uhn.fhir.rest.server.exceptions.ResourceVersionConflictException;
 import ca.uhn.fhir.rest.server.exceptions.UnprocessableEntityException;
 import ca.uhn.fhir.util.OperationOutcomeUtil;
 import ca.uhn.fhir.util.StopWatch;
+import ca.uhn.fhir.validation.FhirValidator;
 import ca.uhn.fhir.validation.IValidatorModule;
 import org.apache.commons.io.IOUtils;
 import org.hl7.fhir.common.hapi.validation.validator.FhirInstanceValidator;
+import org.hl7.fhir.common.hapi.validation.validator.ValidationResultCache;
 import org.hl7.fhir.instance.model.api.IBaseOperationOutcome;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
@@ -1216,6 +1218,48 @@ public class FhirResourceDaoR4ValidateTest extends BaseJpaR4Test {
 		}
 	}
 
+	/**
+	 * Writing a conformance resource clears the instance validator caches, so that
+	 * validations pick up the new version
+	 */
+	@Test
+	public void testWritingConformanceResourceInvalidatesInstanceValidatorCaches() {
+		FhirInstanceValidator val = AopTestUtils.getTargetObject(myValidatorModule);
+		IResourceValidator.IValidatorResourceFetcher fetcher = val.getValidatorResourceFetcher();
+		ValidationResultCache cache = new ValidationResultCache();
+		try {
+			// Results are only cached when no resource fetcher is set
+			val.setValidatorResourceFetcher(null);
+			val.setValidationResultCache(cache);
+			FhirValidator validator = myFhirCtx.newValidator();
+			validator.registerValidatorModule(val);
+
+			Patient patient = new Patient();
+			patient.setActive(true);
+			validator.validateWithResult(patient);
+			assertEquals(1, cache.getSize());
+
+			// Other resources don't affect the cache
+			myPatientDao.create(patient, mySrd);
+			assertEquals(1, cache.getSize());
+
+			ValueSet vs = new ValueSet();
+			vs.setId("MYVS");
+			vs.setUrl("http://myvs");
+			vs.setStatus(Enumerations.PublicationStatus.ACTIVE);
+			myValueSetDao.update(vs, mySrd);
+			assertEquals(0, cache.getSize());
+
+			validator.validateWithResult(patient);
+			assertEquals(1, cache.getSize());
+			myValueSetDao.delete(new IdType("ValueSet/MYVS"), mySrd);
+			assertEquals(0, cache.getSize());
+		} finally {
+			val.setValidationResultCache(null);
+			val.setValidatorResourceFetcher(fetcher);
+		}
+	}
+
 	@AfterEach
 	public void after() {
 		FhirInstanceValidator val = AopTestUtils.getTargetObject(myValidatorModule);
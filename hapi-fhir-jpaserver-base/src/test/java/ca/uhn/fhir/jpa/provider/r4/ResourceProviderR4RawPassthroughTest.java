@@ -0,0 +1,156 @@
+package ca.uhn.fhir.jpa.provider.r4;
+
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
+import ca.uhn.fhir.jpa.model.entity.ResourceEncodingEnum;
+import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.narrative.INarrativeGenerator;
+import ca.uhn.fhir.rest.annotation.IdParam;
+import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import com.google.common.base.Charsets;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.StringType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ResourceProviderR4RawPassthroughTest extends BaseResourceProviderR4Test {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ResourceProviderR4RawPassthroughTest.class);
+	private INarrativeGenerator myNarrativeGenerator;
+	private final FamilyNameProvider myFamilyNameProvider = new FamilyNameProvider();
+
+	@Override
+	@BeforeEach
+	public void before() throws Exception {
+		super.before();
+		myDaoConfig.setRawResourcePassthroughEnabled(true);
+		myNarrativeGenerator = myFhirCtx.getNarrativeGenerator();
+		myFhirCtx.setNarrativeGenerator(null);
+		ourRestServer.getInterceptorService().unregisterInterceptor(myBinaryStorageInterceptor);
+		ourRestServer.registerProvider(myFamilyNameProvider);
+	}
+
+	@Override
+	@AfterEach
+	public void after() throws Exception {
+		super.after();
+		myDaoConfig.setRawResourcePassthroughEnabled(new DaoConfig().isRawResourcePassthroughEnabled());
+		myFhirCtx.setNarrativeGenerator(myNarrativeGenerator);
+		ourRestServer.unregisterProvider(myFamilyNameProvider);
+	}
+
+	@Test
+	public void testReadAndSearchCopyStoredBody() throws IOException {
+		IIdType id = createPatientWithUnusualPropertyOrder();
+
+		// The stored property order is kept, which only happens if the body was not parsed
+		String read = executeGet("/Patient/" + id.getIdPart() + "?_format=json");
+		assertThat(read, containsString("\"name\":[{\"family\":\"FAMILY\"}],\"active\":true"));
+
+		String search = executeGet("/Patient?_format=json");
+		assertThat(search, containsString("\"name\":[{\"family\":\"FAMILY\"}],\"active\":true"));
+
+		// Anything else gets the parsed resource
+		String xml = executeGet("/Patient/" + id.getIdPart() + "?_format=xml");
+		assertThat(xml, containsString("<active value=\"true\"/><name><family value=\"FAMILY\"/></name>"));
+		String pretty = executeGet("/Patient/" + id.getIdPart() + "?_format=json&_pretty=true");
+		assertThat(pretty, containsString("\"active\": true,"));
+	}
+
+	@Test
+	public void testOperationReadingThroughDaoSeesContents() throws IOException {
+		IIdType id = createPatientWithUnusualPropertyOrder();
+
+		String response = executeGet("/Patient/" + id.getIdPart() + "/$family-name?_format=json");
+		Parameters parameters = myFhirCtx.newJsonParser().parseResource(Parameters.class, response);
+		assertEquals("FAMILY", parameters.getParameter().get(0).getValue().primitiveValue());
+		assertEquals("FAMILY", parameters.getParameter().get(1).getValue().primitiveValue());
+	}
+
+	@Test
+	public void testSearchResultsMatchWithAndWithoutPassthrough() throws IOException {
+		for (int i = 0; i < 3; i++) {
+			Patient patient = new Patient();
+			patient.setActive(true);
+			patient.addName().setFamily("FAMILY" + i);
+			myPatientDao.create(patient);
+		}
+
+		String raw = executeGet("/Patient?_format=json&_sort=family");
+		myDaoConfig.setRawResourcePassthroughEnabled(false);
+		String parsed = executeGet("/Patient?_format=json&_sort=family");
+
+		Bundle rawBundle = myFhirCtx.newJsonParser().parseResource(Bundle.class, raw);
+		Bundle parsedBundle = myFhirCtx.newJsonParser().parseResource(Bundle.class, parsed);
+		assertEquals(3, rawBundle.getEntry().size());
+		for (int i = 0; i < 3; i++) {
+			String expected = myFhirCtx.newJsonParser().encodeResourceToString(parsedBundle.getEntry().get(i).getResource());
+			String actual = myFhirCtx.newJsonParser().encodeResourceToString(rawBundle.getEntry().get(i).getResource());
+			assertEquals(expected, actual);
+		}
+	}
+
+	/**
+	 * Creates a patient, and then rewrites the stored body with the properties in a different
+	 * (but equivalent) order to the one that the parser would produce
+	 */
+	private IIdType createPatientWithUnusualPropertyOrder() {
+		Patient patient = new Patient();
+		patient.setActive(true);
+		patient.addName().setFamily("FAMILY");
+		IIdType id = myPatientDao.create(patient).getId().toUnqualifiedVersionless();
+
+		runInTransaction(() -> {
+			ResourceHistoryTable table = myResourceHistoryTableDao.findForIdAndVersionAndFetchProvenance(id.getIdPartAsLong(), 1L);
+			String newContent = "{\"resourceType\":\"Patient\",\"name\":[{\"family\":\"FAMILY\"}],\"active\":true}";
+			table.setResource(newContent.getBytes(Charsets.UTF_8));
+			table.setEncoding(ResourceEncodingEnum.JSON);
+			myResourceHistoryTableDao.save(table);
+		});
+		return id;
+	}
+
+	private String executeGet(String theUrl) throws IOException {
+		HttpGet get = new HttpGet(ourServerBase + theUrl);
+		try (CloseableHttpResponse response = ourHttpClient.execute(get)) {
+			String responseContent = IOUtils.toString(response.getEntity().getContent(), Charsets.UTF_8);
+			ourLog.info(responseContent);
+			assertEquals(200, response.getStatusLine().getStatusCode());
+			return responseContent;
+		}
+	}
+
+	/**
+	 * A plain provider whose operation needs the contents of the resources it loads
+	 */
+	public class FamilyNameProvider {
+
+		@Operation(name = "$family-name", idempotent = true, typeName = "Patient")
+		public Parameters familyName(@IdParam IdType theId, RequestDetails theRequestDetails) {
+			Patient read = myPatientDao.read(theId, theRequestDetails);
+			Patient searched = (Patient) myPatientDao.search(new SearchParameterMap(), theRequestDetails).getResources(0, 1).get(0);
+
+			Parameters retVal = new Parameters();
+			retVal.addParameter().setName("read").setValue(new StringType(read.getNameFirstRep().getFamily()));
+			retVal.addParameter().setName("searched").setValue(new StringType(searched.getNameFirstRep().getFamily()));
+			return retVal;
+		}
+
+	}
+
+}
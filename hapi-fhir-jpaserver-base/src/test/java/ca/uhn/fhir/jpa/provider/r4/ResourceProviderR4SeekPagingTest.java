@@ -0,0 +1,255 @@
+package ca.uhn.fhir.jpa.provider.r4;
+
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.server.FifoMemoryPagingProvider;
+import ca.uhn.fhir.rest.server.IPagingProvider;
+import com.google.common.base.Charsets;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+public class ResourceProviderR4SeekPagingTest extends BaseResourceProviderR4Test {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ResourceProviderR4SeekPagingTest.class);
+	private static final Pattern SEEK_PARAM = Pattern.compile("&?" + Constants.PARAM_SEEK + "=[^&]*");
+	private IIdType myPatientId;
+
+	@Override
+	@BeforeEach
+	public void before() throws Exception {
+		super.before();
+
+		myPatientId = createPatient("P0");
+		for (int i = 0; i < 7; i++) {
+			Observation obs = new Observation();
+			obs.setStatus(Observation.ObservationStatus.FINAL);
+			obs.getSubject().setReferenceElement(myPatientId);
+			myObservationDao.create(obs, mySrd);
+		}
+
+		for (int i = 1; i < 4; i++) {
+			createPatient("P" + i);
+		}
+
+		// Resources created in a single transaction share a lastUpdated time, so sorts on it have ties
+		Bundle transaction = new Bundle();
+		transaction.setType(Bundle.BundleType.TRANSACTION);
+		for (int i = 4; i < 9; i++) {
+			Patient patient = new Patient();
+			patient.addName().setFamily("P" + i);
+			transaction.addEntry().setResource(patient).getRequest().setMethod(Bundle.HTTPVerb.POST).setUrl("Patient");
+		}
+		mySystemDao.transaction(mySrd, transaction);
+
+		for (int i = 9; i < 12; i++) {
+			createPatient("P" + i);
+		}
+	}
+
+	@Override
+	@AfterEach
+	public void after() throws Exception {
+		super.after();
+		myDaoConfig.setSeekPagingEnabled(new DaoConfig().isSeekPagingEnabled());
+	}
+
+	@Test
+	public void testSearchUnsorted() throws IOException {
+		assertPagesMatch("/Patient?_offset=0&_count=3", true);
+	}
+
+	@Test
+	public void testSearchSortedByLastUpdatedAscending() throws IOException {
+		assertPagesMatch("/Patient?_offset=0&_count=3&_sort=_lastUpdated", true);
+	}
+
+	@Test
+	public void testSearchSortedByLastUpdatedDescending() throws IOException {
+		assertPagesMatch("/Patient?_offset=0&_count=3&_sort=-_lastUpdated", true);
+	}
+
+	@Test
+	public void testSearchSortedByOtherParamDoesNotSeek() throws IOException {
+		assertPagesMatch("/Patient?_offset=0&_count=3&_sort=family", false);
+	}
+
+	@Test
+	public void testEverything() throws IOException {
+		// $everything is only loaded synchronously (and so paged by offset) without a database backed paging provider
+		IPagingProvider pagingProvider = ourRestServer.getPagingProvider();
+		ourRestServer.setPagingProvider(new FifoMemoryPagingProvider(10));
+		try {
+			assertPagesMatch("/Patient/" + myPatientId.getIdPart() + "/$everything?_offset=0&_count=3", true);
+		} finally {
+			ourRestServer.setPagingProvider(pagingProvider);
+		}
+	}
+
+	@Test
+	public void testHistory() throws IOException {
+		// Add some more versions
+		for (int i = 0; i < 3; i++) {
+			Patient patient = new Patient();
+			patient.setId(myPatientId.getIdPart());
+			patient.addName().setFamily("P0-" + i);
+			myPatientDao.update(patient, mySrd);
+		}
+
+		assertPagesMatch("/Patient/_history?_count=3", true);
+	}
+
+	@Test
+	public void testEditedTokenFallsBackToOffsetPaging() throws IOException {
+		myDaoConfig.setSeekPagingEnabled(true);
+
+		Bundle firstPage = fetchBundle(ourServerBase + "/Patient?_offset=0&_count=3&_sort=_lastUpdated&_format=json");
+		String next = firstPage.getLink(Constants.LINK_NEXT).getUrl();
+		assertThat(next, containsString("_offset=3"));
+		assertThat(next, containsString(Constants.PARAM_SEEK + "="));
+
+		// The token was issued for offset 3, so it is ignored for any other offset
+		List<String> expected = toIds(fetchBundle(ourServerBase + "/Patient?_offset=6&_count=3&_sort=_lastUpdated&_format=json"));
+		assertEquals(expected, toIds(fetchBundle(next.replace("_offset=3", "_offset=6"))));
+
+		// ..and for searches with a different ordering
+		expected = toIds(fetchBundle(ourServerBase + "/Patient?_offset=3&_count=3&_sort=-_lastUpdated&_format=json"));
+		assertEquals(expected, toIds(fetchBundle(next.replace("_sort=_lastUpdated", "_sort=-_lastUpdated"))));
+	}
+
+	@Test
+	public void testEditedHistoryTokenFallsBackToOffsetPaging() throws IOException {
+		myDaoConfig.setSeekPagingEnabled(true);
+
+		Bundle firstPage = fetchBundle(ourServerBase + "/Patient/_history?_count=3&_format=json");
+		String next = firstPage.getLink(Constants.LINK_NEXT).getUrl();
+		assertThat(next, containsString(Constants.PARAM_PAGINGOFFSET + "=3"));
+		assertThat(next, containsString(Constants.PARAM_SEEK + "="));
+
+		List<String> expected = toIds(fetchBundle(removeSeek(next).replace(Constants.PARAM_PAGINGOFFSET + "=3", Constants.PARAM_PAGINGOFFSET + "=6")));
+		assertEquals(expected, toIds(fetchBundle(next.replace(Constants.PARAM_PAGINGOFFSET + "=3", Constants.PARAM_PAGINGOFFSET + "=6"))));
+	}
+
+	@Test
+	public void testMalformedTokenIsRejected() throws IOException {
+		myDaoConfig.setSeekPagingEnabled(true);
+
+		HttpGet get = new HttpGet(ourServerBase + "/Patient?_offset=3&_count=3&" + Constants.PARAM_SEEK + "=invalid");
+		try (CloseableHttpResponse response = ourHttpClient.execute(get)) {
+			String responseContent = IOUtils.toString(response.getEntity().getContent(), Charsets.UTF_8);
+			ourLog.info(responseContent);
+			assertEquals(400, response.getStatusLine().getStatusCode());
+			assertThat(responseContent, containsString("Invalid " + Constants.PARAM_SEEK + " value: invalid"));
+		}
+	}
+
+	/**
+	 * Pages through all results starting at the given URL:
+	 * <ul>
+	 *    <li>with seek paging disabled</li>
+	 *    <li>with seek paging enabled, following the next links as given</li>
+	 *    <li>with seek paging enabled, but with the seek token removed from each next link</li>
+	 * </ul>
+	 * The last two must give identical pages, since they use the same ordering. The first one must
+	 * return the same resources, but may order ties differently since it doesn't use a tiebreaker.
+	 */
+	private void assertPagesMatch(String theUrl, boolean theExpectSeekToken) throws IOException {
+		String url = ourServerBase + theUrl + "&_format=json";
+
+		myDaoConfig.setSeekPagingEnabled(false);
+		List<List<String>> withoutSeekPaging = fetchAllPages(url, false, false);
+
+		myDaoConfig.setSeekPagingEnabled(true);
+		List<List<String>> withSeek = fetchAllPages(url, theExpectSeekToken, false);
+		List<List<String>> withSeekRemoved = fetchAllPages(url, theExpectSeekToken, true);
+
+		ourLog.info("Pages without seek paging: {}", withoutSeekPaging);
+		ourLog.info("Pages with seek paging: {}", withSeek);
+		assertThat(withSeek.size(), greaterThan(2));
+		assertEquals(withSeekRemoved, withSeek);
+
+		List<String> all = withSeek.stream().flatMap(List::stream).collect(Collectors.toList());
+		Set<String> unique = new HashSet<>(all);
+		assertEquals(all.size(), unique.size(), all.toString());
+		assertThat(all, containsInAnyOrder(withoutSeekPaging.stream().flatMap(List::stream).toArray(String[]::new)));
+	}
+
+	private List<List<String>> fetchAllPages(String theUrl, boolean theExpectSeekToken, boolean theRemoveSeekToken) throws IOException {
+		List<List<String>> retVal = new ArrayList<>();
+		String url = theUrl;
+		while (url != null) {
+			Bundle bundle = fetchBundle(url);
+			retVal.add(toIds(bundle));
+
+			Bundle.BundleLinkComponent next = bundle.getLink(Constants.LINK_NEXT);
+			if (next == null || bundle.getEntry().isEmpty()) {
+				break;
+			}
+			url = next.getUrl();
+			if (theExpectSeekToken) {
+				assertThat(url, containsString(Constants.PARAM_SEEK + "="));
+			} else {
+				assertThat(url, not(containsString(Constants.PARAM_SEEK + "=")));
+			}
+			if (theRemoveSeekToken) {
+				url = removeSeek(url);
+			}
+		}
+		return retVal;
+	}
+
+	private Bundle fetchBundle(String theUrl) throws IOException {
+		HttpGet get = new HttpGet(theUrl);
+		try (CloseableHttpResponse response = ourHttpClient.execute(get)) {
+			String responseContent = IOUtils.toString(response.getEntity().getContent(), Charsets.UTF_8);
+			assertEquals(200, response.getStatusLine().getStatusCode(), responseContent);
+			Bundle retVal = myFhirCtx.newJsonParser().parseResource(Bundle.class, responseContent);
+			assertNotNull(retVal);
+			return retVal;
+		}
+	}
+
+	private IIdType createPatient(String theFamily) {
+		Patient patient = new Patient();
+		patient.addName().setFamily(theFamily);
+		return myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless();
+	}
+
+	private static String removeSeek(String theUrl) {
+		Matcher matcher = SEEK_PARAM.matcher(theUrl);
+		return matcher.replaceAll("");
+	}
+
+	private static List<String> toIds(Bundle theBundle) {
+		return theBundle
+			.getEntry()
+			.stream()
+			.map(t -> t.getResource().getIdElement().toUnqualified().getValue())
+			.collect(Collectors.toList());
+	}
+
+}
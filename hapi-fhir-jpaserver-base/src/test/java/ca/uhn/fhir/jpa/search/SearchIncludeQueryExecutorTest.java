@@ -0,0 +1,189 @@
+package ca.uhn.fhir.jpa.search;
+
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SearchIncludeQueryExecutorTest {
+
+	private SearchIncludeQueryExecutor mySvc;
+	private DaoConfig myDaoConfig;
+	private PlatformTransactionManager myTxManager;
+	private EntityManager myCallerEntityManager;
+	private EntityManager mySharedEntityManager;
+
+	@BeforeEach
+	public void before() {
+		myDaoConfig = new DaoConfig();
+		myTxManager = mock(PlatformTransactionManager.class);
+		when(myTxManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+		myCallerEntityManager = mockEntityManager();
+		mySharedEntityManager = mockEntityManager();
+
+		mySvc = new SearchIncludeQueryExecutor();
+		mySvc.setDaoConfigForUnitTest(myDaoConfig);
+		mySvc.setTransactionManagerForUnitTest(myTxManager);
+		mySvc.setEntityManagerForUnitTest(mySharedEntityManager);
+	}
+
+	@AfterEach
+	public void after() {
+		mySvc.stop();
+	}
+
+	@Test
+	public void testSequential() {
+		Set<Long> results = new TreeSet<>();
+		mySvc.execute(myCallerEntityManager, createQueries(), false, results::add);
+
+		assertEquals("[1, 2, 3]", results.toString());
+		verify(myCallerEntityManager, times(2)).createQuery(any(String.class), eq(Long.class));
+		verify(myTxManager, never()).getTransaction(any());
+	}
+
+	@Test
+	public void testParallel() {
+		myDaoConfig.setIncludeQueryThreadCount(2);
+
+		Set<Long> results = new TreeSet<>();
+		mySvc.execute(myCallerEntityManager, createQueries(), false, results::add);
+
+		assertEquals("[1, 2, 3]", results.toString());
+		verify(myCallerEntityManager, never()).createQuery(any(String.class), eq(Long.class));
+		verify(mySharedEntityManager, times(2)).createQuery(any(String.class), eq(Long.class));
+		verify(myTxManager, times(2)).commit(any());
+	}
+
+	@Test
+	public void testUseCallerConnection() {
+		myDaoConfig.setIncludeQueryThreadCount(2);
+
+		Set<Long> results = new TreeSet<>();
+		mySvc.execute(myCallerEntityManager, createQueries(), true, results::add);
+
+		assertEquals("[1, 2, 3]", results.toString());
+		verify(myCallerEntityManager, times(2)).createQuery(any(String.class), eq(Long.class));
+		verify(mySharedEntityManager, never()).createQuery(any(String.class), eq(Long.class));
+		verify(myTxManager, never()).getTransaction(any());
+	}
+
+	@Test
+	public void testQueriesOverInFlightLimitUseCallerConnection() {
+		myDaoConfig.setIncludeQueryThreadCount(2);
+
+		// The pool queries don't finish until the caller has run the one that didn't get a permit
+		CountDownLatch callerQueryRun = new CountDownLatch(1);
+		when(myCallerEntityManager.createQuery("C", Long.class)).thenAnswer(t -> {
+			callerQueryRun.countDown();
+			return newQuery(Collections.singletonList(4L));
+		});
+		when(mySharedEntityManager.createQuery("A", Long.class)).thenAnswer(t -> {
+			assertTrue(callerQueryRun.await(10, TimeUnit.SECONDS));
+			return newQuery(Arrays.asList(1L, 2L));
+		});
+		when(mySharedEntityManager.createQuery("B", Long.class)).thenAnswer(t -> {
+			assertTrue(callerQueryRun.await(10, TimeUnit.SECONDS));
+			return newQuery(Arrays.asList(2L, 3L));
+		});
+
+		List<SearchIncludeQueryExecutor.IncludeQuery> queries = new ArrayList<>(createQueries());
+		queries.add(new SearchIncludeQueryExecutor.IncludeQuery("C"));
+		Set<Long> results = new TreeSet<>();
+		mySvc.execute(myCallerEntityManager, queries, false, results::add);
+
+		assertEquals("[1, 2, 3, 4]", results.toString());
+		verify(myCallerEntityManager, times(1)).createQuery(any(String.class), eq(Long.class));
+		verify(mySharedEntityManager, times(2)).createQuery(any(String.class), eq(Long.class));
+		assertEquals(2, mySvc.getAvailablePermitsForUnitTest());
+	}
+
+	@Test
+	public void testFailureCancelsRemainingQueries() {
+		myDaoConfig.setIncludeQueryThreadCount(3);
+
+		// Query A fails once query B is running, and query B only finishes if it is interrupted
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch never = new CountDownLatch(1);
+		AtomicInteger interrupted = new AtomicInteger();
+		when(mySharedEntityManager.createQuery("A", Long.class)).thenAnswer(t -> {
+			assertTrue(started.await(10, TimeUnit.SECONDS));
+			throw new InternalErrorException("FAILED");
+		});
+		when(mySharedEntityManager.createQuery("B", Long.class)).thenAnswer(t -> {
+			started.countDown();
+			try {
+				never.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				interrupted.incrementAndGet();
+			}
+			return newQuery(Collections.emptyList());
+		});
+
+		List<SearchIncludeQueryExecutor.IncludeQuery> queries = Arrays.asList(
+			new SearchIncludeQueryExecutor.IncludeQuery("A"),
+			new SearchIncludeQueryExecutor.IncludeQuery("B")
+		);
+		try {
+			mySvc.execute(myCallerEntityManager, queries, false, t -> {
+			});
+			fail();
+		} catch (InternalErrorException e) {
+			assertEquals("FAILED", e.getMessage());
+		}
+
+		await().until(() -> interrupted.get() == 1);
+		await().until(() -> mySvc.getAvailablePermitsForUnitTest() == 3);
+	}
+
+	private static List<SearchIncludeQueryExecutor.IncludeQuery> createQueries() {
+		return Arrays.asList(
+			new SearchIncludeQueryExecutor.IncludeQuery("A").setParameter("target_pids", Arrays.asList(10L, 11L)),
+			new SearchIncludeQueryExecutor.IncludeQuery("B").setParameter("target_pids", Arrays.asList(10L, 11L))
+		);
+	}
+
+	private static EntityManager mockEntityManager() {
+		EntityManager retVal = mock(EntityManager.class);
+		TypedQuery<Long> queryA = newQuery(Arrays.asList(1L, null, 2L));
+		TypedQuery<Long> queryB = newQuery(Arrays.asList(2L, 3L));
+		when(retVal.createQuery("A", Long.class)).thenReturn(queryA);
+		when(retVal.createQuery("B", Long.class)).thenReturn(queryB);
+		return retVal;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static TypedQuery<Long> newQuery(List<Long> theResults) {
+		TypedQuery<Long> retVal = mock(TypedQuery.class);
+		when(retVal.getResultList()).thenReturn(theResults);
+		return retVal;
+	}
+
+}
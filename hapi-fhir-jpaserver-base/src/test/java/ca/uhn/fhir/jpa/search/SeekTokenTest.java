@@ -0,0 +1,66 @@
+package ca.uhn.fhir.jpa.search;
+
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SeekTokenTest {
+
+	@Test
+	public void testEncodeAndParse() {
+		String encoded = new SeekToken(SeekToken.KindEnum.LAST_UPDATED_DESC, 200, 1602979200123L, 98765L).encode();
+		assertTrue(encoded.matches("[A-Za-z0-9_-]+"), encoded);
+
+		SeekToken parsed = SeekToken.parse(encoded);
+		assertEquals(SeekToken.KindEnum.LAST_UPDATED_DESC, parsed.getKind());
+		assertEquals(200, parsed.getOffset());
+		assertEquals(1602979200123L, parsed.getValue().longValue());
+		assertEquals(98765L, parsed.getPid());
+	}
+
+	@Test
+	public void testEncodeAndParseWithoutValue() {
+		SeekToken parsed = SeekToken.parse(new SeekToken(SeekToken.KindEnum.RESOURCE_ID, 50, null, 123L).encode());
+		assertEquals(SeekToken.KindEnum.RESOURCE_ID, parsed.getKind());
+		assertNull(parsed.getValue());
+		assertEquals(123L, parsed.getPid());
+	}
+
+	@Test
+	public void testParseBlank() {
+		assertNull(SeekToken.parse(null));
+		assertNull(SeekToken.parse(""));
+	}
+
+	@Test
+	public void testParseInvalid() {
+		assertThrows(InvalidRequestException.class, () -> SeekToken.parse("not a token!"));
+		assertThrows(InvalidRequestException.class, () -> SeekToken.parse(encode("I|50|")));
+		assertThrows(InvalidRequestException.class, () -> SeekToken.parse(encode("X|50||1")));
+		assertThrows(InvalidRequestException.class, () -> SeekToken.parse(encode("I|-1||1")));
+		assertThrows(InvalidRequestException.class, () -> SeekToken.parse(encode("UA|50||1")));
+		assertThrows(InvalidRequestException.class, () -> SeekToken.parse(encode("H|50|abc|1")));
+	}
+
+	@Test
+	public void testIsApplicable() {
+		SeekToken token = new SeekToken(SeekToken.KindEnum.HISTORY, 20, 1000L, 5L);
+		assertTrue(token.isApplicable(SeekToken.KindEnum.HISTORY, 20));
+		assertFalse(token.isApplicable(SeekToken.KindEnum.HISTORY, 40));
+		assertFalse(token.isApplicable(SeekToken.KindEnum.HISTORY, null));
+		assertFalse(token.isApplicable(SeekToken.KindEnum.LAST_UPDATED_DESC, 20));
+	}
+
+	private static String encode(String theValue) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(theValue.getBytes(StandardCharsets.UTF_8));
+	}
+
+}
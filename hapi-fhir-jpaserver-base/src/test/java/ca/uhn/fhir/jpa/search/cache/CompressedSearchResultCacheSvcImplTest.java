@@ -0,0 +1,115 @@
+package ca.uhn.fhir.jpa.search.cache;
+
+import ca.uhn.fhir.jpa.dao.data.ISearchResultPageDao;
+import ca.uhn.fhir.jpa.entity.Search;
+import ca.uhn.fhir.jpa.entity.SearchResultPage;
+import ca.uhn.fhir.rest.api.server.storage.ResourcePersistentId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class CompressedSearchResultCacheSvcImplTest {
+
+	private final TreeMap<Integer, SearchResultPage> myPages = new TreeMap<>();
+	private CompressedSearchResultCacheSvcImpl mySvc;
+	@Mock
+	private ISearchResultPageDao mySearchResultPageDao;
+	@Mock
+	private Search mySearch;
+
+	@BeforeEach
+	public void before() {
+		mySvc = new CompressedSearchResultCacheSvcImpl();
+		mySvc.setSearchResultPageDaoForUnitTest(mySearchResultPageDao);
+		mySvc.setPageSizeForUnitTest(3);
+
+		lenient().when(mySearch.getId()).thenReturn(1L);
+		lenient().when(mySearchResultPageDao.saveAll(any())).thenAnswer(t -> {
+			Iterable<SearchResultPage> pages = t.getArgument(0);
+			for (SearchResultPage next : pages) {
+				myPages.put(next.getPageIndex(), next);
+			}
+			return pages;
+		});
+		lenient().when(mySearchResultPageDao.findPagesForSearch(anyLong(), anyInt(), anyInt())).thenAnswer(t -> {
+			int from = t.getArgument(1);
+			int to = t.getArgument(2);
+			return new ArrayList<>(myPages.subMap(from, true, to, true).values());
+		});
+		lenient().when(mySearchResultPageDao.findAllPagesForSearch(anyLong())).thenAnswer(t -> new ArrayList<>(myPages.values()));
+	}
+
+	@Test
+	public void testEncodeAndDecodePids() {
+		List<Long> pids = Arrays.asList(5L, 4L, 1000000L, 0L, Long.MAX_VALUE, 3L, 3L);
+		byte[] encoded = CompressedSearchResultCacheSvcImpl.encodePids(pids);
+		assertEquals(pids, CompressedSearchResultCacheSvcImpl.decodePids(encoded));
+
+		assertEquals(new ArrayList<Long>(), CompressedSearchResultCacheSvcImpl.decodePids(CompressedSearchResultCacheSvcImpl.encodePids(new ArrayList<>())));
+	}
+
+	@Test
+	public void testEncodedPidsAreCompact() {
+		List<Long> pids = new ArrayList<>();
+		for (long i = 0; i < CompressedSearchResultCacheSvcImpl.DEFAULT_PAGE_SIZE; i++) {
+			pids.add(1000000L + (i * 3));
+		}
+		byte[] encoded = CompressedSearchResultCacheSvcImpl.encodePids(pids);
+		assertTrue(encoded.length < pids.size(), "Encoded length: " + encoded.length);
+		assertEquals(pids, CompressedSearchResultCacheSvcImpl.decodePids(encoded));
+	}
+
+	@Test
+	public void testStoreAndFetchAcrossPages() {
+		List<ResourcePersistentId> stored = new ArrayList<>();
+		store(stored, 10L, 11L);
+		store(stored, 12L, 13L, 14L, 15L);
+		store(stored, 16L);
+
+		// 7 PIDs in pages of 3 is 3 rows, with the partial first page rewritten in place
+		assertEquals(3, myPages.size());
+		assertEquals(3, myPages.get(0).getPidCount());
+		assertEquals(1, myPages.get(2).getPidCount());
+
+		assertEquals(toIds(10L, 11L, 12L, 13L, 14L, 15L, 16L), mySvc.fetchAllResultPids(mySearch));
+		assertEquals(toIds(10L, 11L), mySvc.fetchResultPids(mySearch, 0, 2));
+		assertEquals(toIds(12L, 13L, 14L, 15L), mySvc.fetchResultPids(mySearch, 2, 6));
+		assertEquals(toIds(16L), mySvc.fetchResultPids(mySearch, 6, 20));
+		assertEquals(toIds(), mySvc.fetchResultPids(mySearch, 7, 20));
+		assertEquals(toIds(), mySvc.fetchResultPids(mySearch, 5, 5));
+	}
+
+	@Test
+	public void testDeleteResultsForSearch() {
+		mySvc.deleteResultsForSearch(mySearch);
+		verify(mySearchResultPageDao).deleteForSearch(eq(1L));
+	}
+
+	private void store(List<ResourcePersistentId> theStored, Long... theNewPids) {
+		List<ResourcePersistentId> newPids = toIds(theNewPids);
+		mySvc.storeResults(mySearch, theStored, newPids);
+		theStored.addAll(newPids);
+	}
+
+	private static List<ResourcePersistentId> toIds(Long... thePids) {
+		return ResourcePersistentId.fromLongList(Arrays.asList(thePids));
+	}
+
+}
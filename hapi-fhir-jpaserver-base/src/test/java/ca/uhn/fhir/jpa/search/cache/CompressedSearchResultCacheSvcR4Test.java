@@ -0,0 +1,118 @@
+package ca.uhn.fhir.jpa.search.cache;
+
+import ca.uhn.fhir.jpa.dao.data.ISearchDao;
+import ca.uhn.fhir.jpa.dao.data.ISearchResultDao;
+import ca.uhn.fhir.jpa.dao.data.ISearchResultPageDao;
+import ca.uhn.fhir.jpa.dao.r4.BaseJpaR4Test;
+import ca.uhn.fhir.jpa.entity.Search;
+import ca.uhn.fhir.jpa.entity.SearchTypeEnum;
+import ca.uhn.fhir.jpa.model.search.SearchStatusEnum;
+import ca.uhn.fhir.rest.api.server.storage.ResourcePersistentId;
+import ca.uhn.fhir.util.StopWatch;
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.util.AopTestUtils;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the database work done by {@link CompressedSearchResultCacheSvcImpl} and
+ * {@link DatabaseSearchResultCacheSvcImpl} to store the results of a large search, and for
+ * the stale search cleanup to delete them again
+ */
+public class CompressedSearchResultCacheSvcR4Test extends BaseJpaR4Test {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(CompressedSearchResultCacheSvcR4Test.class);
+	private static final int RESULT_COUNT = 20000;
+	private static final int CHUNK_SIZE = 5000;
+	@Autowired
+	private ISearchDao mySearchEntityDao;
+	@Autowired
+	private ISearchResultDao mySearchResultDao;
+	@Autowired
+	private ISearchResultPageDao mySearchResultPageDao;
+
+	@AfterEach
+	public void afterResetSearchResultCacheSvc() {
+		DatabaseSearchCacheSvcImpl searchCacheSvc = AopTestUtils.getTargetObject(mySearchCacheSvc);
+		searchCacheSvc.setSearchResultCacheSvcForUnitTest(mySearchResultCacheSvc);
+	}
+
+	@Test
+	public void testStoreAndCleanUp() {
+		CompressedSearchResultCacheSvcImpl compressedSvc = new CompressedSearchResultCacheSvcImpl();
+		compressedSvc.setSearchResultPageDaoForUnitTest(mySearchResultPageDao);
+
+		int[] database = storeAndCleanUp(mySearchResultCacheSvc, "row per result");
+		int[] compressed = storeAndCleanUp(compressedSvc, "compressed pages");
+
+		// One row per result, deleted in passes of up to 20000
+		assertEquals(RESULT_COUNT, database[0]);
+		assertEquals(2, database[1]);
+		// One row per 10000 results, deleted in one statement
+		assertEquals(RESULT_COUNT / CompressedSearchResultCacheSvcImpl.DEFAULT_PAGE_SIZE, compressed[0]);
+		assertEquals(1, compressed[1]);
+	}
+
+	/**
+	 * Stores {@link #RESULT_COUNT} results for a stale search in chunks (as the search coordinator
+	 * would), and then runs the stale search cleanup until the search is gone
+	 *
+	 * @return The number of rows written, and the number of cleanup passes needed
+	 */
+	private int[] storeAndCleanUp(ISearchResultCacheSvc theSvc, String theDescription) {
+		DatabaseSearchCacheSvcImpl searchCacheSvc = AopTestUtils.getTargetObject(mySearchCacheSvc);
+		searchCacheSvc.setSearchResultCacheSvcForUnitTest(theSvc);
+
+		Search search = runInTransaction(() -> {
+			Search retVal = new Search();
+			retVal.setStatus(SearchStatusEnum.FINISHED);
+			retVal.setUuid(UUID.randomUUID().toString());
+			retVal.setCreated(DateUtils.addDays(new Date(), -10000));
+			retVal.setSearchType(SearchTypeEnum.SEARCH);
+			retVal.setResourceType("Patient");
+			return mySearchEntityDao.save(retVal);
+		});
+
+		// Increasing PIDs with small gaps, as for a search sorted by PID
+		Random random = new Random(0);
+		List<ResourcePersistentId> pids = new ArrayList<>(RESULT_COUNT);
+		long next = 1000;
+		for (int i = 0; i < RESULT_COUNT; i++) {
+			next += 1 + random.nextInt(50);
+			pids.add(new ResourcePersistentId(next));
+		}
+
+		StopWatch sw = new StopWatch();
+		for (int from = 0; from < RESULT_COUNT; from += CHUNK_SIZE) {
+			List<ResourcePersistentId> previous = pids.subList(0, from);
+			List<ResourcePersistentId> newPids = pids.subList(from, from + CHUNK_SIZE);
+			runInTransaction(() -> theSvc.storeResults(search, previous, newPids));
+		}
+		long writeMillis = sw.getMillis();
+
+		assertEquals(pids, runInTransaction(() -> theSvc.fetchAllResultPids(search)));
+		int rows = runInTransaction(() -> (int) (mySearchResultDao.count() + mySearchResultPageDao.count()));
+
+		sw.restart();
+		int passes = 0;
+		while (runInTransaction(() -> mySearchEntityDao.count()) > 0) {
+			myStaleSearchDeletingSvc.pollForStaleSearchesAndDeleteThem();
+			passes++;
+		}
+		long cleanupMillis = sw.getMillis();
+
+		assertEquals(0L, runInTransaction(() -> mySearchResultDao.count() + mySearchResultPageDao.count()));
+		ourLog.info("Stored {} results as {} in {} rows in {}ms, cleaned up in {} passes in {}ms", RESULT_COUNT, theDescription, rows, writeMillis, passes, cleanupMillis);
+		return new int[]{rows, passes};
+	}
+
+}
@@ -0,0 +1,99 @@
+package ca.uhn.fhir.jpa.search.cache;
+
+import ca.uhn.fhir.jpa.entity.Search;
+import ca.uhn.fhir.jpa.model.search.SearchStatusEnum;
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class MemorySearchCacheSvcImplTest {
+
+	@Mock
+	private ISearchCacheSvc myDelegate;
+
+	@Test
+	public void testSaveAndFetch() {
+		MemorySearchCacheSvcImpl svc = new MemorySearchCacheSvcImpl(null);
+		Search search = newSearch("Patient", "?name=smith");
+
+		assertSame(search, svc.save(search));
+		assertSame(search, svc.fetchByUuid(search.getUuid()).orElseThrow(IllegalStateException::new));
+		assertFalse(svc.fetchByUuid(UUID.randomUUID().toString()).isPresent());
+	}
+
+	@Test
+	public void testMarkSearchAsInProgressOnlyOnce() {
+		MemorySearchCacheSvcImpl svc = new MemorySearchCacheSvcImpl(null);
+		Search search = newSearch("Patient", "?name=smith");
+		search.setStatus(SearchStatusEnum.PASSCMPLET);
+		svc.save(search);
+
+		Optional<Search> marked = svc.tryToMarkSearchAsInProgress(search);
+		assertTrue(marked.isPresent());
+		assertEquals(SearchStatusEnum.LOADING, marked.get().getStatus());
+		assertFalse(svc.tryToMarkSearchAsInProgress(search).isPresent());
+	}
+
+	@Test
+	public void testFindCandidatesForReuse() {
+		MemorySearchCacheSvcImpl svc = new MemorySearchCacheSvcImpl(null);
+		Search match = svc.save(newSearch("Patient", "?name=smith"));
+		svc.save(newSearch("Patient", "?name=jones"));
+		svc.save(newSearch("Observation", "?name=smith"));
+		Search failed = newSearch("Patient", "?name=smith");
+		failed.setStatus(SearchStatusEnum.FAILED);
+		svc.save(failed);
+
+		Date cutoff = DateUtils.addMinutes(new Date(), -1);
+		Collection<Search> candidates = svc.findCandidatesForReuse("Patient", "?name=smith", "?name=smith".hashCode(), cutoff);
+		assertEquals(1, candidates.size());
+		assertSame(match, candidates.iterator().next());
+	}
+
+	@Test
+	public void testWriteThroughAndFallBackToDelegate() {
+		MemorySearchCacheSvcImpl svc = new MemorySearchCacheSvcImpl(myDelegate);
+		Search search = newSearch("Patient", "?name=smith");
+		Search saved = newSearch("Patient", "?name=smith");
+		saved.setUuid(search.getUuid());
+		when(myDelegate.save(same(search))).thenReturn(saved);
+
+		assertSame(saved, svc.save(search));
+		assertSame(saved, svc.fetchByUuid(search.getUuid()).orElseThrow(IllegalStateException::new));
+		verify(myDelegate).save(same(search));
+		verifyNoMoreInteractions(myDelegate);
+
+		Search other = newSearch("Patient", "?name=jones");
+		when(myDelegate.fetchByUuid(other.getUuid())).thenReturn(Optional.of(other));
+		assertSame(other, svc.fetchByUuid(other.getUuid()).orElseThrow(IllegalStateException::new));
+	}
+
+	private static Search newSearch(String theResourceType, String theQueryString) {
+		Search retVal = new Search();
+		retVal.setUuid(UUID.randomUUID().toString());
+		retVal.setResourceType(theResourceType);
+		retVal.setSearchQueryString(theQueryString);
+		retVal.setCreated(new Date());
+		retVal.setDeleted(false);
+		retVal.setStatus(SearchStatusEnum.FINISHED);
+		return retVal;
+	}
+
+}
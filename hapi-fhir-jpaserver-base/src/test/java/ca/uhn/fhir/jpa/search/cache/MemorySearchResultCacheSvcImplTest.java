@@ -0,0 +1,165 @@
+package ca.uhn.fhir.jpa.search.cache;
+
+import ca.uhn.fhir.jpa.entity.Search;
+import ca.uhn.fhir.rest.api.server.storage.ResourcePersistentId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class MemorySearchResultCacheSvcImplTest {
+
+	@Mock
+	private ISearchResultCacheSvc myDelegate;
+
+	@Test
+	public void testStoreAndFetch() {
+		MemorySearchResultCacheSvcImpl svc = new MemorySearchResultCacheSvcImpl(null);
+		Search search = newSearch();
+
+		List<ResourcePersistentId> stored = new ArrayList<>();
+		store(svc, search, stored, 1L, 2L, 3L);
+		store(svc, search, stored, 4L, 5L);
+
+		assertEquals(toIds(2L, 3L, 4L), svc.fetchResultPids(search, 1, 4));
+		assertEquals(toIds(4L, 5L), svc.fetchResultPids(search, 3, 20));
+		assertEquals(toIds(1L, 2L, 3L, 4L, 5L), svc.fetchAllResultPids(search));
+		assertEquals(1, svc.getSearchCount());
+
+		assertNull(svc.fetchResultPids(newSearch(), 0, 10));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsEvictedWhenOverBudget() {
+		// Each buffer starts out with room for 1000 PIDs, so this only fits two of them
+		MemorySearchResultCacheSvcImpl svc = new MemorySearchResultCacheSvcImpl(null, 2 * 1000 * Long.BYTES, 60000);
+		Search search0 = newSearch();
+		Search search1 = newSearch();
+		Search search2 = newSearch();
+
+		store(svc, search0, new ArrayList<>(), 1L);
+		store(svc, search1, new ArrayList<>(), 2L);
+		svc.fetchAllResultPids(search0);
+		store(svc, search2, new ArrayList<>(), 3L);
+
+		assertEquals(2, svc.getSearchCount());
+		assertEquals(toIds(1L), svc.fetchAllResultPids(search0));
+		assertNull(svc.fetchAllResultPids(search1));
+		assertEquals(toIds(3L), svc.fetchAllResultPids(search2));
+	}
+
+	@Test
+	public void testExpiredAfterAccessTimeout() {
+		MemorySearchResultCacheSvcImpl svc = new MemorySearchResultCacheSvcImpl(null, MemorySearchResultCacheSvcImpl.DEFAULT_MAX_BYTES, 1000);
+		Search search = newSearch();
+
+		svc.setNowForUnitTest(10000L);
+		store(svc, search, new ArrayList<>(), 1L);
+		svc.setNowForUnitTest(10900L);
+		assertEquals(toIds(1L), svc.fetchAllResultPids(search));
+		svc.setNowForUnitTest(11800L);
+		assertEquals(toIds(1L), svc.fetchAllResultPids(search));
+		svc.setNowForUnitTest(12801L);
+		assertNull(svc.fetchAllResultPids(search));
+		assertEquals(0, svc.getTotalBytes());
+	}
+
+	@Test
+	public void testWriteThroughAndFallBackToDelegate() {
+		MemorySearchResultCacheSvcImpl svc = new MemorySearchResultCacheSvcImpl(myDelegate);
+		Search search = newSearch();
+
+		List<ResourcePersistentId> stored = new ArrayList<>();
+		List<ResourcePersistentId> newPids = toIds(1L, 2L);
+		svc.storeResults(search, stored, newPids);
+		verify(myDelegate).storeResults(same(search), same(stored), same(newPids));
+
+		// Held in memory, so the delegate isn't used for reading
+		assertEquals(toIds(1L, 2L), svc.fetchResultPids(search, 0, 10));
+		verifyNoMoreInteractions(myDelegate);
+
+		// Created somewhere else, so only the delegate has it
+		Search otherSearch = newSearch();
+		when(myDelegate.fetchResultPids(same(otherSearch), anyInt(), anyInt())).thenReturn(toIds(7L));
+		assertEquals(toIds(7L), svc.fetchResultPids(otherSearch, 0, 10));
+	}
+
+	@Test
+	public void testDeleteResultsForSearch() {
+		MemorySearchResultCacheSvcImpl svc = new MemorySearchResultCacheSvcImpl(myDelegate);
+		Search search = newSearch();
+		store(svc, search, new ArrayList<>(), 1L, 2L);
+		assertEquals(1, svc.getSearchCount());
+
+		svc.deleteResultsForSearch(search);
+		verify(myDelegate).deleteResultsForSearch(same(search));
+		assertEquals(0, svc.getSearchCount());
+		assertEquals(0, svc.getTotalBytes());
+	}
+
+	@Test
+	public void testConcurrentSearches() throws Exception {
+		// Room for 10 of the 1000 PID buffers, so the 20 searches below also exercise eviction
+		MemorySearchResultCacheSvcImpl svc = new MemorySearchResultCacheSvcImpl(null, 10 * 1000 * Long.BYTES, 60000);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < 20; i++) {
+				long base = i * 100L;
+				futures.add(executor.submit(() -> {
+					Search search = newSearch();
+					List<ResourcePersistentId> stored = new ArrayList<>();
+					for (long chunk = 0; chunk < 5; chunk++) {
+						store(svc, search, stored, base + chunk * 2, base + chunk * 2 + 1);
+						List<ResourcePersistentId> fetched = svc.fetchAllResultPids(search);
+						if (fetched != null) {
+							assertEquals(stored.subList(0, fetched.size()), fetched);
+						}
+					}
+				}));
+			}
+			for (Future<?> next : futures) {
+				next.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(10, svc.getSearchCount());
+		assertEquals(10 * 1000 * Long.BYTES, svc.getTotalBytes());
+	}
+
+	private static void store(MemorySearchResultCacheSvcImpl theSvc, Search theSearch, List<ResourcePersistentId> theStored, Long... theNewPids) {
+		List<ResourcePersistentId> newPids = toIds(theNewPids);
+		theSvc.storeResults(theSearch, theStored, newPids);
+		theStored.addAll(newPids);
+	}
+
+	private static Search newSearch() {
+		Search retVal = new Search();
+		retVal.setUuid(UUID.randomUUID().toString());
+		return retVal;
+	}
+
+	private static List<ResourcePersistentId> toIds(Long... thePids) {
+		return ResourcePersistentId.fromLongList(Arrays.asList(thePids));
+	}
+
+}
@@ -0,0 +1,134 @@
+package ca.uhn.fhir.jpa.search.plan;
+
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import ca.uhn.fhir.interceptor.model.RequestPartitionId;
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
+import ca.uhn.fhir.jpa.dao.index.IdHelperService;
+import ca.uhn.fhir.jpa.model.config.PartitionSettings;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.searchparam.registry.ISearchParamRegistry;
+import ca.uhn.fhir.rest.api.RestSearchParameterTypeEnum;
+import ca.uhn.fhir.rest.param.DateParam;
+import ca.uhn.fhir.rest.param.ParamPrefixEnum;
+import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.param.TokenOrListParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SearchQueryPlanCacheTest {
+
+	private SearchQueryPlanCache mySvc;
+	private PartitionSettings myPartitionSettings;
+
+	@BeforeEach
+	public void before() {
+		ISearchParamRegistry searchParamRegistry = mock(ISearchParamRegistry.class);
+		RuntimeSearchParam code = mock(RuntimeSearchParam.class);
+		when(code.getParamType()).thenReturn(RestSearchParameterTypeEnum.TOKEN);
+		when(code.getPath()).thenReturn("Observation.code");
+		when(searchParamRegistry.getActiveSearchParam("Observation", "code")).thenReturn(code);
+		RuntimeSearchParam date = mock(RuntimeSearchParam.class);
+		when(date.getParamType()).thenReturn(RestSearchParameterTypeEnum.DATE);
+		when(searchParamRegistry.getActiveSearchParam("Observation", "date")).thenReturn(date);
+		RuntimeSearchParam valueString = mock(RuntimeSearchParam.class);
+		when(valueString.getParamType()).thenReturn(RestSearchParameterTypeEnum.STRING);
+		when(searchParamRegistry.getActiveSearchParam("Observation", "value-string")).thenReturn(valueString);
+
+		myPartitionSettings = new PartitionSettings();
+		mySvc = new SearchQueryPlanCache();
+		mySvc.setDaoConfigForUnitTest(new DaoConfig());
+		mySvc.setPartitionSettingsForUnitTest(myPartitionSettings);
+		mySvc.setSearchParamRegistryForUnitTest(searchParamRegistry);
+		mySvc.setIdHelperServiceForUnitTest(mock(IdHelperService.class));
+	}
+
+	@Test
+	public void testTokenAndDateShape() {
+		SearchParameterMap map = new SearchParameterMap();
+		map.add("code", new TokenOrListParam().add("http://loinc.org", "1234-5").add("foo"));
+		map.add("date", new DateParam(ParamPrefixEnum.GREATERTHAN_OR_EQUALS, "2020-01-01"));
+
+		SearchQueryShape shape = mySvc.createShape("Observation", map, RequestPartitionId.allPartitions());
+		assertNotNull(shape);
+		assertEquals("SELECT r.RES_ID AS RES_ID FROM HFJ_RESOURCE r " +
+			"INNER JOIN HFJ_SPIDX_TOKEN t0 ON (t0.RES_ID = r.RES_ID) " +
+			"INNER JOIN HFJ_SPIDX_DATE t1 ON (t1.RES_ID = r.RES_ID) " +
+			"WHERE (t0.HASH_VALUE = ? OR t0.HASH_SYS_AND_VALUE = ?) " +
+			"AND t1.HASH_IDENTITY = ? " +
+			"AND (((t1.SP_VALUE_LOW_DATE_ORDINAL >= ? OR t1.SP_VALUE_HIGH_DATE_ORDINAL >= ?)))", shape.renderSql(false));
+		assertEquals(5, shape.getBindValues().size());
+		assertEquals(20200101, shape.getBindValues().get(3));
+		assertEquals(20200101, shape.getBindValues().get(4));
+	}
+
+	@Test
+	public void testSameShapeDifferentValues() {
+		SearchParameterMap map1 = new SearchParameterMap();
+		map1.add("code", new TokenParam("http://loinc.org", "1234-5"));
+		SearchQueryShape shape1 = mySvc.createShape("Observation", map1, RequestPartitionId.allPartitions());
+
+		SearchParameterMap map2 = new SearchParameterMap();
+		map2.add("code", new TokenParam("http://loinc.org", "9999-9"));
+		SearchQueryShape shape2 = mySvc.createShape("Observation", map2, RequestPartitionId.allPartitions());
+
+		assertEquals(shape1.getKey(), shape2.getKey());
+		assertEquals(shape1.renderSql(false), shape2.renderSql(false));
+		assertNotEquals(shape1.getBindValues(), shape2.getBindValues());
+
+		SearchParameterMap map3 = new SearchParameterMap();
+		map3.add("code", new TokenOrListParam().add("http://loinc.org", "1234-5").add("http://loinc.org", "9999-9"));
+		SearchQueryShape shape3 = mySvc.createShape("Observation", map3, RequestPartitionId.allPartitions());
+		assertNotEquals(shape1.getKey(), shape3.getKey());
+		assertEquals("SELECT COUNT(DISTINCT r.RES_ID) AS RES_COUNT FROM HFJ_RESOURCE r " +
+			"INNER JOIN HFJ_SPIDX_TOKEN t0 ON (t0.RES_ID = r.RES_ID) " +
+			"WHERE (t0.HASH_SYS_AND_VALUE IN (?, ?))", shape3.renderSql(true));
+	}
+
+	@Test
+	public void testNoParameters() {
+		SearchQueryShape shape = mySvc.createShape("Patient", new SearchParameterMap(), RequestPartitionId.allPartitions());
+		assertEquals("SELECT r.RES_ID AS RES_ID FROM HFJ_RESOURCE r WHERE r.RES_TYPE = ? AND r.RES_DELETED_AT IS NULL", shape.renderSql(false));
+		assertEquals("Patient", shape.getBindValues().get(0));
+	}
+
+	@Test
+	public void testUnsupportedShapes() {
+		SearchParameterMap modifier = new SearchParameterMap();
+		modifier.add("code", new TokenParam("foo").setText(true));
+		assertNull(mySvc.createShape("Observation", modifier, RequestPartitionId.allPartitions()));
+
+		SearchParameterMap string = new SearchParameterMap();
+		string.add("value-string", new StringParam("foo"));
+		assertNull(mySvc.createShape("Observation", string, RequestPartitionId.allPartitions()));
+
+		SearchParameterMap unknown = new SearchParameterMap();
+		unknown.add("foo", new TokenParam("foo"));
+		assertNull(mySvc.createShape("Observation", unknown, RequestPartitionId.allPartitions()));
+
+		SearchParameterMap special = new SearchParameterMap();
+		special.add("_id", new TokenParam("123"));
+		assertNull(mySvc.createShape("Observation", special, RequestPartitionId.allPartitions()));
+
+		myPartitionSettings.setPartitioningEnabled(true);
+		SearchParameterMap partitioned = new SearchParameterMap();
+		partitioned.add("code", new TokenParam("foo"));
+		assertNull(mySvc.createShape("Observation", partitioned, RequestPartitionId.allPartitions()));
+	}
+
+	@Test
+	public void testHitRate() {
+		assertEquals(1.0, mySvc.getHitRate());
+		mySvc.recordBypass();
+		assertEquals(1, mySvc.getBypassCount());
+		assertEquals(0.0, mySvc.getHitRate());
+	}
+
+}
@@ -0,0 +1,103 @@
+package ca.uhn.fhir.jpa.term;
+
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
+import ca.uhn.fhir.jpa.term.api.ITermConceptClosureIndexSvc;
+import ca.uhn.fhir.util.FhirVersionIndependentConcept;
+import org.hl7.fhir.r4.model.CodeType;
+import org.hl7.fhir.r4.model.UriType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class TermConceptClosureIndexSvcR4Test extends BaseTermR4Test {
+
+	@Autowired
+	private ITermConceptClosureIndexSvc myTermConceptClosureIndexSvc;
+
+	@AfterEach
+	public void afterResetClosureIndex() {
+		myDaoConfig.setTermConceptClosureIndexEnabled(new DaoConfig().isTermConceptClosureIndexEnabled());
+		myDaoConfig.setTermConceptClosureIndexMaxAgeMillis(DaoConfig.DEFAULT_TERM_CONCEPT_CLOSURE_INDEX_MAX_AGE_MILLIS);
+		myTermConceptClosureIndexSvc.invalidateIndexes();
+	}
+
+	@Test
+	public void testHierarchyQueriesMatchDatabase() {
+		createCodeSystem();
+
+		List<String> expected = runHierarchyQueries();
+		assertThat(toCodes(runInTransaction(() -> myTermSvc.findCodesBelow(CS_URL, "ParentA"))), containsInAnyOrder("ParentA", "childAA", "childAAA", "childAAB", "childAB"));
+
+		myDaoConfig.setTermConceptClosureIndexEnabled(true);
+		Long versionPid = getCurrentVersionPid();
+		await().until(() -> myTermConceptClosureIndexSvc.getIndexOrScheduleBuild(versionPid) != null);
+
+		assertEquals(expected, runHierarchyQueries());
+	}
+
+	@Test
+	public void testIndexIsDiscardedWhenInvalidated() {
+		createCodeSystem();
+		myDaoConfig.setTermConceptClosureIndexEnabled(true);
+		Long versionPid = getCurrentVersionPid();
+		await().until(() -> myTermConceptClosureIndexSvc.getIndexOrScheduleBuild(versionPid) != null);
+
+		myTermConceptClosureIndexSvc.invalidateIndexes();
+		assertNull(myTermConceptClosureIndexSvc.getIndexOrScheduleBuild(versionPid));
+		await().until(() -> myTermConceptClosureIndexSvc.getIndexOrScheduleBuild(versionPid) != null);
+	}
+
+	@Test
+	public void testIndexExpires() throws InterruptedException {
+		createCodeSystem();
+		myDaoConfig.setTermConceptClosureIndexEnabled(true);
+		Long versionPid = getCurrentVersionPid();
+		await().until(() -> myTermConceptClosureIndexSvc.getIndexOrScheduleBuild(versionPid) != null);
+		assertNotNull(myTermConceptClosureIndexSvc.getIndexOrScheduleBuild(versionPid));
+
+		myDaoConfig.setTermConceptClosureIndexMaxAgeMillis(1);
+		Thread.sleep(10);
+		assertNull(myTermConceptClosureIndexSvc.getIndexOrScheduleBuild(versionPid));
+	}
+
+	private Long getCurrentVersionPid() {
+		return runInTransaction(() -> myTermCodeSystemDao.findByCodeSystemUri(CS_URL).getCurrentVersion().getPid());
+	}
+
+	/**
+	 * Returns the results of a set of hierarchy queries, in a stable order
+	 */
+	private List<String> runHierarchyQueries() {
+		List<String> retVal = new ArrayList<>();
+		for (String next : new String[]{"ParentA", "childAA", "childAAA", "childAB", "ParentB"}) {
+			retVal.add("below " + next + ": " + toCodes(runInTransaction(() -> myTermSvc.findCodesBelow(CS_URL, next))));
+			retVal.add("above " + next + ": " + toCodes(runInTransaction(() -> myTermSvc.findCodesAbove(CS_URL, next))));
+		}
+		String[][] pairs = {{"ParentA", "childAAA"}, {"childAAA", "ParentA"}, {"childAB", "childAA"}, {"childAA", "childAA"}, {"ParentB", "childAB"}};
+		for (String[] next : pairs) {
+			String outcome = runInTransaction(() -> myTermSvc.subsumes(new CodeType(next[0]), new CodeType(next[1]), new UriType(CS_URL), null, null).getOutcome().toCode());
+			retVal.add("subsumes " + next[0] + " " + next[1] + ": " + outcome);
+		}
+		return retVal;
+	}
+
+	private static List<String> toCodes(List<FhirVersionIndependentConcept> theConcepts) {
+		return theConcepts
+			.stream()
+			.map(FhirVersionIndependentConcept::getCode)
+			.sorted()
+			.collect(Collectors.toList());
+	}
+
+}
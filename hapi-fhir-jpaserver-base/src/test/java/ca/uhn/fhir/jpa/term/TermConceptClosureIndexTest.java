@@ -0,0 +1,58 @@
+package ca.uhn.fhir.jpa.term;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TermConceptClosureIndexTest {
+
+	/**
+	 * 1
+	 * +- 2
+	 * |  +- 4
+	 * +- 3
+	 *    +- 4
+	 *       +- 5
+	 */
+	private TermConceptClosureIndex createIndex() {
+		long[] parents = new long[]{1, 1, 2, 3, 4, 0};
+		long[] children = new long[]{2, 3, 4, 4, 5, 0};
+		return new TermConceptClosureIndex(100L, parents, children, 5);
+	}
+
+	@Test
+	public void testCounts() {
+		TermConceptClosureIndex index = createIndex();
+		assertEquals(100L, index.getCodeSystemVersionPid());
+		assertEquals(5, index.getConceptCount());
+		assertEquals(5, index.getLinkCount());
+	}
+
+	@Test
+	public void testIsAncestor() {
+		TermConceptClosureIndex index = createIndex();
+		assertTrue(index.isAncestor(1, 5));
+		assertTrue(index.isAncestor(3, 4));
+		assertTrue(index.isAncestor(2, 5));
+		assertFalse(index.isAncestor(5, 1));
+		assertFalse(index.isAncestor(2, 3));
+		assertFalse(index.isAncestor(4, 4));
+		assertFalse(index.isAncestor(1, 999));
+	}
+
+	@Test
+	public void testGetAncestorsAndDescendants() {
+		TermConceptClosureIndex index = createIndex();
+		assertThat(index.getAncestorPids(5), containsInAnyOrder(4L, 3L, 2L, 1L));
+		assertThat(index.getDescendantPids(1), containsInAnyOrder(2L, 3L, 4L, 5L));
+		assertThat(index.getDescendantPids(3), containsInAnyOrder(4L, 5L));
+		assertThat(index.getDescendantPids(5), empty());
+		assertThat(index.getAncestorPids(999), empty());
+	}
+
+}
@@ -1,21 +1,33 @@
 package ca.uhn.fhir.jpa.term;
 
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
 import ca.uhn.fhir.jpa.dao.data.ITermCodeSystemVersionDao;
 import ca.uhn.fhir.jpa.dao.data.ITermConceptDao;
 import ca.uhn.fhir.jpa.entity.TermCodeSystemVersion;
 import ca.uhn.fhir.jpa.entity.TermConcept;
 import ca.uhn.fhir.jpa.entity.TermConceptParentChildLink;
 import ca.uhn.fhir.jpa.term.api.ITermCodeSystemStorageSvc;
+import ca.uhn.fhir.jpa.term.api.ITermDeferredStorageSvc;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import java.util.Optional;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -115,6 +127,101 @@ public class TermDeferredStorageSvcImplTest {
 
 	}
 
+	@Test
+	public void testSaveDeferred_Concept_Parallel() {
+		TermCodeSystemVersion myTermCodeSystemVersion = new TermCodeSystemVersion();
+		myTermCodeSystemVersion.setId(1L);
+
+		TermConcept parent = new TermConcept().setCode("PARENT");
+		parent.setCodeSystemVersion(myTermCodeSystemVersion);
+		TermConcept child = new TermConcept().setCode("CHILD");
+		child.setCodeSystemVersion(myTermCodeSystemVersion);
+		parent.addChild(child, TermConceptParentChildLink.RelationshipTypeEnum.ISA);
+		TermConcept other = new TermConcept().setCode("OTHER");
+		other.setCodeSystemVersion(myTermCodeSystemVersion);
+
+		DaoConfig daoConfig = new DaoConfig();
+		daoConfig.setTermDeferredStorageThreadCount(2);
+
+		TermDeferredStorageSvcImpl svc = new TermDeferredStorageSvcImpl();
+		svc.setTransactionManagerForUnitTest(myTxManager);
+		svc.setCodeSystemStorageSvcForUnitTest(myTermConceptStorageSvc);
+		svc.setDaoConfigForUnitTest(daoConfig);
+
+		when(myTermCodeSystemVersionDao.findById(anyLong())).thenReturn(Optional.of(myTermCodeSystemVersion));
+		when(myTermConceptStorageSvc.saveConcept(any())).thenReturn(1);
+		svc.setCodeSystemVersionDaoForUnitTest(myTermCodeSystemVersionDao);
+		svc.setProcessDeferred(true);
+		svc.addConceptToStorageQueue(parent);
+		svc.addConceptToStorageQueue(child);
+		svc.addConceptToStorageQueue(other);
+		svc.saveDeferred();
+		svc.stop();
+
+		// The child is saved in the same partition as its unsaved parent, and after it
+		InOrder inOrder = inOrder(myTermConceptStorageSvc);
+		inOrder.verify(myTermConceptStorageSvc).saveConcept(same(parent));
+		inOrder.verify(myTermConceptStorageSvc).saveConcept(same(child));
+		verify(myTermConceptStorageSvc, times(1)).saveConcept(same(other));
+		verifyNoMoreInteractions(myTermConceptStorageSvc);
+
+		ITermDeferredStorageSvc.StorageProgress progress = svc.getStorageProgress();
+		assertEquals(0, progress.getConceptsRemaining());
+		assertEquals(3, progress.getConceptsSaved());
+	}
+
+	@Test
+	public void testSaveDeferred_Concept_Parallel_CommitFails() {
+		TermCodeSystemVersion myTermCodeSystemVersion = new TermCodeSystemVersion();
+		myTermCodeSystemVersion.setId(1L);
+
+		TermConcept conceptA = new TermConcept().setCode("CODE_A");
+		conceptA.setCodeSystemVersion(myTermCodeSystemVersion);
+		TermConcept conceptB = new TermConcept().setCode("CODE_B");
+		conceptB.setCodeSystemVersion(myTermCodeSystemVersion);
+
+		DaoConfig daoConfig = new DaoConfig();
+		daoConfig.setTermDeferredStorageThreadCount(2);
+
+		TermDeferredStorageSvcImpl svc = new TermDeferredStorageSvcImpl();
+		svc.setTransactionManagerForUnitTest(myTxManager);
+		svc.setCodeSystemStorageSvcForUnitTest(myTermConceptStorageSvc);
+		svc.setDaoConfigForUnitTest(daoConfig);
+
+		when(myTermCodeSystemVersionDao.findById(anyLong())).thenReturn(Optional.of(myTermCodeSystemVersion));
+		when(myTermConceptStorageSvc.saveConcept(any())).thenReturn(1);
+		doThrow(new RuntimeException("Commit failed")).when(myTxManager).commit(any());
+		svc.setCodeSystemVersionDaoForUnitTest(myTermCodeSystemVersionDao);
+		svc.setProcessDeferred(true);
+		svc.addConceptToStorageQueue(conceptA);
+		svc.addConceptToStorageQueue(conceptB);
+
+		try {
+			svc.saveDeferred();
+			fail();
+		} catch (InternalErrorException e) {
+			assertThat(e.getMessage(), containsString("Failed to save 2 deferred terminology entries (0 were saved)"));
+		} finally {
+			svc.stop();
+		}
+
+		assertEquals(0, svc.getStorageProgress().getConceptsSaved());
+	}
+
+	@Test
+	public void testGetStorageProgress_NothingSavedYet() {
+		TermConcept concept = new TermConcept().setCode("CODE_A");
+
+		TermDeferredStorageSvcImpl svc = new TermDeferredStorageSvcImpl();
+		svc.setProcessDeferred(false);
+		svc.addConceptToStorageQueue(concept);
+
+		ITermDeferredStorageSvc.StorageProgress progress = svc.getStorageProgress();
+		assertEquals(1, progress.getConceptsRemaining());
+		assertEquals(0, progress.getConceptsSaved());
+		assertNull(progress.getEstimatedMillisRemaining());
+	}
+
 	@Test
 	public void testSaveDeferred_ConceptParentChildLink_ConceptsMissing() {
 		TermConceptParentChildLink conceptLink = new TermConceptParentChildLink();
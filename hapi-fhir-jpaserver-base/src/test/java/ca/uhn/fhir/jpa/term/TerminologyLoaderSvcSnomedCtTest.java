@@ -1,5 +1,6 @@
 package ca.uhn.fhir.jpa.term;
 
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
 import ca.uhn.fhir.jpa.entity.TermCodeSystemVersion;
 import ca.uhn.fhir.jpa.entity.TermConcept;
 import ca.uhn.fhir.jpa.entity.TermConceptParentChildLink;
@@ -10,6 +11,7 @@ import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.server.exceptions.UnprocessableEntityException;
 import ca.uhn.fhir.util.TestUtil;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.tuple.Pair;
 import org.hl7.fhir.r4.model.CodeSystem;
 import org.hl7.fhir.r4.model.ConceptMap;
 import org.junit.jupiter.api.AfterAll;
@@ -25,16 +27,24 @@ import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.TreeSet;
 import java.util.zip.ZipOutputStream;
 
 import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class TerminologyLoaderSvcSnomedCtTest extends BaseLoaderTest {
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(TerminologyLoaderSvcSnomedCtTest.class);
@@ -53,6 +63,7 @@ public class TerminologyLoaderSvcSnomedCtTest extends BaseLoaderTest {
 		mySvc = new TermLoaderSvcImpl();
 		mySvc.setTermCodeSystemStorageSvcForUnitTests(myTermCodeSystemStorageSvc);
 		mySvc.setTermDeferredStorageSvc(myTermDeferredStorageSvc);
+		mySvc.setDaoConfigForUnitTests(new DaoConfig());
 
 		myFiles = new ZipCollectionBuilder();
 	}
@@ -100,6 +111,56 @@ public class TerminologyLoaderSvcSnomedCtTest extends BaseLoaderTest {
 		assertThat(allCodes, hasItem("126816002"));
 	}
 
+	@Test
+	public void testLoadSnomedCtStaged() throws Exception {
+		myFiles.addFileZip("/sct/", "sct2_Concept_Full_INT_20160131.txt");
+		myFiles.addFileZip("/sct/", "sct2_Concept_Full-en_INT_20160131.txt");
+		myFiles.addFileZip("/sct/", "sct2_Description_Full-en_INT_20160131.txt");
+		myFiles.addFileZip("/sct/", "sct2_Identifier_Full_INT_20160131.txt");
+		myFiles.addFileZip("/sct/", "sct2_Relationship_Full_INT_20160131.txt");
+		myFiles.addFileZip("/sct/", "sct2_StatedRelationship_Full_INT_20160131.txt");
+		myFiles.addFileZip("/sct/", "sct2_TextDefinition_Full-en_INT_20160131.txt");
+
+		DaoConfig daoConfig = new DaoConfig();
+		daoConfig.setTermLoaderStagingEnabled(true);
+		mySvc.setDaoConfigForUnitTests(daoConfig);
+
+		Map<Long, String> pidToCode = new HashMap<>();
+		when(myTermCodeSystemStorageSvc.storeConceptBatch(any(), anyList())).thenAnswer(t -> {
+			List<TermConcept> concepts = t.getArgument(1);
+			List<Long> pids = new ArrayList<>();
+			for (TermConcept next : concepts) {
+				long pid = pidToCode.size() + 1;
+				pidToCode.put(pid, next.getCode());
+				pids.add(pid);
+			}
+			return pids;
+		});
+		List<String> links = new ArrayList<>();
+		doAnswer(t -> {
+			List<Pair<Long, Long>> batch = t.getArgument(1);
+			for (Pair<Long, Long> next : batch) {
+				links.add(pidToCode.get(next.getLeft()) + " > " + pidToCode.get(next.getRight()));
+			}
+			return null;
+		}).when(myTermCodeSystemStorageSvc).storeConceptLinkBatch(any(), anyList());
+
+		UploadStatistics stats = mySvc.loadSnomedCt(myFiles.getFiles(), mySrd);
+
+		verify(myTermCodeSystemStorageSvc).storeNewCodeSystemVersion(any(CodeSystem.class), myCsvCaptor.capture(), any(RequestDetails.class), anyList(), anyListOf(ConceptMap.class));
+		assertTrue(myCsvCaptor.getValue().getConcepts().isEmpty());
+
+		ourLog.info("Stored codes: {}", pidToCode.values());
+		assertThat(pidToCode.values(), hasItem("116680003"));
+		assertThat(pidToCode.values(), hasItem("126816002"));
+		assertThat(pidToCode.values(), not(hasItem("207527008")));
+		assertEquals(pidToCode.size(), stats.getUpdatedConceptCount());
+
+		// 126816002 > 126813005 is inactive in its most recent row
+		ourLog.info("Stored links: {}", links);
+		assertThat(links, containsInAnyOrder("126813005 > 126815003", "126815003 > 126817006", "126817006 > 126815003"));
+	}
+
 	/**
 	 * This is just for trying stuff, it won't run without
 	 * local files external to the git repo
@@ -0,0 +1,52 @@
+package ca.uhn.fhir.jpa.util;
+
+import com.google.common.primitives.Longs;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LongHashSetTest {
+
+	@Test
+	public void testAddAndContains() {
+		LongHashSet set = new LongHashSet();
+		assertTrue(set.isEmpty());
+		assertTrue(set.add(5L));
+		assertFalse(set.add(5L));
+		assertTrue(set.add(0L));
+		assertFalse(set.add(0L));
+		assertTrue(set.add(-3L));
+
+		assertEquals(3, set.size());
+		assertTrue(set.contains(0L));
+		assertTrue(set.contains(-3L));
+		assertFalse(set.contains(6L));
+		assertEquals("[-3, 0, 5]", set.toString());
+	}
+
+	@Test
+	public void testResizeMatchesHashSet() {
+		LongHashSet set = new LongHashSet();
+		Set<Long> expected = new HashSet<>();
+		Random random = new Random(0);
+		for (int i = 0; i < 50000; i++) {
+			long next = random.nextInt(20000);
+			assertEquals(expected.add(next), set.add(next));
+		}
+
+		assertEquals(expected.size(), set.size());
+		assertEquals(expected, new HashSet<>(set.toList()));
+		assertEquals(expected.size(), set.toArray().length);
+		assertEquals(expected, new HashSet<>(Longs.asList(set.toArray())));
+		for (long i = 0; i < 20000; i++) {
+			assertEquals(expected.contains(i), set.contains(i));
+		}
+	}
+
+}
@@ -256,6 +256,10 @@ public class JdbcUtils {
 								return new ColumnType(ColumnTypeEnum.BLOB, length);
 							case Types.CLOB:
 								return new ColumnType(ColumnTypeEnum.CLOB, length);
+							case Types.BINARY:
+							case Types.VARBINARY:
+							case Types.LONGVARBINARY:
+								return new ColumnType(ColumnTypeEnum.BINARY, length);
 							default:
 								throw new IllegalArgumentException("Don't know how to handle datatype " + dataType + " for column " + theColumnName + " on table " + theTableName);
 						}
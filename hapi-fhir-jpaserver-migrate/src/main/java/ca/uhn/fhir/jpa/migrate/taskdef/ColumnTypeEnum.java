@@ -30,6 +30,7 @@ public enum ColumnTypeEnum {
     FLOAT,
     INT,
     BLOB,
-    CLOB
+    CLOB,
+    BINARY
 
 }
@@ -20,7 +20,10 @@ package ca.uhn.fhir.jpa.migrate.tasks;
  * #L%
  */
 
+import ca.uhn.fhir.jpa.entity.BulkImportJobEntity;
+import ca.uhn.fhir.jpa.entity.BulkImportJobFileEntity;
 import ca.uhn.fhir.jpa.entity.EmpiLink;
+import ca.uhn.fhir.jpa.entity.Search;
 import ca.uhn.fhir.jpa.entity.TermConceptMap;
 import ca.uhn.fhir.jpa.entity.TermValueSet;
 import ca.uhn.fhir.jpa.migrate.DriverTypeEnum;
@@ -71,7 +74,61 @@ public class HapiFhirJpaMigrationTasks extends BaseMigrationTasks<VersionEnum> {
 		init430(); // Replaced by 5.0.0
 		init500(); // 20200218 - 20200513
 		init501(); // 20200514 - 20200515
-		init510(); // 20200516 - present
+		init510(); // 20200516 - 20201017
+		init520(); // 20201018 - present
+	}
+
+	protected void init520() {
+		Builder version = forVersion(VersionEnum.V5_2_0);
+
+		// Keyset pagination over resources of one type, used by bulk export
+		Builder.BuilderWithTableName resource = version.onTable("HFJ_RESOURCE");
+		resource.addIndex("20201018.1", "IDX_RES_TYPE_UPDATED").unique(false).withColumns("RES_TYPE", "RES_UPDATED", "RES_ID");
+
+		// Bulk export files kept in external file storage instead of Binary resources
+		Builder.BuilderWithTableName bulkExportFile = version.onTable("HFJ_BLK_EXPORT_COLFILE");
+		bulkExportFile.modifyColumn("20201018.2", "RES_ID").nullable().withType(ColumnTypeEnum.STRING, 100);
+		bulkExportFile.addColumn("20201018.3", "STORAGE_KEY").nullable().type(ColumnTypeEnum.STRING, 200);
+		bulkExportFile.addColumn("20201018.4", "FILE_SIZE").nullable().type(ColumnTypeEnum.LONG);
+		bulkExportFile.addColumn("20201018.5", "RES_COUNT").nullable().type(ColumnTypeEnum.INT);
+		bulkExportFile.addColumn("20201018.6", "GZIP").nullable().type(ColumnTypeEnum.BOOLEAN);
+
+		// Bulk Import Job
+		version.addIdGenerator("20201018.7", "SEQ_BLKIMJOB_PID");
+		Builder.BuilderAddTableByColumns blkImportJobTable = version.addTableByColumns("20201018.8", "HFJ_BLK_IMPORT_JOB", "PID");
+		blkImportJobTable.addColumn("PID").nonNullable().type(ColumnTypeEnum.LONG);
+		blkImportJobTable.addColumn("JOB_ID").nonNullable().type(ColumnTypeEnum.STRING, Search.UUID_COLUMN_LENGTH);
+		blkImportJobTable.addColumn("JOB_DESC").nullable().type(ColumnTypeEnum.STRING, BulkImportJobEntity.JOB_DESC_LEN);
+		blkImportJobTable.addColumn("JOB_STATUS").nonNullable().type(ColumnTypeEnum.STRING, 10);
+		blkImportJobTable.addColumn("OPTLOCK").nonNullable().type(ColumnTypeEnum.INT);
+		blkImportJobTable.addColumn("FILE_COUNT").nonNullable().type(ColumnTypeEnum.INT);
+		blkImportJobTable.addColumn("STATUS_TIME").nonNullable().type(ColumnTypeEnum.DATE_TIMESTAMP);
+		blkImportJobTable.addColumn("STATUS_MESSAGE").nullable().type(ColumnTypeEnum.STRING, BulkImportJobEntity.STATUS_MESSAGE_LEN);
+		blkImportJobTable.addColumn("BATCH_SIZE").nonNullable().type(ColumnTypeEnum.INT);
+		blkImportJobTable.addIndex("20201018.9", "IDX_BLKIM_JOB_ID").unique(true).withColumns("JOB_ID");
+
+		// Bulk Import Job File
+		version.addIdGenerator("20201018.10", "SEQ_BLKIMJOBFILE_PID");
+		Builder.BuilderAddTableByColumns blkImportJobFileTable = version.addTableByColumns("20201018.11", "HFJ_BLK_IMPORT_JOBFILE", "PID");
+		blkImportJobFileTable.addColumn("PID").nonNullable().type(ColumnTypeEnum.LONG);
+		blkImportJobFileTable.addColumn("JOB_PID").nonNullable().type(ColumnTypeEnum.LONG);
+		blkImportJobFileTable.addColumn("FILE_SEQ").nonNullable().type(ColumnTypeEnum.INT);
+		blkImportJobFileTable.addColumn("FILE_DESCRIPTION").nullable().type(ColumnTypeEnum.STRING, BulkImportJobFileEntity.MAX_DESCRIPTION_LENGTH);
+		blkImportJobFileTable.addColumn("JOB_CONTENTS").nullable().type(ColumnTypeEnum.BLOB);
+		blkImportJobFileTable.addColumn("ROWS_PROCESSED").nonNullable().type(ColumnTypeEnum.INT);
+		blkImportJobFileTable.addColumn("LAST_UPDATED").nullable().type(ColumnTypeEnum.DATE_TIMESTAMP);
+		blkImportJobFileTable.addForeignKey("20201018.12", "FK_BLKIMJOBFILE_JOB").toColumn("JOB_PID").references("HFJ_BLK_IMPORT_JOB", "PID");
+		blkImportJobFileTable.addIndex("20201018.13", "IDX_BLKIM_JOBFILE_JOBID").unique(false).withColumns("JOB_PID");
+
+		// Search results stored as compressed pages of PIDs
+		version.addIdGenerator("20201018.14", "SEQ_SEARCH_RES_PAGE");
+		Builder.BuilderAddTableByColumns searchResultPageTable = version.addTableByColumns("20201018.15", "HFJ_SEARCH_RESULT_PAGE", "PID");
+		searchResultPageTable.addColumn("PID").nonNullable().type(ColumnTypeEnum.LONG);
+		searchResultPageTable.addColumn("SEARCH_PID").nonNullable().type(ColumnTypeEnum.LONG);
+		searchResultPageTable.addColumn("PAGE_INDEX").nonNullable().type(ColumnTypeEnum.INT);
+		searchResultPageTable.addColumn("PID_COUNT").nonNullable().type(ColumnTypeEnum.INT);
+		searchResultPageTable.addColumn("PIDS").nonNullable().type(ColumnTypeEnum.BINARY);
+		searchResultPageTable.addIndex("20201018.16", "IDX_SEARCHRESPAGE_PAGE").unique(true).withColumns("SEARCH_PID", "PAGE_INDEX");
 	}
 
 	protected void init510() {
@@ -54,6 +54,7 @@ import static org.apache.commons.lang3.StringUtils.defaultString;
 	@Index(name = "IDX_RES_DATE", columnList = "RES_UPDATED"),
 	@Index(name = "IDX_RES_LANG", columnList = "RES_TYPE,RES_LANGUAGE"),
 	@Index(name = "IDX_RES_TYPE", columnList = "RES_TYPE"),
+	@Index(name = "IDX_RES_TYPE_UPDATED", columnList = "RES_TYPE,RES_UPDATED,RES_ID"),
 	@Index(name = "IDX_INDEXSTATUS", columnList = "SP_INDEX_STATUS")
 })
 public class ResourceTable extends BaseHasResource implements Serializable, IBasePersistedResource, IResourceLookup {
@@ -153,6 +153,10 @@ public class JpaConstants {
 	 * Operation name for the "$upload-external-code-system" operation
 	 */
 	public static final String OPERATION_UPLOAD_EXTERNAL_CODE_SYSTEM = "$upload-external-code-system";
+	/**
+	 * Operation name for the "$terminology-storage-status" operation
+	 */
+	public static final String OPERATION_TERMINOLOGY_STORAGE_STATUS = "$terminology-storage-status";
 	/**
 	 * Operation name for the "$export" operation
 	 */
@@ -161,6 +165,19 @@ public class JpaConstants {
 	 * Operation name for the "$export-poll-status" operation
 	 */
 	public static final String OPERATION_EXPORT_POLL_STATUS = "$export-poll-status";
+	/**
+	 * Operation name for the "$export-download" operation, which serves bulk export
+	 * files that are not stored as Binary resources
+	 */
+	public static final String OPERATION_EXPORT_DOWNLOAD = "$export-download";
+	/**
+	 * Operation name for the "$import" operation
+	 */
+	public static final String OPERATION_IMPORT = "$import";
+	/**
+	 * Operation name for the "$import-poll-status" operation
+	 */
+	public static final String OPERATION_IMPORT_POLL_STATUS = "$import-poll-status";
 	/**
 	 * Operation name for the "$lastn" operation
 	 */
@@ -170,6 +187,10 @@ public class JpaConstants {
 	 * Parameter for the $export operation
 	 */
 	public static final String PARAM_EXPORT_POLL_STATUS_JOB_ID = "_jobId";
+	/**
+	 * Parameter for the $export-download operation
+	 */
+	public static final String PARAM_EXPORT_DOWNLOAD_FILE_ID = "_fileId";
 	/**
 	 * Parameter for the $export operation
 	 */
@@ -186,6 +207,14 @@ public class JpaConstants {
 	 * Parameter for the $export operation
 	 */
 	public static final String PARAM_EXPORT_TYPE_FILTER = "_typeFilter";
+	/**
+	 * Parameter for the $import-poll-status operation
+	 */
+	public static final String PARAM_IMPORT_POLL_STATUS_JOB_ID = "_jobId";
+	/**
+	 * Parameter for the $import operation
+	 */
+	public static final String PARAM_IMPORT_BATCH_SIZE = "_batchSize";
 	/**
 	 * URL for extension on a SearchParameter indicating that text values should not be indexed
 	 */
@@ -52,6 +52,7 @@ public class SearchParameterMap implements Serializable {
 
 	private Integer myCount;
 	private Integer myOffset;
+	private String mySeekToken;
 	private EverythingModeEnum myEverythingMode = null;
 	private Set<Include> myIncludes;
 	private DateRangeParam myLastUpdated;
@@ -207,6 +208,24 @@ public class SearchParameterMap implements Serializable {
 		myOffset = theOffset;
 	}
 
+	/**
+	 * Seek paging token (the <code>_seek</code> parameter) identifying the position to resume
+	 * from when fetching the page at {@link #getOffset()}. Ignored unless seek paging is enabled.
+	 * This is not part of the normalized query string.
+	 */
+	public String getSeekToken() {
+		return mySeekToken;
+	}
+
+	/**
+	 * Seek paging token (the <code>_seek</code> parameter) identifying the position to resume
+	 * from when fetching the page at {@link #getOffset()}. Ignored unless seek paging is enabled.
+	 * This is not part of the normalized query string.
+	 */
+	public void setSeekToken(String theSeekToken) {
+		mySeekToken = theSeekToken;
+	}
+
 	public EverythingModeEnum getEverythingMode() {
 		return myEverythingMode;
 	}
@@ -0,0 +1,78 @@
+package ca.uhn.fhir.jpa.searchparam.extractor;
+
+/*
+ * #%L
+ * HAPI FHIR Search Parameters
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.model.config.PartitionSettings;
+import ca.uhn.fhir.jpa.model.entity.ModelConfig;
+import ca.uhn.fhir.jpa.searchparam.registry.ISearchParamRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Base class for the search parameter extractors which evaluate search parameter paths
+ * as FHIRPath expressions
+ *
+ * @param <T> The parsed form of a FHIRPath expression used by the FHIRPath engine of the version
+ */
+public abstract class BaseFhirPathSearchParamExtractor<T> extends BaseSearchParamExtractor {
+
+	private final Cache<String, T> myParsedFhirPathCache = Caffeine.newBuilder().maximumSize(MAX_PARSED_FHIRPATH_CACHE_SIZE).recordStats().build();
+
+	/**
+	 * Constructor
+	 */
+	BaseFhirPathSearchParamExtractor() {
+		super();
+	}
+
+	/**
+	 * UNIT TEST constructor
+	 */
+	BaseFhirPathSearchParamExtractor(ModelConfig theModelConfig, PartitionSettings thePartitionSettings, FhirContext theCtx, ISearchParamRegistry theSearchParamRegistry) {
+		super(theModelConfig, thePartitionSettings, theCtx, theSearchParamRegistry);
+	}
+
+	/**
+	 * Parses a single FHIRPath expression into the parsed form used by this extractor's
+	 * FHIRPath engine. Called through {@link #getParsedFhirPath(String)}, so each distinct
+	 * expression is normally only parsed once.
+	 */
+	protected abstract T parseFhirPath(String theExpression);
+
+	/**
+	 * Returns the parsed form of the given FHIRPath expression, parsing it with
+	 * {@link #parseFhirPath(String)} only if it hasn't been parsed already. Search
+	 * parameter paths are evaluated for every resource that is indexed, so this
+	 * avoids parsing the same handful of expressions over and over.
+	 */
+	protected T getParsedFhirPath(String theExpression) {
+		return myParsedFhirPathCache.get(theExpression, this::parseFhirPath);
+	}
+
+	@VisibleForTesting
+	CacheStats getParsedFhirPathCacheStats() {
+		return myParsedFhirPathCache.stats();
+	}
+
+}
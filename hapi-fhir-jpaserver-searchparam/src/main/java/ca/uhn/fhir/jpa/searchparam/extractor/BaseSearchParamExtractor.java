@@ -44,6 +44,8 @@ import ca.uhn.fhir.rest.api.RestSearchParameterTypeEnum;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.util.HapiExtensions;
 import ca.uhn.fhir.util.StringUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
@@ -82,6 +84,12 @@ import static org.apache.commons.lang3.StringUtils.trim;
 
 public abstract class BaseSearchParamExtractor implements ISearchParamExtractor {
 
+	/**
+	 * Maximum number of distinct FHIRPath expressions (and split search parameter paths)
+	 * that are kept in parsed form. Search parameter paths are a small, fixed set in
+	 * practice, so this is only a guard against unbounded growth.
+	 */
+	static final int MAX_PARSED_FHIRPATH_CACHE_SIZE = 10000;
 	private static final Pattern SPLIT = Pattern.compile("\\||( or )");
 	private static final Pattern SPLIT_R4 = Pattern.compile("\\|");
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(BaseSearchParamExtractor.class);
@@ -96,6 +104,7 @@ public abstract class BaseSearchParamExtractor implements ISearchParamExtractor
 	@Autowired
 	private PartitionSettings myPartitionSettings;
 
+	private final Cache<String, String[]> mySplitPathsCache = Caffeine.newBuilder().maximumSize(MAX_PARSED_FHIRPATH_CACHE_SIZE).build();
 	private Set<String> myIgnoredForSearchDatatypes;
 	private BaseRuntimeChildDefinition myQuantityValueValueChild;
 	private BaseRuntimeChildDefinition myQuantitySystemValueChild;
@@ -631,7 +640,7 @@ public abstract class BaseSearchParamExtractor implements ISearchParamExtractor
 	public List<IBase> extractValues(String thePaths, IBaseResource theResource) {
 		List<IBase> values = new ArrayList<>();
 		if (isNotBlank(thePaths)) {
-			String[] nextPathsSplit = split(thePaths);
+			String[] nextPathsSplit = splitAndTrimCached(thePaths);
 			for (String nextPath : nextPathsSplit) {
 				List<? extends IBase> allValues;
 
@@ -642,7 +651,6 @@ public abstract class BaseSearchParamExtractor implements ISearchParamExtractor
 					}
 				}
 
-				nextPath = trim(nextPath);
 				IValueExtractor allValuesFunc = getPathValueExtractor(theResource, nextPath);
 				try {
 					allValues = allValuesFunc.get();
@@ -1052,9 +1060,8 @@ public abstract class BaseSearchParamExtractor implements ISearchParamExtractor
 			return;
 		}
 
-		String[] splitPaths = split(nextPathUnsplit);
+		String[] splitPaths = splitAndTrimCached(nextPathUnsplit);
 		for (String nextPath : splitPaths) {
-			nextPath = trim(nextPath);
 			for (IBase nextObject : extractValues(nextPath, theResource)) {
 				if (nextObject != null) {
 					String typeName = toRootTypeName(nextObject);
@@ -1151,6 +1158,21 @@ public abstract class BaseSearchParamExtractor implements ISearchParamExtractor
 		}
 	}
 
+	/**
+	 * Search parameter paths are split on every resource that is indexed, so the
+	 * split (and trimmed) form of each path is cached. The returned array must not
+	 * be modified.
+	 */
+	private String[] splitAndTrimCached(String thePaths) {
+		return mySplitPathsCache.get(thePaths, paths -> {
+			String[] retVal = split(paths);
+			for (int i = 0; i < retVal.length; i++) {
+				retVal[i] = trim(retVal[i]);
+			}
+			return retVal;
+		});
+	}
+
 	private BigDecimal normalizeQuantityContainingTimeUnitsIntoDaysForNumberParam(String theSystem, String theCode, BigDecimal theValue) {
 		if (SearchParamConstants.UCUM_NS.equals(theSystem)) {
 			if (isNotBlank(theCode)) {
@@ -29,6 +29,7 @@ import com.google.common.annotations.VisibleForTesting;
 import org.hl7.fhir.dstu3.context.IWorkerContext;
 import org.hl7.fhir.dstu3.hapi.ctx.HapiWorkerContext;
 import org.hl7.fhir.dstu3.model.Base;
+import org.hl7.fhir.dstu3.model.ExpressionNode;
 import org.hl7.fhir.dstu3.utils.FHIRPathEngine;
 import org.hl7.fhir.instance.model.api.IBase;
 import org.hl7.fhir.instance.model.api.IBaseResource;
@@ -37,7 +38,7 @@ import javax.annotation.PostConstruct;
 import java.util.ArrayList;
 import java.util.List;
 
-public class SearchParamExtractorDstu3 extends BaseSearchParamExtractor implements ISearchParamExtractor {
+public class SearchParamExtractorDstu3 extends BaseFhirPathSearchParamExtractor<ExpressionNode> implements ISearchParamExtractor {
 
 	private FHIRPathEngine myFhirPathEngine;
 
@@ -60,7 +61,8 @@ public class SearchParamExtractorDstu3 extends BaseSearchParamExtractor implemen
 	protected IValueExtractor getPathValueExtractor(IBaseResource theResource, String theSinglePath) {
 		return () -> {
 			List<IBase> values = new ArrayList<>();
-			List<Base> allValues = myFhirPathEngine.evaluate((Base) theResource, theSinglePath);
+			ExpressionNode parsed = getParsedFhirPath(theSinglePath);
+			List<Base> allValues = myFhirPathEngine.evaluate((Base) theResource, parsed);
 			if (allValues.isEmpty() == false) {
 				values.addAll(allValues);
 			}
@@ -69,6 +71,11 @@ public class SearchParamExtractorDstu3 extends BaseSearchParamExtractor implemen
 		};
 	}
 
+	@Override
+	protected ExpressionNode parseFhirPath(String theExpression) {
+		return myFhirPathEngine.parse(theExpression);
+	}
+
 
 	@Override
 	@PostConstruct
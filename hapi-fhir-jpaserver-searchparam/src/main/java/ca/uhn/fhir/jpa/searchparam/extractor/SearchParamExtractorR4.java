@@ -33,6 +33,7 @@ import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.context.IWorkerContext;
 import org.hl7.fhir.r4.hapi.ctx.HapiWorkerContext;
 import org.hl7.fhir.r4.model.Base;
+import org.hl7.fhir.r4.model.ExpressionNode;
 import org.hl7.fhir.r4.model.IdType;
 import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.ResourceType;
@@ -49,7 +50,7 @@ import java.util.Map;
 
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
-public class SearchParamExtractorR4 extends BaseSearchParamExtractor implements ISearchParamExtractor {
+public class SearchParamExtractorR4 extends BaseFhirPathSearchParamExtractor<ExpressionNode> implements ISearchParamExtractor {
 
 	private FHIRPathEngine myFhirPathEngine;
 
@@ -71,11 +72,17 @@ public class SearchParamExtractorR4 extends BaseSearchParamExtractor implements
 	@Override
 	protected IValueExtractor getPathValueExtractor(IBaseResource theResource, String theSinglePath) {
 		return () -> {
-			List<Base> allValues = myFhirPathEngine.evaluate((Base) theResource, theSinglePath);
+			ExpressionNode parsed = getParsedFhirPath(theSinglePath);
+			List<Base> allValues = myFhirPathEngine.evaluate((Base) theResource, parsed);
 			return (List<IBase>) new ArrayList<IBase>(allValues);
 		};
 	}
 
+	@Override
+	protected ExpressionNode parseFhirPath(String theExpression) {
+		return myFhirPathEngine.parse(theExpression);
+	}
+
 
 	@Override
 	@PostConstruct
@@ -32,6 +32,7 @@ import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r5.context.IWorkerContext;
 import org.hl7.fhir.r5.hapi.ctx.HapiWorkerContext;
 import org.hl7.fhir.r5.model.Base;
+import org.hl7.fhir.r5.model.ExpressionNode;
 import org.hl7.fhir.r5.model.IdType;
 import org.hl7.fhir.r5.model.Resource;
 import org.hl7.fhir.r5.model.ResourceType;
@@ -47,7 +48,7 @@ import java.util.Map;
 
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
-public class SearchParamExtractorR5 extends BaseSearchParamExtractor implements ISearchParamExtractor {
+public class SearchParamExtractorR5 extends BaseFhirPathSearchParamExtractor<ExpressionNode> implements ISearchParamExtractor {
 
 	private FHIRPathEngine myFhirPathEngine;
 
@@ -82,7 +83,15 @@ public class SearchParamExtractorR5 extends BaseSearchParamExtractor implements
 
 	@Override
 	protected IValueExtractor getPathValueExtractor(IBaseResource theResource, String nextPath) {
-		return () -> myFhirPathEngine.evaluate((Base) theResource, nextPath);
+		return () -> {
+			ExpressionNode parsed = getParsedFhirPath(nextPath);
+			return myFhirPathEngine.evaluate((Base) theResource, parsed);
+		};
+	}
+
+	@Override
+	protected ExpressionNode parseFhirPath(String theExpression) {
+		return myFhirPathEngine.parse(theExpression);
 	}
 
 
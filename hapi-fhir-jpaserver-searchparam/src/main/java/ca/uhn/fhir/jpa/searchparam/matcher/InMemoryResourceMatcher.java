@@ -83,17 +83,27 @@ public class InMemoryResourceMatcher {
 			return InMemoryMatchResult.unsupportedFromReason(InMemoryMatchResult.PARSE_FAIL);
 		}
 		searchParameterMap.clean();
-		if (searchParameterMap.getLastUpdated() != null) {
+		return match(searchParameterMap, resourceDefinition, theResource, theSearchParams);
+	}
+
+	/**
+	 * Same as {@link #match(String, IBaseResource, ResourceIndexedSearchParams)}, but for criteria which have
+	 * already been parsed. This allows callers that test the same criteria many times to parse them only once.
+	 * The map must already have been {@link SearchParameterMap#clean() cleaned}, and is not modified by this
+	 * method so it can safely be shared between threads.
+	 */
+	public InMemoryMatchResult match(SearchParameterMap theSearchParameterMap, RuntimeResourceDefinition theResourceDefinition, IBaseResource theResource, ResourceIndexedSearchParams theSearchParams) {
+		if (theSearchParameterMap.getLastUpdated() != null) {
 			return InMemoryMatchResult.unsupportedFromParameterAndReason(Constants.PARAM_LASTUPDATED, InMemoryMatchResult.STANDARD_PARAMETER);
 		}
-		if (searchParameterMap.containsKey(Location.SP_NEAR)) {
+		if (theSearchParameterMap.containsKey(Location.SP_NEAR)) {
 			return InMemoryMatchResult.unsupportedFromReason(InMemoryMatchResult.LOCATION_NEAR);
 		}
 
-		for (Map.Entry<String, List<List<IQueryParameterType>>> entry : searchParameterMap.entrySet()) {
+		for (Map.Entry<String, List<List<IQueryParameterType>>> entry : theSearchParameterMap.entrySet()) {
 			String theParamName = entry.getKey();
 			List<List<IQueryParameterType>> theAndOrParams = entry.getValue();
-			InMemoryMatchResult result = matchIdsWithAndOr(theParamName, theAndOrParams, resourceDefinition, theResource, theSearchParams);
+			InMemoryMatchResult result = matchIdsWithAndOr(theParamName, theAndOrParams, theResourceDefinition, theResource, theSearchParams);
 			if (!result.matched()) {
 				return result;
 			}
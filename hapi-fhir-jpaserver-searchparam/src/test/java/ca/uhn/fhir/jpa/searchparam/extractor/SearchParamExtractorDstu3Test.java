@@ -22,6 +22,7 @@ import ca.uhn.fhir.jpa.searchparam.registry.ISearchParamRegistry;
 import ca.uhn.fhir.rest.api.RestSearchParameterTypeEnum;
 import ca.uhn.fhir.util.StringUtil;
 import ca.uhn.fhir.util.TestUtil;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.google.common.collect.Sets;
 import org.hamcrest.Matchers;
 import org.hl7.fhir.dstu3.model.Duration;
@@ -69,6 +70,35 @@ public class SearchParamExtractorDstu3Test {
 		assertEquals("CODE", token.getValue());
 	}
 
+	@Test
+	public void testRepeatedExtractionWithParsedPathCache() {
+		ISearchParamRegistry searchParamRegistry = new MySearchParamRegistry();
+		SearchParamExtractorDstu3 extractor = new SearchParamExtractorDstu3(new ModelConfig(), new PartitionSettings(), ourCtx, ourValidationSupport, searchParamRegistry);
+		extractor.start();
+
+		CacheStats firstPass = null;
+		for (int i = 0; i < 3; i++) {
+			Observation obs = new Observation();
+			obs.addCategory().addCoding().setSystem("SYSTEM").setCode("CODE" + i);
+
+			Set<BaseResourceIndexedSearchParam> tokens = extractor.extractSearchParamTokens(obs);
+			assertEquals(1, tokens.size());
+			ResourceIndexedSearchParamToken token = (ResourceIndexedSearchParamToken) tokens.iterator().next();
+			assertEquals("category", token.getParamName());
+			assertEquals("CODE" + i, token.getValue());
+
+			// Every path is parsed during the first pass, and after that they are all reused
+			CacheStats stats = extractor.getParsedFhirPathCacheStats();
+			if (i == 0) {
+				firstPass = stats;
+				assertThat(firstPass.missCount(), Matchers.greaterThan(0L));
+			} else {
+				assertEquals(firstPass.missCount(), stats.missCount());
+				assertEquals(firstPass.hitCount() + firstPass.requestCount() * i, stats.hitCount());
+			}
+		}
+	}
+
 	@Test
 	public void testNormalizedStringIsShortened() {
 		// String with character that will change it's length on normalization
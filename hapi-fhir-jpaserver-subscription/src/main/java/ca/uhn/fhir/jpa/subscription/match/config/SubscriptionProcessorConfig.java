@@ -35,6 +35,7 @@ import ca.uhn.fhir.jpa.subscription.match.matcher.subscriber.MatchingQueueSubscr
 import ca.uhn.fhir.jpa.subscription.match.matcher.subscriber.SubscriptionActivatingSubscriber;
 import ca.uhn.fhir.jpa.subscription.match.matcher.subscriber.SubscriptionMatchingSubscriber;
 import ca.uhn.fhir.jpa.subscription.match.matcher.subscriber.SubscriptionRegisteringSubscriber;
+import ca.uhn.fhir.jpa.subscription.match.registry.SubscriptionCriteriaIndex;
 import ca.uhn.fhir.jpa.subscription.match.registry.SubscriptionLoader;
 import ca.uhn.fhir.jpa.subscription.match.registry.SubscriptionRegistry;
 import ca.uhn.fhir.jpa.subscription.model.config.SubscriptionModelConfig;
@@ -75,6 +76,11 @@ public class SubscriptionProcessorConfig {
 		return new SubscriptionRegistry();
 	}
 
+	@Bean
+	public SubscriptionCriteriaIndex subscriptionCriteriaIndex() {
+		return new SubscriptionCriteriaIndex();
+	}
+
 	@Bean
 	public SubscriptionDeliveryChannelNamer subscriptionDeliveryChannelNamer() {
 		return new SubscriptionDeliveryChannelNamer();
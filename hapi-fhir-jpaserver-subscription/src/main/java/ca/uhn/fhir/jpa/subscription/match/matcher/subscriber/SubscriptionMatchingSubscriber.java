@@ -4,10 +4,15 @@ import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.interceptor.api.HookParams;
 import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
 import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.jpa.api.config.DaoConfig;
+import ca.uhn.fhir.jpa.searchparam.extractor.ResourceIndexedSearchParams;
 import ca.uhn.fhir.jpa.searchparam.matcher.InMemoryMatchResult;
+import ca.uhn.fhir.jpa.searchparam.matcher.InMemoryResourceMatcher;
+import ca.uhn.fhir.jpa.searchparam.matcher.IndexedSearchParamExtractor;
 import ca.uhn.fhir.jpa.subscription.channel.subscription.SubscriptionChannelRegistry;
 import ca.uhn.fhir.jpa.subscription.match.matcher.matching.ISubscriptionMatcher;
 import ca.uhn.fhir.jpa.subscription.match.registry.ActiveSubscription;
+import ca.uhn.fhir.jpa.subscription.match.registry.SubscriptionCriteriaIndex;
 import ca.uhn.fhir.jpa.subscription.match.registry.SubscriptionRegistry;
 import ca.uhn.fhir.jpa.subscription.model.CanonicalSubscription;
 import ca.uhn.fhir.jpa.subscription.model.ResourceDeliveryJsonMessage;
@@ -27,7 +32,12 @@ import org.springframework.messaging.MessageHandler;
 import org.springframework.messaging.MessagingException;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
@@ -66,6 +76,14 @@ public class SubscriptionMatchingSubscriber implements MessageHandler {
 	private IInterceptorBroadcaster myInterceptorBroadcaster;
 	@Autowired
 	private SubscriptionChannelRegistry mySubscriptionChannelRegistry;
+	@Autowired
+	private SubscriptionCriteriaIndex mySubscriptionCriteriaIndex;
+	@Autowired
+	private IndexedSearchParamExtractor myIndexedSearchParamExtractor;
+	@Autowired
+	private InMemoryResourceMatcher myInMemoryResourceMatcher;
+	@Autowired
+	private DaoConfig myDaoConfig;
 
 	/**
 	 * Constructor
@@ -119,28 +137,40 @@ public class SubscriptionMatchingSubscriber implements MessageHandler {
 	private void doMatchActiveSubscriptionsAndDeliver(ResourceModifiedMessage theMsg) {
 		IIdType resourceId = theMsg.getId(myFhirContext);
 
-		Collection<ActiveSubscription> subscriptions = mySubscriptionRegistry.getAll();
+		Collection<ActiveSubscription> subscriptions;
+		Map<String, SubscriptionCriteriaIndex.IndexedSubscription> compiledSubscriptions = Collections.emptyMap();
+		ResourceIndexedSearchParams resourceParams = null;
+		if (isNotBlank(theMsg.getSubscriptionId())) {
+			ActiveSubscription activeSubscription = mySubscriptionRegistry.get(theMsg.getSubscriptionId());
+			if (activeSubscription == null) {
+				ourLog.debug("Ignoring message because subscription {} is not registered", theMsg.getSubscriptionId());
+			}
+			subscriptions = activeSubscription != null ? Collections.singletonList(activeSubscription) : Collections.emptyList();
+		} else if (myDaoConfig.isEnableInMemorySubscriptionMatching() && resourceId.getResourceType() != null && theMsg.getNewPayload(myFhirContext) != null) {
+			// Only test the subscriptions whose criteria could possibly match the resource, and extract
+			// the search parameters from the resource once instead of once per subscription
+			resourceParams = myIndexedSearchParamExtractor.extractIndexedSearchParams(theMsg.getNewPayload(myFhirContext), null);
+			List<SubscriptionCriteriaIndex.IndexedSubscription> candidates = mySubscriptionCriteriaIndex.getCandidates(resourceId.getResourceType(), resourceParams);
+			subscriptions = new ArrayList<>(candidates.size());
+			compiledSubscriptions = new HashMap<>();
+			for (SubscriptionCriteriaIndex.IndexedSubscription next : candidates) {
+				subscriptions.add(next.getActiveSubscription());
+				compiledSubscriptions.put(next.getActiveSubscription().getId(), next);
+			}
+		} else {
+			subscriptions = mySubscriptionRegistry.getAll();
+		}
 
 		ourLog.trace("Testing {} subscriptions for applicability", subscriptions.size());
 		boolean resourceMatched = false;
 
 		for (ActiveSubscription nextActiveSubscription : subscriptions) {
 
-			String nextSubscriptionId = getId(nextActiveSubscription);
-
-			if (isNotBlank(theMsg.getSubscriptionId())) {
-				if (!theMsg.getSubscriptionId().equals(nextSubscriptionId)) {
-					// TODO KHS we should use a hash to look it up instead of this full table scan
-					ourLog.debug("Ignoring subscription {} because it is not {}", nextSubscriptionId, theMsg.getSubscriptionId());
-					continue;
-				}
-			}
-
 			if (!validCriteria(nextActiveSubscription, resourceId)) {
 				continue;
 			}
 
-			InMemoryMatchResult matchResult = mySubscriptionMatcher.match(nextActiveSubscription.getSubscription(), theMsg);
+			InMemoryMatchResult matchResult = match(nextActiveSubscription, compiledSubscriptions.get(nextActiveSubscription.getId()), theMsg, resourceParams);
 			if (!matchResult.matched()) {
 				continue;
 			}
@@ -186,6 +216,21 @@ public class SubscriptionMatchingSubscriber implements MessageHandler {
 		}
 	}
 
+	/**
+	 * Tests the resource against the compiled criteria for the subscription if there are any, and otherwise
+	 * falls back to the configured {@link ISubscriptionMatcher}
+	 */
+	private InMemoryMatchResult match(ActiveSubscription theActiveSubscription, SubscriptionCriteriaIndex.IndexedSubscription theCompiledSubscription, ResourceModifiedMessage theMsg, ResourceIndexedSearchParams theResourceParams) {
+		if (theCompiledSubscription != null && theCompiledSubscription.getCriteria() != null) {
+			InMemoryMatchResult retVal = myInMemoryResourceMatcher.match(theCompiledSubscription.getCriteria(), theCompiledSubscription.getResourceDefinition(), theMsg.getNewPayload(myFhirContext), theResourceParams);
+			if (retVal.supported()) {
+				retVal.setInMemory(true);
+				return retVal;
+			}
+		}
+		return mySubscriptionMatcher.match(theActiveSubscription.getSubscription(), theMsg);
+	}
+
 	private boolean sendToDeliveryChannel(ActiveSubscription nextActiveSubscription, ResourceDeliveryMessage theDeliveryMsg) {
 		boolean retVal = false;
 		ResourceDeliveryJsonMessage wrappedMsg = new ResourceDeliveryJsonMessage(theDeliveryMsg);
@@ -0,0 +1,442 @@
+package ca.uhn.fhir.jpa.subscription.match.registry;
+
+/*-
+ * #%L
+ * HAPI FHIR Subscription Server
+ * %%
+ * Copyright (C) 2014 - 2020 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import ca.uhn.fhir.jpa.model.entity.ResourceIndexedSearchParamToken;
+import ca.uhn.fhir.jpa.model.entity.ResourceLink;
+import ca.uhn.fhir.jpa.searchparam.MatchUrlService;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.searchparam.extractor.ResourceIndexedSearchParams;
+import ca.uhn.fhir.jpa.searchparam.matcher.InMemoryResourceMatcher;
+import ca.uhn.fhir.jpa.searchparam.registry.ISearchParamRegistry;
+import ca.uhn.fhir.model.api.IQueryParameterType;
+import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.apache.commons.lang3.StringUtils.defaultString;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Index of the criteria of the active subscriptions, used to quickly find the subscriptions which
+ * could possibly match a modified resource without testing every subscription.
+ * <p>
+ * When a subscription is added, its criteria are parsed into a {@link SearchParameterMap} once. If
+ * the criteria can be fully evaluated by the {@link InMemoryResourceMatcher}, and one of the search
+ * parameters only has exact token or reference values (e.g. <code>Observation?subject=Patient/123</code>),
+ * the subscription is stored in a bucket for each of those values. Otherwise it is stored in a list of
+ * subscriptions that are always candidates for their resource type.
+ * </p>
+ * <p>
+ * The candidates are a superset of the subscriptions that match a resource, so the criteria still
+ * need to be tested against each candidate. If a search parameter that compiled criteria depend on
+ * changes in the {@link ISearchParamRegistry}, the criteria for that resource type are compiled again.
+ * </p>
+ */
+public class SubscriptionCriteriaIndex {
+	private static final Logger ourLog = LoggerFactory.getLogger(SubscriptionCriteriaIndex.class);
+
+	private final Map<String, IndexedSubscription> myIdToSubscription = new ConcurrentHashMap<>();
+	private final Map<String, ResourceTypeIndex> myResourceTypeToIndex = new ConcurrentHashMap<>();
+	@Autowired
+	private FhirContext myFhirContext;
+	@Autowired
+	private MatchUrlService myMatchUrlService;
+	@Autowired
+	private ISearchParamRegistry mySearchParamRegistry;
+	@Autowired
+	private InMemoryResourceMatcher myInMemoryResourceMatcher;
+
+	/**
+	 * Adds the given subscription to the index, replacing any previously indexed subscription with the
+	 * same ID.
+	 */
+	public synchronized void add(ActiveSubscription theActiveSubscription) {
+		Validate.notNull(theActiveSubscription);
+		remove(theActiveSubscription.getId());
+
+		IndexedSubscription indexedSubscription = compile(theActiveSubscription);
+		if (indexedSubscription == null) {
+			return;
+		}
+
+		myIdToSubscription.put(theActiveSubscription.getId(), indexedSubscription);
+		ResourceTypeIndex typeIndex = myResourceTypeToIndex.computeIfAbsent(indexedSubscription.getResourceType(), t -> new ResourceTypeIndex());
+		typeIndex.add(indexedSubscription);
+	}
+
+	public synchronized void remove(String theSubscriptionId) {
+		IndexedSubscription existing = myIdToSubscription.remove(theSubscriptionId);
+		if (existing != null) {
+			ResourceTypeIndex typeIndex = myResourceTypeToIndex.get(existing.getResourceType());
+			if (typeIndex != null) {
+				typeIndex.remove(existing);
+			}
+		}
+	}
+
+	public int size() {
+		return myIdToSubscription.size();
+	}
+
+	/**
+	 * Returns the subscriptions which could possibly match a resource of the given type having the given
+	 * indexed search parameters.
+	 *
+	 * @param theResourceType   The resource type of the modified resource
+	 * @param theResourceParams The search parameters extracted from the modified resource
+	 */
+	public List<IndexedSubscription> getCandidates(String theResourceType, ResourceIndexedSearchParams theResourceParams) {
+		ResourceTypeIndex typeIndex = myResourceTypeToIndex.get(theResourceType);
+		if (typeIndex == null) {
+			return Collections.emptyList();
+		}
+		if (!typeIndex.isCurrent(theResourceType)) {
+			typeIndex = rebuild(theResourceType);
+		}
+
+		Map<String, IndexedSubscription> retVal = new LinkedHashMap<>();
+		for (IndexedSubscription next : typeIndex.myUnindexedSubscriptions.values()) {
+			retVal.put(next.getActiveSubscription().getId(), next);
+		}
+		if (!typeIndex.myKeyToSubscriptions.isEmpty()) {
+			for (String nextKey : extractKeys(theResourceParams)) {
+				Map<String, IndexedSubscription> subscriptions = typeIndex.myKeyToSubscriptions.get(nextKey);
+				if (subscriptions != null) {
+					for (IndexedSubscription next : subscriptions.values()) {
+						retVal.put(next.getActiveSubscription().getId(), next);
+					}
+				}
+			}
+		}
+		return new ArrayList<>(retVal.values());
+	}
+
+	private synchronized ResourceTypeIndex rebuild(String theResourceType) {
+		ResourceTypeIndex existing = myResourceTypeToIndex.get(theResourceType);
+		if (existing != null && existing.isCurrent(theResourceType)) {
+			return existing;
+		}
+
+		ourLog.info("Search parameters for {} have changed, recompiling subscription criteria", theResourceType);
+		ResourceTypeIndex typeIndex = new ResourceTypeIndex();
+		for (IndexedSubscription next : new ArrayList<>(myIdToSubscription.values())) {
+			if (next.getResourceType().equals(theResourceType)) {
+				IndexedSubscription recompiled = compile(next.getActiveSubscription());
+				if (recompiled != null) {
+					myIdToSubscription.put(next.getActiveSubscription().getId(), recompiled);
+					typeIndex.add(recompiled);
+				}
+			}
+		}
+		myResourceTypeToIndex.put(theResourceType, typeIndex);
+		return typeIndex;
+	}
+
+	private IndexedSubscription compile(ActiveSubscription theActiveSubscription) {
+		String criteria = theActiveSubscription.getCriteriaString();
+		if (isBlank(criteria)) {
+			return null;
+		}
+
+		String resourceType = criteria;
+		int questionMarkIdx = resourceType.indexOf('?');
+		if (questionMarkIdx != -1) {
+			resourceType = resourceType.substring(0, questionMarkIdx);
+		}
+
+		IndexedSubscription retVal = new IndexedSubscription(theActiveSubscription, resourceType);
+		try {
+			RuntimeResourceDefinition resourceDefinition = myFhirContext.getResourceDefinition(resourceType);
+			SearchParameterMap searchParameterMap = myMatchUrlService.translateMatchUrl(criteria, resourceDefinition);
+			searchParameterMap.clean();
+
+			Map<String, RuntimeSearchParam> dependencies = new HashMap<>();
+			for (String nextParamName : searchParameterMap.keySet()) {
+				dependencies.put(nextParamName, mySearchParamRegistry.getActiveSearchParam(resourceType, nextParamName));
+			}
+			retVal.myDependencies = dependencies;
+
+			if (myInMemoryResourceMatcher.match(searchParameterMap, resourceDefinition, null, null).supported()) {
+				retVal.myCriteria = searchParameterMap;
+				retVal.myResourceDefinition = resourceDefinition;
+				retVal.myKeys = chooseKeys(searchParameterMap, dependencies);
+			}
+		} catch (Exception e) {
+			ourLog.debug("Unable to compile criteria for subscription {}: {}", theActiveSubscription.getId(), e.toString());
+		}
+		return retVal;
+	}
+
+	/**
+	 * Returns the index keys for the first search parameter in the criteria whose values can all be
+	 * indexed, or <code>null</code> if there is no such parameter
+	 */
+	private Set<String> chooseKeys(SearchParameterMap theSearchParameterMap, Map<String, RuntimeSearchParam> theDependencies) {
+		for (Map.Entry<String, List<List<IQueryParameterType>>> nextEntry : theSearchParameterMap.entrySet()) {
+			// Parameters such as _id and _source are not matched against the indexed search parameters
+			if (nextEntry.getKey().startsWith("_")) {
+				continue;
+			}
+			RuntimeSearchParam searchParam = theDependencies.get(nextEntry.getKey());
+			if (searchParam == null || nextEntry.getValue().isEmpty()) {
+				continue;
+			}
+
+			Set<String> keys = new HashSet<>();
+			for (List<IQueryParameterType> nextOrList : nextEntry.getValue()) {
+				for (IQueryParameterType nextParam : nextOrList) {
+					String key = toKey(nextEntry.getKey(), searchParam, nextParam);
+					if (key == null) {
+						keys = null;
+						break;
+					}
+					keys.add(key);
+				}
+				if (keys == null) {
+					break;
+				}
+			}
+
+			if (keys != null && !keys.isEmpty()) {
+				return keys;
+			}
+		}
+		return null;
+	}
+
+	private static String toKey(String theParamName, RuntimeSearchParam theSearchParam, IQueryParameterType theParam) {
+		if (theParam.getMissing() != null || theParam.getQueryParameterQualifier() != null) {
+			return null;
+		}
+
+		switch (theSearchParam.getParamType()) {
+			case TOKEN:
+				if (theParam instanceof TokenParam) {
+					TokenParam token = (TokenParam) theParam;
+					if (token.getModifier() != null) {
+						return null;
+					}
+					String system = defaultString(token.getSystem());
+					String value = defaultString(token.getValue());
+					if (system.isEmpty() && value.isEmpty()) {
+						return null;
+					}
+					return tokenKey(theParamName, system, value);
+				}
+				return null;
+			case REFERENCE:
+				if (theParam instanceof ReferenceParam) {
+					ReferenceParam reference = (ReferenceParam) theParam;
+					if (isNotBlank(reference.getChain()) || isNotBlank(reference.getBaseUrl()) || !reference.hasResourceType() || isBlank(reference.getIdPart()) || isBlank(theSearchParam.getPath())) {
+						return null;
+					}
+					return referenceKey(theSearchParam.getPath(), reference.getResourceType(), reference.getIdPart());
+				}
+				return null;
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Returns every key that a subscription could be indexed under and which is satisfied by
+	 * the given resource search parameters
+	 */
+	private static Set<String> extractKeys(ResourceIndexedSearchParams theResourceParams) {
+		Set<String> retVal = new HashSet<>();
+		for (ResourceIndexedSearchParamToken next : theResourceParams.myTokenParams) {
+			String system = defaultString(next.getSystem());
+			String value = defaultString(next.getValue());
+			retVal.add(tokenKey(next.getParamName(), system, value));
+			retVal.add(tokenKey(next.getParamName(), "", value));
+			retVal.add(tokenKey(next.getParamName(), system, ""));
+		}
+		for (ResourceLink next : theResourceParams.myLinks) {
+			if (isNotBlank(next.getSourcePath()) && isNotBlank(next.getTargetResourceType()) && isNotBlank(next.getTargetResourceId())) {
+				retVal.add(referenceKey(next.getSourcePath(), next.getTargetResourceType(), next.getTargetResourceId()));
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * Token parameter names, systems and values are matched case insensitively
+	 */
+	private static String tokenKey(String theParamName, String theSystem, String theValue) {
+		return "T|" + normalize(theParamName) + "|" + normalize(theSystem) + "|" + normalize(theValue);
+	}
+
+	/**
+	 * Resource links are matched using a case insensitive comparison of the search parameter
+	 * path, and an exact comparison of the target
+	 */
+	private static String referenceKey(String thePath, String theTargetResourceType, String theTargetResourceId) {
+		return "R|" + normalize(thePath) + "|" + theTargetResourceType + "/" + theTargetResourceId;
+	}
+
+	/**
+	 * Folds case the same way that {@link String#equalsIgnoreCase(String)} compares characters, so
+	 * two strings normalize to the same value if and only if they are equal ignoring case
+	 */
+	private static String normalize(String theInput) {
+		if (StringUtils.isEmpty(theInput)) {
+			return "";
+		}
+		char[] chars = theInput.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * A subscription along with its compiled criteria
+	 */
+	public static class IndexedSubscription {
+
+		private final ActiveSubscription myActiveSubscription;
+		private final String myResourceType;
+		private SearchParameterMap myCriteria;
+		private RuntimeResourceDefinition myResourceDefinition;
+		private Set<String> myKeys;
+		private Map<String, RuntimeSearchParam> myDependencies = Collections.emptyMap();
+
+		IndexedSubscription(ActiveSubscription theActiveSubscription, String theResourceType) {
+			myActiveSubscription = theActiveSubscription;
+			myResourceType = theResourceType;
+		}
+
+		public ActiveSubscription getActiveSubscription() {
+			return myActiveSubscription;
+		}
+
+		/**
+		 * Returns the parsed criteria, or <code>null</code> if the criteria could not be parsed or
+		 * can not be fully evaluated in memory
+		 */
+		public SearchParameterMap getCriteria() {
+			return myCriteria;
+		}
+
+		public RuntimeResourceDefinition getResourceDefinition() {
+			return myResourceDefinition;
+		}
+
+		String getResourceType() {
+			return myResourceType;
+		}
+
+	}
+
+	private class ResourceTypeIndex {
+
+		private final Map<String, Map<String, IndexedSubscription>> myKeyToSubscriptions = new ConcurrentHashMap<>();
+		private final Map<String, IndexedSubscription> myUnindexedSubscriptions = new ConcurrentHashMap<>();
+		private final Map<String, RuntimeSearchParam> myDependencies = new ConcurrentHashMap<>();
+
+		void add(IndexedSubscription theSubscription) {
+			String id = theSubscription.getActiveSubscription().getId();
+			if (theSubscription.myKeys == null) {
+				myUnindexedSubscriptions.put(id, theSubscription);
+			} else {
+				for (String nextKey : theSubscription.myKeys) {
+					myKeyToSubscriptions.computeIfAbsent(nextKey, t -> new ConcurrentHashMap<>()).put(id, theSubscription);
+				}
+			}
+			for (Map.Entry<String, RuntimeSearchParam> nextEntry : theSubscription.myDependencies.entrySet()) {
+				if (nextEntry.getValue() != null) {
+					myDependencies.put(nextEntry.getKey(), nextEntry.getValue());
+				}
+			}
+		}
+
+		void remove(IndexedSubscription theSubscription) {
+			String id = theSubscription.getActiveSubscription().getId();
+			myUnindexedSubscriptions.remove(id);
+			if (theSubscription.myKeys != null) {
+				for (String nextKey : theSubscription.myKeys) {
+					Map<String, IndexedSubscription> subscriptions = myKeyToSubscriptions.get(nextKey);
+					if (subscriptions != null) {
+						subscriptions.remove(id);
+						if (subscriptions.isEmpty()) {
+							myKeyToSubscriptions.remove(nextKey);
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Returns <code>false</code> if any search parameter that the compiled criteria depend on
+		 * has been changed in the search parameter registry since they were compiled. The registry
+		 * creates new instances of custom search parameters each time it refreshes, so parameters
+		 * are compared by content rather than by identity.
+		 */
+		boolean isCurrent(String theResourceType) {
+			for (Map.Entry<String, RuntimeSearchParam> nextEntry : myDependencies.entrySet()) {
+				if (!isSameSearchParam(mySearchParamRegistry.getActiveSearchParam(theResourceType, nextEntry.getKey()), nextEntry.getValue())) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+	}
+
+	/**
+	 * Returns <code>true</code> if the two search parameters would produce the same compiled criteria
+	 */
+	static boolean isSameSearchParam(RuntimeSearchParam theFirst, RuntimeSearchParam theSecond) {
+		if (theFirst == theSecond) {
+			return true;
+		}
+		if (theFirst == null || theSecond == null) {
+			return false;
+		}
+		return Objects.equals(theFirst.getName(), theSecond.getName())
+			&& theFirst.getParamType() == theSecond.getParamType()
+			&& Objects.equals(theFirst.getPath(), theSecond.getPath())
+			&& Objects.equals(theFirst.getBase(), theSecond.getBase())
+			&& Objects.equals(theFirst.getTargets(), theSecond.getTargets());
+	}
+
+}
@@ -57,6 +57,8 @@ public class SubscriptionRegistry {
 	private SubscriptionChannelRegistry mySubscriptionChannelRegistry;
 	@Autowired
 	private IInterceptorBroadcaster myInterceptorBroadcaster;
+	@Autowired
+	private SubscriptionCriteriaIndex mySubscriptionCriteriaIndex;
 
 	/**
 	 * Constructor
@@ -93,6 +95,7 @@ public class SubscriptionRegistry {
 		ActiveSubscription activeSubscription = new ActiveSubscription(canonicalized, channelName);
 		mySubscriptionChannelRegistry.add(activeSubscription);
 		myActiveSubscriptionCache.put(subscriptionId, activeSubscription);
+		mySubscriptionCriteriaIndex.add(activeSubscription);
 
 		ourLog.info("Registered active subscription Subscription/{} - Have {} registered", subscriptionId, myActiveSubscriptionCache.size());
 
@@ -108,6 +111,7 @@ public class SubscriptionRegistry {
 
 		ActiveSubscription activeSubscription = myActiveSubscriptionCache.remove(theSubscriptionId);
 		if (activeSubscription != null) {
+			mySubscriptionCriteriaIndex.remove(theSubscriptionId);
 			mySubscriptionChannelRegistry.remove(activeSubscription);
 			ourLog.info("Unregistered active subscription {} - Have {} registered", theSubscriptionId, myActiveSubscriptionCache.size());
 
@@ -167,6 +171,7 @@ public class SubscriptionRegistry {
 		Validate.notNull(activeSubscription);
 		CanonicalSubscription canonicalized = mySubscriptionCanonicalizer.canonicalize(theSubscription);
 		activeSubscription.setSubscription(canonicalized);
+		mySubscriptionCriteriaIndex.add(activeSubscription);
 
 		// Interceptor call: SUBSCRIPTION_AFTER_ACTIVE_SUBSCRIPTION_REGISTERED
 		HookParams params = new HookParams()
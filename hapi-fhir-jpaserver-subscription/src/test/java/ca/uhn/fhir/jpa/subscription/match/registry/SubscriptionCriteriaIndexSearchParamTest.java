@@ -0,0 +1,37 @@
+package ca.uhn.fhir.jpa.subscription.match.registry;
+
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import ca.uhn.fhir.rest.api.RestSearchParameterTypeEnum;
+import com.google.common.collect.Sets;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SubscriptionCriteriaIndexSearchParamTest {
+
+	@Test
+	public void testRebuiltSearchParamIsTheSame() {
+		RuntimeSearchParam original = createSearchParam("Observation.subject", "Observation");
+		RuntimeSearchParam rebuilt = createSearchParam("Observation.subject", "Observation");
+
+		assertTrue(SubscriptionCriteriaIndex.isSameSearchParam(original, rebuilt));
+		assertTrue(SubscriptionCriteriaIndex.isSameSearchParam(original, new RuntimeSearchParam(original)));
+	}
+
+	@Test
+	public void testChangedSearchParamIsDifferent() {
+		RuntimeSearchParam original = createSearchParam("Observation.subject", "Observation");
+
+		assertFalse(SubscriptionCriteriaIndex.isSameSearchParam(original, createSearchParam("Observation.performer", "Observation")));
+		assertFalse(SubscriptionCriteriaIndex.isSameSearchParam(original, createSearchParam("Observation.subject", "Observation", "Basic")));
+		assertFalse(SubscriptionCriteriaIndex.isSameSearchParam(original, null));
+	}
+
+	private static RuntimeSearchParam createSearchParam(String thePath, String... theBase) {
+		return new RuntimeSearchParam(null, "http://example.com/SearchParameter/subject", "subject", "Subject", thePath, RestSearchParameterTypeEnum.REFERENCE, null, Collections.emptySet(), Sets.newHashSet("Patient"), null, Sets.newHashSet(theBase));
+	}
+
+}
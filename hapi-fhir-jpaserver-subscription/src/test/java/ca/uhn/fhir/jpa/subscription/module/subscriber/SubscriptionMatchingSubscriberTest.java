@@ -2,6 +2,9 @@ package ca.uhn.fhir.jpa.subscription.module.subscriber;
 
 import ca.uhn.fhir.jpa.subscription.module.standalone.BaseBlockingQueueSubscribableChannelDstu3Test;
 import ca.uhn.fhir.rest.api.Constants;
+import org.hl7.fhir.dstu3.model.IdType;
+import org.hl7.fhir.dstu3.model.Observation;
+import org.hl7.fhir.dstu3.model.Reference;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -77,4 +80,26 @@ public class SubscriptionMatchingSubscriberTest extends BaseBlockingQueueSubscri
 
 		assertEquals(0, ourContentTypes.size());
 	}
+
+	@Test
+	public void testRestHookSubscriptionReferenceCriteria() throws Exception {
+		String payload = "application/fhir+json";
+
+		sendSubscription("Observation?subject=Patient/123", payload, ourListenerServerBase);
+		sendSubscription("Observation?subject=Patient/456", payload, ourListenerServerBase);
+		sendSubscription("Observation?subject=Patient/123&status=preliminary", payload, ourListenerServerBase);
+
+		assertEquals(3, mySubscriptionRegistry.size());
+
+		Observation observation = new Observation();
+		observation.setId(new IdType("Observation", nextId()));
+		observation.setSubject(new Reference("Patient/123"));
+		observation.setStatus(Observation.ObservationStatus.FINAL);
+
+		ourObservationListener.setExpectedCount(1);
+		sendResource(observation);
+		ourObservationListener.awaitExpected();
+
+		assertEquals(1, ourContentTypes.size());
+	}
 }
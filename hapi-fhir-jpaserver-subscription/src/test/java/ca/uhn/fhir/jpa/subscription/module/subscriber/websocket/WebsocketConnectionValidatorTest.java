@@ -9,6 +9,7 @@ import ca.uhn.fhir.jpa.model.entity.ModelConfig;
 import ca.uhn.fhir.jpa.model.sched.ISchedulerService;
 import ca.uhn.fhir.jpa.searchparam.MatchUrlService;
 import ca.uhn.fhir.jpa.searchparam.matcher.InMemoryResourceMatcher;
+import ca.uhn.fhir.jpa.searchparam.matcher.IndexedSearchParamExtractor;
 import ca.uhn.fhir.jpa.searchparam.matcher.SearchParamMatcher;
 import ca.uhn.fhir.jpa.searchparam.registry.ISearchParamRegistry;
 import ca.uhn.fhir.jpa.subscription.channel.config.SubscriptionChannelConfig;
@@ -61,6 +62,8 @@ public class WebsocketConnectionValidatorTest {
 	@MockBean
 	InMemoryResourceMatcher myInMemoryResourceMatcher;
 	@MockBean
+	IndexedSearchParamExtractor myIndexedSearchParamExtractor;
+	@MockBean
 	ISchedulerService mySchedulerService;
 	@MockBean
 	SubscriptionRegistry mySubscriptionRegistry;
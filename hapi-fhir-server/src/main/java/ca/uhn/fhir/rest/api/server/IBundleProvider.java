@@ -86,6 +86,20 @@ public interface IBundleProvider {
 		return null;
 	}
 
+	/**
+	 * If this method is implemented, provides an opaque token which identifies the
+	 * position just after the last resource returned by the most recent call to
+	 * {@link #getResources(int, int)}. The server adds this token to the link for the
+	 * next page, which allows implementations to resume from that position
+	 * (e.g. using a bounded range scan) instead of skipping over all of the
+	 * preceding results again.
+	 *
+	 * @since 5.2.0
+	 */
+	default String getNextSeekToken() {
+		return null;
+	}
+
 	/**
 	 * Returns the instant as of which this result was created. The
 	 * result of this value is used to populate the <code>lastUpdated</code>
@@ -113,6 +127,23 @@ public interface IBundleProvider {
 	@Nonnull
 	List<IBaseResource> getResources(int theFromIndex, int theToIndex);
 
+	/**
+	 * Loads resources exactly as {@link #getResources(int, int)} does, but is only called by the server
+	 * when the returned resources will be encoded directly into the response as compact JSON, without
+	 * filtering and without any interceptor being able to inspect or modify them. Implementations may
+	 * therefore return resources which carry their stored JSON body (see
+	 * {@link ca.uhn.fhir.rest.api.Constants#RESOURCE_RAW_JSON_BODY}) instead of parsed contents.
+	 * <p>
+	 * The default implementation simply calls {@link #getResources(int, int)}.
+	 * </p>
+	 *
+	 * @since 5.2.0
+	 */
+	@Nonnull
+	default List<IBaseResource> getResourcesForRawJsonResponse(int theFromIndex, int theToIndex) {
+		return getResources(theFromIndex, theToIndex);
+	}
+
 	/**
 	 * Returns the UUID associated with this search. Note that this
 	 * does not need to return a non-null value unless it a
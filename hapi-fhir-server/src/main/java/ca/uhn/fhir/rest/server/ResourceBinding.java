@@ -21,12 +21,20 @@ package ca.uhn.fhir.rest.server;
  */
 
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.server.method.BaseMethodBinding;
 import ca.uhn.fhir.rest.server.method.MethodMatchEnum;
 
+import static org.apache.commons.lang3.StringUtils.defaultIfBlank;
+
 /**
  * Holds all method bindings for an individual resource type
  */
@@ -36,6 +44,7 @@ public class ResourceBinding {
 
 	private String resourceName;
 	private List<BaseMethodBinding<?>> myMethodBindings = new ArrayList<>();
+	private volatile MethodIndex myMethodIndex;
 
 	/**
 	 * Constructor
@@ -61,13 +70,22 @@ public class ResourceBinding {
 		ourLog.debug("Looking for a handler for {}", theRequest);
 
 		/*
-		 * Look for the method with the highest match strength
+		 * Narrow the list down to the methods that could possibly match the request
+		 * type and operation, and then look for the method with the highest match
+		 * strength. The candidate lists preserve the declaration order of the methods,
+		 * so the result is the same as if every method had been tested.
 		 */
 
+		MethodIndex methodIndex = myMethodIndex;
+		if (methodIndex == null) {
+			methodIndex = new MethodIndex(myMethodBindings);
+			myMethodIndex = methodIndex;
+		}
+
 		BaseMethodBinding<?> matchedMethod = null;
 		MethodMatchEnum matchedMethodStrength = null;
 
-		for (BaseMethodBinding<?> rm : myMethodBindings) {
+		for (BaseMethodBinding<?> rm : methodIndex.getCandidates(theRequest)) {
 			MethodMatchEnum nextMethodMatch = rm.incomingServerRequestMatchesMethod(theRequest);
 			if (nextMethodMatch != MethodMatchEnum.NONE) {
 				if (matchedMethodStrength == null || matchedMethodStrength.ordinal() < nextMethodMatch.ordinal()) {
@@ -97,10 +115,12 @@ public class ResourceBinding {
 
 	public void setMethods(List<BaseMethodBinding<?>> methods) {
 		this.myMethodBindings = methods;
+		this.myMethodIndex = null;
 	}
 
 	public void addMethod(BaseMethodBinding<?> method) {
 		this.myMethodBindings.add(method);
+		this.myMethodIndex = null;
 	}
 
 	@Override
@@ -115,4 +135,91 @@ public class ResourceBinding {
 		return 0;
 	}
 
+	/**
+	 * Index of the method bindings by request type and operation name. The index is
+	 * built from {@link BaseMethodBinding#getPossibleRequestTypes()} and
+	 * {@link BaseMethodBinding#getPossibleOperations()}, so each candidate list is a
+	 * superset of the methods that can actually match a request, and the full
+	 * {@link BaseMethodBinding#incomingServerRequestMatchesMethod(RequestDetails)}
+	 * check is still applied to each candidate.
+	 */
+	private static class MethodIndex {
+
+		private static final String NO_OPERATION = "";
+
+		private final List<BaseMethodBinding<?>> myAllMethods;
+		private final Map<RequestTypeEnum, Map<String, List<BaseMethodBinding<?>>>> myRequestTypeToOperationToMethods = new EnumMap<>(RequestTypeEnum.class);
+		private final Map<RequestTypeEnum, List<BaseMethodBinding<?>>> myRequestTypeToAnyOperationMethods = new EnumMap<>(RequestTypeEnum.class);
+
+		MethodIndex(List<BaseMethodBinding<?>> theMethods) {
+			myAllMethods = new ArrayList<>(theMethods);
+
+			Set<String> operations = new HashSet<>();
+			operations.add(NO_OPERATION);
+			for (BaseMethodBinding<?> next : myAllMethods) {
+				Set<String> possibleOperations = next.getPossibleOperations();
+				if (possibleOperations != null) {
+					for (String nextOperation : possibleOperations) {
+						if (nextOperation != null) {
+							operations.add(nextOperation);
+						}
+					}
+				}
+			}
+
+			for (RequestTypeEnum nextRequestType : RequestTypeEnum.values()) {
+				Map<String, List<BaseMethodBinding<?>>> operationToMethods = new HashMap<>();
+				for (String nextOperation : operations) {
+					List<BaseMethodBinding<?>> methods = new ArrayList<>();
+					for (BaseMethodBinding<?> next : myAllMethods) {
+						if (isPossibleRequestType(next, nextRequestType) && isPossibleOperation(next, nextOperation)) {
+							methods.add(next);
+						}
+					}
+					operationToMethods.put(nextOperation, methods);
+				}
+				myRequestTypeToOperationToMethods.put(nextRequestType, operationToMethods);
+
+				List<BaseMethodBinding<?>> anyOperationMethods = new ArrayList<>();
+				for (BaseMethodBinding<?> next : myAllMethods) {
+					if (isPossibleRequestType(next, nextRequestType) && next.getPossibleOperations() == null) {
+						anyOperationMethods.add(next);
+					}
+				}
+				myRequestTypeToAnyOperationMethods.put(nextRequestType, anyOperationMethods);
+			}
+		}
+
+		List<BaseMethodBinding<?>> getCandidates(RequestDetails theRequest) {
+			RequestTypeEnum requestType = theRequest.getRequestType();
+			if (requestType == null) {
+				return myAllMethods;
+			}
+
+			String operation = defaultIfBlank(theRequest.getOperation(), NO_OPERATION);
+			List<BaseMethodBinding<?>> retVal = myRequestTypeToOperationToMethods.get(requestType).get(operation);
+			if (retVal == null) {
+				retVal = myRequestTypeToAnyOperationMethods.get(requestType);
+			}
+			return retVal;
+		}
+
+		private static boolean isPossibleRequestType(BaseMethodBinding<?> theMethod, RequestTypeEnum theRequestType) {
+			Set<RequestTypeEnum> requestTypes = theMethod.getPossibleRequestTypes();
+			return requestTypes == null || requestTypes.contains(theRequestType);
+		}
+
+		private static boolean isPossibleOperation(BaseMethodBinding<?> theMethod, String theOperation) {
+			Set<String> operations = theMethod.getPossibleOperations();
+			if (operations == null) {
+				return true;
+			}
+			if (NO_OPERATION.equals(theOperation)) {
+				return operations.contains(null);
+			}
+			return operations.contains(theOperation);
+		}
+
+	}
+
 }
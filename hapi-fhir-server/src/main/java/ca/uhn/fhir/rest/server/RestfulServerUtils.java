@@ -270,6 +270,14 @@ public class RestfulServerUtils {
 	}
 
 	public static String createOffsetPagingLink(String theServerBase, String requestPath, String tenantId, Integer theOffset, Integer theCount, Map<String, String[]> theRequestParameters) {
+		return createOffsetPagingLink(theServerBase, requestPath, tenantId, theOffset, theCount, theRequestParameters, null);
+	}
+
+	/**
+	 * @param theSeekToken If not blank, added to the link as the {@link Constants#PARAM_SEEK} parameter. Any seek token in the
+	 *                     request parameters is never copied to the link.
+	 */
+	public static String createOffsetPagingLink(String theServerBase, String requestPath, String tenantId, Integer theOffset, Integer theCount, Map<String, String[]> theRequestParameters, String theSeekToken) {
 		StringBuilder b = new StringBuilder();
 		b.append(theServerBase);
 
@@ -285,6 +293,10 @@ public class RestfulServerUtils {
 		Map<String, String[]> params = Maps.newLinkedHashMap(theRequestParameters);
 		params.put(Constants.PARAM_OFFSET, new String[]{String.valueOf(theOffset)});
 		params.put(Constants.PARAM_COUNT, new String[]{String.valueOf(theCount)});
+		params.remove(Constants.PARAM_SEEK);
+		if (isNotBlank(theSeekToken)) {
+			params.put(Constants.PARAM_SEEK, new String[]{theSeekToken});
+		}
 
 		boolean first = true;
 		for (String nextParamName : new TreeSet<>(params.keySet())) {
@@ -307,17 +319,26 @@ public class RestfulServerUtils {
 	public static String createPagingLink(Set<Include> theIncludes, RequestDetails theRequestDetails, String theSearchId, int theOffset, int theCount, Map<String, String[]> theRequestParameters, boolean thePrettyPrint,
 													  BundleTypeEnum theBundleType) {
 		return createPagingLink(theIncludes, theRequestDetails, theSearchId, theOffset, theCount, theRequestParameters, thePrettyPrint,
-			theBundleType, null);
+			theBundleType, null, null);
+	}
+
+	/**
+	 * @param theSeekToken If not blank, added to the link as the {@link Constants#PARAM_SEEK} parameter
+	 */
+	public static String createPagingLink(Set<Include> theIncludes, RequestDetails theRequestDetails, String theSearchId, int theOffset, int theCount, Map<String, String[]> theRequestParameters, boolean thePrettyPrint,
+													  BundleTypeEnum theBundleType, String theSeekToken) {
+		return createPagingLink(theIncludes, theRequestDetails, theSearchId, theOffset, theCount, theRequestParameters, thePrettyPrint,
+			theBundleType, null, theSeekToken);
 	}
 
 	public static String createPagingLink(Set<Include> theIncludes, RequestDetails theRequestDetails, String theSearchId, String thePageId, Map<String, String[]> theRequestParameters, boolean thePrettyPrint,
 													  BundleTypeEnum theBundleType) {
 		return createPagingLink(theIncludes, theRequestDetails, theSearchId, null, null, theRequestParameters, thePrettyPrint,
-			theBundleType, thePageId);
+			theBundleType, thePageId, null);
 	}
 
 	private static String createPagingLink(Set<Include> theIncludes, RequestDetails theRequestDetails, String theSearchId, Integer theOffset, Integer theCount, Map<String, String[]> theRequestParameters, boolean thePrettyPrint,
-														BundleTypeEnum theBundleType, String thePageId) {
+														BundleTypeEnum theBundleType, String thePageId, String theSeekToken) {
 
 		String serverBase = theRequestDetails.getFhirServerBase();
 
@@ -346,6 +367,12 @@ public class RestfulServerUtils {
 			b.append('=');
 			b.append(UrlUtil.escapeUrlParam(thePageId));
 		}
+		if (isNotBlank(theSeekToken)) {
+			b.append('&');
+			b.append(Constants.PARAM_SEEK);
+			b.append('=');
+			b.append(UrlUtil.escapeUrlParam(theSeekToken));
+		}
 		String[] strings = theRequestParameters.get(Constants.PARAM_FORMAT);
 		if (strings != null && strings.length > 0) {
 			b.append('&');
@@ -648,6 +675,17 @@ public class RestfulServerUtils {
 		return RestfulServerUtils.tryToExtractNamedParameter(theRequest, Constants.PARAM_OFFSET);
 	}
 
+	/**
+	 * Returns the value of the {@link Constants#PARAM_SEEK} parameter, or <code>null</code> if there isn't one
+	 */
+	public static String extractSeekParameter(RequestDetails theRequest) {
+		String[] values = theRequest.getParameters().get(Constants.PARAM_SEEK);
+		if (values == null || values.length == 0 || isBlank(values[0])) {
+			return null;
+		}
+		return values[0];
+	}
+
 	public static IPrimitiveType<Date> extractLastUpdatedFromResource(IBaseResource theResource) {
 		IPrimitiveType<Date> lastUpdated = null;
 		if (theResource instanceof IResource) {
@@ -37,6 +37,7 @@ public class SimpleBundleProvider implements IBundleProvider {
 	private Integer myPreferredPageSize;
 	private Integer mySize;
 	private IPrimitiveType<Date> myPublished = InstantDt.withCurrentTime();
+	private String myNextSeekToken;
 
 	/**
 	 * Constructor
@@ -127,4 +128,20 @@ public class SimpleBundleProvider implements IBundleProvider {
 		return mySize;
 	}
 
+	/**
+	 * Defaults to null
+	 */
+	@Override
+	public String getNextSeekToken() {
+		return myNextSeekToken;
+	}
+
+	/**
+	 * Sets the token to be returned by {@link #getNextSeekToken()}.
+	 * Default is <code>null</code>.
+	 */
+	public void setNextSeekToken(String theNextSeekToken) {
+		myNextSeekToken = theNextSeekToken;
+	}
+
 }
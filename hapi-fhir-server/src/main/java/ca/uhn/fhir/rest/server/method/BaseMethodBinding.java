@@ -28,6 +28,7 @@ import ca.uhn.fhir.model.api.IResource;
 import ca.uhn.fhir.model.api.Include;
 import ca.uhn.fhir.rest.annotation.*;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
 import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.api.server.IRestfulServer;
@@ -219,6 +220,27 @@ public abstract class BaseMethodBinding<T> {
 
 	public abstract MethodMatchEnum incomingServerRequestMatchesMethod(RequestDetails theRequest);
 
+	/**
+	 * Returns the request types that this method could possibly match, or <code>null</code> if
+	 * the method could match any request type. This is used to narrow down the candidate methods
+	 * for a request before {@link #incomingServerRequestMatchesMethod(RequestDetails)} is called,
+	 * so it must never exclude a request type that the method is able to match.
+	 */
+	public Set<RequestTypeEnum> getPossibleRequestTypes() {
+		return null;
+	}
+
+	/**
+	 * Returns the operation names (as returned by {@link RequestDetails#getOperation()}) that this
+	 * method could possibly match, or <code>null</code> if the method could match any operation. A
+	 * <code>null</code> element in the returned set means that the method can match requests which
+	 * have no operation. Like {@link #getPossibleRequestTypes()}, this must never exclude an
+	 * operation that the method is able to match.
+	 */
+	public Set<String> getPossibleOperations() {
+		return null;
+	}
+
 	public abstract Object invokeServer(IRestfulServer<?> theServer, RequestDetails theRequest) throws BaseServerResponseException, IOException;
 
 	protected final Object invokeServerMethod(IRestfulServer<?> theServer, RequestDetails theRequest, Object[] theMethodParams) {
@@ -110,6 +110,16 @@ abstract class BaseOutcomeReturningMethodBinding extends BaseMethodBinding<Metho
 		}
 	}
 
+	@Override
+	public Set<RequestTypeEnum> getPossibleRequestTypes() {
+		return provideAllowableRequestTypes();
+	}
+
+	@Override
+	public Set<String> getPossibleOperations() {
+		return Collections.singleton(getMatchingOperation());
+	}
+
 	@Override
 	public MethodMatchEnum incomingServerRequestMatchesMethod(RequestDetails theRequest) {
 		Set<RequestTypeEnum> allowableRequestTypes = provideAllowableRequestTypes();
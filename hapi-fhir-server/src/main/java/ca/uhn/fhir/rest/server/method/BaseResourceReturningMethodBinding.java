@@ -135,7 +135,7 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 				}
 			}
 			if (numToReturn > 0) {
-				resourceList = theResult.getResources(0, numToReturn);
+				resourceList = loadResources(theRequest, theResult, 0, numToReturn);
 			} else {
 				resourceList = Collections.emptyList();
 			}
@@ -154,7 +154,7 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 			}
 
 			if (numToReturn > 0 || theResult.getCurrentPageId() != null) {
-				resourceList = theResult.getResources(theOffset, numToReturn + theOffset);
+				resourceList = loadResources(theRequest, theResult, theOffset, numToReturn + theOffset);
 			} else {
 				resourceList = Collections.emptyList();
 			}
@@ -215,7 +215,7 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 			// Paging without caching
 			// We're doing requestOffset pages
 			if (numTotalResults == null || myOffset + numToReturn < numTotalResults) {
-				linkNext = (RestfulServerUtils.createOffsetPagingLink(serverBase, theRequest.getRequestPath(), theRequest.getTenantId(), myOffset + numToReturn, numToReturn, theRequest.getParameters()));
+				linkNext = (RestfulServerUtils.createOffsetPagingLink(serverBase, theRequest.getRequestPath(), theRequest.getTenantId(), myOffset + numToReturn, numToReturn, theRequest.getParameters(), theResult.getNextSeekToken()));
 			}
 			if (myOffset > 0) {
 				int start = Math.max(0, myOffset - numToReturn);
@@ -239,7 +239,7 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 			 */
 			if (resourceList.size() > 0) {
 				if (numTotalResults == null || theOffset + numToReturn < numTotalResults) {
-					linkNext = (RestfulServerUtils.createPagingLink(theIncludes, theRequest, searchId, theOffset + numToReturn, numToReturn, theRequest.getParameters(), prettyPrint, theBundleType));
+					linkNext = (RestfulServerUtils.createPagingLink(theIncludes, theRequest, searchId, theOffset + numToReturn, numToReturn, theRequest.getParameters(), prettyPrint, theBundleType, theResult.getNextSeekToken()));
 				}
 				if (theOffset > 0) {
 				int start = Math.max(0, theOffset - numToReturn);
@@ -262,6 +262,18 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 
 	}
 
+	/**
+	 * Loads the resources for the bundle being returned. If the request is eligible for a raw JSON
+	 * response, the bundle provider is told that these resources will go straight into the response
+	 * so that it can avoid parsing them.
+	 */
+	private static List<IBaseResource> loadResources(RequestDetails theRequest, IBundleProvider theResult, int theFromIndex, int theToIndex) {
+		if (Boolean.TRUE.equals(theRequest.getUserData().get(Constants.REQUEST_RAW_JSON_RESPONSE_ELIGIBLE))) {
+			return theResult.getResourcesForRawJsonResponse(theFromIndex, theToIndex);
+		}
+		return theResult.getResources(theFromIndex, theToIndex);
+	}
+
 	public IBaseResource doInvokeServer(IRestfulServer<?> theServer, RequestDetails theRequest) {
 		Object[] params = createMethodParams(theRequest);
 
@@ -372,6 +384,10 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 	@Override
 	public Object invokeServer(IRestfulServer<?> theServer, RequestDetails theRequest) throws BaseServerResponseException, IOException {
 
+		if (isRawJsonResponseEligible(theServer, theRequest)) {
+			theRequest.getUserData().put(Constants.REQUEST_RAW_JSON_RESPONSE_ELIGIBLE, Boolean.TRUE);
+		}
+
 		IBaseResource response = doInvokeServer(theServer, theRequest);
 		if (response == null) {
 			return null;
@@ -395,6 +411,54 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 
 	public abstract Object invokeServer(IRestfulServer<?> theServer, RequestDetails theRequest, Object[] theMethodParams) throws InvalidRequestException, InternalErrorException;
 
+	/**
+	 * Returns <code>true</code> if resources returned by this request may be supplied as
+	 * raw stored JSON (see {@link Constants#RESOURCE_RAW_JSON_BODY}), meaning that the response
+	 * is a read or search that will be encoded as compact JSON, with no element filtering,
+	 * and that no interceptor is able to inspect or modify the outgoing response.
+	 */
+	private boolean isRawJsonResponseEligible(IRestfulServer<?> theServer, RequestDetails theRequest) {
+		RestOperationTypeEnum operationType = getRestOperationType(theRequest);
+		if (operationType == null) {
+			return false;
+		}
+		switch (operationType) {
+			case READ:
+			case VREAD:
+			case SEARCH_TYPE:
+			case SEARCH_SYSTEM:
+			case GET_PAGE:
+				break;
+			default:
+				return false;
+		}
+
+		if (theRequest.getInterceptorBroadcaster() != null && theRequest.getInterceptorBroadcaster().hasHooks(Pointcut.SERVER_OUTGOING_RESPONSE)) {
+			return false;
+		}
+		if (getContext().getNarrativeGenerator() != null) {
+			return false;
+		}
+
+		EncodingEnum encoding = theServer.getDefaultResponseEncoding();
+		ResponseEncoding responseEncoding = RestfulServerUtils.determineResponseEncodingNoDefault(theRequest, encoding);
+		if (responseEncoding != null) {
+			encoding = responseEncoding.getEncoding();
+		}
+		if (encoding != EncodingEnum.JSON) {
+			return false;
+		}
+
+		if (RestfulServerUtils.prettyPrintResponse(theServer, theRequest)) {
+			return false;
+		}
+		Map<String, String[]> parameters = theRequest.getParameters();
+		return !parameters.containsKey(Constants.PARAM_SUMMARY)
+			&& !parameters.containsKey(Constants.PARAM_NARRATIVE)
+			&& !parameters.containsKey(Constants.PARAM_ELEMENTS)
+			&& !parameters.containsKey(Constants.PARAM_ELEMENTS + Constants.PARAM_ELEMENTS_EXCLUDE_MODIFIER);
+	}
+
 	/**
 	 * Should the response include a Content-Location header. Search method bunding (and any others?) may override this to disable the content-location, since it doesn't make sense
 	 */
@@ -42,6 +42,8 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.Writer;
 import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Set;
 
 public class GraphQLMethodBinding extends BaseMethodBinding<String> {
 
@@ -75,6 +77,16 @@ public class GraphQLMethodBinding extends BaseMethodBinding<String> {
 		return true;
 	}
 
+	@Override
+	public Set<RequestTypeEnum> getPossibleRequestTypes() {
+		return Collections.singleton(myMethodRequestType);
+	}
+
+	@Override
+	public Set<String> getPossibleOperations() {
+		return Collections.singleton(Constants.OPERATION_NAME_GRAPHQL);
+	}
+
 	@Override
 	public MethodMatchEnum incomingServerRequestMatchesMethod(RequestDetails theRequest) {
 		if (Constants.OPERATION_NAME_GRAPHQL.equals(theRequest.getOperation()) && myMethodRequestType.equals(theRequest.getRequestType())) {
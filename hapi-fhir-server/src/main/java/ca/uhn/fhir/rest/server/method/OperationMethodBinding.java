@@ -51,7 +51,9 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
@@ -225,6 +227,19 @@ public class OperationMethodBinding extends BaseResourceReturningMethodBinding {
 		return myReturnType;
 	}
 
+	@Override
+	public Set<RequestTypeEnum> getPossibleRequestTypes() {
+		return EnumSet.of(RequestTypeEnum.GET, RequestTypeEnum.POST);
+	}
+
+	@Override
+	public Set<String> getPossibleOperations() {
+		if (myName.equals(WILDCARD_NAME)) {
+			return null;
+		}
+		return Collections.singleton(myName);
+	}
+
 	@Override
 	public MethodMatchEnum incomingServerRequestMatchesMethod(RequestDetails theRequest) {
 		if (isBlank(theRequest.getOperation())) {
@@ -40,6 +40,7 @@ import org.hl7.fhir.instance.model.api.IBaseResource;
 
 import javax.annotation.Nonnull;
 import java.lang.reflect.Method;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -173,6 +174,11 @@ public class PageMethodBinding extends BaseResourceReturningMethodBinding {
 		return RestOperationTypeEnum.GET_PAGE;
 	}
 
+	@Override
+	public Set<RequestTypeEnum> getPossibleRequestTypes() {
+		return Collections.singleton(RequestTypeEnum.GET);
+	}
+
 	@Override
 	public MethodMatchEnum incomingServerRequestMatchesMethod(RequestDetails theRequest) {
 		String[] pageId = theRequest.getParameters().get(Constants.PARAM_PAGINGACTION);
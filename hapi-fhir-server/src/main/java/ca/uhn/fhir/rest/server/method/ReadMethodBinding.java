@@ -41,6 +41,7 @@ import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.NotModifiedException;
 import ca.uhn.fhir.util.DateUtils;
+import com.google.common.collect.Sets;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.hl7.fhir.instance.model.api.IBaseResource;
@@ -50,6 +51,7 @@ import javax.annotation.Nonnull;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
 
@@ -113,6 +115,16 @@ public class ReadMethodBinding extends BaseResourceReturningMethodBinding {
 		return ReturnTypeEnum.RESOURCE;
 	}
 
+	@Override
+	public Set<RequestTypeEnum> getPossibleRequestTypes() {
+		return EnumSet.of(RequestTypeEnum.GET, RequestTypeEnum.HEAD);
+	}
+
+	@Override
+	public Set<String> getPossibleOperations() {
+		return Sets.newHashSet(null, Constants.PARAM_HISTORY);
+	}
+
 	@Override
 	public MethodMatchEnum incomingServerRequestMatchesMethod(RequestDetails theRequest) {
 		if (!theRequest.getResourceName().equals(getResourceName())) {
@@ -22,7 +22,9 @@ package ca.uhn.fhir.rest.server.method;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 import java.lang.reflect.Method;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import org.hl7.fhir.instance.model.api.IBaseResource;
 
@@ -87,6 +89,16 @@ public class TransactionMethodBinding extends BaseResourceReturningMethodBinding
 		return ReturnTypeEnum.BUNDLE;
 	}
 
+	@Override
+	public Set<RequestTypeEnum> getPossibleRequestTypes() {
+		return Collections.singleton(RequestTypeEnum.POST);
+	}
+
+	@Override
+	public Set<String> getPossibleOperations() {
+		return Collections.singleton(null);
+	}
+
 	@Override
 	public MethodMatchEnum incomingServerRequestMatchesMethod(RequestDetails theRequest) {
 		if (theRequest.getRequestType() != RequestTypeEnum.POST) {
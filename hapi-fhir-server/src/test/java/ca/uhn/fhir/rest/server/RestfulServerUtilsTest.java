@@ -4,6 +4,9 @@ import ca.uhn.fhir.rest.api.PreferHeader;
 import ca.uhn.fhir.rest.api.PreferReturnEnum;
 import org.junit.jupiter.api.Test;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class RestfulServerUtilsTest{
@@ -28,4 +31,17 @@ public class RestfulServerUtilsTest{
 		assertEquals(null, header.getReturn());
 		assertTrue(header.getRespondAsync());
 	}
+
+	@Test
+	public void testCreateOffsetPagingLinkWithSeekToken() {
+		Map<String, String[]> params = new HashMap<>();
+		params.put("name", new String[]{"smith"});
+		params.put("_seek", new String[]{"OLD"});
+
+		String link = RestfulServerUtils.createOffsetPagingLink("http://foo", "Patient", null, 20, 10, params, "NEW");
+		assertEquals("http://foo/Patient?_count=10&_offset=20&_seek=NEW&name=smith", link);
+
+		link = RestfulServerUtils.createOffsetPagingLink("http://foo", "Patient", null, 0, 10, params);
+		assertEquals("http://foo/Patient?_count=10&_offset=0&name=smith", link);
+	}
 }
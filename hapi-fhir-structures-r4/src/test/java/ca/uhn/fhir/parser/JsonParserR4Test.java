@@ -852,6 +852,94 @@ public class JsonParserR4Test extends BaseTest {
 		assertEquals(auditEvent, auditEventAsString);
 	}
 
+	@Test
+	public void testEncodeResourceWithRawJsonBody() {
+		Patient input = createPatientForRawJsonBody();
+		String expected = ourCtx.newJsonParser().encodeResourceToString(input);
+
+		Patient stub = createRawJsonBodyStub(input);
+		String actual = ourCtx.newJsonParser().encodeResourceToString(stub);
+		ourLog.info(actual);
+
+		assertEquals(expected, actual);
+		assertThat(actual, stringContainsInOrder("\"id\":\"123\"", "\"meta\":", "\"versionId\":\"2\"", "\"name\":", "\"family\":\"FAMILY\""));
+	}
+
+	@Test
+	public void testEncodeResourceWithRawJsonBodyInBundle() {
+		Patient input = createPatientForRawJsonBody();
+		Bundle expectedBundle = new Bundle();
+		expectedBundle.setType(Bundle.BundleType.SEARCHSET);
+		expectedBundle.addEntry().setFullUrl("http://foo/Patient/123").setResource(input);
+		expectedBundle.addEntry().setFullUrl("http://foo/Patient/123").setResource(input);
+		String expected = ourCtx.newJsonParser().encodeResourceToString(expectedBundle);
+
+		Bundle actualBundle = new Bundle();
+		actualBundle.setType(Bundle.BundleType.SEARCHSET);
+		actualBundle.addEntry().setFullUrl("http://foo/Patient/123").setResource(createRawJsonBodyStub(input));
+		actualBundle.addEntry().setFullUrl("http://foo/Patient/123").setResource(createRawJsonBodyStub(input));
+		String actual = ourCtx.newJsonParser().encodeResourceToString(actualBundle);
+
+		assertEquals(expected, actual);
+	}
+
+	/**
+	 * Settings which filter or reformat the output can't be applied to raw content, so
+	 * the raw body is parsed in those cases
+	 */
+	@Test
+	public void testEncodeResourceWithRawJsonBodyFallsBackToParsing() {
+		Patient input = createPatientForRawJsonBody();
+		Patient stub = createRawJsonBodyStub(input);
+
+		assertEquals(ourCtx.newJsonParser().setPrettyPrint(true).encodeResourceToString(input), ourCtx.newJsonParser().setPrettyPrint(true).encodeResourceToString(stub));
+		assertEquals(ourCtx.newJsonParser().setSummaryMode(true).encodeResourceToString(input), ourCtx.newJsonParser().setSummaryMode(true).encodeResourceToString(stub));
+		assertEquals(ourCtx.newJsonParser().setSuppressNarratives(true).encodeResourceToString(input), ourCtx.newJsonParser().setSuppressNarratives(true).encodeResourceToString(stub));
+		assertEquals(ourCtx.newJsonParser().setEncodeElements(Sets.newHashSet("Patient.name")).encodeResourceToString(input), ourCtx.newJsonParser().setEncodeElements(Sets.newHashSet("Patient.name")).encodeResourceToString(stub));
+		assertEquals(ourCtx.newXmlParser().encodeResourceToString(input), ourCtx.newXmlParser().encodeResourceToString(ourCtx.newJsonParser().parseResource(ourCtx.newJsonParser().encodeResourceToString(stub))));
+
+		// Other encodings parse the raw body, including inside a bundle
+		assertEquals(ourCtx.newXmlParser().encodeResourceToString(input), ourCtx.newXmlParser().encodeResourceToString(stub));
+		Bundle expectedBundle = new Bundle();
+		expectedBundle.addEntry().setResource(input);
+		Bundle actualBundle = new Bundle();
+		actualBundle.addEntry().setResource(stub);
+		assertEquals(ourCtx.newXmlParser().encodeResourceToString(expectedBundle), ourCtx.newXmlParser().encodeResourceToString(actualBundle));
+
+		// Raw body not in compact form
+		stub.setUserData(Constants.RESOURCE_RAW_JSON_BODY, "{\"resourceType\":\"Patient\" , \"active\":true}");
+		assertEquals("{\"resourceType\":\"Patient\",\"id\":\"123\",\"meta\":{\"versionId\":\"2\",\"lastUpdated\":\"2020-01-01T00:00:00.000+00:00\",\"tag\":[{\"system\":\"http://tags\",\"code\":\"tag1\"}]},\"active\":true}", ourCtx.newJsonParser().encodeResourceToString(stub));
+	}
+
+	private Patient createPatientForRawJsonBody() {
+		Patient input = new Patient();
+		input.setId("Patient/123/_history/2");
+		input.getMeta().setVersionId("2");
+		input.getMeta().setLastUpdatedElement(new InstantType("2020-01-01T00:00:00.000+00:00"));
+		input.getMeta().addTag("http://tags", "tag1", null);
+		input.getText().setDivAsString("<div>HELLO</div>");
+		input.getText().setStatus(Narrative.NarrativeStatus.GENERATED);
+		input.setActive(true);
+		input.addName().setFamily("FAMILY").addGiven("GIVEN");
+		input.getBirthDateElement().setValueAsString("2000-01-01");
+		input.getBirthDateElement().addExtension("http://ext", new StringType("EXT"));
+		return input;
+	}
+
+	/**
+	 * Creates a resource containing only the ID and meta from the given resource, with the remaining
+	 * content supplied as raw JSON in the same way that the JPA server stores it
+	 */
+	private Patient createRawJsonBodyStub(Patient theInput) {
+		String rawBody = ourCtx.newJsonParser().setDontEncodeElements(Sets.newHashSet("id", "*.meta")).encodeResourceToString(theInput);
+		assertThat(rawBody, not(containsString("\"meta\"")));
+
+		Patient stub = new Patient();
+		stub.setId(theInput.getIdElement());
+		stub.setMeta(theInput.getMeta().copy());
+		stub.setUserData(Constants.RESOURCE_RAW_JSON_BODY, rawBody);
+		return stub;
+	}
 
 	@AfterAll
 	public static void afterClassClearContext() {
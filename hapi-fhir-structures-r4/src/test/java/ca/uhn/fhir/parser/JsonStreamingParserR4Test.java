@@ -0,0 +1,246 @@
+package ca.uhn.fhir.parser;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.util.StopWatch;
+import ca.uhn.fhir.util.TestUtil;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.Encounter;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Quantity;
+import org.hl7.fhir.r4.model.StringType;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JsonStreamingParserR4Test {
+	private static final Logger ourLog = LoggerFactory.getLogger(JsonStreamingParserR4Test.class);
+	private static FhirContext ourCtx = FhirContext.forR4();
+	private static FhirContext ourStreamingCtx;
+
+	static {
+		ourStreamingCtx = FhirContext.forR4();
+		ourStreamingCtx.getParserOptions().setStreamingJsonParserEnabled(true);
+	}
+
+	/**
+	 * Parses the input using both the tree based and the streaming parser and makes sure that
+	 * both produce the same resource
+	 */
+	private <T extends org.hl7.fhir.instance.model.api.IBaseResource> T parseAndCompare(Class<T> theType, String theInput) {
+		T expected = ourCtx.newJsonParser().parseResource(theType, theInput);
+		T actual = ourStreamingCtx.newJsonParser().parseResource(theType, theInput);
+		String expectedEncoded = ourCtx.newJsonParser().setPrettyPrint(true).encodeResourceToString(expected);
+		String actualEncoded = ourCtx.newJsonParser().setPrettyPrint(true).encodeResourceToString(actual);
+		ourLog.info("Parsed: {}", actualEncoded);
+		assertEquals(expectedEncoded, actualEncoded);
+		return actual;
+	}
+
+	@Test
+	public void testParseBundle() {
+		String input = ourCtx.newJsonParser().encodeResourceToString(createBigBundle(10));
+		Bundle bundle = parseAndCompare(Bundle.class, input);
+		assertEquals(10, bundle.getEntry().size());
+		Observation obs = (Observation) bundle.getEntry().get(0).getResource();
+		assertEquals("123.567", obs.getValueQuantity().getValueElement().getValueAsString());
+		assertEquals(1, obs.getContained().size());
+	}
+
+	@Test
+	public void testParseResourceTypeNotFirst() {
+		String input = "{" +
+			"\"id\":\"123\"," +
+			"\"contained\":[{\"id\":\"1\",\"status\":\"arrived\",\"resourceType\":\"Encounter\"}]," +
+			"\"encounter\":{\"reference\":\"#1\"}," +
+			"\"resourceType\":\"Observation\"," +
+			"\"status\":\"final\"" +
+			"}";
+		Observation obs = parseAndCompare(Observation.class, input);
+		assertEquals("123", obs.getIdElement().getIdPart());
+		assertEquals(Observation.ObservationStatus.FINAL, obs.getStatus());
+		assertEquals(Encounter.EncounterStatus.ARRIVED, ((Encounter) obs.getEncounter().getResource()).getStatus());
+	}
+
+	@Test
+	public void testParseBundleEntryResourceTypeNotFirst() {
+		String input = "{" +
+			"\"entry\":[{\"fullUrl\":\"Patient/123\",\"resource\":{\"active\":true,\"gender\":\"male\",\"resourceType\":\"Patient\"}}]," +
+			"\"resourceType\":\"Bundle\"" +
+			"}";
+		Bundle bundle = parseAndCompare(Bundle.class, input);
+		Patient patient = (Patient) bundle.getEntry().get(0).getResource();
+		assertEquals("Patient/123", patient.getIdElement().getValue());
+		assertEquals(Enumerations.AdministrativeGender.MALE, patient.getGender());
+	}
+
+	@Test
+	public void testParsePrimitiveExtensionAfterElement() {
+		String input = "{" +
+			"\"resourceType\":\"Patient\"," +
+			"\"gender\":\"male\"," +
+			"\"_gender\":{\"id\":\"g1\",\"extension\":[{\"url\":\"http://foo\",\"valueString\":\"bar\"}]}" +
+			"}";
+		Patient patient = parseAndCompare(Patient.class, input);
+		assertEquals(Enumerations.AdministrativeGender.MALE, patient.getGender());
+		assertEquals("g1", patient.getGenderElement().getId());
+		assertEquals("bar", ((StringType) patient.getGenderElement().getExtensionByUrl("http://foo").getValue()).getValue());
+	}
+
+	@Test
+	public void testParsePrimitiveExtensionBeforeElement() {
+		String input = "{" +
+			"\"resourceType\":\"Patient\"," +
+			"\"_gender\":{\"extension\":[{\"valueString\":\"bar\",\"url\":\"http://foo\"}]}," +
+			"\"gender\":\"male\"" +
+			"}";
+		Patient patient = parseAndCompare(Patient.class, input);
+		assertEquals(Enumerations.AdministrativeGender.MALE, patient.getGender());
+		assertEquals("bar", ((StringType) patient.getGenderElement().getExtensionByUrl("http://foo").getValue()).getValue());
+	}
+
+	@Test
+	public void testParsePrimitiveExtensionWithoutElement() {
+		String input = "{" +
+			"\"resourceType\":\"Patient\"," +
+			"\"_birthDate\":{\"extension\":[{\"url\":\"http://hl7.org/fhir/StructureDefinition/data-absent-reason\",\"valueCode\":\"unknown\"}]}," +
+			"\"active\":true" +
+			"}";
+		Patient patient = parseAndCompare(Patient.class, input);
+		assertTrue(patient.getBirthDateElement().hasExtension());
+		assertEquals(null, patient.getBirthDate());
+	}
+
+	@Test
+	public void testParsePrimitiveArrayWithExtensions() {
+		String input = "{" +
+			"\"resourceType\":\"Patient\"," +
+			"\"name\":[{" +
+			"\"_given\":[null,{\"extension\":[{\"url\":\"http://foo\",\"valueString\":\"B\"}]}]," +
+			"\"given\":[\"A\",\"B\",\"C\"]," +
+			"\"family\":\"F\"" +
+			"},{" +
+			"\"given\":[\"D\",null]," +
+			"\"_given\":[null,{\"id\":\"e2\"}]" +
+			"}]" +
+			"}";
+		Patient patient = parseAndCompare(Patient.class, input);
+		assertEquals(3, patient.getName().get(0).getGiven().size());
+		assertEquals("B", ((StringType) patient.getName().get(0).getGiven().get(1).getExtensionByUrl("http://foo").getValue()).getValue());
+		assertEquals(2, patient.getName().get(1).getGiven().size());
+		assertEquals("e2", patient.getName().get(1).getGiven().get(1).getId());
+	}
+
+	@Test
+	public void testParseDecimalPrecisionPreserved() {
+		String input = "{\"resourceType\":\"Observation\",\"valueQuantity\":{\"value\":1.10}}";
+		Observation obs = parseAndCompare(Observation.class, input);
+		assertEquals(new BigDecimal("1.10"), obs.getValueQuantity().getValue());
+	}
+
+	@Test
+	public void testParseMissingResourceType() {
+		String input = "{\"id\":\"123\"}";
+		DataFormatException e = assertThrows(DataFormatException.class, () -> ourStreamingCtx.newJsonParser().parseResource(input));
+		assertEquals("Invalid JSON content detected, missing required element: 'resourceType'", e.getMessage());
+	}
+
+	@Test
+	public void testParseMissingContainedResourceType() {
+		String input = "{\"resourceType\":\"Observation\",\"contained\":[{\"id\":\"1\"}]}";
+		DataFormatException e = assertThrows(DataFormatException.class, () -> ourStreamingCtx.newJsonParser().parseResource(input));
+		assertEquals("Missing required element 'resourceType' from JSON resource object, unable to parse", e.getMessage());
+	}
+
+	@Test
+	public void testParseInvalidJson() {
+		String input = "{\"resourceType\":\"Patient\",";
+		DataFormatException e = assertThrows(DataFormatException.class, () -> ourStreamingCtx.newJsonParser().parseResource(input));
+		assertTrue(e.getMessage().startsWith("Failed to parse JSON encoded FHIR content: "), e.getMessage());
+	}
+
+	/**
+	 * Compares the tree based parser against the streaming parser on a 2000 entry
+	 * (1.1 MB) transaction Bundle. Note that the streaming parser also never holds
+	 * the complete JSON tree, so peak heap is much lower than the allocation figures suggest.
+	 * <p>
+	 * Tree      - Parsed 200 passes - 79ms / pass - 12.6 / second - 52656248 bytes allocated / pass
+	 * Streaming - Parsed 200 passes - 34ms / pass - 28.8 / second - 45199288 bytes allocated / pass
+	 * </p>
+	 */
+	@Test
+	@Disabled("Performance test - Not needed normally")
+	public void testTimingsTreeVersusStreaming() {
+		String input = ourCtx.newJsonParser().encodeResourceToString(createBigBundle(2000));
+		ourLog.info("Input is {} chars", input.length());
+
+		for (int pass = 0; pass < 5; pass++) {
+			timeParse("Tree     ", ourCtx.newJsonParser(), input, 200);
+			timeParse("Streaming", ourStreamingCtx.newJsonParser(), input, 200);
+		}
+	}
+
+	private void timeParse(String theName, IParser theParser, String theInput, int theCount) {
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+
+		StopWatch sw = new StopWatch();
+		for (int i = 0; i < theCount; i++) {
+			theParser.parseResource(Bundle.class, theInput);
+		}
+
+		long allocatedPerPass = (threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore) / theCount;
+		ourLog.info("{} - Parsed {} passes - {} / pass - {} / second - {} bytes allocated / pass", theName, theCount, sw.formatMillisPerOperation(theCount), sw.formatThroughput(theCount, TimeUnit.SECONDS), allocatedPerPass);
+	}
+
+	private Bundle createBigBundle(int theCount) {
+		Bundle b = new Bundle();
+		b.setType(Bundle.BundleType.TRANSACTION);
+
+		for (int i = 0; i < theCount; i++) {
+			Observation obs = new Observation();
+			obs.setStatus(Observation.ObservationStatus.FINAL);
+
+			Encounter enc = new Encounter();
+			enc.setId("#1");
+			enc.setStatus(Encounter.EncounterStatus.ARRIVED);
+			obs.getEncounter().setReference("#1");
+			obs.getContained().add(enc);
+			obs.getSubject().setReference("Patient/" + i);
+			obs.setEffective(new DateTimeType(new Date()));
+			obs.addIdentifier()
+				.setSystem("http://foo")
+				.setValue("blah" + i);
+			obs.getCode().addCoding().setSystem("http://loinc.org").setCode("1234-5").setDisplay("Some code");
+			obs.setValue(new Quantity().setSystem("UCUM").setCode("mg/L").setUnit("mg/L").setValue(123.567d));
+
+			b.addEntry()
+				.setFullUrl("urn:uuid:" + i)
+				.setResource(obs)
+				.getRequest()
+				.setMethod(Bundle.HTTPVerb.POST)
+				.setUrl("Observation");
+		}
+		return b;
+	}
+
+	@AfterAll
+	public static void afterClassClearContext() {
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+}
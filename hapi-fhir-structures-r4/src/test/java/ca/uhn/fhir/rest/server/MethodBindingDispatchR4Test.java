@@ -0,0 +1,342 @@
+package ca.uhn.fhir.rest.server;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.annotation.ConditionalUrlParam;
+import ca.uhn.fhir.rest.annotation.Create;
+import ca.uhn.fhir.rest.annotation.Delete;
+import ca.uhn.fhir.rest.annotation.History;
+import ca.uhn.fhir.rest.annotation.IdParam;
+import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.rest.annotation.OperationParam;
+import ca.uhn.fhir.rest.annotation.OptionalParam;
+import ca.uhn.fhir.rest.annotation.Read;
+import ca.uhn.fhir.rest.annotation.RequiredParam;
+import ca.uhn.fhir.rest.annotation.ResourceParam;
+import ca.uhn.fhir.rest.annotation.Search;
+import ca.uhn.fhir.rest.annotation.Transaction;
+import ca.uhn.fhir.rest.annotation.TransactionParam;
+import ca.uhn.fhir.rest.annotation.Update;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.param.DateParam;
+import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.method.BaseMethodBinding;
+import ca.uhn.fhir.rest.server.method.MethodMatchEnum;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import ca.uhn.fhir.util.StopWatch;
+import ca.uhn.fhir.util.TestUtil;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.StringType;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MethodBindingDispatchR4Test {
+
+	private static final Logger ourLog = LoggerFactory.getLogger(MethodBindingDispatchR4Test.class);
+	private static final int PROVIDER_COUNT = 60;
+	private static FhirContext ourCtx = FhirContext.forR4();
+	private static List<String> ourResourceNames;
+	private static RestfulServer ourServlet;
+
+	@Test
+	public void testDispatchSelectsExpectedMethods() {
+		assertEquals("read", dispatch(RequestTypeEnum.GET, "Patient", "Patient/1", null).getMethod().getName());
+		assertEquals("read", dispatch(RequestTypeEnum.GET, "Patient", "Patient/1/_history/2", Constants.PARAM_HISTORY).getMethod().getName());
+		assertEquals("read", dispatch(RequestTypeEnum.HEAD, "Patient", "Patient/1", null).getMethod().getName());
+		assertEquals("searchAll", dispatch(RequestTypeEnum.GET, "Patient", null, null).getMethod().getName());
+		assertEquals("searchByIdentifier", dispatch(RequestTypeEnum.GET, "Patient", null, null, "identifier", "foo|bar").getMethod().getName());
+		assertEquals("searchByIdentifierAndDate", dispatch(RequestTypeEnum.GET, "Patient", null, null, "identifier", "foo|bar", "date", "2020").getMethod().getName());
+		assertEquals("searchByName", dispatch(RequestTypeEnum.POST, "Patient", null, Constants.PARAM_SEARCH, "name", "smith").getMethod().getName());
+		assertEquals("create", dispatch(RequestTypeEnum.POST, "Patient", null, null).getMethod().getName());
+		assertEquals("update", dispatch(RequestTypeEnum.PUT, "Patient", "Patient/1", null).getMethod().getName());
+		assertEquals("delete", dispatch(RequestTypeEnum.DELETE, "Patient", "Patient/1", null).getMethod().getName());
+		assertEquals("historyInstance", dispatch(RequestTypeEnum.GET, "Patient", "Patient/1", Constants.PARAM_HISTORY).getMethod().getName());
+		assertEquals("historyType", dispatch(RequestTypeEnum.GET, "Patient", null, Constants.PARAM_HISTORY).getMethod().getName());
+		assertEquals("opType", dispatch(RequestTypeEnum.POST, "Patient", null, "$op-type").getMethod().getName());
+		assertEquals("opInstance", dispatch(RequestTypeEnum.GET, "Patient", "Patient/1", "$op-instance").getMethod().getName());
+		assertEquals("opServer", dispatch(RequestTypeEnum.POST, null, null, "$op-server").getMethod().getName());
+		assertEquals("transaction", dispatch(RequestTypeEnum.POST, null, null, null).getMethod().getName());
+		assertEquals("searchByIdentifier", dispatch(RequestTypeEnum.GET, ourResourceNames.get(PROVIDER_COUNT - 1), null, null, "identifier", "foo").getMethod().getName());
+	}
+
+	@Test
+	public void testDispatchUnknownOperation() {
+		assertThrows(InvalidRequestException.class, () -> dispatch(RequestTypeEnum.POST, "Patient", null, "$foo"));
+		assertThrows(InvalidRequestException.class, () -> dispatch(RequestTypeEnum.PATCH, "Patient", "Patient/1", null));
+	}
+
+	/**
+	 * Dispatches a large number of different requests and makes sure that the indexed lookup
+	 * selects exactly the same method as testing every method binding in order does
+	 */
+	@Test
+	public void testDispatchMatchesLinearScan() {
+		List<ServletRequestDetails> requests = createRequestMix();
+		int count = 0;
+		for (ServletRequestDetails next : requests) {
+			BaseMethodBinding<?> expected = findMethodUsingLinearScan(next);
+			BaseMethodBinding<?> actual;
+			try {
+				actual = ourServlet.determineResourceMethod(next, "path");
+			} catch (InvalidRequestException e) {
+				actual = null;
+			}
+			assertSame(expected, actual, "Request " + describe(next));
+			if (actual != null) {
+				count++;
+			}
+		}
+		ourLog.info("Dispatched {} of {} requests", count, requests.size());
+		assertEquals(requests.size() - 3 * PROVIDER_COUNT, count);
+	}
+
+	/**
+	 * Times method selection on a server with 60 resource providers, each of which has
+	 * 12 methods. Requests which don't match any method are left out, since building the
+	 * resulting exception dominates their cost.
+	 * <p>
+	 * 2020-10-18 - JDK 17 - Single CPU container
+	 * Linear scan - Selected methods for 900 requests x 2000 passes - 5921.1 / ms
+	 * Indexed     - Selected methods for 900 requests x 2000 passes - 7228.9 / ms
+	 * </p>
+	 */
+	@Test
+	@Disabled("Performance test - Not needed normally")
+	public void testTimingsDetermineResourceMethod() {
+		List<ServletRequestDetails> requests = createRequestMix();
+		requests.removeIf(t -> findMethodUsingLinearScan(t) == null);
+		int passes = 2000;
+
+		for (int pass = 0; pass < 10; pass++) {
+			StopWatch sw = new StopWatch();
+			for (int i = 0; i < passes; i++) {
+				for (ServletRequestDetails next : requests) {
+					ourServlet.determineResourceMethod(next, "path");
+				}
+			}
+			ourLog.info("Selected methods for {} requests x {} passes - {} / ms", requests.size(), passes, sw.formatThroughput(requests.size() * passes, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	private BaseMethodBinding<?> dispatch(RequestTypeEnum theRequestType, String theResourceName, String theId, String theOperation, String... theParams) {
+		ServletRequestDetails request = newRequest(theRequestType, theResourceName, theId, theOperation, theParams);
+		BaseMethodBinding<?> retVal = ourServlet.determineResourceMethod(request, "path");
+		assertNotNull(retVal);
+		assertSame(findMethodUsingLinearScan(request), retVal);
+		return retVal;
+	}
+
+	/**
+	 * This is the method selection algorithm without any indexing
+	 */
+	private BaseMethodBinding<?> findMethodUsingLinearScan(ServletRequestDetails theRequest) {
+		List<BaseMethodBinding<?>> methods = new ArrayList<>();
+		if (theRequest.getResourceName() == null) {
+			methods.addAll(ourServlet.getServerBindings());
+		} else {
+			for (ResourceBinding next : ourServlet.getResourceBindings()) {
+				if (next.getResourceName().equals(theRequest.getResourceName())) {
+					methods.addAll(next.getMethodBindings());
+				}
+			}
+		}
+
+		BaseMethodBinding<?> matchedMethod = null;
+		MethodMatchEnum matchedMethodStrength = null;
+		for (BaseMethodBinding<?> next : methods) {
+			MethodMatchEnum nextMethodMatch = next.incomingServerRequestMatchesMethod(theRequest);
+			if (nextMethodMatch != MethodMatchEnum.NONE) {
+				if (matchedMethodStrength == null || matchedMethodStrength.ordinal() < nextMethodMatch.ordinal()) {
+					matchedMethod = next;
+					matchedMethodStrength = nextMethodMatch;
+				}
+				if (matchedMethodStrength == MethodMatchEnum.EXACT) {
+					break;
+				}
+			}
+		}
+		return matchedMethod;
+	}
+
+	private List<ServletRequestDetails> createRequestMix() {
+		List<ServletRequestDetails> retVal = new ArrayList<>();
+		for (String next : ourResourceNames) {
+			retVal.add(newRequest(RequestTypeEnum.GET, next, next + "/1", null));
+			retVal.add(newRequest(RequestTypeEnum.GET, next, next + "/1/_history/2", Constants.PARAM_HISTORY));
+			retVal.add(newRequest(RequestTypeEnum.GET, next, null, null));
+			retVal.add(newRequest(RequestTypeEnum.GET, next, null, null, "identifier", "foo|bar"));
+			retVal.add(newRequest(RequestTypeEnum.GET, next, null, null, "identifier", "foo|bar", "date", "2020"));
+			retVal.add(newRequest(RequestTypeEnum.GET, next, null, null, "identifier", "foo|bar", "_count", "10"));
+			retVal.add(newRequest(RequestTypeEnum.GET, next, null, null, "name", "smith", "_sort", "name"));
+			retVal.add(newRequest(RequestTypeEnum.GET, next, null, null, "unknown", "value"));
+			retVal.add(newRequest(RequestTypeEnum.POST, next, null, Constants.PARAM_SEARCH, "name", "smith"));
+			retVal.add(newRequest(RequestTypeEnum.POST, next, null, null));
+			retVal.add(newRequest(RequestTypeEnum.PUT, next, next + "/1", null));
+			retVal.add(newRequest(RequestTypeEnum.DELETE, next, next + "/1", null));
+			retVal.add(newRequest(RequestTypeEnum.GET, next, next + "/1", Constants.PARAM_HISTORY));
+			retVal.add(newRequest(RequestTypeEnum.GET, next, null, Constants.PARAM_HISTORY));
+			retVal.add(newRequest(RequestTypeEnum.POST, next, null, "$op-type"));
+			retVal.add(newRequest(RequestTypeEnum.GET, next, next + "/1", "$op-instance"));
+			retVal.add(newRequest(RequestTypeEnum.POST, next, next + "/1", "$op-type"));
+			retVal.add(newRequest(RequestTypeEnum.POST, next, null, "$unknown"));
+		}
+		return retVal;
+	}
+
+	private ServletRequestDetails newRequest(RequestTypeEnum theRequestType, String theResourceName, String theId, String theOperation, String... theParams) {
+		ServletRequestDetails retVal = new ServletRequestDetails(ourServlet.getInterceptorService());
+		retVal.setServer(ourServlet);
+		retVal.setRequestType(theRequestType);
+		retVal.setResourceName(theResourceName);
+		if (theId != null) {
+			retVal.setId(new IdType(theId));
+		}
+		retVal.setOperation(theOperation);
+		Map<String, String[]> params = new HashMap<>();
+		for (int i = 0; i < theParams.length; i += 2) {
+			params.put(theParams[i], new String[]{theParams[i + 1]});
+		}
+		retVal.setParameters(params);
+		return retVal;
+	}
+
+	private static String describe(ServletRequestDetails theRequest) {
+		return theRequest.getRequestType() + " " + theRequest.getResourceName() + " " + theRequest.getId() + " " + theRequest.getOperation() + " " + theRequest.getParameters().keySet();
+	}
+
+	@AfterAll
+	public static void afterClassClearContext() {
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+	@BeforeAll
+	public static void beforeClass() throws ServletException {
+		ourResourceNames = new ArrayList<>(new TreeSet<>(ourCtx.getResourceTypes()));
+		ourResourceNames.remove("Patient");
+		ourResourceNames.add(0, "Patient");
+		ourResourceNames = ourResourceNames.subList(0, PROVIDER_COUNT);
+
+		ourServlet = new RestfulServer(ourCtx);
+		for (String next : ourResourceNames) {
+			ourServlet.registerProvider(new GenericResourceProvider(ourCtx.getResourceDefinition(next).getImplementingClass()));
+		}
+		ourServlet.registerProvider(new PlainProvider());
+		ourServlet.init();
+	}
+
+	public static class PlainProvider {
+
+		@Operation(name = "$op-server")
+		public Parameters opServer(@OperationParam(name = "param") StringType theParam) {
+			return new Parameters();
+		}
+
+		@Transaction
+		public Bundle transaction(@TransactionParam Bundle theBundle) {
+			return theBundle;
+		}
+
+	}
+
+	/**
+	 * A provider with a typical mix of methods, which can be registered for any resource type
+	 */
+	public static class GenericResourceProvider implements IResourceProvider {
+
+		private final Class<? extends IBaseResource> myResourceType;
+
+		GenericResourceProvider(Class<? extends IBaseResource> theResourceType) {
+			myResourceType = theResourceType;
+		}
+
+		@Override
+		public Class<? extends IBaseResource> getResourceType() {
+			return myResourceType;
+		}
+
+		@Read(version = true)
+		public IBaseResource read(@IdParam IdType theId) {
+			return null;
+		}
+
+		@Search
+		public List<IBaseResource> searchAll() {
+			return null;
+		}
+
+		@Search
+		public List<IBaseResource> searchByIdentifier(@RequiredParam(name = "identifier") TokenParam theIdentifier) {
+			return null;
+		}
+
+		@Search
+		public List<IBaseResource> searchByIdentifierAndDate(@RequiredParam(name = "identifier") TokenParam theIdentifier, @RequiredParam(name = "date") DateParam theDate) {
+			return null;
+		}
+
+		@Search
+		public List<IBaseResource> searchByName(@RequiredParam(name = "name") StringParam theName, @OptionalParam(name = "date") DateParam theDate) {
+			return null;
+		}
+
+		@Create
+		public MethodOutcome create(@ResourceParam IBaseResource theResource) {
+			return null;
+		}
+
+		@Update
+		public MethodOutcome update(@IdParam IdType theId, @ResourceParam IBaseResource theResource, @ConditionalUrlParam String theConditionalUrl) {
+			return null;
+		}
+
+		@Delete
+		public MethodOutcome delete(@IdParam IdType theId) {
+			return null;
+		}
+
+		@History
+		public List<IBaseResource> historyInstance(@IdParam IdType theId) {
+			return null;
+		}
+
+		@History
+		public List<IBaseResource> historyType() {
+			return null;
+		}
+
+		@Operation(name = "$op-type", idempotent = true)
+		public Parameters opType(@OperationParam(name = "param") StringType theParam) {
+			return new Parameters();
+		}
+
+		@Operation(name = "$op-instance", idempotent = true)
+		public Parameters opInstance(@IdParam IdType theId, @OperationParam(name = "param") StringType theParam) {
+			return new Parameters();
+		}
+
+	}
+
+}
@@ -0,0 +1,219 @@
+package ca.uhn.fhir.rest.server;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.annotation.IdParam;
+import ca.uhn.fhir.rest.annotation.Read;
+import ca.uhn.fhir.rest.annotation.Search;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.test.utilities.JettyUtil;
+import ca.uhn.fhir.util.TestUtil;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Sets;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RawJsonResponseR4Test {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(RawJsonResponseR4Test.class);
+	private static CloseableHttpClient ourClient;
+	private static FhirContext ourCtx = FhirContext.forR4();
+	private static Boolean ourLastEligible;
+	private static int ourPort;
+	private static Server ourServer;
+	private static RestfulServer ourServlet;
+
+	@BeforeEach
+	public void before() {
+		ourLastEligible = null;
+	}
+
+	@AfterEach
+	public void after() {
+		ourServlet.getInterceptorService().unregisterAllInterceptors();
+	}
+
+	@Test
+	public void testReadJson() throws Exception {
+		String responseContent = execute("/Patient/1?_format=json");
+		assertEquals(true, ourLastEligible);
+		assertEquals("{\"resourceType\":\"Patient\",\"id\":\"1\",\"meta\":{\"versionId\":\"1\"},\"active\":true,\"name\":[{\"family\":\"FAMILY\"}]}", responseContent);
+	}
+
+	@Test
+	public void testReadXml() throws Exception {
+		String responseContent = execute("/Patient/1?_format=xml");
+		assertEquals(false, ourLastEligible);
+		assertThat(responseContent, containsString("<family value=\"FAMILY\"/>"));
+	}
+
+	@Test
+	public void testReadJsonWithSummaryOrElements() throws Exception {
+		execute("/Patient/1?_format=json&_summary=true");
+		assertEquals(false, ourLastEligible);
+
+		execute("/Patient/1?_format=json&_elements=name");
+		assertEquals(false, ourLastEligible);
+
+		execute("/Patient/1?_format=json&_elements:exclude=name");
+		assertEquals(false, ourLastEligible);
+	}
+
+	@Test
+	public void testReadJsonPrettyPrint() throws Exception {
+		String responseContent = execute("/Patient/1?_format=json&_pretty=true");
+		assertEquals(false, ourLastEligible);
+		assertThat(responseContent, containsString("\"family\": \"FAMILY\""));
+	}
+
+	@Test
+	public void testReadJsonWithOutgoingResponseInterceptor() throws Exception {
+		ourServlet.getInterceptorService().registerInterceptor(new Object() {
+			@Hook(Pointcut.SERVER_OUTGOING_RESPONSE)
+			public void outgoing() {
+				// nothing
+			}
+		});
+
+		String responseContent = execute("/Patient/1?_format=json");
+		assertEquals(false, ourLastEligible);
+		assertThat(responseContent, containsString("\"family\":\"FAMILY\""));
+	}
+
+	@Test
+	public void testSearchJson() throws Exception {
+		String responseContent = execute("/Patient?_format=json");
+		assertEquals(true, ourLastEligible);
+
+		Bundle bundle = ourCtx.newJsonParser().parseResource(Bundle.class, responseContent);
+		assertEquals(1, bundle.getEntry().size());
+		Patient patient = (Patient) bundle.getEntry().get(0).getResource();
+		assertEquals("1", patient.getIdElement().getIdPart());
+		assertEquals("FAMILY", patient.getNameFirstRep().getFamily());
+		assertEquals(true, patient.getActive());
+	}
+
+	@Test
+	public void testSearchXml() throws Exception {
+		String responseContent = execute("/Patient?_format=xml");
+		assertEquals(false, ourLastEligible);
+		assertThat(responseContent, containsString("<family value=\"FAMILY\"/>"));
+	}
+
+	private String execute(String theUrl) throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + theUrl);
+		try (CloseableHttpResponse status = ourClient.execute(httpGet)) {
+			String responseContent = IOUtils.toString(status.getEntity().getContent(), Charsets.UTF_8);
+			ourLog.info(responseContent);
+			assertEquals(200, status.getStatusLine().getStatusCode());
+			return responseContent;
+		}
+	}
+
+	@AfterAll
+	public static void afterClassClearContext() throws Exception {
+		JettyUtil.closeServer(ourServer);
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+	@BeforeAll
+	public static void beforeClass() throws Exception {
+		ourServer = new Server(0);
+
+		ServletHandler proxyHandler = new ServletHandler();
+		ourServlet = new RestfulServer(ourCtx);
+
+		ourServlet.setResourceProviders(new DummyPatientResourceProvider());
+		ServletHolder servletHolder = new ServletHolder(ourServlet);
+		proxyHandler.addServletWithMapping(servletHolder, "/*");
+		ourServer.setHandler(proxyHandler);
+		JettyUtil.startServer(ourServer);
+		ourPort = JettyUtil.getPortForStartedServer(ourServer);
+
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(5000, TimeUnit.MILLISECONDS);
+		HttpClientBuilder builder = HttpClientBuilder.create();
+		builder.setConnectionManager(connectionManager);
+		ourClient = builder.build();
+	}
+
+	/**
+	 * Returns resources with raw JSON bodies when the server allows it, the
+	 * same way that the JPA server does
+	 */
+	public static class DummyPatientResourceProvider implements IResourceProvider {
+
+		@Override
+		public Class<Patient> getResourceType() {
+			return Patient.class;
+		}
+
+		@Read
+		public Patient read(@IdParam IdType theId, RequestDetails theRequestDetails) {
+			ourLastEligible = Boolean.TRUE.equals(theRequestDetails.getUserData().get(Constants.REQUEST_RAW_JSON_RESPONSE_ELIGIBLE));
+			return createPatient(ourLastEligible);
+		}
+
+		@Search
+		public IBundleProvider search() {
+			return new SimpleBundleProvider(Collections.singletonList(createPatient(false))) {
+				@Nonnull
+				@Override
+				public List<IBaseResource> getResources(int theFromIndex, int theToIndex) {
+					ourLastEligible = false;
+					return Collections.singletonList(createPatient(false));
+				}
+
+				@Nonnull
+				@Override
+				public List<IBaseResource> getResourcesForRawJsonResponse(int theFromIndex, int theToIndex) {
+					ourLastEligible = true;
+					return Collections.singletonList(createPatient(true));
+				}
+			};
+		}
+
+		private Patient createPatient(boolean theRawJsonBody) {
+			Patient patient = new Patient();
+			patient.setId("Patient/1/_history/1");
+			patient.getMeta().setVersionId("1");
+
+			if (theRawJsonBody) {
+				patient.setUserData(Constants.RESOURCE_RAW_JSON_BODY, "{\"resourceType\":\"Patient\",\"active\":true,\"name\":[{\"family\":\"FAMILY\"}]}");
+			} else {
+				patient.setActive(true);
+				patient.addName().setFamily("FAMILY");
+			}
+			return patient;
+		}
+
+	}
+
+}
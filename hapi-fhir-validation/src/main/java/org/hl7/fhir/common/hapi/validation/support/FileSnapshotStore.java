@@ -0,0 +1,79 @@
+package org.hl7.fhir.common.hapi.validation.support;
+
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * {@link ISnapshotStore} which keeps each snapshot in its own file in a local directory.
+ * File names are derived from a hash of the snapshot key. Files are written to a
+ * temporary file first and then moved into place, so a snapshot which is only partly
+ * written is never read, even if several nodes share the directory.
+ */
+public class FileSnapshotStore implements ISnapshotStore {
+	private static final Logger ourLog = LoggerFactory.getLogger(FileSnapshotStore.class);
+	private static final String FILE_SUFFIX = ".json";
+	private final Path myDirectory;
+
+	/**
+	 * Constructor
+	 *
+	 * @param theDirectory The directory to store snapshots in. Will be created if it does not exist.
+	 */
+	public FileSnapshotStore(File theDirectory) {
+		Validate.notNull(theDirectory, "theDirectory must not be null");
+		myDirectory = theDirectory.toPath();
+		try {
+			Files.createDirectories(myDirectory);
+		} catch (IOException e) {
+			throw new InternalErrorException("Failed to create snapshot directory: " + theDirectory, e);
+		}
+	}
+
+	@Nullable
+	@Override
+	public String fetchSnapshot(String theKey) {
+		Path file = toFile(theKey);
+		if (!Files.exists(file)) {
+			return null;
+		}
+		try {
+			return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			ourLog.warn("Failed to read stored snapshot {}: {}", file, e.toString());
+			return null;
+		}
+	}
+
+	@Override
+	public void storeSnapshot(String theKey, String theEncodedStructureDefinition) {
+		Path file = toFile(theKey);
+		try {
+			Path tempFile = Files.createTempFile(myDirectory, "snapshot", ".tmp");
+			try {
+				Files.write(tempFile, theEncodedStructureDefinition.getBytes(StandardCharsets.UTF_8));
+				Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tempFile);
+			}
+		} catch (IOException e) {
+			// The snapshot can always be generated again, so this isn't fatal
+			ourLog.warn("Failed to store snapshot {}: {}", file, e.toString());
+		}
+	}
+
+	private Path toFile(String theKey) {
+		return myDirectory.resolve(DigestUtils.sha256Hex(theKey) + FILE_SUFFIX);
+	}
+
+}
@@ -0,0 +1,39 @@
+package org.hl7.fhir.common.hapi.validation.support;
+
+import javax.annotation.Nullable;
+
+/**
+ * Persistent storage for StructureDefinition snapshots generated by
+ * {@link SnapshotGeneratingValidationSupport}, so that they survive a restart
+ * and do not need to be generated again.
+ * <p>
+ * Snapshots are stored using a key built from the profile URL, the profile version, and
+ * a hash of the differential and the base definition it was generated from, so a stored
+ * snapshot is never returned for a profile (or base) that has since changed.
+ * </p>
+ * <p>
+ * Implementations must be thread safe.
+ * </p>
+ *
+ * @see FileSnapshotStore
+ */
+public interface ISnapshotStore {
+
+	/**
+	 * Fetch a previously stored snapshot
+	 *
+	 * @param theKey The snapshot key
+	 * @return The encoded StructureDefinition (including its snapshot), or <code>null</code> if nothing is stored for the given key
+	 */
+	@Nullable
+	String fetchSnapshot(String theKey);
+
+	/**
+	 * Store a generated snapshot, replacing anything already stored for the given key
+	 *
+	 * @param theKey                        The snapshot key
+	 * @param theEncodedStructureDefinition The StructureDefinition (including its snapshot), encoded as JSON
+	 */
+	void storeSnapshot(String theKey, String theEncodedStructureDefinition);
+
+}
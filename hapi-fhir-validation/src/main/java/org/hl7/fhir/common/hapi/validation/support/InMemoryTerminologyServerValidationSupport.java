@@ -8,6 +8,8 @@ import ca.uhn.fhir.context.support.ValidationSupportContext;
 import ca.uhn.fhir.context.support.ValueSetExpansionOptions;
 import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.util.FhirVersionIndependentConcept;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.apache.commons.lang3.Validate;
 import org.hl7.fhir.convertors.conv10_50.ValueSet10_50;
 import org.hl7.fhir.convertors.conv30_50.CodeSystem30_50;
@@ -25,8 +27,10 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
@@ -44,7 +48,9 @@ import static org.apache.commons.lang3.StringUtils.isNotBlank;
  * external term service API)
  */
 public class InMemoryTerminologyServerValidationSupport implements IValidationSupport {
+	private static final int EXPANSION_INDEX_CACHE_SIZE = 1000;
 	private final FhirContext myCtx;
+	private final Cache<String, ValueSetExpansionIndex> myExpansionIndexCache = Caffeine.newBuilder().maximumSize(EXPANSION_INDEX_CACHE_SIZE).build();
 
 	public InMemoryTerminologyServerValidationSupport(FhirContext theCtx) {
 		Validate.notNull(theCtx, "theCtx must not be null");
@@ -141,6 +147,12 @@ public class InMemoryTerminologyServerValidationSupport implements IValidationSu
 			if (vs == null) {
 				return null;
 			}
+
+			ValueSetExpansionIndex index = getOrCreateExpansionIndex(theValidationSupportContext, theValueSetUrl, vs);
+			if (index == null) {
+				return null;
+			}
+			return validateCodeInExpansionIndex(theValidationSupportContext, theOptions, theCodeSystem, theCode, theDisplay, index);
 		} else {
 			String codeSystemUrl;
 			String codeSystemVersion = null;
@@ -208,15 +220,45 @@ public class InMemoryTerminologyServerValidationSupport implements IValidationSu
 
 	}
 
+	/**
+	 * Returns an index of the expansion of the given ValueSet, expanding it only if the
+	 * ValueSet has not already been indexed. A cached index is reused only while the
+	 * root validation support keeps returning the same ValueSet, and the same CodeSystems
+	 * and nested ValueSets that the expansion used (either the same instances, or resources
+	 * with the same versioned IDs), so an expansion affected by an update is redone.
+	 */
+	@Nullable
+	private ValueSetExpansionIndex getOrCreateExpansionIndex(ValidationSupportContext theValidationSupportContext, String theValueSetUrl, IBaseResource theValueSet) {
+		IValidationSupport rootValidationSupport = theValidationSupportContext.getRootValidationSupport();
+		ValueSetExpansionIndex retVal = myExpansionIndexCache.getIfPresent(theValueSetUrl);
+		if (retVal != null && retVal.isIndexOf(theValueSet, rootValidationSupport)) {
+			return retVal;
+		}
+
+		DependencyRecordingValidationSupport recordingValidationSupport = new DependencyRecordingValidationSupport(myCtx, rootValidationSupport);
+		ValueSetExpansionOutcome valueSetExpansionOutcome = expandValueSet(new ValidationSupportContext(recordingValidationSupport), null, theValueSet);
+		if (valueSetExpansionOutcome == null) {
+			return null;
+		}
+
+		retVal = new ValueSetExpansionIndex(theValueSet, recordingValidationSupport.getDependencies(), flattenExpansion(valueSetExpansionOutcome.getValueSet()));
+		myExpansionIndexCache.put(theValueSetUrl, retVal);
+		return retVal;
+	}
+
+	@Override
+	public void invalidateCaches() {
+		myExpansionIndexCache.invalidateAll();
+	}
+
 	private CodeValidationResult validateCodeInExpandedValueSet(ValidationSupportContext theValidationSupportContext, ConceptValidationOptions theOptions, String theCodeSystemUrlAndVersionToValidate, String theCodeToValidate, String theDisplayToValidate, IBaseResource theExpansion) {
 		assert theExpansion != null;
 
-		boolean caseSensitive = true;
-		IBaseResource codeSystemToValidateResource = null;
-		if (!theOptions.isInferSystem() && isNotBlank(theCodeSystemUrlAndVersionToValidate)) {
-			codeSystemToValidateResource = theValidationSupportContext.getRootValidationSupport().fetchCodeSystem(theCodeSystemUrlAndVersionToValidate);
-		}
+		ValueSetExpansionIndex index = new ValueSetExpansionIndex(null, Collections.emptyList(), flattenExpansion(theExpansion));
+		return validateCodeInExpansionIndex(theValidationSupportContext, theOptions, theCodeSystemUrlAndVersionToValidate, theCodeToValidate, theDisplayToValidate, index);
+	}
 
+	private List<FhirVersionIndependentConcept> flattenExpansion(IBaseResource theExpansion) {
 		List<FhirVersionIndependentConcept> codes = new ArrayList<>();
 		switch (theExpansion.getStructureFhirVersionEnum()) {
 			case DSTU2_HL7ORG: {
@@ -248,6 +290,15 @@ public class InMemoryTerminologyServerValidationSupport implements IValidationSu
 			default:
 				throw new IllegalArgumentException("Can not handle version: " + myCtx.getVersion().getVersion());
 		}
+		return codes;
+	}
+
+	private CodeValidationResult validateCodeInExpansionIndex(ValidationSupportContext theValidationSupportContext, ConceptValidationOptions theOptions, String theCodeSystemUrlAndVersionToValidate, String theCodeToValidate, String theDisplayToValidate, ValueSetExpansionIndex theIndex) {
+		boolean caseSensitive = true;
+		IBaseResource codeSystemToValidateResource = null;
+		if (!theOptions.isInferSystem() && isNotBlank(theCodeSystemUrlAndVersionToValidate)) {
+			codeSystemToValidateResource = theValidationSupportContext.getRootValidationSupport().fetchCodeSystem(theCodeSystemUrlAndVersionToValidate);
+		}
 
 		String codeSystemResourceName = null;
 		String codeSystemResourceVersion = null;
@@ -300,7 +351,7 @@ public class InMemoryTerminologyServerValidationSupport implements IValidationSu
 				codeSystemUrlToValidate = theCodeSystemUrlAndVersionToValidate;
 			}
 		}
-		for (FhirVersionIndependentConcept nextExpansionCode : codes) {
+		for (FhirVersionIndependentConcept nextExpansionCode : theIndex.getCandidates(theCodeToValidate, caseSensitive)) {
 
 			boolean codeMatches;
 			if (caseSensitive) {
@@ -638,6 +689,156 @@ public class InMemoryTerminologyServerValidationSupport implements IValidationSu
 		}
 	}
 
+	/**
+	 * The flattened codes of a ValueSet expansion, indexed by code
+	 */
+	private static class ValueSetExpansionIndex {
+
+		private final ResourceVersion mySource;
+		private final List<Dependency> myDependencies;
+		private final List<FhirVersionIndependentConcept> myCodes;
+		private final Map<String, List<FhirVersionIndependentConcept>> myCodeToConcepts;
+		private volatile Map<String, List<FhirVersionIndependentConcept>> myFoldedCodeToConcepts;
+
+		ValueSetExpansionIndex(@Nullable IBaseResource theSource, List<Dependency> theDependencies, List<FhirVersionIndependentConcept> theCodes) {
+			mySource = new ResourceVersion(theSource);
+			myDependencies = theDependencies;
+			myCodes = theCodes;
+			myCodeToConcepts = new HashMap<>(theCodes.size() * 2);
+			for (FhirVersionIndependentConcept next : theCodes) {
+				myCodeToConcepts.computeIfAbsent(next.getCode(), t -> new ArrayList<>(1)).add(next);
+			}
+		}
+
+		/**
+		 * Is this an index of the given ValueSet, with the validation support still returning the
+		 * same CodeSystems and ValueSets that were used to expand it?
+		 */
+		boolean isIndexOf(IBaseResource theValueSet, IValidationSupport theValidationSupport) {
+			if (!mySource.matches(theValueSet)) {
+				return false;
+			}
+			for (Dependency next : myDependencies) {
+				if (!next.isCurrent(theValidationSupport)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Returns the concepts which may match the given code, in expansion order. Case insensitive
+		 * matching uses an index of case folded codes, which is only built the first time it is needed.
+		 */
+		List<FhirVersionIndependentConcept> getCandidates(String theCode, boolean theCaseSensitive) {
+			if (!theCaseSensitive) {
+				Map<String, List<FhirVersionIndependentConcept>> foldedCodeToConcepts = myFoldedCodeToConcepts;
+				if (foldedCodeToConcepts == null) {
+					foldedCodeToConcepts = new HashMap<>(myCodes.size() * 2);
+					for (FhirVersionIndependentConcept next : myCodes) {
+						foldedCodeToConcepts.computeIfAbsent(foldCase(next.getCode()), t -> new ArrayList<>(1)).add(next);
+					}
+					myFoldedCodeToConcepts = foldedCodeToConcepts;
+				}
+				return foldedCodeToConcepts.getOrDefault(foldCase(defaultString(theCode)), Collections.emptyList());
+			}
+			return myCodeToConcepts.getOrDefault(defaultString(theCode), Collections.emptyList());
+		}
+
+		/**
+		 * Folds the case of each character the same way as {@link String#equalsIgnoreCase(String)}
+		 * compares them, so that codes which are equal ignoring case have the same folded form
+		 */
+		private static String foldCase(String theCode) {
+			char[] chars = theCode.toCharArray();
+			for (int i = 0; i < chars.length; i++) {
+				chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+			}
+			return new String(chars);
+		}
+	}
+
+	/**
+	 * A CodeSystem or ValueSet which was fetched while expanding a ValueSet
+	 */
+	private static class Dependency {
+
+		private final boolean myCodeSystem;
+		private final String myUrl;
+		private final ResourceVersion myVersion;
+
+		Dependency(boolean theCodeSystem, String theUrl, @Nullable IBaseResource theResource) {
+			myCodeSystem = theCodeSystem;
+			myUrl = theUrl;
+			myVersion = new ResourceVersion(theResource);
+		}
+
+		boolean isCurrent(IValidationSupport theValidationSupport) {
+			IBaseResource current = myCodeSystem ? theValidationSupport.fetchCodeSystem(myUrl) : theValidationSupport.fetchValueSet(myUrl);
+			return myVersion.matches(current);
+		}
+	}
+
+	/**
+	 * Identifies a resource by instance, or by versioned ID if it has one
+	 */
+	private static class ResourceVersion {
+
+		private final IBaseResource myResource;
+		private final String myVersionedId;
+
+		ResourceVersion(@Nullable IBaseResource theResource) {
+			myResource = theResource;
+			myVersionedId = getVersionedIdOrNull(theResource);
+		}
+
+		boolean matches(@Nullable IBaseResource theResource) {
+			if (myResource == theResource) {
+				return true;
+			}
+			return myVersionedId != null && myVersionedId.equals(getVersionedIdOrNull(theResource));
+		}
+
+		@Nullable
+		private static String getVersionedIdOrNull(@Nullable IBaseResource theResource) {
+			if (theResource == null || theResource.getIdElement() == null || !theResource.getIdElement().hasVersionIdPart()) {
+				return null;
+			}
+			return theResource.getIdElement().getValue();
+		}
+	}
+
+	/**
+	 * Records the CodeSystems and ValueSets fetched through it, so that an expansion
+	 * can later be checked against the current versions of everything it used
+	 */
+	private static class DependencyRecordingValidationSupport extends BaseValidationSupportWrapper {
+
+		private final List<Dependency> myDependencies = new ArrayList<>();
+
+		DependencyRecordingValidationSupport(FhirContext theFhirContext, IValidationSupport theWrap) {
+			super(theFhirContext, theWrap);
+		}
+
+		@Override
+		public IBaseResource fetchCodeSystem(String theSystem) {
+			IBaseResource retVal = super.fetchCodeSystem(theSystem);
+			myDependencies.add(new Dependency(true, theSystem, retVal));
+			return retVal;
+		}
+
+		@Override
+		public IBaseResource fetchValueSet(String theUri) {
+			IBaseResource retVal = super.fetchValueSet(theUri);
+			myDependencies.add(new Dependency(false, theUri, retVal));
+			return retVal;
+		}
+
+		List<Dependency> getDependencies() {
+			return myDependencies;
+		}
+	}
+
 	private static class ExpansionCouldNotBeCompletedInternallyException extends Exception {
 
 	}
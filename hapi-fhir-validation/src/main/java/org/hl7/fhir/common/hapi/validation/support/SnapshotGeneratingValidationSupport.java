@@ -1,25 +1,42 @@
 package org.hl7.fhir.common.hapi.validation.support;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.FhirVersionEnum;
 import ca.uhn.fhir.context.support.IValidationSupport;
 import ca.uhn.fhir.context.support.ValidationSupportContext;
 import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
+import ca.uhn.fhir.util.StopWatch;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.hl7.fhir.common.hapi.validation.validator.ProfileKnowledgeWorkerR5;
 import org.hl7.fhir.common.hapi.validation.validator.VersionSpecificWorkerContextWrapper;
 import org.hl7.fhir.common.hapi.validation.validator.VersionTypeConverterDstu3;
 import org.hl7.fhir.common.hapi.validation.validator.VersionTypeConverterR4;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
 import org.hl7.fhir.r5.conformance.ProfileUtilities;
 import org.hl7.fhir.r5.context.IWorkerContext;
 import org.hl7.fhir.utilities.validation.ValidationMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import static org.apache.commons.lang3.StringUtils.defaultString;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
 /**
@@ -31,10 +48,16 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
  *    <li>R4</li>
  *    <li>R5</li>
  * </ul>
+ * <p>
+ * If a {@link ISnapshotStore} is supplied, generated snapshots are persisted to it and reused
+ * instead of being generated again (including after a restart). Stored snapshots can be loaded
+ * up front using {@link #preloadSnapshots(IValidationSupport, int)}.
+ * </p>
  */
 public class SnapshotGeneratingValidationSupport implements IValidationSupport {
 	private static final Logger ourLog = LoggerFactory.getLogger(SnapshotGeneratingValidationSupport.class);
 	private final FhirContext myCtx;
+	private ISnapshotStore mySnapshotStore;
 
 	/**
 	 * Constructor
@@ -44,6 +67,136 @@ public class SnapshotGeneratingValidationSupport implements IValidationSupport {
 		myCtx = theCtx;
 	}
 
+	/**
+	 * Constructor
+	 *
+	 * @param theSnapshotStore A store used to persist generated snapshots, or <code>null</code> to keep them in memory only
+	 */
+	public SnapshotGeneratingValidationSupport(FhirContext theCtx, ISnapshotStore theSnapshotStore) {
+		this(theCtx);
+		mySnapshotStore = theSnapshotStore;
+	}
+
+	/**
+	 * Returns the store used to persist generated snapshots, or <code>null</code> if none is set
+	 */
+	public ISnapshotStore getSnapshotStore() {
+		return mySnapshotStore;
+	}
+
+	/**
+	 * Sets the store used to persist generated snapshots. If <code>null</code> (the default),
+	 * snapshots are only kept in memory.
+	 */
+	public void setSnapshotStore(ISnapshotStore theSnapshotStore) {
+		mySnapshotStore = theSnapshotStore;
+	}
+
+	/**
+	 * Generates (or loads from the {@link #setSnapshotStore(ISnapshotStore) snapshot store}) the snapshot of every
+	 * StructureDefinition known to the given validation support that does not already have one. This is intended to
+	 * be called at startup so that validation does not pay for snapshot generation on first use.
+	 * <p>
+	 * Profiles are processed in passes ordered by their depth in the derivation hierarchy, so that a base profile
+	 * always has its snapshot before the profiles derived from it, and the profiles within each pass are processed
+	 * in parallel. Failures are logged and do not stop the remaining profiles from being processed.
+	 * </p>
+	 *
+	 * @param theRootValidationSupport The root validation support (typically a {@link ValidationSupportChain}) which this module is a part of
+	 * @param theThreadCount           The number of threads to use
+	 * @return The number of snapshots which were generated or loaded
+	 */
+	public int preloadSnapshots(IValidationSupport theRootValidationSupport, int theThreadCount) {
+		Validate.notNull(theRootValidationSupport, "theRootValidationSupport must not be null");
+		Validate.isTrue(theThreadCount > 0, "theThreadCount must be greater than 0");
+		StopWatch sw = new StopWatch();
+
+		Map<String, IBaseResource> urlToStructureDefinition = new HashMap<>();
+		List<IBaseResource> allStructureDefinitions = theRootValidationSupport.fetchAllStructureDefinitions();
+		if (allStructureDefinitions == null) {
+			return 0;
+		}
+		for (IBaseResource next : allStructureDefinitions) {
+			if (next.getStructureFhirVersionEnum() != myCtx.getVersion().getVersion()) {
+				continue;
+			}
+			String url = getPrimitiveValue(next, "url");
+			if (isBlank(url) || isBlank(getPrimitiveValue(next, "baseDefinition"))) {
+				continue;
+			}
+			if (!myCtx.newTerser().getValues(next, "snapshot.element").isEmpty()) {
+				continue;
+			}
+			urlToStructureDefinition.put(url, next);
+		}
+
+		Map<Integer, List<IBaseResource>> depthToStructureDefinitions = new TreeMap<>();
+		for (IBaseResource next : urlToStructureDefinition.values()) {
+			int depth = getDerivationDepth(next, urlToStructureDefinition, new HashSet<>());
+			depthToStructureDefinitions.computeIfAbsent(depth, t -> new ArrayList<>()).add(next);
+		}
+
+		BasicThreadFactory threadFactory = new BasicThreadFactory.Builder()
+			.namingPattern("snapshot-preload-%d")
+			.daemon(true)
+			.build();
+		ExecutorService executor = Executors.newFixedThreadPool(theThreadCount, threadFactory);
+		int count = 0;
+		try {
+			for (List<IBaseResource> nextPass : depthToStructureDefinitions.values()) {
+				List<Future<Boolean>> futures = new ArrayList<>();
+				for (IBaseResource next : nextPass) {
+					futures.add(executor.submit(() -> preloadSnapshot(theRootValidationSupport, next)));
+				}
+				for (Future<Boolean> next : futures) {
+					if (next.get()) {
+						count++;
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InternalErrorException("Interrupted while preloading snapshots", e);
+		} catch (ExecutionException e) {
+			throw new InternalErrorException("Failed to preload snapshots", e);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		ourLog.info("Preloaded {} StructureDefinition snapshots in {}", count, sw);
+		return count;
+	}
+
+	private boolean preloadSnapshot(IValidationSupport theRootValidationSupport, IBaseResource theStructureDefinition) {
+		String url = getPrimitiveValue(theStructureDefinition, "url");
+		try {
+			// Use the same parameters as the validator so that the stored snapshot keys match
+			theRootValidationSupport.generateSnapshot(new ValidationSupportContext(theRootValidationSupport), theStructureDefinition, "", null, "");
+			return true;
+		} catch (Exception e) {
+			ourLog.warn("Failed to preload snapshot for {}: {}", url, e.toString());
+			return false;
+		}
+	}
+
+	private int getDerivationDepth(IBaseResource theStructureDefinition, Map<String, IBaseResource> theUrlToStructureDefinition, Set<String> theVisited) {
+		String url = getPrimitiveValue(theStructureDefinition, "url");
+		if (!theVisited.add(url)) {
+			// Circular dependency, this will be logged when the snapshot is generated
+			return 0;
+		}
+		IBaseResource base = theUrlToStructureDefinition.get(getPrimitiveValue(theStructureDefinition, "baseDefinition"));
+		if (base == null) {
+			return 0;
+		}
+		return getDerivationDepth(base, theUrlToStructureDefinition, theVisited) + 1;
+	}
+
+	private String getPrimitiveValue(IBaseResource theResource, String thePath) {
+		IPrimitiveType<?> value = myCtx.newTerser().getSingleValueOrNull(theResource, thePath, IPrimitiveType.class);
+		return value != null ? value.getValueAsString() : null;
+	}
+
 	@Override
 	public IBaseResource generateSnapshot(ValidationSupportContext theValidationSupportContext, IBaseResource theInput, String theUrl, String theWebUrl, String theProfileName) {
 
@@ -97,33 +250,26 @@ public class SnapshotGeneratingValidationSupport implements IValidationSupport {
 				baseCanonical = (org.hl7.fhir.r5.model.StructureDefinition) converter.toCanonical(base);
 			}
 
+			String snapshotKey = null;
+			if (mySnapshotStore != null) {
+				snapshotKey = createSnapshotKey(inputCanonical, baseCanonical, theUrl, theWebUrl, theProfileName);
+				IBaseResource stored = loadStoredSnapshot(snapshotKey);
+				if (stored != null) {
+					copySnapshot(stored, theInput);
+					return theInput;
+				}
+			}
+
 			ArrayList<ValidationMessage> messages = new ArrayList<>();
 			org.hl7.fhir.r5.conformance.ProfileUtilities.ProfileKnowledgeProvider profileKnowledgeProvider = new ProfileKnowledgeWorkerR5(myCtx);
 			IWorkerContext context = new VersionSpecificWorkerContextWrapper(theValidationSupportContext, converter);
 			ProfileUtilities profileUtilities = new ProfileUtilities(context, messages, profileKnowledgeProvider);
 			profileUtilities.generateSnapshot(baseCanonical, inputCanonical, theUrl, theWebUrl, theProfileName);
 
-			switch (theInput.getStructureFhirVersionEnum()) {
-				case DSTU3:
-					org.hl7.fhir.dstu3.model.StructureDefinition generatedDstu3 = (org.hl7.fhir.dstu3.model.StructureDefinition) converter.fromCanonical(inputCanonical);
-					((org.hl7.fhir.dstu3.model.StructureDefinition) theInput).getSnapshot().getElement().clear();
-					((org.hl7.fhir.dstu3.model.StructureDefinition) theInput).getSnapshot().getElement().addAll(generatedDstu3.getSnapshot().getElement());
-					break;
-				case R4:
-					org.hl7.fhir.r4.model.StructureDefinition generatedR4 = (org.hl7.fhir.r4.model.StructureDefinition) converter.fromCanonical(inputCanonical);
-					((org.hl7.fhir.r4.model.StructureDefinition) theInput).getSnapshot().getElement().clear();
-					((org.hl7.fhir.r4.model.StructureDefinition) theInput).getSnapshot().getElement().addAll(generatedR4.getSnapshot().getElement());
-					break;
-				case R5:
-					org.hl7.fhir.r5.model.StructureDefinition generatedR5 = (org.hl7.fhir.r5.model.StructureDefinition) converter.fromCanonical(inputCanonical);
-					((org.hl7.fhir.r5.model.StructureDefinition) theInput).getSnapshot().getElement().clear();
-					((org.hl7.fhir.r5.model.StructureDefinition) theInput).getSnapshot().getElement().addAll(generatedR5.getSnapshot().getElement());
-					break;
-				case DSTU2:
-				case DSTU2_HL7ORG:
-				case DSTU2_1:
-				default:
-					throw new IllegalStateException("Can not generate snapshot for version: " + theInput.getStructureFhirVersionEnum());
+			IBaseResource generated = converter.fromCanonical(inputCanonical);
+			copySnapshot(generated, theInput);
+			if (snapshotKey != null) {
+				mySnapshotStore.storeSnapshot(snapshotKey, myCtx.newJsonParser().encodeResourceToString(generated));
 			}
 
 			return theInput;
@@ -139,6 +285,62 @@ public class SnapshotGeneratingValidationSupport implements IValidationSupport {
 		}
 	}
 
+	private IBaseResource loadStoredSnapshot(String theSnapshotKey) {
+		String stored = mySnapshotStore.fetchSnapshot(theSnapshotKey);
+		if (stored == null) {
+			return null;
+		}
+		try {
+			return myCtx.newJsonParser().parseResource(stored);
+		} catch (Exception e) {
+			ourLog.warn("Ignoring stored snapshot which could not be parsed: {}", e.toString());
+			return null;
+		}
+	}
+
+	/**
+	 * Creates the key a snapshot is stored under. Besides the profile URL and version, this includes a hash of
+	 * everything the generated snapshot depends on: the differential, the base definition (including its
+	 * snapshot) and the generation parameters. A stored snapshot therefore stops being used as soon as the
+	 * profile or anything it derives from changes.
+	 */
+	private String createSnapshotKey(org.hl7.fhir.r5.model.StructureDefinition theInputCanonical, org.hl7.fhir.r5.model.StructureDefinition theBaseCanonical, String theUrl, String theWebUrl, String theProfileName) throws IOException {
+		org.hl7.fhir.r5.model.StructureDefinition input = theInputCanonical.copy();
+		input.setSnapshot(null);
+
+		org.hl7.fhir.r5.formats.JsonParser parser = new org.hl7.fhir.r5.formats.JsonParser();
+		String dependencies = parser.composeString(input)
+			+ "|" + parser.composeString(theBaseCanonical)
+			+ "|" + defaultString(theUrl)
+			+ "|" + defaultString(theWebUrl)
+			+ "|" + defaultString(theProfileName);
+
+		return theInputCanonical.getUrl() + "|" + defaultString(theInputCanonical.getVersion()) + "|" + DigestUtils.sha256Hex(dependencies);
+	}
+
+	private void copySnapshot(IBaseResource theSource, IBaseResource theTarget) {
+		FhirVersionEnum version = theTarget.getStructureFhirVersionEnum();
+		switch (version) {
+			case DSTU3:
+				((org.hl7.fhir.dstu3.model.StructureDefinition) theTarget).getSnapshot().getElement().clear();
+				((org.hl7.fhir.dstu3.model.StructureDefinition) theTarget).getSnapshot().getElement().addAll(((org.hl7.fhir.dstu3.model.StructureDefinition) theSource).getSnapshot().getElement());
+				break;
+			case R4:
+				((org.hl7.fhir.r4.model.StructureDefinition) theTarget).getSnapshot().getElement().clear();
+				((org.hl7.fhir.r4.model.StructureDefinition) theTarget).getSnapshot().getElement().addAll(((org.hl7.fhir.r4.model.StructureDefinition) theSource).getSnapshot().getElement());
+				break;
+			case R5:
+				((org.hl7.fhir.r5.model.StructureDefinition) theTarget).getSnapshot().getElement().clear();
+				((org.hl7.fhir.r5.model.StructureDefinition) theTarget).getSnapshot().getElement().addAll(((org.hl7.fhir.r5.model.StructureDefinition) theSource).getSnapshot().getElement());
+				break;
+			case DSTU2:
+			case DSTU2_HL7ORG:
+			case DSTU2_1:
+			default:
+				throw new IllegalStateException("Can not generate snapshot for version: " + version);
+		}
+	}
+
 	@Override
 	public FhirContext getFhirContext() {
 		return myCtx;
@@ -7,6 +7,7 @@ import ca.uhn.fhir.context.support.IValidationSupport;
 import ca.uhn.fhir.context.support.ValidationSupportContext;
 import ca.uhn.fhir.validation.IInstanceValidatorModule;
 import ca.uhn.fhir.validation.IValidationContext;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.Validate;
 import org.hl7.fhir.convertors.VersionConvertor_10_50;
 import org.hl7.fhir.exceptions.FHIRException;
@@ -25,6 +26,7 @@ import javax.annotation.Nonnull;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.TreeSet;
 
 @SuppressWarnings({"PackageAccessibility", "Duplicates"})
 public class FhirInstanceValidator extends BaseValidatorBridge implements IInstanceValidatorModule {
@@ -38,6 +40,9 @@ public class FhirInstanceValidator extends BaseValidatorBridge implements IInsta
 	private boolean assumeValidRestReferences;
 	private List<String> myExtensionDomains = Collections.emptyList();
 	private IResourceValidator.IValidatorResourceFetcher validatorResourceFetcher;
+	private boolean myReuseValidatorInstances = false;
+	private final InstanceValidatorPool myValidatorPool = new InstanceValidatorPool(Runtime.getRuntime().availableProcessors() * 2);
+	private ValidationResultCache myValidationResultCache;
 
 	/**
 	 * Constructor
@@ -146,6 +151,10 @@ public class FhirInstanceValidator extends BaseValidatorBridge implements IInsta
 	public void setValidationSupport(IValidationSupport theValidationSupport) {
 		myValidationSupport = theValidationSupport;
 		myWrappedWorkerContext = null;
+		myValidatorPool.clear();
+		if (myValidationResultCache != null) {
+			myValidationResultCache.invalidateAll();
+		}
 	}
 
 	/**
@@ -194,6 +203,22 @@ public class FhirInstanceValidator extends BaseValidatorBridge implements IInsta
 
 	@Override
 	protected List<ValidationMessage> validate(IValidationContext<?> theValidationCtx) {
+		// Results can't be cached when referenced resources are fetched, since those may change
+		ValidationResultCache validationResultCache = getValidatorResourceFetcher() == null ? myValidationResultCache : null;
+		if (validationResultCache == null) {
+			return doValidate(theValidationCtx);
+		}
+
+		String key = createValidationResultCacheKey(theValidationCtx);
+		List<ValidationMessage> retVal = validationResultCache.get(key);
+		if (retVal == null) {
+			retVal = doValidate(theValidationCtx);
+			validationResultCache.put(key, retVal);
+		}
+		return retVal;
+	}
+
+	private List<ValidationMessage> doValidate(IValidationContext<?> theValidationCtx) {
 		VersionSpecificWorkerContextWrapper wrappedWorkerContext = provideWorkerContext();
 
 		return new ValidatorWrapper()
@@ -204,9 +229,111 @@ public class FhirInstanceValidator extends BaseValidatorBridge implements IInsta
 			.setNoTerminologyChecks(isNoTerminologyChecks())
 			.setValidatorResourceFetcher(getValidatorResourceFetcher())
 			.setAssumeValidRestReferences(isAssumeValidRestReferences())
+			.setValidatorPool(isReuseValidatorInstances() ? myValidatorPool : null)
 			.validate(wrappedWorkerContext, theValidationCtx);
 	}
 
+	/**
+	 * Creates the key used to cache the result of a validation. The resource is identified by a hash of
+	 * its encoded content, which for resources supplied as objects is their canonical encoding. Raw text is
+	 * hashed as supplied, since message locations (line and column) depend on its formatting.
+	 */
+	private String createValidationResultCacheKey(IValidationContext<?> theValidationCtx) {
+		StringBuilder key = new StringBuilder();
+		key.append(theValidationCtx.getResourceAsStringEncoding()).append('|');
+		key.append(theValidationCtx.getResourceAsString()).append('|');
+		key.append(new TreeSet<>(theValidationCtx.getOptions().getProfiles())).append('|');
+		key.append(isAnyExtensionsAllowed()).append('|');
+		key.append(getBestPracticeWarningLevel()).append('|');
+		key.append(isErrorForUnknownProfiles()).append('|');
+		key.append(isNoTerminologyChecks()).append('|');
+		key.append(isAssumeValidRestReferences()).append('|');
+		key.append(getExtensionDomains());
+		return DigestUtils.sha256Hex(key.toString());
+	}
+
+	/**
+	 * Returns the cache used to hold validation results, or <code>null</code> (the default) if results are not cached
+	 *
+	 * @see #setValidationResultCache(ValidationResultCache)
+	 */
+	public ValidationResultCache getValidationResultCache() {
+		return myValidationResultCache;
+	}
+
+	/**
+	 * Sets a cache used to hold validation results. If set, a resource which has already been
+	 * validated against the same profiles with the same settings is not validated again, and the
+	 * previous result is returned instead. Default is <code>null</code>, meaning that results are
+	 * not cached. Results are never cached when a
+	 * {@link #setValidatorResourceFetcher(IResourceValidator.IValidatorResourceFetcher) resource fetcher}
+	 * is set, since they may depend on the referenced resources.
+	 */
+	public void setValidationResultCache(ValidationResultCache theValidationResultCache) {
+		myValidationResultCache = theValidationResultCache;
+	}
+
+	/**
+	 * If set to {@literal true} (default is false), the underlying validator instances are kept
+	 * in a pool and reused by later validations with the same configuration, instead of being
+	 * created for every validation. Validators are never pooled when a
+	 * {@link #setValidatorResourceFetcher(IResourceValidator.IValidatorResourceFetcher) resource fetcher}
+	 * is set.
+	 * <p>
+	 * This is experimental: the core validator is not documented as being reusable, so pooling
+	 * should only be enabled after checking that it gives a measurable benefit for your workload.
+	 * </p>
+	 */
+	public boolean isReuseValidatorInstances() {
+		return myReuseValidatorInstances;
+	}
+
+	/**
+	 * If set to {@literal true} (default is false), the underlying validator instances are kept
+	 * in a pool and reused by later validations with the same configuration, instead of being
+	 * created for every validation. Validators are never pooled when a
+	 * {@link #setValidatorResourceFetcher(IResourceValidator.IValidatorResourceFetcher) resource fetcher}
+	 * is set.
+	 * <p>
+	 * This is experimental: the core validator is not documented as being reusable, so pooling
+	 * should only be enabled after checking that it gives a measurable benefit for your workload.
+	 * </p>
+	 */
+	public void setReuseValidatorInstances(boolean theReuseValidatorInstances) {
+		myReuseValidatorInstances = theReuseValidatorInstances;
+		if (!theReuseValidatorInstances) {
+			myValidatorPool.clear();
+		}
+	}
+
+	/**
+	 * Returns the number of validations which reused a pooled validator instance
+	 *
+	 * @see #setReuseValidatorInstances(boolean)
+	 */
+	public long getValidatorPoolHitCount() {
+		return myValidatorPool.getHitCount();
+	}
+
+	/**
+	 * Returns the number of validations which needed a new validator instance to be created
+	 * for the pool
+	 *
+	 * @see #setReuseValidatorInstances(boolean)
+	 */
+	public long getValidatorPoolMissCount() {
+		return myValidatorPool.getMissCount();
+	}
+
+	/**
+	 * Returns the total time (in milliseconds) spent creating new validator instances for the pool
+	 *
+	 * @see #setReuseValidatorInstances(boolean)
+	 */
+	public long getValidatorPoolWarmUpMillis() {
+		return myValidatorPool.getWarmUpMillis();
+	}
+
 	@Nonnull
 	protected VersionSpecificWorkerContextWrapper provideWorkerContext() {
 		VersionSpecificWorkerContextWrapper wrappedWorkerContext = myWrappedWorkerContext;
@@ -289,11 +416,17 @@ public class FhirInstanceValidator extends BaseValidatorBridge implements IInsta
 	}
 
 	/**
-	 * Clear any cached data held by the validator or any of its internal stores. This is mostly intended
-	 * for unit tests, but could be used for production uses too.
+	 * Clear any cached data held by the validator or any of its internal stores, including the
+	 * {@link #setValidationResultCache(ValidationResultCache) validation result cache}. This should be
+	 * called whenever conformance resources (e.g. StructureDefinitions, ValueSets or CodeSystems) that the
+	 * validator may have loaded are changed. The JPA server does this automatically.
 	 */
 	public void invalidateCaches() {
 		myValidationSupport.invalidateCaches();
+		myValidatorPool.clear();
+		if (myValidationResultCache != null) {
+			myValidationResultCache.invalidateAll();
+		}
 		if (myWrappedWorkerContext != null) {
 			myWrappedWorkerContext.invalidateCaches();
 		}
@@ -0,0 +1,96 @@
+package org.hl7.fhir.common.hapi.validation.validator;
+
+import org.hl7.fhir.validation.instance.InstanceValidator;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Holds idle {@link InstanceValidator} instances so that they can be reused across
+ * validations instead of being created (along with their FHIRPath engine) for every call.
+ * <p>
+ * Validators are pooled by a key describing their configuration, and a validator is
+ * only ever used by one thread at a time: it is removed from the pool while in use and
+ * returned afterwards. This class is thread safe.
+ * </p>
+ */
+class InstanceValidatorPool {
+
+	private final ConcurrentHashMap<Object, BlockingQueue<InstanceValidator>> myIdleValidators = new ConcurrentHashMap<>();
+	private final int myMaxIdlePerConfiguration;
+	private final AtomicLong myHitCount = new AtomicLong();
+	private final AtomicLong myMissCount = new AtomicLong();
+	private final AtomicLong myWarmUpNanos = new AtomicLong();
+
+	/**
+	 * Constructor
+	 *
+	 * @param theMaxIdlePerConfiguration The maximum number of idle validators kept for each configuration. Validators
+	 *                                   released when this many are already idle are discarded.
+	 */
+	InstanceValidatorPool(int theMaxIdlePerConfiguration) {
+		myMaxIdlePerConfiguration = theMaxIdlePerConfiguration;
+	}
+
+	/**
+	 * Takes an idle validator with the given configuration out of the pool, or creates a
+	 * new one using the given factory if none is idle
+	 */
+	InstanceValidator borrow(Object theConfigurationKey, Supplier<InstanceValidator> theFactory) {
+		BlockingQueue<InstanceValidator> idle = myIdleValidators.get(theConfigurationKey);
+		InstanceValidator retVal = idle != null ? idle.poll() : null;
+		if (retVal != null) {
+			myHitCount.incrementAndGet();
+			return retVal;
+		}
+
+		myMissCount.incrementAndGet();
+		long start = System.nanoTime();
+		retVal = theFactory.get();
+		myWarmUpNanos.addAndGet(System.nanoTime() - start);
+		return retVal;
+	}
+
+	/**
+	 * Returns a validator to the pool once the validation using it has completed successfully.
+	 * Validators whose validation failed with an exception should not be returned.
+	 */
+	void release(Object theConfigurationKey, InstanceValidator theValidator) {
+		myIdleValidators
+			.computeIfAbsent(theConfigurationKey, t -> new ArrayBlockingQueue<>(myMaxIdlePerConfiguration))
+			.offer(theValidator);
+	}
+
+	/**
+	 * Discards all idle validators
+	 */
+	void clear() {
+		myIdleValidators.clear();
+	}
+
+	/**
+	 * The number of validations which reused an idle validator
+	 */
+	long getHitCount() {
+		return myHitCount.get();
+	}
+
+	/**
+	 * The number of validations which needed a new validator to be created
+	 */
+	long getMissCount() {
+		return myMissCount.get();
+	}
+
+	/**
+	 * The total time spent creating new validators
+	 */
+	long getWarmUpMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(myWarmUpNanos.get());
+	}
+
+}
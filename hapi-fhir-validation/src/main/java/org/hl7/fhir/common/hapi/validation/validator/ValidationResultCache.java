@@ -0,0 +1,107 @@
+package org.hl7.fhir.common.hapi.validation.validator;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.commons.lang3.Validate;
+import org.hl7.fhir.utilities.validation.ValidationMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of validation results which can be supplied to a {@link FhirInstanceValidator} using
+ * {@link FhirInstanceValidator#setValidationResultCache(ValidationResultCache)}, so that a resource
+ * which is submitted repeatedly (e.g. retries or idempotent feeds) is only fully validated once.
+ * <p>
+ * Results are keyed by a hash of the resource content, the profiles it is being validated against,
+ * and the validator settings. Entries are evicted once the maximum size is reached, and expire after
+ * a fixed time so that changes to conformance resources are eventually picked up. The cache is also
+ * cleared whenever {@link FhirInstanceValidator#invalidateCaches()} is called or the validation support
+ * is replaced.
+ * </p>
+ */
+public class ValidationResultCache {
+
+	public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+	public static final long DEFAULT_EXPIRE_AFTER_WRITE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+	private final Cache<String, List<ValidationMessage>> myCache;
+
+	/**
+	 * Constructor which uses a maximum size of {@link #DEFAULT_MAXIMUM_SIZE} entries and expires entries
+	 * after {@link #DEFAULT_EXPIRE_AFTER_WRITE_MILLIS} milliseconds
+	 */
+	public ValidationResultCache() {
+		this(DEFAULT_MAXIMUM_SIZE, DEFAULT_EXPIRE_AFTER_WRITE_MILLIS);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param theMaximumSize            The maximum number of results to hold
+	 * @param theExpireAfterWriteMillis The number of milliseconds after which a result is discarded
+	 */
+	public ValidationResultCache(long theMaximumSize, long theExpireAfterWriteMillis) {
+		Validate.isTrue(theMaximumSize > 0, "theMaximumSize must be greater than 0");
+		Validate.isTrue(theExpireAfterWriteMillis > 0, "theExpireAfterWriteMillis must be greater than 0");
+		myCache = Caffeine
+			.newBuilder()
+			.maximumSize(theMaximumSize)
+			.expireAfterWrite(theExpireAfterWriteMillis, TimeUnit.MILLISECONDS)
+			.recordStats()
+			.build();
+	}
+
+	/**
+	 * Returns a copy of the cached messages for the given key, or <code>null</code>
+	 */
+	List<ValidationMessage> get(String theKey) {
+		List<ValidationMessage> retVal = myCache.getIfPresent(theKey);
+		if (retVal != null) {
+			return new ArrayList<>(retVal);
+		}
+		return null;
+	}
+
+	void put(String theKey, List<ValidationMessage> theMessages) {
+		myCache.put(theKey, Collections.unmodifiableList(new ArrayList<>(theMessages)));
+	}
+
+	/**
+	 * Discards all cached results
+	 */
+	public void invalidateAll() {
+		myCache.invalidateAll();
+	}
+
+	/**
+	 * Returns the number of validations which were answered from the cache
+	 */
+	public long getHitCount() {
+		return myCache.stats().hitCount();
+	}
+
+	/**
+	 * Returns the number of validations which were not found in the cache
+	 */
+	public long getMissCount() {
+		return myCache.stats().missCount();
+	}
+
+	/**
+	 * Returns the ratio of validations which were answered from the cache (between 0.0 and 1.0)
+	 */
+	public double getHitRate() {
+		return myCache.stats().hitRate();
+	}
+
+	/**
+	 * Returns the number of results currently held
+	 */
+	public long getSize() {
+		return myCache.estimatedSize();
+	}
+
+}
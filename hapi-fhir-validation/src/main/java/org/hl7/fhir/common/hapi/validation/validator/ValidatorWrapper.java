@@ -2,18 +2,19 @@ package org.hl7.fhir.common.hapi.validation.validator;
 
 import ca.uhn.fhir.context.ConfigurationException;
 import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.util.XmlUtil;
 import ca.uhn.fhir.validation.IValidationContext;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import ca.uhn.fhir.validation.ValidationContext;
 import org.apache.commons.codec.Charsets;
 import org.apache.commons.io.input.ReaderInputStream;
 import org.hl7.fhir.exceptions.FHIRException;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
 import org.hl7.fhir.r5.context.IWorkerContext;
+import org.hl7.fhir.r5.elementmodel.Element;
 import org.hl7.fhir.r5.elementmodel.Manager;
+import org.hl7.fhir.r5.elementmodel.ParserBase;
 import org.hl7.fhir.r5.model.StructureDefinition;
 import org.hl7.fhir.r5.utils.FHIRPathEngine;
 import org.hl7.fhir.r5.utils.IResourceValidator;
@@ -24,12 +25,16 @@ import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.NodeList;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
 class ValidatorWrapper {
 
 	private static final Logger ourLog = LoggerFactory.getLogger(ValidatorWrapper.class);
@@ -40,6 +45,7 @@ class ValidatorWrapper {
 	private boolean myAssumeValidRestReferences;
 	private Collection<? extends String> myExtensionDomains;
 	private IResourceValidator.IValidatorResourceFetcher myValidatorResourceFetcher;
+	private InstanceValidatorPool myValidatorPool;
 
 	/**
 	 * Constructor
@@ -88,7 +94,46 @@ class ValidatorWrapper {
 		return this;
 	}
 
+	/**
+	 * If set, validators are borrowed from (and returned to) this pool instead of being
+	 * created for each validation. Validators are not pooled when a
+	 * {@link #setValidatorResourceFetcher(IResourceValidator.IValidatorResourceFetcher) resource fetcher}
+	 * is set, since the validator caches the resources it fetches.
+	 */
+	public ValidatorWrapper setValidatorPool(InstanceValidatorPool theValidatorPool) {
+		myValidatorPool = theValidatorPool;
+		return this;
+	}
+
 	public List<ValidationMessage> validate(IWorkerContext theWorkerContext, IValidationContext<?> theValidationContext) {
+		if (myValidatorPool == null || myValidatorResourceFetcher != null) {
+			return validate(newInstanceValidator(theWorkerContext), theWorkerContext, theValidationContext);
+		}
+
+		Object poolKey = getPoolKey(theWorkerContext);
+		InstanceValidator v = myValidatorPool.borrow(poolKey, () -> newInstanceValidator(theWorkerContext));
+		List<ValidationMessage> retVal = validate(v, theWorkerContext, theValidationContext);
+
+		// Only returned to the pool if the validation did not fail with an exception
+		myValidatorPool.release(poolKey, v);
+		return retVal;
+	}
+
+	/**
+	 * Validators are only shared between wrappers with an identical configuration
+	 */
+	private Object getPoolKey(IWorkerContext theWorkerContext) {
+		return Arrays.asList(
+			theWorkerContext,
+			myBestPracticeWarningLevel,
+			myAnyExtensionsAllowed,
+			myErrorForUnknownProfiles,
+			myNoTerminologyChecks,
+			myAssumeValidRestReferences,
+			new ArrayList<>(myExtensionDomains));
+	}
+
+	private InstanceValidator newInstanceValidator(IWorkerContext theWorkerContext) {
 		InstanceValidator v;
 		FHIRPathEngine.IEvaluationContext evaluationCtx = new FhirInstanceValidator.NullEvaluationContext();
 		try {
@@ -106,7 +151,10 @@ class ValidatorWrapper {
 		v.getExtensionDomains().addAll(myExtensionDomains);
 		v.setFetcher(myValidatorResourceFetcher);
 		v.setAllowXsiLocation(true);
+		return v;
+	}
 
+	private List<ValidationMessage> validate(InstanceValidator v, IWorkerContext theWorkerContext, IValidationContext<?> theValidationContext) {
 		List<ValidationMessage> messages = new ArrayList<>();
 
 		List<StructureDefinition> profileUrls = new ArrayList<>();
@@ -114,55 +162,88 @@ class ValidatorWrapper {
 			fetchAndAddProfile(theWorkerContext, profileUrls, next);
 		}
 
+		/*
+		 * If the resource was supplied already parsed, its profiles can be read from the
+		 * model instead of parsing the encoded string an extra time just to find them
+		 */
+		boolean profilesFromResource = false;
+		if (theValidationContext instanceof ValidationContext && theValidationContext.getResource() instanceof IBaseResource) {
+			IBaseResource resource = (IBaseResource) theValidationContext.getResource();
+			if (resource.getMeta() != null) {
+				for (IPrimitiveType<String> nextProfile : resource.getMeta().getProfile()) {
+					if (isNotBlank(nextProfile.getValue())) {
+						fetchAndAddProfile(theWorkerContext, profileUrls, nextProfile.getValue());
+					}
+				}
+			}
+			profilesFromResource = true;
+		}
+
 		String input = theValidationContext.getResourceAsString();
 		EncodingEnum encoding = theValidationContext.getResourceAsStringEncoding();
 		if (encoding == EncodingEnum.XML) {
-			Document document;
-			try {
-				document = XmlUtil.parseDocument(input);
-			} catch (Exception e2) {
-				ourLog.error("Failure to parse XML input", e2);
-				ValidationMessage m = new ValidationMessage();
-				m.setLevel(ValidationMessage.IssueSeverity.FATAL);
-				m.setMessage("Failed to parse input, it does not appear to be valid XML:" + e2.getMessage());
-				messages.add(m);
-				return messages;
-			}
+			/*
+			 * XML text is still parsed twice: once here into a DOM to find the profiles, and
+			 * again by the validator, which needs its own location-aware parse to report line
+			 * and column numbers. Only parsed resources skip the first parse.
+			 */
+			if (!profilesFromResource) {
+				Document document;
+				try {
+					document = XmlUtil.parseDocument(input);
+				} catch (Exception e2) {
+					ourLog.error("Failure to parse XML input", e2);
+					ValidationMessage m = new ValidationMessage();
+					m.setLevel(ValidationMessage.IssueSeverity.FATAL);
+					m.setMessage("Failed to parse input, it does not appear to be valid XML:" + e2.getMessage());
+					messages.add(m);
+					return messages;
+				}
 
-			// Determine if meta/profiles are present...
-			ArrayList<String> profiles = determineIfProfilesSpecified(document);
-			for (String nextProfile : profiles) {
-				fetchAndAddProfile(theWorkerContext, profileUrls, nextProfile);
+				// Determine if meta/profiles are present...
+				ArrayList<String> profiles = determineIfProfilesSpecified(document);
+				for (String nextProfile : profiles) {
+					fetchAndAddProfile(theWorkerContext, profileUrls, nextProfile);
+				}
 			}
 
-			String resourceAsString = theValidationContext.getResourceAsString();
-			InputStream inputStream = new ReaderInputStream(new StringReader(resourceAsString), Charsets.UTF_8);
+			InputStream inputStream = new ReaderInputStream(new StringReader(input), Charsets.UTF_8);
 
 			Manager.FhirFormat format = Manager.FhirFormat.XML;
 			v.validate(null, messages, inputStream, format, profileUrls);
 
 		} else if (encoding == EncodingEnum.JSON) {
 
-			Gson gson = new GsonBuilder().create();
-			JsonObject json = gson.fromJson(input, JsonObject.class);
-
-			JsonObject meta = json.getAsJsonObject("meta");
-			if (meta != null) {
-				JsonElement profileElement = meta.get("profile");
-				if (profileElement != null && profileElement.isJsonArray()) {
-					JsonArray profiles = profileElement.getAsJsonArray();
-					for (JsonElement element : profiles) {
-						String nextProfile = element.getAsString();
-						fetchAndAddProfile(theWorkerContext, profileUrls, nextProfile);
-					}
-				}
+			/*
+			 * Parse the input into the validator's element model once, and read the
+			 * profiles from that tree, rather than parsing it with Gson to find the
+			 * profiles and then having the validator parse it again. This is the same
+			 * parser setup that InstanceValidator uses when given a stream.
+			 */
+			InputStream inputStream = new ReaderInputStream(new StringReader(input), Charsets.UTF_8);
+			ParserBase parser = Manager.makeParser(theWorkerContext, Manager.FhirFormat.JSON);
+			parser.setupValidation(ParserBase.ValidationPolicy.EVERYTHING, messages);
+			Element element;
+			try {
+				element = parser.parse(inputStream);
+			} catch (IOException e) {
+				throw new InternalErrorException(e);
 			}
 
-			String resourceAsString = theValidationContext.getResourceAsString();
-			InputStream inputStream = new ReaderInputStream(new StringReader(resourceAsString), Charsets.UTF_8);
+			if (element != null) {
+				if (!profilesFromResource) {
+					Element meta = element.getNamedChild("meta");
+					if (meta != null) {
+						for (Element nextProfile : meta.getChildrenByName("profile")) {
+							if (isNotBlank(nextProfile.primitiveValue())) {
+								fetchAndAddProfile(theWorkerContext, profileUrls, nextProfile.primitiveValue());
+							}
+						}
+					}
+				}
 
-			Manager.FhirFormat format = Manager.FhirFormat.JSON;
-			v.validate(null, messages, inputStream, format, profileUrls);
+				v.validate(null, messages, element, profileUrls);
+			}
 
 		} else {
 			throw new IllegalArgumentException("Unknown encoding: " + encoding);
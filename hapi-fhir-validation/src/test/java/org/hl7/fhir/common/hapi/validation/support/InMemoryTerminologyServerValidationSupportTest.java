@@ -6,6 +6,7 @@ import ca.uhn.fhir.context.support.DefaultProfileValidationSupport;
 import ca.uhn.fhir.context.support.IValidationSupport;
 import ca.uhn.fhir.context.support.ValidationSupportContext;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.CodeSystem;
 import org.hl7.fhir.r4.model.CodeType;
 import org.hl7.fhir.r4.model.ValueSet;
 import org.junit.jupiter.api.BeforeEach;
@@ -58,6 +59,80 @@ class InMemoryTerminologyServerValidationSupportTest {
 
 	}
 
+	@Test
+	public void testValidateCodeReusesExpansionUntilValueSetChanges() {
+		ValueSet vs = new ValueSet();
+		vs.setUrl("http://vs");
+		vs
+			.getCompose()
+			.addInclude()
+			.setSystem("http://cs")
+			.addConcept(new ValueSet.ConceptReferenceComponent(new CodeType("code1")).setDisplay("Code 1"))
+			.addConcept(new ValueSet.ConceptReferenceComponent(new CodeType("code2")));
+		myPrePopulated.addValueSet(vs);
+
+		ValidationSupportContext valCtx = new ValidationSupportContext(myChain);
+		ConceptValidationOptions options = new ConceptValidationOptions();
+
+		for (int i = 0; i < 3; i++) {
+			IValidationSupport.CodeValidationResult outcome = mySvc.validateCode(valCtx, options, "http://cs", "code1", null, "http://vs");
+			assertTrue(outcome.isOk());
+			assertEquals("Code 1", outcome.getDisplay());
+
+			outcome = mySvc.validateCode(valCtx, options, "http://cs", "code3", null, "http://vs");
+			assertFalse(outcome.isOk());
+			assertEquals("Unknown code 'http://cs#code3'", outcome.getMessage());
+		}
+
+		// Replacing the ValueSet causes it to be expanded again
+		ValueSet vs2 = vs.copy();
+		vs2.getCompose().getIncludeFirstRep().addConcept(new ValueSet.ConceptReferenceComponent(new CodeType("code3")));
+		myPrePopulated.addValueSet(vs2);
+
+		IValidationSupport.CodeValidationResult outcome = mySvc.validateCode(valCtx, options, "http://cs", "code3", null, "http://vs");
+		assertTrue(outcome.isOk());
+	}
+
+	@Test
+	public void testValidateCodeReusesExpansionUntilCodeSystemChanges() {
+		CodeSystem cs = new CodeSystem();
+		cs.setUrl("http://cs");
+		cs.setContent(CodeSystem.CodeSystemContentMode.COMPLETE);
+		cs.setCaseSensitive(false);
+		cs.addConcept().setCode("CODE1").setDisplay("Code 1");
+		cs.addConcept().setCode("code2");
+		myPrePopulated.addCodeSystem(cs);
+
+		ValueSet vs = new ValueSet();
+		vs.setUrl("http://vs");
+		vs.getCompose().addInclude().setSystem("http://cs");
+		myPrePopulated.addValueSet(vs);
+
+		ValidationSupportContext valCtx = new ValidationSupportContext(myChain);
+		ConceptValidationOptions options = new ConceptValidationOptions();
+
+		// The CodeSystem is not case sensitive
+		for (int i = 0; i < 3; i++) {
+			IValidationSupport.CodeValidationResult outcome = mySvc.validateCode(valCtx, options, "http://cs", "code1", null, "http://vs");
+			assertTrue(outcome.isOk());
+			assertEquals("Code 1", outcome.getDisplay());
+
+			outcome = mySvc.validateCode(valCtx, options, "http://cs", "CODE2", null, "http://vs");
+			assertTrue(outcome.isOk());
+
+			outcome = mySvc.validateCode(valCtx, options, "http://cs", "code3", null, "http://vs");
+			assertFalse(outcome.isOk());
+		}
+
+		// Replacing the CodeSystem causes the ValueSet to be expanded again
+		CodeSystem cs2 = cs.copy();
+		cs2.addConcept().setCode("code3");
+		myPrePopulated.addCodeSystem(cs2);
+
+		IValidationSupport.CodeValidationResult outcome = mySvc.validateCode(valCtx, options, "http://cs", "CODE3", null, "http://vs");
+		assertTrue(outcome.isOk());
+	}
+
 	@Test
 	public void testValidateCodeDstu2() {
 		FhirContext ctxDstu2 = FhirContext.forDstu2Hl7Org();
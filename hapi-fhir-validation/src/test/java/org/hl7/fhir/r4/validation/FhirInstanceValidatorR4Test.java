@@ -24,6 +24,7 @@ import org.hl7.fhir.common.hapi.validation.support.PrePopulatedValidationSupport
 import org.hl7.fhir.common.hapi.validation.support.SnapshotGeneratingValidationSupport;
 import org.hl7.fhir.common.hapi.validation.support.ValidationSupportChain;
 import org.hl7.fhir.common.hapi.validation.validator.FhirInstanceValidator;
+import org.hl7.fhir.common.hapi.validation.validator.ValidationResultCache;
 import org.hl7.fhir.exceptions.FHIRException;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.conformance.ProfileUtilities;
@@ -40,6 +41,7 @@ import org.hl7.fhir.r4.model.CodeType;
 import org.hl7.fhir.r4.model.Consent;
 import org.hl7.fhir.r4.model.ContactPoint;
 import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.Enumerations;
 import org.hl7.fhir.r4.model.Extension;
 import org.hl7.fhir.r4.model.Media;
 import org.hl7.fhir.r4.model.Narrative;
@@ -73,12 +75,16 @@ import org.mockito.stubbing.Answer;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -87,9 +93,11 @@ import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.not;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -835,6 +843,285 @@ public class FhirInstanceValidatorR4Test extends BaseTest {
 		assertEquals(0, output.getMessages().size(), output.toString());
 	}
 
+	@Test
+	public void testValidatorInstancesAreNotReusedByDefault() {
+		String text = "\"text\": {\"status\": \"generated\", \"div\": \"<div xmlns=\\\"http://www.w3.org/1999/xhtml\\\">HELLO</div>\"}";
+		String good = "{\"resourceType\":\"Patient\", " + text + ", \"id\":\"123\"}";
+
+		assertEquals(0, myVal.validateWithResult(good).getMessages().size());
+		assertEquals(0, myVal.validateWithResult(good).getMessages().size());
+		assertEquals(0, myInstanceVal.getValidatorPoolMissCount());
+		assertEquals(0, myInstanceVal.getValidatorPoolHitCount());
+	}
+
+	@Test
+	public void testValidatorInstancesAreReused() {
+		myInstanceVal.setReuseValidatorInstances(true);
+		String text = "\"text\": {\"status\": \"generated\", \"div\": \"<div xmlns=\\\"http://www.w3.org/1999/xhtml\\\">HELLO</div>\"}";
+		String good = "{\"resourceType\":\"Patient\", " + text + ", \"id\":\"123\"}";
+		String bad = "{\"resourceType\":\"Patient\", " + text + ", \"id\":\"123\", \"foo\":\"123\"}";
+
+		assertEquals(0, myVal.validateWithResult(good).getMessages().size());
+		assertEquals(1, myInstanceVal.getValidatorPoolMissCount());
+		assertEquals(0, myInstanceVal.getValidatorPoolHitCount());
+
+		// Messages from one validation do not leak into the next
+		assertEquals(1, myVal.validateWithResult(bad).getMessages().size());
+		assertEquals(0, myVal.validateWithResult(good).getMessages().size());
+		assertEquals(1, myInstanceVal.getValidatorPoolMissCount());
+		assertEquals(2, myInstanceVal.getValidatorPoolHitCount());
+
+		// A different configuration uses different validators
+		myInstanceVal.setAnyExtensionsAllowed(false);
+		assertEquals(0, myVal.validateWithResult(good).getMessages().size());
+		assertEquals(2, myInstanceVal.getValidatorPoolMissCount());
+	}
+
+	@Test
+	public void testValidationResultCache() {
+		ValidationResultCache cache = new ValidationResultCache();
+		myInstanceVal.setValidationResultCache(cache);
+
+		String text = "\"text\": {\"status\": \"generated\", \"div\": \"<div xmlns=\\\"http://www.w3.org/1999/xhtml\\\">HELLO</div>\"}";
+		String bad = "{\"resourceType\":\"Patient\", " + text + ", \"id\":\"123\", \"foo\":\"123\"}";
+
+		assertEquals(1, myVal.validateWithResult(bad).getMessages().size());
+		assertEquals(0, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+
+		// Identical content is answered from the cache
+		ValidationResult output = myVal.validateWithResult(bad);
+		assertEquals(1, output.getMessages().size());
+		assertEquals("Unrecognised property '@foo'", output.getMessages().get(0).getMessage());
+		assertEquals(1, cache.getHitCount());
+
+		// Different settings are not
+		myInstanceVal.setAnyExtensionsAllowed(false);
+		assertEquals(1, myVal.validateWithResult(bad).getMessages().size());
+		assertEquals(2, cache.getMissCount());
+
+		// Invalidating the validator clears the cache
+		myInstanceVal.invalidateCaches();
+		assertEquals(1, myVal.validateWithResult(bad).getMessages().size());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(3, cache.getMissCount());
+	}
+
+	@Test
+	public void testValidationResultCache_ResourceFetcher() {
+		ValidationResultCache cache = new ValidationResultCache();
+		myInstanceVal.setValidationResultCache(cache);
+
+		String text = "\"text\": {\"status\": \"generated\", \"div\": \"<div xmlns=\\\"http://www.w3.org/1999/xhtml\\\">HELLO</div>\"}";
+		String bad = "{\"resourceType\":\"Patient\", " + text + ", \"id\":\"123\", \"foo\":\"123\"}";
+
+		// Results are not cached while a fetcher is set, since they depend on the resources it returns
+		myInstanceVal.setValidatorResourceFetcher(mock(IResourceValidator.IValidatorResourceFetcher.class));
+		myVal.validateWithResult(bad);
+		myVal.validateWithResult(bad);
+		assertEquals(0, cache.getHitCount());
+		assertEquals(0, cache.getMissCount());
+
+		myInstanceVal.setValidatorResourceFetcher(null);
+		myVal.validateWithResult(bad);
+		myVal.validateWithResult(bad);
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void testValidateBundleEntriesConcurrently() {
+		Bundle bundle = new Bundle();
+		bundle.setType(Bundle.BundleType.TRANSACTION);
+
+		Patient patient = new Patient();
+		patient.getText().setStatus(Narrative.NarrativeStatus.GENERATED).setDivAsString("<div>Patient</div>");
+		patient.addName().setFamily("Smith");
+		bundle.addEntry().setFullUrl("urn:uuid:1").setResource(patient).getRequest().setMethod(Bundle.HTTPVerb.POST).setUrl("Patient");
+
+		// No status or code, and a subject which doesn't match any entry
+		Observation observation = new Observation();
+		observation.getText().setStatus(Narrative.NarrativeStatus.GENERATED).setDivAsString("<div>Observation</div>");
+		observation.getSubject().setReference("urn:uuid:2");
+		bundle.addEntry().setFullUrl("urn:uuid:3").setResource(observation).getRequest().setMethod(Bundle.HTTPVerb.POST).setUrl("Observation");
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			myVal.setConcurrentBundleValidation(true);
+			myVal.setExecutorService(executor);
+			ValidationResult output = myVal.validateWithResult(bundle);
+			ourLog.info(output.getMessages().stream().map(t -> t.getLocationString() + " - " + t.getMessage()).collect(Collectors.joining("\n")));
+
+			List<SingleValidationMessage> errors = output.getMessages().stream().filter(t -> t.getSeverity() == ResultSeverityEnum.ERROR).collect(Collectors.toList());
+			assertTrue(errors.stream().anyMatch(t -> t.getLocationString().startsWith("Bundle.entry[1].resource") && t.getMessage().contains("Observation.status")), errors.toString());
+			assertTrue(errors.stream().anyMatch(t -> t.getMessage().equals("Reference urn:uuid:2 does not match the fullUrl of any entry in the Bundle")), errors.toString());
+			assertTrue(errors.stream().noneMatch(t -> t.getLocationString().startsWith("Bundle.entry[0].resource")), errors.toString());
+
+			// The original Bundle is not modified
+			assertSame(observation, bundle.getEntry().get(1).getResource());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Validates a mix of resources and profiles in sequence on pooled validators, and makes
+	 * sure that each result is exactly what a fresh validator produces
+	 */
+	@Test
+	public void testPooledValidatorsDoNotLeakStateBetweenValidations() {
+		addValidConcept("http://loinc.org", "12345");
+		myInstanceVal.setValidationSupport(myValidationSupport);
+
+		List<IBaseResource> inputs = new ArrayList<>();
+
+		Patient goodPatient = new Patient();
+		goodPatient.getText().setDiv(new XhtmlNode().setValue("<div>AA</div>")).setStatus(Narrative.NarrativeStatus.GENERATED);
+		goodPatient.setActive(true);
+		inputs.add(goodPatient);
+
+		Observation profiledObservation = new Observation();
+		profiledObservation.getText().setDiv(new XhtmlNode().setValue("<div>AA</div>")).setStatus(Narrative.NarrativeStatus.GENERATED);
+		profiledObservation.getMeta().addProfile("http://hl7.org/fhir/StructureDefinition/devicemetricobservation");
+		profiledObservation.getEncounter().setReference("http://foo.com/Encounter/9");
+		profiledObservation.setStatus(ObservationStatus.FINAL);
+		profiledObservation.getCode().addCoding().setSystem("http://loinc.org").setCode("12345");
+		inputs.add(profiledObservation);
+
+		Observation plainObservation = new Observation();
+		plainObservation.getText().setDiv(new XhtmlNode().setValue("<div>AA</div>")).setStatus(Narrative.NarrativeStatus.GENERATED);
+		plainObservation.getCode().addCoding().setSystem("http://loinc.org").setCode("12345");
+		inputs.add(plainObservation);
+
+		Patient badPatient = new Patient();
+		badPatient.getText().setDiv(new XhtmlNode().setValue("<div>AA</div>")).setStatus(Narrative.NarrativeStatus.GENERATED);
+		badPatient.addContact().setGender(Enumerations.AdministrativeGender.MALE);
+		badPatient.getMeta().addProfile("http://hl7.org/fhir/StructureDefinition/devicemetricobservation");
+		inputs.add(badPatient);
+
+		List<String> expected = new ArrayList<>();
+		for (IBaseResource next : inputs) {
+			expected.add(toMessageString(myVal.validateWithResult(next)));
+		}
+		assertThat(expected.get(1), containsString("Observation.device"));
+		assertThat(expected.get(2), not(containsString("Observation.device")));
+
+		myInstanceVal.setReuseValidatorInstances(true);
+		for (int pass = 0; pass < 3; pass++) {
+			for (int i = 0; i < inputs.size(); i++) {
+				assertEquals(expected.get(i), toMessageString(myVal.validateWithResult(inputs.get(i))), "Pass " + pass + " input " + i);
+			}
+		}
+		assertThat(myInstanceVal.getValidatorPoolHitCount(), greaterThan(0L));
+	}
+
+	private static String toMessageString(ValidationResult theResult) {
+		return theResult
+			.getMessages()
+			.stream()
+			.map(t -> t.getSeverity() + " " + t.getLocationString() + " " + t.getMessage())
+			.sorted()
+			.collect(Collectors.joining("\n"));
+	}
+
+	@Test
+	public void testValidateBundleEntriesConcurrently_StringInput() {
+		Bundle bundle = new Bundle();
+		bundle.setType(Bundle.BundleType.BATCH);
+
+		Observation observation = new Observation();
+		observation.getText().setStatus(Narrative.NarrativeStatus.GENERATED).setDivAsString("<div>Observation</div>");
+		observation.getSubject().setReference("urn:uuid:2");
+		bundle.addEntry().setFullUrl("urn:uuid:1").setResource(observation).getRequest().setMethod(Bundle.HTTPVerb.POST).setUrl("Observation");
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			myVal.setConcurrentBundleValidation(true);
+			myVal.setExecutorService(executor);
+
+			for (String next : Arrays.asList(ourCtx.newJsonParser().encodeResourceToString(bundle), ourCtx.newXmlParser().encodeResourceToString(bundle))) {
+				ValidationResult output = myVal.validateWithResult(next);
+				List<SingleValidationMessage> errors = output.getMessages().stream().filter(t -> t.getSeverity() == ResultSeverityEnum.ERROR).collect(Collectors.toList());
+
+				// The unresolved reference is only reported by the concurrent validation
+				assertTrue(errors.stream().anyMatch(t -> t.getMessage().equals("Reference urn:uuid:2 does not match the fullUrl of any entry in the Bundle")), errors.toString());
+				assertTrue(errors.stream().anyMatch(t -> t.getLocationString().startsWith("Bundle.entry[0].resource") && t.getMessage().contains("Observation.status")), errors.toString());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testValidateBundleEntriesConcurrently_NonUrnReferenceValidatesWholeBundle() {
+		Bundle bundle = new Bundle();
+		bundle.setType(Bundle.BundleType.TRANSACTION);
+
+		Patient patient = new Patient();
+		patient.getText().setStatus(Narrative.NarrativeStatus.GENERATED).setDivAsString("<div>Patient</div>");
+		patient.setId("Patient/123");
+		bundle.addEntry().setFullUrl("http://example.com/fhir/Patient/123").setResource(patient).getRequest().setMethod(Bundle.HTTPVerb.PUT).setUrl("Patient/123");
+
+		// No status or code, and a subject which can only be resolved against the other entry by the whole Bundle validation
+		Observation observation = new Observation();
+		observation.getText().setStatus(Narrative.NarrativeStatus.GENERATED).setDivAsString("<div>Observation</div>");
+		observation.getSubject().setReference("Patient/123");
+		bundle.addEntry().setFullUrl("urn:uuid:1").setResource(observation).getRequest().setMethod(Bundle.HTTPVerb.POST).setUrl("Observation");
+
+		List<String> expected = toLocationsAndMessages(myVal.validateWithResult(bundle));
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			myVal.setConcurrentBundleValidation(true);
+			myVal.setExecutorService(executor);
+			assertEquals(expected, toLocationsAndMessages(myVal.validateWithResult(bundle)));
+			assertEquals(expected, toLocationsAndMessages(myVal.validateWithResult(ourCtx.newXmlParser().encodeResourceToString(bundle))));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Validators without an executor service of their own all share the same default pool, so
+	 * creating many of them doesn't create any more threads
+	 */
+	@Test
+	public void testValidateBundleEntriesConcurrently_DefaultExecutorServiceIsShared() {
+		Bundle bundle = new Bundle();
+		bundle.setType(Bundle.BundleType.BATCH);
+		for (int i = 0; i < 4; i++) {
+			Patient patient = new Patient();
+			patient.getText().setStatus(Narrative.NarrativeStatus.GENERATED).setDivAsString("<div>Patient</div>");
+			bundle.addEntry().setFullUrl("urn:uuid:" + i).setResource(patient).getRequest().setMethod(Bundle.HTTPVerb.POST).setUrl("Patient");
+		}
+
+		for (int i = 0; i < 50; i++) {
+			FhirValidator validator = ourCtx.newValidator();
+			validator.setValidateAgainstStandardSchema(false);
+			validator.setValidateAgainstStandardSchematron(false);
+			validator.registerValidatorModule(myInstanceVal);
+			validator.setConcurrentBundleValidation(true);
+			validator.validateWithResult(bundle);
+		}
+
+		long poolThreads = Thread
+			.getAllStackTraces()
+			.keySet()
+			.stream()
+			.filter(t -> t.getName().startsWith("fhir-validator-"))
+			.count();
+		assertThat(poolThreads, greaterThan(0L));
+		assertThat(poolThreads, lessThanOrEqualTo((long) Runtime.getRuntime().availableProcessors()));
+	}
+
+	private static List<String> toLocationsAndMessages(ValidationResult theResult) {
+		return theResult
+			.getMessages()
+			.stream()
+			.map(t -> t.getSeverity() + " " + t.getLocationString() + " - " + t.getMessage())
+			.collect(Collectors.toList());
+	}
+
 	@Test
 	public void testValidateRawJsonResourceBadAttributes() {
 		String input =
@@ -1137,6 +1424,69 @@ public class FhirInstanceValidatorR4Test extends BaseTest {
 		assertThat(errors.toString(), containsString(""));
 	}
 
+	/**
+	 * Profiles in meta.profile are found whether the input is text (read from the validator's
+	 * element model for JSON, or from a DOM for XML) or a parsed resource (read from the model)
+	 */
+	@Test
+	public void testValidateResourceContainingProfileDeclarationForEachInputKind() {
+		addValidConcept("http://loinc.org", "12345");
+
+		Observation input = new Observation();
+		input.getText().setDiv(new XhtmlNode().setValue("<div>AA</div>")).setStatus(Narrative.NarrativeStatus.GENERATED);
+		input.getMeta().addProfile("http://hl7.org/fhir/StructureDefinition/devicemetricobservation");
+		input.addIdentifier().setSystem("http://acme").setValue("12345");
+		input.getEncounter().setReference("http://foo.com/Encounter/9");
+		input.setStatus(ObservationStatus.FINAL);
+		input.getCode().addCoding().setSystem("http://loinc.org").setCode("12345");
+
+		Map<String, String> errors = validateAsEachInputKind(input);
+		assertEquals(5, errors.size());
+		errors.forEach((kind, messages) -> {
+			assertThat(kind, messages, containsString("Element 'Observation.subject': minimum required = 1, but only found 0"));
+			assertThat(kind, messages, containsString("Element 'Observation.encounter': max allowed = 0, but found 1"));
+			assertThat(kind, messages, containsString("Element 'Observation.device': minimum required = 1, but only found 0"));
+		});
+	}
+
+	@Test
+	public void testValidateResourceContainingProfileDeclarationDoesntResolveForEachInputKind() {
+		addValidConcept("http://loinc.org", "12345");
+
+		Observation input = new Observation();
+		input.getText().setDiv(new XhtmlNode().setValue("<div>AA</div>")).setStatus(Narrative.NarrativeStatus.GENERATED);
+		input.getMeta().addProfile("http://foo/structuredefinition/myprofile");
+		input.getCode().addCoding().setSystem("http://loinc.org").setCode("12345");
+		input.setStatus(ObservationStatus.FINAL);
+
+		Map<String, String> errors = validateAsEachInputKind(input);
+		assertEquals(5, errors.size());
+		errors.forEach((kind, messages) -> {
+			assertThat(kind, messages, containsString("Profile reference 'http://foo/structuredefinition/myprofile' could not be resolved, so has not been checked"));
+			assertThat(kind, messages, not(containsString("Observation.device")));
+		});
+	}
+
+	/**
+	 * Validates the given resource as JSON text, as XML text, and as a parsed resource (both as
+	 * given and after a round trip through each encoding)
+	 *
+	 * @return The non-informational messages for each kind of input
+	 */
+	private Map<String, String> validateAsEachInputKind(Observation theInput) {
+		myInstanceVal.setValidationSupport(myValidationSupport);
+		String json = ourCtx.newJsonParser().encodeResourceToString(theInput);
+		String xml = ourCtx.newXmlParser().encodeResourceToString(theInput);
+
+		Map<String, String> retVal = new LinkedHashMap<>();
+		retVal.put("JSON text", logResultsAndReturnNonInformationalOnes(myVal.validateWithResult(json)).toString());
+		retVal.put("XML text", logResultsAndReturnNonInformationalOnes(myVal.validateWithResult(xml)).toString());
+		retVal.put("resource", logResultsAndReturnNonInformationalOnes(myVal.validateWithResult(theInput)).toString());
+		retVal.put("resource parsed from JSON", logResultsAndReturnNonInformationalOnes(myVal.validateWithResult(ourCtx.newJsonParser().parseResource(json))).toString());
+		retVal.put("resource parsed from XML", logResultsAndReturnNonInformationalOnes(myVal.validateWithResult(ourCtx.newXmlParser().parseResource(xml))).toString());
+		return retVal;
+	}
+
 	@Test
 	public void testValidateResourceContainingProfileDeclarationDoesntResolve() {
 		addValidConcept("http://loinc.org", "12345");
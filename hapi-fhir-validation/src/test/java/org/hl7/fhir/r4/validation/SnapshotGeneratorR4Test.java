@@ -6,17 +6,23 @@ import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.rest.api.EncodingEnum;
 import org.apache.commons.io.IOUtils;
 import ca.uhn.fhir.context.support.DefaultProfileValidationSupport;
+import org.hl7.fhir.common.hapi.validation.support.FileSnapshotStore;
+import org.hl7.fhir.common.hapi.validation.support.ISnapshotStore;
+import org.hl7.fhir.common.hapi.validation.support.PrePopulatedValidationSupport;
 import org.hl7.fhir.common.hapi.validation.support.SnapshotGeneratingValidationSupport;
 import org.hl7.fhir.common.hapi.validation.support.ValidationSupportChain;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.StructureDefinition;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -44,6 +50,55 @@ public class SnapshotGeneratorR4Test {
 		assertEquals(54, snapshot.getSnapshot().getElement().size());
 	}
 
+	@Test
+	public void testGenerateSnapshotUsesSnapshotStore(@TempDir File theDirectory) throws IOException {
+		AtomicInteger storeCount = new AtomicInteger();
+		ISnapshotStore store = new FileSnapshotStore(theDirectory) {
+			@Override
+			public void storeSnapshot(String theKey, String theEncodedStructureDefinition) {
+				storeCount.incrementAndGet();
+				super.storeSnapshot(theKey, theEncodedStructureDefinition);
+			}
+		};
+
+		// First generation is stored
+		StructureDefinition differential = loadResourceFromClasspath(StructureDefinition.class, "/r4/profile-differential-patient-r4.json");
+		ValidationSupportChain chain = new ValidationSupportChain(new DefaultProfileValidationSupport(myFhirCtx), new SnapshotGeneratingValidationSupport(myFhirCtx, store));
+		StructureDefinition snapshot = (StructureDefinition) chain.generateSnapshot(new ValidationSupportContext(chain), differential, "http://foo", null, "THE BEST PROFILE");
+		assertEquals(54, snapshot.getSnapshot().getElement().size());
+		assertEquals(1, storeCount.get());
+		assertEquals(1, theDirectory.listFiles().length);
+
+		// A new module (e.g. after a restart) loads it from the store
+		differential = loadResourceFromClasspath(StructureDefinition.class, "/r4/profile-differential-patient-r4.json");
+		chain = new ValidationSupportChain(new DefaultProfileValidationSupport(myFhirCtx), new SnapshotGeneratingValidationSupport(myFhirCtx, store));
+		snapshot = (StructureDefinition) chain.generateSnapshot(new ValidationSupportContext(chain), differential, "http://foo", null, "THE BEST PROFILE");
+		assertEquals(54, snapshot.getSnapshot().getElement().size());
+		assertEquals(1, storeCount.get());
+
+		// A changed differential is not served from the store
+		differential = loadResourceFromClasspath(StructureDefinition.class, "/r4/profile-differential-patient-r4.json");
+		differential.getDifferential().getElementFirstRep().setShort("Changed");
+		snapshot = (StructureDefinition) chain.generateSnapshot(new ValidationSupportContext(chain), differential, "http://foo", null, "THE BEST PROFILE");
+		assertEquals(54, snapshot.getSnapshot().getElement().size());
+		assertEquals(2, storeCount.get());
+	}
+
+	@Test
+	public void testPreloadSnapshots(@TempDir File theDirectory) throws IOException {
+		StructureDefinition differential = loadResourceFromClasspath(StructureDefinition.class, "/r4/profile-differential-patient-r4.json");
+		PrePopulatedValidationSupport prePopulated = new PrePopulatedValidationSupport(myFhirCtx);
+		prePopulated.addStructureDefinition(differential);
+		SnapshotGeneratingValidationSupport snapshotGenerator = new SnapshotGeneratingValidationSupport(myFhirCtx, new FileSnapshotStore(theDirectory));
+		ValidationSupportChain chain = new ValidationSupportChain(prePopulated, new DefaultProfileValidationSupport(myFhirCtx), snapshotGenerator);
+
+		int count = snapshotGenerator.preloadSnapshots(chain, 2);
+
+		assertEquals(1, count);
+		assertEquals(54, differential.getSnapshot().getElement().size());
+		assertEquals(1, theDirectory.listFiles().length);
+	}
+
 
 
 	protected <T extends IBaseResource> T loadResourceFromClasspath(Class<T> type, String resourceName) throws IOException {